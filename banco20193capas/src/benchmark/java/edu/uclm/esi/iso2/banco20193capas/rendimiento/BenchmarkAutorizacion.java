@@ -0,0 +1,71 @@
+package edu.uclm.esi.iso2.banco20193capas.rendimiento;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import edu.uclm.esi.iso2.banco20193capas.Lanzadora;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaDebito;
+
+/**
+ * Autorizaciones por segundo de una tarjeta: {@link TarjetaDebito#comprarPorInternet(int, double)}, que solo
+ * comprueba el pin y genera el token de la compra. Con {@code cache=false} se invalida el estado de la tarjeta
+ * en la {@link edu.uclm.esi.iso2.banco20193capas.model.CacheTarjetas} antes de cada autorización, de forma que
+ * cada comprobación del pin lee el estado de la base de datos.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkAutorizacion {
+	@Param({ "true", "false" })
+	public boolean cache;
+
+	private ConfigurableApplicationContext contexto;
+	private TarjetaDebito tarjeta;
+
+	@Setup(Level.Trial)
+	public void arrancar() throws Exception {
+		this.contexto = new SpringApplicationBuilder(Lanzadora.class).web(WebApplicationType.NONE).run();
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		Cuenta cuenta = new Cuenta(1);
+		cuenta.addTitular(pepe);
+		cuenta.insert();
+		this.tarjeta = cuenta.emitirTarjetaDebito(pepe.getNif());
+		this.tarjeta.cambiarPin(this.tarjeta.getPin(), EstadoBanco.PIN);
+	}
+
+	@TearDown(Level.Trial)
+	public void detener() {
+		this.contexto.close();
+	}
+
+	@Benchmark
+	public Integer autorizar() throws Exception {
+		if (!this.cache)
+			Manager.getCacheTarjetas().invalidar(this.tarjeta.getId());
+		return this.tarjeta.comprarPorInternet(EstadoBanco.PIN, 10.0);
+	}
+}
@@ -0,0 +1,105 @@
+package edu.uclm.esi.iso2.banco20193capas.rendimiento;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import edu.uclm.esi.iso2.banco20193capas.Lanzadora;
+import edu.uclm.esi.iso2.banco20193capas.model.CargadorMasivo;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.ResultadoCarga;
+
+/**
+ * Filas de movimientos guardadas por segundo con el {@link CargadorMasivo}, cargando un fichero generado
+ * de movimientos repartidos entre {@link #CUENTAS} cuentas, frente a los ingresos uno a uno a través de
+ * {@link Cuenta#ingresar(double)}. Cada invocación de {@link #cargaMasiva()} carga el fichero completo, por
+ * lo que su resultado se expresa por fila.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BenchmarkCargaMasiva {
+	private static final int CUENTAS = 10000;
+	private static final int MOVIMIENTOS = 50000;
+	private static final int LOTE = 1000;
+
+	private ConfigurableApplicationContext contexto;
+	private Path directorio;
+	private Path movimientos;
+	private CargadorMasivo cargador;
+	private Cuenta cuenta;
+
+	/**
+	 * Arranca la aplicación, carga los clientes y las cuentas y genera el fichero de movimientos
+	 */
+	@Setup(Level.Trial)
+	public void arrancar() throws Exception {
+		this.contexto = new SpringApplicationBuilder(Lanzadora.class).web(WebApplicationType.NONE).run();
+		this.directorio = Files.createTempDirectory("carga");
+		Path clientes = this.directorio.resolve("clientes.csv");
+		Path cuentas = this.directorio.resolve("cuentas.csv");
+		this.movimientos = this.directorio.resolve("movimientos.jsonl");
+		try (BufferedWriter escritor = Files.newBufferedWriter(clientes, StandardCharsets.UTF_8)) {
+			escritor.write("nif,nombre,apellidos\n");
+			for (int i = 1; i <= CUENTAS; i++)
+				escritor.write("NIF" + i + ",Cliente " + i + ",De carga\n");
+		}
+		try (BufferedWriter escritor = Files.newBufferedWriter(cuentas, StandardCharsets.UTF_8)) {
+			escritor.write("id,titulares\n");
+			for (int i = 1; i <= CUENTAS; i++)
+				escritor.write(i + ",NIF" + i + "\n");
+		}
+		try (BufferedWriter escritor = Files.newBufferedWriter(this.movimientos, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < MOVIMIENTOS; i++)
+				escritor.write("{\"cuenta\": " + (1 + i % CUENTAS) + ", \"importe\": " + (i % 2 == 0 ? 10 : -5) + "}\n");
+		}
+
+		this.cargador = new CargadorMasivo(LOTE);
+		this.cargador.cargarClientes(clientes);
+		this.cargador.cargarCuentas(cuentas);
+		this.cuenta = Manager.getCuentaDAO().findById(1L).get();
+	}
+
+	@TearDown(Level.Trial)
+	public void detener() throws Exception {
+		this.contexto.close();
+		for (String fichero : new String[] { "clientes.csv", "cuentas.csv", "movimientos.jsonl" })
+			Files.deleteIfExists(this.directorio.resolve(fichero));
+		Files.delete(this.directorio);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MOVIMIENTOS)
+	public ResultadoCarga cargaMasiva() throws Exception {
+		return this.cargador.cargarMovimientos(this.movimientos);
+	}
+
+	@Benchmark
+	public void ingresoUnoAUno() throws Exception {
+		this.cuenta.ingresar(1);
+	}
+}
@@ -0,0 +1,92 @@
+package edu.uclm.esi.iso2.banco20193capas.rendimiento;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import edu.uclm.esi.iso2.banco20193capas.Lanzadora;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+
+/**
+ * Tiempo de leer los movimientos de los últimos 30 días de una cuenta con cinco años de historia (200
+ * movimientos al día): leyendo toda la historia y filtrando por fecha, como había que hacer antes de que
+ * los movimientos tuvieran fecha, y con la consulta por periodo.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BenchmarkConsultaPeriodo {
+	private static final int DIAS = 5 * 365;
+	private static final int POR_DIA = 200;
+	private static final int BLOQUE = 20000;
+
+	private ConfigurableApplicationContext contexto;
+	private Instant desde, hasta;
+
+	/**
+	 * Arranca la aplicación y guarda directamente, con SQL, la historia de la cuenta: un movimiento cada
+	 * 432 segundos hacia atrás desde ahora
+	 */
+	@Setup(Level.Trial)
+	public void arrancar() throws Exception {
+		this.contexto = new SpringApplicationBuilder(Lanzadora.class).web(WebApplicationType.NONE).run();
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		Cuenta cuenta = new Cuenta(1);
+		cuenta.addTitular(pepe);
+		cuenta.insert();
+		int movimientos = DIAS * POR_DIA;
+		int segundos = 24 * 3600 / POR_DIA;
+		for (int desde = 1; desde <= movimientos; desde = desde + BLOQUE)
+			Manager.getJdbcTemplate().update("insert into movimiento_cuenta (id, cuenta_id, importe_centimos, concepto, fecha) "
+					+ "select -x, 1, 100, 'Histórico', dateadd('SECOND', -x * " + segundos + ", current_timestamp) "
+					+ "from system_range(" + desde + ", " + Math.min(movimientos, desde + BLOQUE - 1) + ")");
+		Manager.getJdbcTemplate().execute("analyze");
+		this.hasta = Instant.now();
+		this.desde = this.hasta.minus(Duration.ofDays(30));
+	}
+
+	@TearDown(Level.Trial)
+	public void detener() {
+		this.contexto.close();
+	}
+
+	@Benchmark
+	public int historiaCompleta() {
+		int leidos = 0;
+		List<MovimientoCuenta> historia = Manager.getMovimientoDAO().findByCuentaId(1L);
+		for (MovimientoCuenta movimiento : historia)
+			if (!movimiento.getFecha().isBefore(this.desde) && movimiento.getFecha().isBefore(this.hasta))
+				leidos++;
+		return leidos;
+	}
+
+	@Benchmark
+	public int consultaPorPeriodo() {
+		return Manager.getMovimientoDAO().findPeriodoByCuentaId(1L, this.desde, this.hasta).size();
+	}
+}
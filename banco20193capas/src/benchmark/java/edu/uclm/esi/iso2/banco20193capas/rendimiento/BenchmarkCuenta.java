@@ -0,0 +1,44 @@
+package edu.uclm.esi.iso2.banco20193capas.rendimiento;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tiempo medio de las operaciones de {@link edu.uclm.esi.iso2.banco20193capas.model.Cuenta} según el
+ * tamaño del historial de la cuenta (ver {@link EstadoBanco})
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkCuenta {
+
+	@Benchmark
+	public double getSaldo(EstadoBanco estado) {
+		return estado.cuenta.getSaldo();
+	}
+
+	@Benchmark
+	public void ingresar(EstadoBanco estado) throws Exception {
+		estado.cuenta.ingresar(1.0);
+	}
+
+	@Benchmark
+	public void retirar(EstadoBanco estado) throws Exception {
+		estado.cuenta.retirar(1.0);
+	}
+
+	@Benchmark
+	public void transferir(EstadoBanco estado) throws Exception {
+		estado.cuenta.transferir(estado.cuentaDestino.getId(), 1.0, "Benchmark");
+	}
+}
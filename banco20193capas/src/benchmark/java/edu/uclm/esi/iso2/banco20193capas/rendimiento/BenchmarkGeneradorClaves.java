@@ -0,0 +1,50 @@
+package edu.uclm.esi.iso2.banco20193capas.rendimiento;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.uclm.esi.iso2.banco20193capas.model.GeneradorClaves;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+
+/**
+ * Claves generadas por segundo con 32 hilos emitiendo a la vez: con un {@link SecureRandom} nuevo por clave
+ * y dígitos calculados con {@link Math#pow(double, double)} (como se hacía antes), con {@link GeneradorClaves}
+ * y creando tarjetas, cuyo constructor genera el pin.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+public class BenchmarkGeneradorClaves {
+
+	@Benchmark
+	public int secureRandomPorClave() {
+		SecureRandom dado = new SecureRandom();
+		int token = 0;
+		for (int i = 0; i <= 3; i++)
+			token = (int) (token + dado.nextInt(10) * Math.pow(10, i));
+		return token;
+	}
+
+	@Benchmark
+	public int generadorClaves() {
+		return GeneradorClaves.generarToken();
+	}
+
+	@Benchmark
+	public TarjetaCredito emitirTarjeta() {
+		return new TarjetaCredito();
+	}
+}
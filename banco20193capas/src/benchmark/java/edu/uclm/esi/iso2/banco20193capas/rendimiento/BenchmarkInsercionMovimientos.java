@@ -0,0 +1,84 @@
+package edu.uclm.esi.iso2.banco20193capas.rendimiento;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import edu.uclm.esi.iso2.banco20193capas.Lanzadora;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+
+/**
+ * Inserciones por segundo de movimientos de cuenta en H2, guardándolos en lotes de {@link #LOTE} en una
+ * transacción (como hace {@link edu.uclm.esi.iso2.banco20193capas.model.EscritorMovimientos}) frente a los
+ * ingresos uno a uno a través de {@link Cuenta#ingresar(double)}. Cada invocación de {@link #lote()} guarda
+ * un lote completo, por lo que su resultado se expresa por movimiento.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BenchmarkInsercionMovimientos {
+	private static final int LOTE = 500;
+
+	private ConfigurableApplicationContext contexto;
+	private Cuenta cuenta;
+
+	@Setup(Level.Trial)
+	public void arrancar() throws Exception {
+		this.contexto = new SpringApplicationBuilder(Lanzadora.class).web(WebApplicationType.NONE).run();
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		this.cuenta = new Cuenta(1);
+		this.cuenta.addTitular(pepe);
+		this.cuenta.insert();
+	}
+
+	@TearDown(Level.Trial)
+	public void detener() {
+		this.contexto.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOTE)
+	public void lote() {
+		Manager.getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				List<MovimientoCuenta> lote = new ArrayList<>(LOTE);
+				for (int i = 0; i < LOTE; i++)
+					lote.add(new MovimientoCuenta(cuenta, 1, "Benchmark"));
+				Manager.getMovimientoDAO().saveAll(lote);
+			}
+		});
+	}
+
+	@Benchmark
+	public void ingresoUnoAUno() throws Exception {
+		this.cuenta.ingresar(1);
+	}
+}
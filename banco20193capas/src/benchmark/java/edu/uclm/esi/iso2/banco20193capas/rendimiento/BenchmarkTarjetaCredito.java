@@ -0,0 +1,43 @@
+package edu.uclm.esi.iso2.banco20193capas.rendimiento;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tiempo medio de las operaciones de {@link edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito} según
+ * el tamaño del historial de la tarjeta (ver {@link EstadoBanco})
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkTarjetaCredito {
+
+	@Benchmark
+	public void comprar(EstadoBanco estado) throws Exception {
+		estado.tarjeta.comprar(EstadoBanco.PIN, 1.0);
+	}
+
+	@Benchmark
+	public Double getCreditoDisponible(EstadoBanco estado) {
+		return estado.tarjeta.getCreditoDisponible();
+	}
+
+	/**
+	 * Cada invocación hace una compra y la liquida, para que siempre haya un movimiento que liquidar
+	 */
+	@Benchmark
+	public void liquidar(EstadoBanco estado) throws Exception {
+		estado.tarjeta.comprar(EstadoBanco.PIN, 1.0);
+		estado.tarjeta.liquidar();
+	}
+}
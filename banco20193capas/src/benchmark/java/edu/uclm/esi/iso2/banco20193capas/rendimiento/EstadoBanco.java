@@ -0,0 +1,103 @@
+package edu.uclm.esi.iso2.banco20193capas.rendimiento;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import edu.uclm.esi.iso2.banco20193capas.Lanzadora;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoTarjetaCredito;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+
+/**
+ * Estado compartido por los benchmarks: arranca la aplicación contra la base de datos H2 en memoria y crea
+ * una cuenta y una tarjeta de crédito con un historial de {@link #movimientos} movimientos cada una, para
+ * medir cómo escala cada operación con el tamaño del historial.
+ *
+ */
+@State(Scope.Benchmark)
+public class EstadoBanco {
+	static final int PIN = 1234;
+	private static final int LOTE = 1000;
+
+	@Param({ "10", "1000", "100000" })
+	public int movimientos;
+
+	Cuenta cuenta;
+	Cuenta cuentaDestino;
+	TarjetaCredito tarjeta;
+	private ConfigurableApplicationContext contexto;
+
+	@Setup(Level.Trial)
+	public void arrancar() throws Exception {
+		this.contexto = new SpringApplicationBuilder(Lanzadora.class).web(WebApplicationType.NONE).run();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		this.cuenta = new Cuenta(1);
+		this.cuenta.addTitular(pepe);
+		this.cuenta.insert();
+		this.cuentaDestino = new Cuenta(2);
+		this.cuentaDestino.addTitular(pepe);
+		this.cuentaDestino.insert();
+		this.tarjeta = this.cuenta.emitirTarjetaCredito(pepe.getNif(), 1.0e12);
+		this.tarjeta.cambiarPin(this.tarjeta.getPin(), PIN);
+
+		this.cargarHistorial();
+		Manager.getCuentaDAO().reconstruirSaldo(this.cuenta.getId());
+	}
+
+	/**
+	 * Guarda, en lotes de una transacción, los movimientos históricos de la cuenta (que suman en total
+	 * mil millones, para que las retiradas no agoten el saldo) y de la tarjeta (ya liquidados)
+	 */
+	private void cargarHistorial() {
+		final double importe = 1.0e9 / this.movimientos;
+		for (int desde = 0; desde < this.movimientos; desde = desde + LOTE) {
+			final int n = Math.min(LOTE, this.movimientos - desde);
+			Manager.getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					List<MovimientoCuenta> movimientosCuenta = new ArrayList<>(n);
+					List<MovimientoTarjetaCredito> movimientosTarjeta = new ArrayList<>(n);
+					for (int i = 0; i < n; i++) {
+						movimientosCuenta.add(new MovimientoCuenta(cuenta, importe, "Histórico"));
+						MovimientoTarjetaCredito movimiento = new MovimientoTarjetaCredito(tarjeta, 1.0, "Histórico");
+						movimiento.setLiquidado(true);
+						movimientosTarjeta.add(movimiento);
+					}
+					Manager.getMovimientoDAO().saveAll(movimientosCuenta);
+					Manager.getMovimientoTarjetaCreditoDAO().saveAll(movimientosTarjeta);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Liquida las compras hechas por la iteración anterior, para que los movimientos pendientes de la
+	 * tarjeta no crezcan sin límite a lo largo de la medición
+	 */
+	@Setup(Level.Iteration)
+	public void liquidarPendientes() {
+		this.tarjeta.liquidar();
+	}
+
+	@TearDown(Level.Trial)
+	public void detener() {
+		this.contexto.close();
+	}
+}
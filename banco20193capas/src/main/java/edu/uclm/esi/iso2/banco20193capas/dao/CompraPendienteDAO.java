@@ -0,0 +1,41 @@
+package edu.uclm.esi.iso2.banco20193capas.dao;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import edu.uclm.esi.iso2.banco20193capas.model.CompraPendiente;
+
+public interface CompraPendienteDAO extends CrudRepository<CompraPendiente, String>{
+	@Modifying
+	@Transactional
+	@Query("delete from CompraPendiente c where c.id = :id and c.caducidad >= :ahora")
+	int deleteVigenteById(@Param("id") String id, @Param("ahora") long ahora);
+
+	@Modifying
+	@Transactional
+	@Query("delete from CompraPendiente c where c.tarjetaId = :tarjetaId")
+	int deleteByTarjetaId(@Param("tarjetaId") Long tarjetaId);
+
+	@Modifying
+	@Transactional
+	@Query("delete from CompraPendiente c where c.caducidad < :ahora")
+	int deleteCaducadas(@Param("ahora") long ahora);
+
+	/**
+	 * @param pagina	La página que se lee; con páginas de una fila, la página n es la (n+1)-ésima compra más reciente
+	 * @return	Las caducidades de las compras pendientes, de la más lejana a la más próxima
+	 */
+	@Query("select c.caducidad from CompraPendiente c order by c.caducidad desc")
+	List<Long> findCaducidades(Pageable pagina);
+
+	@Modifying
+	@Transactional
+	@Query("delete from CompraPendiente c where c.caducidad <= :caducidad")
+	int deleteCaducanHasta(@Param("caducidad") long caducidad);
+}
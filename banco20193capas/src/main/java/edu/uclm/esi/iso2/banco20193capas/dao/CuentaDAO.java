@@ -1,9 +1,47 @@
 package edu.uclm.esi.iso2.banco20193capas.dao;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
 
+/**
+ * Los saldos e importes de estas consultas están en céntimos (ver {@link edu.uclm.esi.iso2.banco20193capas.model.Centimos})
+ *
+ */
 public interface CuentaDAO extends CrudRepository<Cuenta, Long>{
+	@EntityGraph("Cuenta.titulares")
+	Optional<Cuenta> findConTitularesById(Long id);
+
+	@Query("select c.id from Cuenta c")
+	List<Long> findAllIds();
+
+	@Query("select c.saldo from Cuenta c where c.id = :id")
+	Long findSaldoById(@Param("id") Long id);
+
+	@Query("select c.id, c.saldo from Cuenta c where c.id in :ids")
+	List<Object[]> findSaldosByIdIn(@Param("ids") Collection<Long> ids);
+
+	@Modifying
+	@Transactional
+	@Query("update Cuenta c set c.saldo = c.saldo + :importe where c.id = :id")
+	int actualizarSaldo(@Param("id") Long id, @Param("importe") long importe);
+
+	@Modifying
+	@Transactional
+	@Query("update Cuenta c set c.saldo = c.saldo - :importe where c.id = :id and c.saldo >= :importe")
+	int retirarSaldo(@Param("id") Long id, @Param("importe") long importe);
 
+	@Modifying
+	@Transactional
+	@Query("update Cuenta c set c.saldo = (select coalesce(sum(m.importe), 0) from MovimientoCuenta m where m.cuenta.id = :id) where c.id = :id")
+	int reconstruirSaldo(@Param("id") Long id);
 }
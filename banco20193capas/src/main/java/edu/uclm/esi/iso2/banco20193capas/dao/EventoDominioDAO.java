@@ -0,0 +1,29 @@
+package edu.uclm.esi.iso2.banco20193capas.dao;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import edu.uclm.esi.iso2.banco20193capas.model.EventoDominio;
+import edu.uclm.esi.iso2.banco20193capas.model.EventoDominio.Agregado;
+
+public interface EventoDominioDAO extends CrudRepository<EventoDominio, Long>{
+	@Query("select e from EventoDominio e where e.agregado = :agregado and e.agregadoId = :id and e.id > :desde order by e.id")
+	List<EventoDominio> findTramo(@Param("agregado") Agregado agregado, @Param("id") Long id, @Param("desde") long desde);
+
+	@Query("select e from EventoDominio e where e.agregado = :agregado and e.agregadoId = :id and e.id > :desde and e.fecha <= :hasta order by e.id")
+	List<EventoDominio> findTramoHasta(@Param("agregado") Agregado agregado, @Param("id") Long id, @Param("desde") long desde,
+			@Param("hasta") Instant hasta);
+
+	@Query("select count(e) from EventoDominio e where e.agregado = :agregado and e.agregadoId = :id and e.id > :desde")
+	long countTramo(@Param("agregado") Agregado agregado, @Param("id") Long id, @Param("desde") long desde);
+
+	@Query("select distinct e.agregado, e.agregadoId from EventoDominio e where e.id > :desde")
+	List<Object[]> findAgregadosDesde(@Param("desde") long desde);
+
+	@Query("select max(e.id) from EventoDominio e where e.fecha <= :hasta")
+	Long findMaxIdHasta(@Param("hasta") Instant hasta);
+}
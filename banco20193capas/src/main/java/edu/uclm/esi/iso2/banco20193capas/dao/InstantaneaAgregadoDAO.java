@@ -0,0 +1,16 @@
+package edu.uclm.esi.iso2.banco20193capas.dao;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import org.springframework.data.repository.CrudRepository;
+
+import edu.uclm.esi.iso2.banco20193capas.model.EventoDominio.Agregado;
+import edu.uclm.esi.iso2.banco20193capas.model.InstantaneaAgregado;
+
+public interface InstantaneaAgregadoDAO extends CrudRepository<InstantaneaAgregado, Long>{
+	Optional<InstantaneaAgregado> findFirstByAgregadoAndAgregadoIdOrderByUltimoEventoDesc(Agregado agregado, Long agregadoId);
+
+	Optional<InstantaneaAgregado> findFirstByAgregadoAndAgregadoIdAndFechaLessThanEqualOrderByUltimoEventoDesc(Agregado agregado,
+			Long agregadoId, Instant hasta);
+}
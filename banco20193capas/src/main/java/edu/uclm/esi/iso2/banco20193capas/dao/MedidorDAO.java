@@ -0,0 +1,68 @@
+package edu.uclm.esi.iso2.banco20193capas.dao;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas;
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas.Temporizador;
+
+/**
+ * Mide las llamadas a los DAO de este paquete cuando las {@link Metricas} están activas. En lugar de envolver
+ * cada DAO en un proxy más, añade la medición al principio de la cadena del proxy que ya genera Spring Data,
+ * por lo que la medición incluye la transacción de los métodos que la abren. Si las métricas no están
+ * activas, la llamada pasa directamente al DAO
+ *
+ */
+@Component
+public class MedidorDAO implements BeanPostProcessor {
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String nombre) {
+		if (bean instanceof Repository && bean instanceof Advised) {
+			for (Class<?> interfaz : ((Advised) bean).getProxiedInterfaces())
+				if (interfaz.getPackage() == MedidorDAO.class.getPackage()) {
+					((Advised) bean).addAdvice(0, new Medicion(interfaz.getSimpleName()));
+					break;
+				}
+		}
+		return bean;
+	}
+
+	private static class Medicion implements MethodInterceptor {
+		private final String dao;
+		private final ConcurrentHashMap<Method, String> nombres = new ConcurrentHashMap<>();
+
+		Medicion(String dao) {
+			this.dao = dao;
+		}
+
+		@Override
+		public Object invoke(MethodInvocation llamada) throws Throwable {
+			Metricas metricas = Manager.getMetricas();
+			if (metricas == null)
+				return llamada.proceed();
+			long inicio = System.nanoTime();
+			try {
+				return llamada.proceed();
+			} finally {
+				long duracion = System.nanoTime() - inicio;
+				Method metodo = llamada.getMethod();
+				String nombre = this.nombres.get(metodo);
+				if (nombre == null) {
+					nombre = this.dao + "." + metodo.getName();
+					this.nombres.put(metodo, nombre);
+				}
+				Temporizador temporizador = metricas.getTemporizadorDAO(nombre);
+				temporizador.anotar(duracion);
+			}
+		}
+	}
+}
@@ -1,11 +1,94 @@
 package edu.uclm.esi.iso2.banco20193capas.dao;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
 
+/**
+ * Las sumas de importes de estas consultas están en céntimos (ver {@link edu.uclm.esi.iso2.banco20193capas.model.Centimos})
+ *
+ */
 public interface MovimientoCuentaDAO extends CrudRepository<MovimientoCuenta, Long>{
 	List<MovimientoCuenta> findByCuentaId(Long id);
+
+	/**
+	 * Lee una página de los movimientos de una cuenta por orden de id, a partir del último movimiento
+	 * de la página anterior (paginación por clave, que no recorre las páginas ya leídas)
+	 * @param id	El id de la cuenta
+	 * @param desde	El id del último movimiento ya leído, o 0 para leer la primera página
+	 * @param pagina	El tamaño de la página (solo se usa el tamaño; la página siempre es la primera)
+	 * @return	Los movimientos de la página
+	 */
+	@Query("select m from MovimientoCuenta m where m.cuenta.id = :id and m.id > :desde order by m.id")
+	List<MovimientoCuenta> findPaginaByCuentaId(@Param("id") Long id, @Param("desde") Long desde, Pageable pagina);
+
+	/**
+	 * Recorre los movimientos de una cuenta por orden de id sin cargarlos todos a la vez. Debe llamarse
+	 * dentro de una transacción y cerrarse al terminar; quien lo recorra debe sacar del contexto de
+	 * persistencia los movimientos ya procesados para que no se acumulen en memoria
+	 * @param id	El id de la cuenta
+	 * @return	Los movimientos de la cuenta
+	 */
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+	@Query("select m from MovimientoCuenta m where m.cuenta.id = :id order by m.id")
+	Stream<MovimientoCuenta> streamByCuentaId(@Param("id") Long id);
+
+	@Query("select coalesce(sum(m.importe), 0) from MovimientoCuenta m where m.cuenta.id = :id")
+	long sumImporteByCuentaId(@Param("id") Long id);
+
+	/**
+	 * Lee los movimientos de una cuenta en un periodo, por orden de fecha (y de id, si coinciden)
+	 * @param id	El id de la cuenta
+	 * @param desde	Inicio del periodo, incluido
+	 * @param hasta	Fin del periodo, excluido
+	 * @return	Los movimientos del periodo
+	 */
+	@Query("select m from MovimientoCuenta m where m.cuenta.id = :id and m.fecha >= :desde and m.fecha < :hasta order by m.fecha, m.id")
+	List<MovimientoCuenta> findPeriodoByCuentaId(@Param("id") Long id, @Param("desde") Instant desde, @Param("hasta") Instant hasta);
+
+	/**
+	 * Lee una página de los movimientos de una cuenta en un periodo, por orden de fecha y de id, a partir
+	 * del último movimiento de la página anterior
+	 * @param id	El id de la cuenta
+	 * @param fecha	La fecha del último movimiento ya leído, o el inicio del periodo para leer la primera página
+	 * @param desde	El id del último movimiento ya leído, o 0 para leer la primera página
+	 * @param hasta	Fin del periodo, excluido
+	 * @param pagina	El tamaño de la página (solo se usa el tamaño; la página siempre es la primera)
+	 * @return	Los movimientos de la página
+	 */
+	@Query("select m from MovimientoCuenta m where m.cuenta.id = :id and m.fecha >= :fecha and m.fecha < :hasta "
+			+ "and (m.fecha > :fecha or m.id > :desde) order by m.fecha, m.id")
+	List<MovimientoCuenta> findPaginaPeriodoByCuentaId(@Param("id") Long id, @Param("fecha") Instant fecha, @Param("desde") Long desde,
+			@Param("hasta") Instant hasta, Pageable pagina);
+
+	/**
+	 * Suma los movimientos de una cuenta a partir de una fecha. Restada del saldo de la cuenta, da el saldo
+	 * que tenía en esa fecha sin recorrer los movimientos anteriores
+	 * @param id	El id de la cuenta
+	 * @param desde	La fecha, incluida
+	 * @return	La suma de los importes
+	 */
+	@Query("select coalesce(sum(m.importe), 0) from MovimientoCuenta m where m.cuenta.id = :id and m.fecha >= :desde")
+	long sumImporteDesdeByCuentaId(@Param("id") Long id, @Param("desde") Instant desde);
+
+	/**
+	 * Recorre los movimientos de todas las cuentas en un periodo, por orden de fecha, para auditorías. Como
+	 * {@link #streamByCuentaId(Long)}, debe llamarse dentro de una transacción y cerrarse al terminar
+	 * @param desde	Inicio del periodo, incluido
+	 * @param hasta	Fin del periodo, excluido
+	 * @return	Los movimientos del periodo
+	 */
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+	@Query("select m from MovimientoCuenta m where m.fecha >= :desde and m.fecha < :hasta order by m.fecha, m.id")
+	Stream<MovimientoCuenta> streamPeriodo(@Param("desde") Instant desde, @Param("hasta") Instant hasta);
 }
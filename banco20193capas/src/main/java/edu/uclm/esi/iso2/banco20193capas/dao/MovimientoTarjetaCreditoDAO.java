@@ -1,11 +1,73 @@
 package edu.uclm.esi.iso2.banco20193capas.dao;
 
+import java.time.Instant;
 import java.util.List;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import edu.uclm.esi.iso2.banco20193capas.model.MovimientoTarjetaCredito;
 
+/**
+ * Las sumas de importes de estas consultas están en céntimos (ver {@link edu.uclm.esi.iso2.banco20193capas.model.Centimos})
+ *
+ */
 public interface MovimientoTarjetaCreditoDAO extends CrudRepository<MovimientoTarjetaCredito, Long>{
 	List<MovimientoTarjetaCredito> findByTarjetaId(Long id);
+
+	@Query("select coalesce(sum(m.importe), 0) from MovimientoTarjetaCredito m where m.tarjeta.id = :id and m.liquidado = false")
+	long sumImporteNoLiquidadoByTarjetaId(@Param("id") Long id);
+
+	/**
+	 * Lee los movimientos de una tarjeta en un periodo (por ejemplo, un periodo de facturación), por orden
+	 * de fecha (y de id, si coinciden)
+	 * @param id	El id de la tarjeta
+	 * @param desde	Inicio del periodo, incluido
+	 * @param hasta	Fin del periodo, excluido
+	 * @return	Los movimientos del periodo
+	 */
+	@Query("select m from MovimientoTarjetaCredito m where m.tarjeta.id = :id and m.fecha >= :desde and m.fecha < :hasta order by m.fecha, m.id")
+	List<MovimientoTarjetaCredito> findPeriodoByTarjetaId(@Param("id") Long id, @Param("desde") Instant desde, @Param("hasta") Instant hasta);
+
+	@Query("select coalesce(sum(m.importe), 0) from MovimientoTarjetaCredito m where m.tarjeta.id = :id and m.fecha >= :desde and m.fecha < :hasta")
+	long sumImportePeriodoByTarjetaId(@Param("id") Long id, @Param("desde") Instant desde, @Param("hasta") Instant hasta);
+
+	/**
+	 * Marca como liquidados los movimientos pendientes de una tarjeta, anotando en ellos el identificador de la
+	 * liquidación, de forma que {@link #sumImporteByLiquidacion(String)} suma exactamente los movimientos marcados
+	 * aunque se guarden otros entre las dos sentencias
+	 * @param id	El id de la tarjeta
+	 * @param liquidacion	El identificador de la liquidación, que no puede haberse usado antes
+	 * @return	El número de movimientos liquidados
+	 */
+	@Modifying
+	@Transactional
+	@Query("update MovimientoTarjetaCredito m set m.liquidado = true, m.liquidacion = :liquidacion where m.tarjeta.id = :id and m.liquidado = false")
+	int liquidarByTarjetaId(@Param("id") Long id, @Param("liquidacion") String liquidacion);
+
+	@Query("select coalesce(sum(m.importe), 0) from MovimientoTarjetaCredito m where m.liquidacion = :liquidacion")
+	long sumImporteByLiquidacion(@Param("liquidacion") String liquidacion);
+
+	/**
+	 * Suma, por tarjeta, los movimientos marcados con el identificador de una liquidación (ver
+	 * {@link #liquidarByTarjetaIdBetween(Long, Long, String)})
+	 * @param liquidacion	El identificador de la liquidación
+	 * @return	Para cada tarjeta, su id, el id de su cuenta, la suma de los importes y el número de movimientos,
+	 * 			por orden de id de cuenta
+	 */
+	@Query("select t.id, t.cuenta.id, sum(m.importe), count(m) from MovimientoTarjetaCredito m join m.tarjeta t "
+			+ "where m.liquidacion = :liquidacion group by t.id, t.cuenta.id order by t.cuenta.id, t.id")
+	List<Object[]> sumImporteByLiquidacionGroupByTarjeta(@Param("liquidacion") String liquidacion);
+
+	/**
+	 * Como {@link #liquidarByTarjetaId(Long, String)}, para todas las tarjetas con id en [desde, hasta]
+	 */
+	@Modifying
+	@Transactional
+	@Query("update MovimientoTarjetaCredito m set m.liquidado = true, m.liquidacion = :liquidacion "
+			+ "where m.tarjeta.id between :desde and :hasta and m.liquidado = false")
+	int liquidarByTarjetaIdBetween(@Param("desde") Long desde, @Param("hasta") Long hasta, @Param("liquidacion") String liquidacion);
 }
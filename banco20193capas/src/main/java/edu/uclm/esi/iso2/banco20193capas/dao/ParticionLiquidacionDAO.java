@@ -0,0 +1,11 @@
+package edu.uclm.esi.iso2.banco20193capas.dao;
+
+import java.util.List;
+
+import org.springframework.data.repository.CrudRepository;
+
+import edu.uclm.esi.iso2.banco20193capas.model.ParticionLiquidacion;
+
+public interface ParticionLiquidacionDAO extends CrudRepository<ParticionLiquidacion, String>{
+	List<ParticionLiquidacion> findByEjecucion(String ejecucion);
+}
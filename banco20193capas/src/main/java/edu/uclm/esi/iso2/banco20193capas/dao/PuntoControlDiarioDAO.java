@@ -0,0 +1,8 @@
+package edu.uclm.esi.iso2.banco20193capas.dao;
+
+import org.springframework.data.repository.CrudRepository;
+
+import edu.uclm.esi.iso2.banco20193capas.model.PuntoControlDiario;
+
+public interface PuntoControlDiarioDAO extends CrudRepository<PuntoControlDiario, Long>{
+}
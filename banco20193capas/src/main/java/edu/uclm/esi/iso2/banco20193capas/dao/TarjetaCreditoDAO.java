@@ -1,9 +1,19 @@
 package edu.uclm.esi.iso2.banco20193capas.dao;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import edu.uclm.esi.iso2.banco20193capas.model.EstadoTarjeta;
 import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
 
 public interface TarjetaCreditoDAO extends CrudRepository<TarjetaCredito, Long>{
+	@Query("select min(t.id) from TarjetaCredito t")
+	Long findMinId();
 
+	@Query("select max(t.id) from TarjetaCredito t")
+	Long findMaxId();
+
+	@Query("select new edu.uclm.esi.iso2.banco20193capas.model.EstadoTarjeta(t.pin, t.activa, t.intentos, c.id) from TarjetaCredito t left join t.cuenta c where t.id = :id")
+	EstadoTarjeta findEstadoById(@Param("id") Long id);
 }
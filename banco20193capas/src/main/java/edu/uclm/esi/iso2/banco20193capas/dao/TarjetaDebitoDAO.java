@@ -1,9 +1,13 @@
 package edu.uclm.esi.iso2.banco20193capas.dao;
 
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import edu.uclm.esi.iso2.banco20193capas.model.EstadoTarjeta;
 import edu.uclm.esi.iso2.banco20193capas.model.TarjetaDebito;
 
 public interface TarjetaDebitoDAO extends CrudRepository<TarjetaDebito, Long>{
-
+	@Query("select new edu.uclm.esi.iso2.banco20193capas.model.EstadoTarjeta(t.pin, t.activa, t.intentos, c.id) from TarjetaDebito t left join t.cuenta c where t.id = :id")
+	EstadoTarjeta findEstadoById(@Param("id") Long id);
 }
@@ -0,0 +1,7 @@
+package edu.uclm.esi.iso2.banco20193capas.exceptions;
+
+public class LiquidacionIncompletaException extends Exception {
+	public LiquidacionIncompletaException(String ejecucion, int particionesFallidas, Throwable causa) {
+		super("La liquidación " + ejecucion + " no se ha completado: han fallado " + particionesFallidas + " particiones", causa);
+	}
+}
@@ -0,0 +1,9 @@
+package edu.uclm.esi.iso2.banco20193capas.exceptions;
+
+public class TarjetaInvalidaException extends Exception {
+
+	public TarjetaInvalidaException(Long numero) {
+		super("La tarjeta " + numero + " no existe");
+	}
+
+}
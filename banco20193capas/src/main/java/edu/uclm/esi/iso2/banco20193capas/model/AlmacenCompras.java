@@ -0,0 +1,46 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+/**
+ * Almacén de las compras por Internet pendientes de confirmar (ver {@link Tarjeta#comprarPorInternet(int, double)}
+ * y {@link Tarjeta#confirmarCompraPorInternet(int)}), por tarjeta y token. Cada compra caduca pasado un
+ * tiempo y el número de compras pendientes está acotado: al llenarse, se descartan las más antiguas.
+ *
+ * Hay dos implementaciones: {@link AlmacenComprasMemoria}, para un solo proceso, y
+ * {@link AlmacenComprasBaseDatos}, que guarda las compras en la base de datos para que la confirmación
+ * pueda llegar a cualquier nodo. Se elige con la propiedad {@code banco.compras.almacen}.
+ *
+ */
+public interface AlmacenCompras {
+	/**
+	 * Guarda una compra pendiente
+	 * @param tarjetaId	El id de la tarjeta
+	 * @param token	El token que confirmará la compra
+	 * @param importe	El importe de la compra
+	 */
+	void guardar(Long tarjetaId, int token, double importe);
+
+	/**
+	 * Retira una compra pendiente, para confirmarla. Una misma compra solo puede retirarse una vez
+	 * @param tarjetaId	El id de la tarjeta
+	 * @param token	El token de la compra
+	 * @return	La compra, o null si no hay ninguna pendiente con ese token o ha caducado
+	 */
+	Compra retirar(Long tarjetaId, int token);
+
+	/**
+	 * Descarta todas las compras pendientes de una tarjeta
+	 * @param tarjetaId	El id de la tarjeta
+	 */
+	void descartar(Long tarjetaId);
+
+	/**
+	 * Descarta las compras caducadas
+	 * @return	El número de compras descartadas
+	 */
+	int purgar();
+
+	/**
+	 * @return	El número de compras pendientes, incluidas las caducadas que aún no se han descartado
+	 */
+	long getPendientes();
+}
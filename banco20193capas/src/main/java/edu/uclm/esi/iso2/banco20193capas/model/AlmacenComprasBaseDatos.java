@@ -0,0 +1,133 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+
+import edu.uclm.esi.iso2.banco20193capas.dao.CompraPendienteDAO;
+
+/**
+ * Almacén de compras pendientes en la base de datos, compartido por todos los nodos que la usan: la compra
+ * puede iniciarse en un nodo y confirmarse en otro. La caducidad se guarda como instante del reloj de
+ * pared, por lo que los relojes de los nodos deben estar sincronizados.
+ *
+ * Retirar una compra es un borrado condicionado a que siga vigente: si dos nodos confirman a la vez la
+ * misma compra, solo a uno de ellos le borra la fila la base de datos, y solo ese la cobra. Las compras
+ * caducadas no se borran al intentar retirarlas, sino al purgar.
+ *
+ * Guardar una compra es una única inserción. El tamaño máximo no se comprueba al guardar, sino al purgar,
+ * que se hace periódicamente (ver {@link #iniciar()}): entre dos purgas puede haber más compras pendientes
+ * que el máximo.
+ *
+ */
+public class AlmacenComprasBaseDatos implements AlmacenCompras {
+	private final CompraPendienteDAO dao;
+	private final int tamanoMaximo;
+	private final long ttl;
+	private final long periodoPurga;
+	private ScheduledExecutorService planificador;
+
+	/**
+	 * @param dao	El DAO de las compras pendientes
+	 * @param tamanoMaximo	El número máximo de compras pendientes
+	 * @param ttl	El tiempo, en milisegundos, que se guarda cada compra
+	 * @param periodoPurga	Tiempo, en milisegundos, entre dos purgas
+	 */
+	public AlmacenComprasBaseDatos(CompraPendienteDAO dao, int tamanoMaximo, long ttl, long periodoPurga) {
+		if (tamanoMaximo <= 0 || ttl <= 0 || periodoPurga <= 0)
+			throw new IllegalArgumentException("El tamaño máximo, el tiempo de vida y el periodo de purga deben ser positivos");
+		this.dao = dao;
+		this.tamanoMaximo = tamanoMaximo;
+		this.ttl = ttl;
+		this.periodoPurga = periodoPurga;
+	}
+
+	public synchronized void iniciar() {
+		if (this.planificador != null)
+			return;
+		this.planificador = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable tarea) {
+				Thread hilo = new Thread(tarea, "purga-compras");
+				hilo.setDaemon(true);
+				return hilo;
+			}
+		});
+		this.planificador.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					purgar();
+				} catch (RuntimeException e) {
+					// Un fallo en una purga no debe detener las siguientes
+				}
+			}
+		}, this.periodoPurga, this.periodoPurga, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Detiene las purgas periódicas
+	 */
+	public synchronized void detener() {
+		if (this.planificador == null)
+			return;
+		this.planificador.shutdownNow();
+		this.planificador = null;
+	}
+
+	/**
+	 * Inserta la compra. Solo si ya había una pendiente con el mismo token en la tarjeta, la sustituye
+	 */
+	@Override
+	public void guardar(Long tarjetaId, int token, double importe) {
+		long caducidad = System.currentTimeMillis() + this.ttl;
+		try {
+			this.dao.save(new CompraPendiente(tarjetaId, token, importe, caducidad));
+		} catch (DataIntegrityViolationException e) {
+			this.dao.deleteById(tarjetaId + ":" + token);
+			this.dao.save(new CompraPendiente(tarjetaId, token, importe, caducidad));
+		}
+	}
+
+	@Override
+	public Compra retirar(Long tarjetaId, int token) {
+		Optional<CompraPendiente> optPendiente = this.dao.findById(tarjetaId + ":" + token);
+		if (!optPendiente.isPresent())
+			return null;
+		CompraPendiente pendiente = optPendiente.get();
+		if (this.dao.deleteVigenteById(pendiente.getId(), System.currentTimeMillis()) == 1)
+			return new Compra(pendiente.getImporte(), pendiente.getToken());
+		return null;
+	}
+
+	@Override
+	public void descartar(Long tarjetaId) {
+		this.dao.deleteByTarjetaId(tarjetaId);
+	}
+
+	/**
+	 * Descarta las compras caducadas y, si aun así se pasa del tamaño máximo, las más antiguas que sobran
+	 * (junto con las que caducan a la vez que la última de ellas)
+	 */
+	@Override
+	public int purgar() {
+		int purgadas = this.dao.deleteCaducadas(System.currentTimeMillis());
+		if (this.dao.count() > this.tamanoMaximo) {
+			List<Long> limite = this.dao.findCaducidades(PageRequest.of(this.tamanoMaximo, 1));
+			if (!limite.isEmpty())
+				purgadas = purgadas + this.dao.deleteCaducanHasta(limite.get(0));
+		}
+		return purgadas;
+	}
+
+	@Override
+	public long getPendientes() {
+		return this.dao.count();
+	}
+}
@@ -0,0 +1,117 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Almacén de compras pendientes en la memoria de este proceso. Las compras se guardan en orden de llegada,
+ * de forma que, al llenarse, se descarta la más antigua; además se lleva, por tarjeta, el conjunto de sus
+ * tokens pendientes, para descartarlos sin recorrer todo el almacén.
+ *
+ */
+public class AlmacenComprasMemoria implements AlmacenCompras {
+	private final int tamanoMaximo;
+	private final long ttl;
+	private final LinkedHashMap<String, Pendiente> compras;
+	private final Map<Long, Set<String>> porTarjeta = new HashMap<>();
+
+	/**
+	 * @param tamanoMaximo	El número máximo de compras pendientes
+	 * @param ttl	El tiempo, en milisegundos, que se guarda cada compra
+	 */
+	public AlmacenComprasMemoria(int tamanoMaximo, long ttl) {
+		if (tamanoMaximo <= 0 || ttl <= 0)
+			throw new IllegalArgumentException("El tamaño máximo y el tiempo de vida deben ser positivos");
+		this.tamanoMaximo = tamanoMaximo;
+		this.ttl = ttl;
+		this.compras = new LinkedHashMap<String, Pendiente>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Pendiente> eldest) {
+				if (size() <= AlmacenComprasMemoria.this.tamanoMaximo)
+					return false;
+				quitarDeTarjeta(eldest.getValue().tarjetaId, eldest.getKey());
+				return true;
+			}
+		};
+	}
+
+	@Override
+	public synchronized void guardar(Long tarjetaId, int token, double importe) {
+		String clave = clave(tarjetaId, token);
+		this.compras.remove(clave);
+		this.compras.put(clave, new Pendiente(tarjetaId, new Compra(importe, token), System.nanoTime() + this.ttl * 1000000L));
+		Set<String> claves = this.porTarjeta.get(tarjetaId);
+		if (claves == null) {
+			claves = new HashSet<>();
+			this.porTarjeta.put(tarjetaId, claves);
+		}
+		claves.add(clave);
+	}
+
+	@Override
+	public synchronized Compra retirar(Long tarjetaId, int token) {
+		String clave = clave(tarjetaId, token);
+		Pendiente pendiente = this.compras.remove(clave);
+		if (pendiente == null)
+			return null;
+		this.quitarDeTarjeta(tarjetaId, clave);
+		return pendiente.caducidad - System.nanoTime() > 0 ? pendiente.compra : null;
+	}
+
+	@Override
+	public synchronized void descartar(Long tarjetaId) {
+		Set<String> claves = this.porTarjeta.remove(tarjetaId);
+		if (claves != null)
+			for (String clave : claves)
+				this.compras.remove(clave);
+	}
+
+	@Override
+	public synchronized int purgar() {
+		int purgadas = 0;
+		long ahora = System.nanoTime();
+		Iterator<Map.Entry<String, Pendiente>> it = this.compras.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Pendiente> entrada = it.next();
+			if (entrada.getValue().caducidad - ahora <= 0) {
+				it.remove();
+				this.quitarDeTarjeta(entrada.getValue().tarjetaId, entrada.getKey());
+				purgadas++;
+			}
+		}
+		return purgadas;
+	}
+
+	@Override
+	public synchronized long getPendientes() {
+		return this.compras.size();
+	}
+
+	private void quitarDeTarjeta(Long tarjetaId, String clave) {
+		Set<String> claves = this.porTarjeta.get(tarjetaId);
+		if (claves != null && claves.remove(clave) && claves.isEmpty())
+			this.porTarjeta.remove(tarjetaId);
+	}
+
+	private static String clave(Long tarjetaId, int token) {
+		return tarjetaId + ":" + token;
+	}
+
+	private static class Pendiente {
+		private final Long tarjetaId;
+		private final Compra compra;
+		private final long caducidad;
+
+		private Pendiente(Long tarjetaId, Compra compra, long caducidad) {
+			this.tarjetaId = tarjetaId;
+			this.compra = compra;
+			this.caducidad = caducidad;
+		}
+	}
+}
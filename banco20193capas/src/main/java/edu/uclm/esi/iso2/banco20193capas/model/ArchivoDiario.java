@@ -0,0 +1,96 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Archivo del diario de movimientos (ver {@link DiarioMovimientos}), proyectado en memoria y dividido en
+ * {@link #getCapacidad()} huecos de {@link RegistroDiario#TAMANO} bytes. Los registros se escriben en la
+ * memoria proyectada y solo son duraderos después de {@link #forzar()}.
+ *
+ * El archivo se reutiliza desde el principio cuando se llena (y todos sus registros ya se han aplicado),
+ * por lo que su contenido válido es la cadena de registros con secuencias consecutivas que empieza en el
+ * primer hueco: los registros de la vuelta anterior tienen secuencias menores, y un registro escrito a
+ * medias no supera la comprobación del CRC, de forma que en ambos casos la cadena termina ahí.
+ *
+ */
+public class ArchivoDiario implements Closeable {
+	private final FileChannel canal;
+	private final MappedByteBuffer memoria;
+	private final int capacidad;
+
+	/**
+	 * Abre el archivo, creándolo si no existe
+	 * @param ruta	La ruta del archivo
+	 * @param capacidad	Número de registros que caben en el archivo. Si el archivo ya existe y es mayor, se conserva su tamaño
+	 * @throws IOException	Si no puede abrirse o proyectarse el archivo
+	 */
+	public ArchivoDiario(Path ruta, int capacidad) throws IOException {
+		this.canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.capacidad = (int) Math.max(capacidad, this.canal.size() / RegistroDiario.TAMANO);
+		this.memoria = this.canal.map(MapMode.READ_WRITE, 0, (long) this.capacidad * RegistroDiario.TAMANO);
+	}
+
+	/**
+	 * @return	La cadena de registros válidos con secuencias consecutivas desde el primer hueco
+	 */
+	public List<RegistroDiario> leer() {
+		List<RegistroDiario> cadena = new ArrayList<>();
+		RegistroDiario anterior = null;
+		for (int hueco = 0; hueco < this.capacidad; hueco++) {
+			RegistroDiario registro = RegistroDiario.leer(this.memoria, hueco * RegistroDiario.TAMANO);
+			if (registro == null || (anterior != null && registro.getSecuencia() != anterior.getSecuencia() + 1))
+				break;
+			cadena.add(registro);
+			anterior = registro;
+		}
+		return cadena;
+	}
+
+	/**
+	 * Escribe un registro en la memoria proyectada
+	 * @param hueco	El hueco en que se escribe
+	 * @param registro	El registro
+	 */
+	public void escribir(int hueco, RegistroDiario registro) {
+		registro.escribir(this.memoria, hueco * RegistroDiario.TAMANO);
+	}
+
+	/**
+	 * Borra los registros desde el hueco indicado hasta el final del archivo, para que los restos de un
+	 * grupo escrito a medias no puedan prolongar la cadena cuando se escriba de nuevo en los huecos anteriores
+	 * @param hueco	El primer hueco que se borra
+	 */
+	public void borrarDesde(int hueco) {
+		byte[] ceros = new byte[RegistroDiario.TAMANO];
+		for (int i = hueco; i < this.capacidad; i++) {
+			ByteBuffer copia = this.memoria.duplicate();
+			copia.position(i * RegistroDiario.TAMANO);
+			copia.put(ceros);
+		}
+	}
+
+	/**
+	 * Lleva al disco los registros escritos
+	 */
+	public void forzar() {
+		this.memoria.force();
+	}
+
+	public int getCapacidad() {
+		return this.capacidad;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.canal.close();
+	}
+}
@@ -0,0 +1,64 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.List;
+
+/**
+ * Aviso que reciben los suscriptores de una cuenta (ver {@link AvisosMovimientos}): el saldo de la cuenta y
+ * sus movimientos desde el aviso anterior
+ *
+ */
+public class AvisoCuenta {
+	private Long cuenta;
+	private double saldo;
+	private List<AvisoMovimiento> movimientos;
+	private int omitidos;
+
+	public AvisoCuenta() {
+	}
+
+	public AvisoCuenta(Long cuenta, double saldo, List<AvisoMovimiento> movimientos, int omitidos) {
+		this.cuenta = cuenta;
+		this.saldo = saldo;
+		this.movimientos = movimientos;
+		this.omitidos = omitidos;
+	}
+
+	public Long getCuenta() {
+		return cuenta;
+	}
+
+	public void setCuenta(Long cuenta) {
+		this.cuenta = cuenta;
+	}
+
+	public double getSaldo() {
+		return saldo;
+	}
+
+	public void setSaldo(double saldo) {
+		this.saldo = saldo;
+	}
+
+	/**
+	 * @return	Los últimos movimientos desde el aviso anterior, en el orden en que se confirmaron
+	 */
+	public List<AvisoMovimiento> getMovimientos() {
+		return movimientos;
+	}
+
+	public void setMovimientos(List<AvisoMovimiento> movimientos) {
+		this.movimientos = movimientos;
+	}
+
+	/**
+	 * @return	El número de movimientos más antiguos que no caben en el aviso; el cliente que los necesite
+	 * 			debe pedir el extracto de la cuenta
+	 */
+	public int getOmitidos() {
+		return omitidos;
+	}
+
+	public void setOmitidos(int omitidos) {
+		this.omitidos = omitidos;
+	}
+}
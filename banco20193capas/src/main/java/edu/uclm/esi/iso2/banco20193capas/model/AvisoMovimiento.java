@@ -0,0 +1,77 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+/**
+ * Un movimiento de cuenta o de tarjeta de crédito dentro de un {@link AvisoCuenta}
+ *
+ */
+public class AvisoMovimiento {
+	private Long id;
+	private Long tarjeta;
+	private String fecha;
+	private double importe;
+	private String concepto;
+
+	public AvisoMovimiento() {
+	}
+
+	public AvisoMovimiento(MovimientoCuenta movimiento) {
+		this.id = movimiento.getId();
+		this.fecha = movimiento.getFecha() == null ? null : movimiento.getFecha().toString();
+		this.importe = movimiento.getImporte();
+		this.concepto = movimiento.getConcepto();
+	}
+
+	public AvisoMovimiento(MovimientoTarjetaCredito movimiento) {
+		this.id = movimiento.getId();
+		this.tarjeta = movimiento.getTarjeta().getId();
+		this.fecha = movimiento.getFecha() == null ? null : movimiento.getFecha().toString();
+		this.importe = movimiento.getImporte();
+		this.concepto = movimiento.getConcepto();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return	El id de la tarjeta de crédito, o null si es un movimiento de la cuenta
+	 */
+	public Long getTarjeta() {
+		return tarjeta;
+	}
+
+	public void setTarjeta(Long tarjeta) {
+		this.tarjeta = tarjeta;
+	}
+
+	/**
+	 * @return	La fecha del movimiento en formato ISO-8601
+	 */
+	public String getFecha() {
+		return fecha;
+	}
+
+	public void setFecha(String fecha) {
+		this.fecha = fecha;
+	}
+
+	public double getImporte() {
+		return importe;
+	}
+
+	public void setImporte(double importe) {
+		this.importe = importe;
+	}
+
+	public String getConcepto() {
+		return concepto;
+	}
+
+	public void setConcepto(String concepto) {
+		this.concepto = concepto;
+	}
+}
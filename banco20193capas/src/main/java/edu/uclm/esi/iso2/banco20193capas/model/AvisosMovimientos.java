@@ -0,0 +1,225 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Envía a los clientes suscritos a una cuenta (en el destino {@code /topic/cuentas/{id}}) el saldo y los
+ * movimientos nuevos de la cuenta, de forma que no necesitan consultar el saldo periódicamente.
+ *
+ * Los movimientos se anotan cuando se confirma la transacción que los guarda (los de una transacción que
+ * se deshace no se envían nunca) y se acumulan por cuenta. Cada intervalo se envía un único aviso por cada
+ * cuenta con movimientos nuevos, con el saldo leído en ese momento (en una sola consulta para todas las
+ * cuentas) y, como mucho, los últimos {@code maxMovimientos} movimientos: un cliente recibe como mucho un
+ * aviso por intervalo aunque la cuenta reciba una ráfaga de movimientos.
+ *
+ * Solo se anotan los movimientos de cuentas con algún suscriptor (ver {@link #suscribir(Long)}), por lo que
+ * las cuentas que nadie está mirando no cuestan ninguna lectura.
+ *
+ */
+public class AvisosMovimientos {
+	/**
+	 * Prefijo del destino de los avisos de cada cuenta, al que se añade el id de la cuenta
+	 */
+	public static final String DESTINO = "/topic/cuentas/";
+
+	private final SimpMessageSendingOperations mensajeria;
+	private final long intervalo;
+	private final int maxMovimientos;
+	private final ConcurrentHashMap<Long, AtomicInteger> suscriptores = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Long, Pendientes> pendientes = new ConcurrentHashMap<>();
+	private ScheduledExecutorService planificador;
+
+	/**
+	 * @param mensajeria	El medio por el que se envían los avisos
+	 * @param intervalo	Tiempo mínimo, en milisegundos, entre dos avisos de la misma cuenta
+	 * @param maxMovimientos	Número máximo de movimientos en cada aviso
+	 */
+	public AvisosMovimientos(SimpMessageSendingOperations mensajeria, long intervalo, int maxMovimientos) {
+		if (intervalo <= 0 || maxMovimientos < 0)
+			throw new IllegalArgumentException("El intervalo debe ser positivo y el número de movimientos no puede ser negativo");
+		this.mensajeria = mensajeria;
+		this.intervalo = intervalo;
+		this.maxMovimientos = maxMovimientos;
+	}
+
+	public synchronized void iniciar() {
+		if (this.planificador != null)
+			return;
+		this.planificador = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable tarea) {
+				Thread hilo = new Thread(tarea, "avisos-movimientos");
+				hilo.setDaemon(true);
+				return hilo;
+			}
+		});
+		this.planificador.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					enviar();
+				} catch (RuntimeException e) {
+					// Un fallo al leer los saldos no debe detener los avisos siguientes
+				}
+			}
+		}, this.intervalo, this.intervalo, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Detiene el envío de avisos. Los movimientos pendientes de avisar se descartan
+	 */
+	public synchronized void detener() {
+		if (this.planificador == null)
+			return;
+		this.planificador.shutdownNow();
+		this.planificador = null;
+		this.pendientes.clear();
+	}
+
+	/**
+	 * Registra un nuevo suscriptor a los avisos de una cuenta
+	 * @param cuenta	El id de la cuenta
+	 */
+	public void suscribir(Long cuenta) {
+		AtomicInteger n = this.suscriptores.get(cuenta);
+		if (n == null) {
+			AtomicInteger nuevo = new AtomicInteger();
+			n = this.suscriptores.putIfAbsent(cuenta, nuevo);
+			if (n == null)
+				n = nuevo;
+		}
+		n.incrementAndGet();
+	}
+
+	/**
+	 * Da de baja a un suscriptor de los avisos de una cuenta
+	 * @param cuenta	El id de la cuenta
+	 */
+	public void cancelar(Long cuenta) {
+		AtomicInteger n = this.suscriptores.get(cuenta);
+		if (n != null && n.decrementAndGet() <= 0)
+			this.suscriptores.remove(cuenta, n);
+	}
+
+	/**
+	 * @param cuenta	El id de la cuenta
+	 * @return	true si alguien está suscrito a los avisos de la cuenta
+	 */
+	public boolean isSuscrita(Long cuenta) {
+		AtomicInteger n = this.suscriptores.get(cuenta);
+		return n != null && n.get() > 0;
+	}
+
+	/**
+	 * Anota un movimiento de cuenta para el próximo aviso de su cuenta
+	 * @param movimiento	El movimiento, ya guardado
+	 */
+	public void anotar(MovimientoCuenta movimiento) {
+		anotar(movimiento.getCuenta().getId(), new AvisoMovimiento(movimiento));
+	}
+
+	/**
+	 * Anota un movimiento de tarjeta de crédito para el próximo aviso de la cuenta de la tarjeta
+	 * @param movimiento	El movimiento, ya guardado
+	 */
+	public void anotar(MovimientoTarjetaCredito movimiento) {
+		anotar(movimiento.getTarjeta().getCuenta().getId(), new AvisoMovimiento(movimiento));
+	}
+
+	private void anotar(final Long cuenta, final AvisoMovimiento movimiento) {
+		if (cuenta == null || !isSuscrita(cuenta))
+			return;
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					acumular(cuenta, movimiento);
+				}
+			});
+		else
+			acumular(cuenta, movimiento);
+	}
+
+	private void acumular(Long cuenta, AvisoMovimiento movimiento) {
+		while (true) {
+			Pendientes lista = this.pendientes.get(cuenta);
+			if (lista == null) {
+				Pendientes nueva = new Pendientes();
+				lista = this.pendientes.putIfAbsent(cuenta, nueva);
+				if (lista == null)
+					lista = nueva;
+			}
+			// Si el envío ya se ha llevado esta lista, el movimiento va en una nueva
+			if (lista.anadir(movimiento, this.maxMovimientos))
+				return;
+		}
+	}
+
+	/**
+	 * Envía un aviso por cada cuenta con movimientos anotados desde el envío anterior
+	 * @return	El número de avisos enviados
+	 */
+	public int enviar() {
+		if (this.pendientes.isEmpty())
+			return 0;
+		Map<Long, Pendientes> lote = new HashMap<>();
+		for (Long cuenta : new ArrayList<>(this.pendientes.keySet())) {
+			Pendientes lista = this.pendientes.remove(cuenta);
+			if (lista != null) {
+				lista.cerrar();
+				lote.put(cuenta, lista);
+			}
+		}
+		Map<Long, Long> saldos = new HashMap<>();
+		for (Object[] fila : Manager.getCuentaDAO().findSaldosByIdIn(lote.keySet()))
+			saldos.put((Long) fila[0], (Long) fila[1]);
+		int enviados = 0;
+		for (Map.Entry<Long, Pendientes> entrada : lote.entrySet()) {
+			Long saldo = saldos.get(entrada.getKey());
+			if (saldo == null)
+				continue;
+			Pendientes lista = entrada.getValue();
+			this.mensajeria.convertAndSend(DESTINO + entrada.getKey(),
+					new AvisoCuenta(entrada.getKey(), Centimos.aEuros(saldo), lista.movimientos, lista.omitidos));
+			enviados++;
+		}
+		return enviados;
+	}
+
+	/**
+	 * Movimientos de una cuenta pendientes de avisar. Cuando el envío se la lleva, se cierra y ya no admite más
+	 */
+	private static class Pendientes {
+		private final List<AvisoMovimiento> movimientos = new ArrayList<>();
+		private int omitidos;
+		private boolean cerrada;
+
+		synchronized boolean anadir(AvisoMovimiento movimiento, int maximo) {
+			if (this.cerrada)
+				return false;
+			this.movimientos.add(movimiento);
+			if (this.movimientos.size() > maximo) {
+				this.movimientos.remove(0);
+				this.omitidos++;
+			}
+			return true;
+		}
+
+		synchronized void cerrar() {
+			this.cerrada = true;
+		}
+	}
+}
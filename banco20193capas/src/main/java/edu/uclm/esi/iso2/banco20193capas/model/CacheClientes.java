@@ -0,0 +1,148 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Caché de clientes por NIF delante de {@link edu.uclm.esi.iso2.banco20193capas.dao.ClienteDAO#findByNif(String)}.
+ * Guarda como mucho {@code tamanoMaximo} clientes: cuando se llena, desaloja el usado hace más tiempo. Además,
+ * cada cliente caduca {@code ttl} milisegundos después de haberse cargado, de forma que los cambios hechos en
+ * la base de datos por otros procesos acaban viéndose. Los clientes que no se encuentran no se guardan.
+ *
+ * {@link Cliente#insert()} invalida la entrada de su NIF.
+ *
+ */
+public class CacheClientes {
+	private final int tamanoMaximo;
+	private final long ttl;
+	private final LinkedHashMap<String, Entrada> entradas;
+	private long aciertos;
+	private long fallos;
+	private long desalojos;
+
+	/**
+	 * @param tamanoMaximo	El número máximo de clientes que se guardan
+	 * @param ttl	El tiempo, en milisegundos, que se guarda cada cliente
+	 */
+	public CacheClientes(int tamanoMaximo, long ttl) {
+		if (tamanoMaximo <= 0 || ttl <= 0)
+			throw new IllegalArgumentException("El tamaño máximo y el tiempo de vida deben ser positivos");
+		this.tamanoMaximo = tamanoMaximo;
+		this.ttl = ttl;
+		this.entradas = new LinkedHashMap<String, Entrada>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entrada> eldest) {
+				if (size() <= CacheClientes.this.tamanoMaximo)
+					return false;
+				desalojos++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Busca un cliente por su NIF, primero en la caché y, si no está o ha caducado, en la base de datos
+	 * @param nif	El NIF del cliente
+	 * @return	El cliente, si existe
+	 */
+	public Optional<Cliente> buscar(String nif) {
+		synchronized (this) {
+			Entrada entrada = this.entradas.get(nif);
+			if (entrada != null) {
+				if (entrada.caducidad - System.nanoTime() > 0) {
+					this.aciertos++;
+					return Optional.of(entrada.cliente);
+				}
+				this.entradas.remove(nif);
+				this.desalojos++;
+			}
+			this.fallos++;
+		}
+		Optional<Cliente> cliente = Manager.getClienteDAO().findByNif(nif);
+		if (cliente.isPresent()) {
+			synchronized (this) {
+				this.entradas.put(nif, new Entrada(cliente.get(), System.nanoTime() + this.ttl * 1000000L));
+			}
+		}
+		return cliente;
+	}
+
+	/**
+	 * Elimina de la caché el cliente con el NIF indicado
+	 * @param nif	El NIF del cliente
+	 */
+	public synchronized void invalidar(String nif) {
+		this.entradas.remove(nif);
+	}
+
+	/**
+	 * Elimina de la caché todos los clientes
+	 */
+	public synchronized void vaciar() {
+		this.entradas.clear();
+	}
+
+	/**
+	 * Elimina de la caché los clientes caducados
+	 * @return	El número de clientes eliminados
+	 */
+	public synchronized int purgar() {
+		int eliminados = 0;
+		long ahora = System.nanoTime();
+		Iterator<Entrada> it = this.entradas.values().iterator();
+		while (it.hasNext())
+			if (it.next().caducidad - ahora <= 0) {
+				it.remove();
+				eliminados++;
+			}
+		this.desalojos = this.desalojos + eliminados;
+		return eliminados;
+	}
+
+	public synchronized int getTamano() {
+		return this.entradas.size();
+	}
+
+	public int getTamanoMaximo() {
+		return this.tamanoMaximo;
+	}
+
+	public long getTtl() {
+		return this.ttl;
+	}
+
+	/**
+	 * @return	El número de búsquedas resueltas con la caché
+	 */
+	public synchronized long getAciertos() {
+		return this.aciertos;
+	}
+
+	/**
+	 * @return	El número de búsquedas que han tenido que ir a la base de datos
+	 */
+	public synchronized long getFallos() {
+		return this.fallos;
+	}
+
+	/**
+	 * @return	El número de clientes desalojados, por falta de espacio o por haber caducado
+	 */
+	public synchronized long getDesalojos() {
+		return this.desalojos;
+	}
+
+	private static class Entrada {
+		private final Cliente cliente;
+		private final long caducidad;
+
+		private Entrada(Cliente cliente, long caducidad) {
+			this.cliente = cliente;
+			this.caducidad = caducidad;
+		}
+	}
+}
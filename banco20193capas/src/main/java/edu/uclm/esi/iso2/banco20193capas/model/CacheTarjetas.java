@@ -0,0 +1,80 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché del estado de las tarjetas ({@link EstadoTarjeta}) por id de tarjeta, que usa la comprobación del pin
+ * para no tener que ir a la base de datos. La primera vez que se pide el estado de una tarjeta se lee de la
+ * base de datos; a partir de ahí, los cambios de estado que hace {@link Tarjeta} (intentos fallidos, bloqueo y
+ * cambio de pin) se guardan en la caché a la vez que en la base de datos, por lo que todas las instancias de
+ * una misma tarjeta ven el mismo estado.
+ *
+ * Las modificaciones hechas en la base de datos sin pasar por {@link Tarjeta} deben ir seguidas de
+ * {@link #invalidar(Long)}.
+ *
+ */
+public class CacheTarjetas {
+	private final ConcurrentMap<Long, EstadoTarjeta> estados = new ConcurrentHashMap<>();
+	private final AtomicLong aciertos = new AtomicLong();
+	private final AtomicLong fallos = new AtomicLong();
+
+	/**
+	 * Devuelve el estado de una tarjeta, leyéndolo de la base de datos si no está en la caché
+	 * @param tarjeta	La tarjeta
+	 * @return	El estado de la tarjeta. Si la tarjeta no está en la base de datos, el estado que tiene en memoria
+	 */
+	public EstadoTarjeta obtener(Tarjeta tarjeta) {
+		EstadoTarjeta estado = this.estados.get(tarjeta.getId());
+		if (estado != null) {
+			this.aciertos.incrementAndGet();
+			return estado;
+		}
+		this.fallos.incrementAndGet();
+		estado = tarjeta.cargarEstado();
+		if (estado == null)
+			return EstadoTarjeta.de(tarjeta);
+		EstadoTarjeta anterior = this.estados.putIfAbsent(tarjeta.getId(), estado);
+		return anterior == null ? estado : anterior;
+	}
+
+	/**
+	 * Guarda el nuevo estado de una tarjeta
+	 * @param id	El id de la tarjeta
+	 * @param estado	El estado
+	 */
+	public void actualizar(Long id, EstadoTarjeta estado) {
+		this.estados.put(id, estado);
+	}
+
+	/**
+	 * Elimina de la caché el estado de una tarjeta, que se volverá a leer de la base de datos
+	 * @param id	El id de la tarjeta
+	 */
+	public void invalidar(Long id) {
+		this.estados.remove(id);
+	}
+
+	public void vaciar() {
+		this.estados.clear();
+	}
+
+	public int getTamano() {
+		return this.estados.size();
+	}
+
+	/**
+	 * @return	El número de veces que el estado se ha obtenido de la caché
+	 */
+	public long getAciertos() {
+		return this.aciertos.get();
+	}
+
+	/**
+	 * @return	El número de veces que el estado ha tenido que leerse de la base de datos
+	 */
+	public long getFallos() {
+		return this.fallos.get();
+	}
+}
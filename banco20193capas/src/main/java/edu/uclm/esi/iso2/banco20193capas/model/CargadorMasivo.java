@@ -0,0 +1,410 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.SequenceGenerator;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.ClienteNoEncontradoException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.CuentaInvalidaException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.CuentaSinTitularesException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.ImporteInvalidoException;
+
+/**
+ * Carga masiva de clientes, cuentas y movimientos desde ficheros CSV o JSON por líneas (ver
+ * {@link LectorRegistros}), para dar de alta carteras migradas de otros sistemas sin pasar por
+ * {@link Cliente#insert()}, {@link Cuenta#insert()} y {@link Cuenta#ingresar(double)} fila a fila.
+ *
+ * Los ficheros se leen registro a registro y se escriben en lotes de sentencias JDBC, cada lote en su
+ * propia transacción, de forma que la memoria usada no depende del tamaño del fichero. Cada fila se
+ * valida con las mismas reglas que el dominio; las filas inválidas se rechazan (y se informa de ellas en
+ * el {@link ResultadoCarga}) sin detener la carga. Los campos de cada tipo de fichero son:
+ * <ul>
+ * <li>Clientes: {@code nif}, {@code nombre} y {@code apellidos}</li>
+ * <li>Cuentas: {@code id} y {@code titulares}, con los NIF de los titulares, que deben estar ya cargados
+ * (en CSV, separados por punto y coma; en JSON, en un array)</li>
+ * <li>Movimientos: {@code cuenta}, {@code importe} (negativo si es un cargo) y, opcionalmente, {@code concepto}
+ * y {@code fecha} (en ISO-8601, como {@code 2019-05-31T10:15:30Z}; si falta, se toma la de la carga).
+ * El saldo materializado de cada cuenta se actualiza con cada lote, y cada movimiento se anota en el
+ * {@link DiarioEventos}</li>
+ * </ul>
+ *
+ * Los ficheros deben cargarse en ese orden. Si se carga dos veces el mismo fichero de movimientos, los
+ * movimientos se duplican.
+ *
+ */
+public class CargadorMasivo {
+	private static final String CONCEPTO_POR_DEFECTO = "Movimiento migrado";
+
+	/**
+	 * Formatos de fichero admitidos
+	 */
+	public enum Formato {
+		CSV, JSON_LINEAS;
+
+		/**
+		 * @param fichero	El fichero
+		 * @return	CSV si el nombre del fichero termina en .csv, y JSON_LINEAS en otro caso
+		 */
+		public static Formato de(Path fichero) {
+			return fichero.getFileName().toString().toLowerCase().endsWith(".csv") ? CSV : JSON_LINEAS;
+		}
+	}
+
+	private int tamanoLote;
+
+	/**
+	 * @param tamanoLote	Número de filas que se escriben en cada lote
+	 */
+	public CargadorMasivo(int tamanoLote) {
+		if (tamanoLote <= 0)
+			throw new IllegalArgumentException("El tamaño de lote debe ser positivo");
+		this.tamanoLote = tamanoLote;
+	}
+
+	/**
+	 * Carga un fichero de clientes. Se rechazan los clientes sin NIF y aquellos cuyo NIF ya existe
+	 * @param fichero	El fichero, codificado en UTF-8
+	 * @return	El resultado de la carga
+	 * @throws IOException	Si falla la lectura del fichero
+	 */
+	public ResultadoCarga cargarClientes(Path fichero) throws IOException {
+		return this.cargarClientes(Files.newBufferedReader(fichero, StandardCharsets.UTF_8), Formato.de(fichero));
+	}
+
+	public ResultadoCarga cargarClientes(Reader lector, Formato formato) throws IOException {
+		return this.cargar(lector, formato, new CargaClientes());
+	}
+
+	/**
+	 * Carga un fichero de cuentas. Se rechazan las cuentas sin titulares ({@link CuentaSinTitularesException}),
+	 * aquellas con algún titular que no está en la base de datos ({@link ClienteNoEncontradoException}) y
+	 * las que ya existen
+	 * @param fichero	El fichero, codificado en UTF-8
+	 * @return	El resultado de la carga
+	 * @throws IOException	Si falla la lectura del fichero
+	 */
+	public ResultadoCarga cargarCuentas(Path fichero) throws IOException {
+		return this.cargarCuentas(Files.newBufferedReader(fichero, StandardCharsets.UTF_8), Formato.de(fichero));
+	}
+
+	public ResultadoCarga cargarCuentas(Reader lector, Formato formato) throws IOException {
+		return this.cargar(lector, formato, new CargaCuentas());
+	}
+
+	/**
+	 * Carga un fichero de movimientos. Se rechazan los movimientos de importe cero o no numérico
+	 * ({@link ImporteInvalidoException}) y los de cuentas que no existen ({@link CuentaInvalidaException})
+	 * @param fichero	El fichero, codificado en UTF-8
+	 * @return	El resultado de la carga
+	 * @throws IOException	Si falla la lectura del fichero
+	 */
+	public ResultadoCarga cargarMovimientos(Path fichero) throws IOException {
+		return this.cargarMovimientos(Files.newBufferedReader(fichero, StandardCharsets.UTF_8), Formato.de(fichero));
+	}
+
+	public ResultadoCarga cargarMovimientos(Reader lector, Formato formato) throws IOException {
+		return this.cargar(lector, formato, new CargaMovimientos());
+	}
+
+	private <T> ResultadoCarga cargar(Reader lector, Formato formato, final Carga<T> carga) throws IOException {
+		long inicio = System.currentTimeMillis();
+		final ResultadoCarga resultado = new ResultadoCarga(carga.tipo);
+		final List<Fila<T>> lote = new ArrayList<>(this.tamanoLote);
+		try (LectorRegistros registros = new LectorRegistros(lector, formato)) {
+			while (true) {
+				Map<String, Object> registro;
+				try {
+					registro = registros.siguiente();
+				} catch (IllegalArgumentException e) {
+					resultado.rechazada(registros.getLinea(), e.getMessage());
+					continue;
+				}
+				if (registro == null)
+					break;
+				try {
+					lote.add(new Fila<T>(registros.getLinea(), carga.validar(registro)));
+				} catch (IllegalArgumentException | ImporteInvalidoException | CuentaSinTitularesException e) {
+					resultado.rechazada(registros.getLinea(), e.getMessage());
+				}
+				if (lote.size() == this.tamanoLote)
+					escribir(carga, lote, resultado);
+			}
+			if (!lote.isEmpty())
+				escribir(carga, lote, resultado);
+		}
+		resultado.terminar(System.currentTimeMillis() - inicio);
+		return resultado;
+	}
+
+	private static <T> void escribir(final Carga<T> carga, final List<Fila<T>> lote, final ResultadoCarga resultado) {
+		Manager.getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				carga.escribir(Manager.getJdbcTemplate(), lote, resultado);
+			}
+		});
+		lote.clear();
+	}
+
+	/**
+	 * Busca cuáles de los valores indicados están en la base de datos
+	 * @param consulta	Consulta que devuelve la columna buscada, sin la condición {@code in}
+	 * @param columna	La columna buscada
+	 * @param valores	Los valores buscados
+	 * @param tipo	El tipo de la columna
+	 * @return	Los valores que están en la base de datos
+	 */
+	private static <V> Set<V> existentes(JdbcTemplate jdbc, String consulta, String columna, Collection<V> valores, Class<V> tipo) {
+		if (valores.isEmpty())
+			return new HashSet<>();
+		StringBuilder sql = new StringBuilder(consulta).append(" where ").append(columna).append(" in (");
+		for (int i = 0; i < valores.size(); i++)
+			sql.append(i == 0 ? "?" : ", ?");
+		sql.append(")");
+		return new HashSet<>(jdbc.queryForList(sql.toString(), tipo, valores.toArray()));
+	}
+
+	private static String texto(Map<String, Object> registro, String campo, boolean obligatorio) {
+		Object valor = registro.get(campo);
+		String texto = valor == null ? null : valor.toString().trim();
+		if (obligatorio && (texto == null || texto.isEmpty()))
+			throw new IllegalArgumentException("Falta el campo " + campo);
+		return texto == null || texto.isEmpty() ? null : texto;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> lista(Map<String, Object> registro, String campo) {
+		Object valor = registro.get(campo);
+		List<String> lista = new ArrayList<>();
+		Collection<String> elementos = valor instanceof Collection ? (Collection<String>) valor
+				: valor == null ? Collections.<String>emptyList() : Arrays.asList(valor.toString().split(";"));
+		for (String elemento : elementos)
+			if (!elemento.trim().isEmpty())
+				lista.add(elemento.trim());
+		return lista;
+	}
+
+	private static class Fila<T> {
+		private final int linea;
+		private final T valor;
+
+		private Fila(int linea, T valor) {
+			this.linea = linea;
+			this.valor = valor;
+		}
+	}
+
+	/**
+	 * Cómo se valida y se escribe cada tipo de fila
+	 */
+	private abstract static class Carga<T> {
+		private final String tipo;
+
+		private Carga(String tipo) {
+			this.tipo = tipo;
+		}
+
+		abstract T validar(Map<String, Object> registro) throws ImporteInvalidoException, CuentaSinTitularesException;
+
+		/**
+		 * Escribe las filas válidas del lote, después de rechazar las que chocan con la base de datos o con
+		 * otras filas del mismo lote, y anota en el resultado las filas cargadas y las rechazadas
+		 */
+		abstract void escribir(JdbcTemplate jdbc, List<Fila<T>> lote, ResultadoCarga resultado);
+	}
+
+	private static class CargaClientes extends Carga<Cliente> {
+		private CargaClientes() {
+			super("clientes");
+		}
+
+		@Override
+		Cliente validar(Map<String, Object> registro) {
+			return new Cliente(texto(registro, "nif", true), texto(registro, "nombre", false), texto(registro, "apellidos", false));
+		}
+
+		@Override
+		void escribir(JdbcTemplate jdbc, List<Fila<Cliente>> lote, ResultadoCarga resultado) {
+			List<String> nifs = new ArrayList<>(lote.size());
+			for (Fila<Cliente> fila : lote)
+				nifs.add(fila.valor.getNif());
+			Set<String> vistos = existentes(jdbc, "select nif from cliente", "nif", nifs, String.class);
+			List<Object[]> filas = new ArrayList<>(lote.size());
+			for (Fila<Cliente> fila : lote) {
+				Cliente cliente = fila.valor;
+				if (vistos.add(cliente.getNif()))
+					filas.add(new Object[] { cliente.getNif(), cliente.getNombre(), cliente.getApellidos() });
+				else
+					resultado.rechazada(fila.linea, "Ya existe un cliente con NIF " + cliente.getNif());
+			}
+			jdbc.batchUpdate("insert into cliente (id, nif, nombre, apellidos) values (next value for hibernate_sequence, ?, ?, ?)", filas);
+			resultado.cargadas(filas.size());
+		}
+	}
+
+	private static class FilaCuenta {
+		private final Long id;
+		private final List<String> titulares;
+
+		private FilaCuenta(Long id, List<String> titulares) {
+			this.id = id;
+			this.titulares = titulares;
+		}
+	}
+
+	private static class CargaCuentas extends Carga<FilaCuenta> {
+		private CargaCuentas() {
+			super("cuentas");
+		}
+
+		@Override
+		FilaCuenta validar(Map<String, Object> registro) throws CuentaSinTitularesException {
+			Long id = Long.valueOf(texto(registro, "id", true));
+			List<String> titulares = lista(registro, "titulares");
+			if (titulares.isEmpty())
+				throw new CuentaSinTitularesException();
+			return new FilaCuenta(id, titulares);
+		}
+
+		@Override
+		void escribir(JdbcTemplate jdbc, List<Fila<FilaCuenta>> lote, ResultadoCarga resultado) {
+			Set<Long> ids = new HashSet<>();
+			Set<String> nifs = new HashSet<>();
+			for (Fila<FilaCuenta> fila : lote) {
+				ids.add(fila.valor.id);
+				nifs.addAll(fila.valor.titulares);
+			}
+			Set<Long> cuentasVistas = existentes(jdbc, "select id from cuenta", "id", ids, Long.class);
+			Set<String> clientes = existentes(jdbc, "select nif from cliente", "nif", nifs, String.class);
+			List<Object[]> cuentas = new ArrayList<>(lote.size());
+			List<Object[]> titulares = new ArrayList<>(lote.size());
+			for (Fila<FilaCuenta> fila : lote) {
+				FilaCuenta cuenta = fila.valor;
+				String motivo = null;
+				for (String nif : cuenta.titulares)
+					if (motivo == null && !clientes.contains(nif))
+						motivo = new ClienteNoEncontradoException(nif).getMessage();
+				if (motivo == null && !cuentasVistas.add(cuenta.id))
+					motivo = "La cuenta " + cuenta.id + " ya existe";
+				if (motivo != null) {
+					resultado.rechazada(fila.linea, motivo);
+					continue;
+				}
+				cuentas.add(new Object[] { cuenta.id });
+				for (String nif : new LinkedHashSet<>(cuenta.titulares))
+					titulares.add(new Object[] { cuenta.id, nif });
+			}
+			jdbc.batchUpdate("insert into cuenta (id, creada, saldo_centimos) values (?, true, 0)", cuentas);
+			jdbc.batchUpdate("insert into cuenta_titulares (cuenta_id, titulares_id) select ?, id from cliente where nif = ?", titulares);
+			resultado.cargadas(cuentas.size());
+		}
+	}
+
+	private static class CargaMovimientos extends Carga<MovimientoCuenta> {
+		private final int incrementoSecuencia;
+		private long siguienteId;
+		private long ultimoId = -1;
+
+		private CargaMovimientos() {
+			super("movimientos");
+			try {
+				this.incrementoSecuencia = MovimientoCuenta.class.getDeclaredField("id").getAnnotation(SequenceGenerator.class).allocationSize();
+			} catch (NoSuchFieldException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		MovimientoCuenta validar(Map<String, Object> registro) throws ImporteInvalidoException {
+			Long cuenta = Long.valueOf(texto(registro, "cuenta", true));
+			double importe = Double.parseDouble(texto(registro, "importe", true));
+			if (Double.isNaN(importe) || Double.isInfinite(importe) || Centimos.de(importe) == 0)
+				throw new ImporteInvalidoException(importe);
+			String concepto = texto(registro, "concepto", false);
+			MovimientoCuenta movimiento = MovimientoCuenta.enCentimos(new Cuenta(cuenta), Centimos.de(importe),
+					concepto == null ? CONCEPTO_POR_DEFECTO : concepto);
+			String fecha = texto(registro, "fecha", false);
+			if (fecha != null)
+				try {
+					movimiento.setFecha(Instant.parse(fecha));
+				} catch (DateTimeParseException e) {
+					throw new IllegalArgumentException("La fecha " + fecha + " no es válida");
+				}
+			return movimiento;
+		}
+
+		@Override
+		void escribir(JdbcTemplate jdbc, List<Fila<MovimientoCuenta>> lote, ResultadoCarga resultado) {
+			Set<Long> ids = new HashSet<>();
+			for (Fila<MovimientoCuenta> fila : lote)
+				ids.add(fila.valor.getCuenta().getId());
+			Set<Long> cuentas = existentes(jdbc, "select id from cuenta", "id", ids, Long.class);
+			List<Object[]> movimientos = new ArrayList<>(lote.size());
+			List<EventoDominio> eventos = new ArrayList<>(lote.size());
+			AvisosMovimientos avisos = Manager.getAvisosMovimientos();
+			LibroCuentasFrecuentes libro = Manager.getLibroCuentasFrecuentes();
+			Map<Long, Long> saldos = new LinkedHashMap<>();
+			for (Fila<MovimientoCuenta> fila : lote) {
+				MovimientoCuenta movimiento = fila.valor;
+				Long cuenta = movimiento.getCuenta().getId();
+				if (!cuentas.contains(cuenta)) {
+					resultado.rechazada(fila.linea, new CuentaInvalidaException(cuenta).getMessage());
+					continue;
+				}
+				movimiento.setId(this.siguienteId(jdbc));
+				movimientos.add(new Object[] { movimiento.getId(), cuenta, movimiento.getCentimos(), movimiento.getConcepto(),
+						Timestamp.from(movimiento.getFecha()) });
+				eventos.add(EventoDominio.de(movimiento));
+				if (avisos != null)
+					avisos.anotar(movimiento);
+				if (libro != null)
+					libro.anotar(movimiento);
+				Long saldo = saldos.get(cuenta);
+				saldos.put(cuenta, (saldo == null ? 0 : saldo) + movimiento.getCentimos());
+			}
+			jdbc.batchUpdate("insert into movimiento_cuenta (id, cuenta_id, importe_centimos, concepto, fecha) values (?, ?, ?, ?, ?)", movimientos);
+			List<Object[]> actualizaciones = new ArrayList<>(saldos.size());
+			for (Map.Entry<Long, Long> saldo : saldos.entrySet())
+				actualizaciones.add(new Object[] { saldo.getValue(), saldo.getKey() });
+			jdbc.batchUpdate("update cuenta set saldo_centimos = saldo_centimos + ? where id = ?", actualizaciones);
+			// Los eventos se anotan con Hibernate, en lotes, para que sus ids salgan del mismo bloque de la
+			// secuencia que los del resto de la aplicación y sigan el orden de anotación
+			Manager.getDiarioEventos().anotar(eventos);
+			resultado.cargadas(movimientos.size());
+		}
+
+		/**
+		 * Reserva los ids igual que el optimizador de Hibernate para la secuencia de {@link MovimientoCuenta}:
+		 * cada valor {@code v} de la secuencia reserva los ids de {@code v - incremento + 1} a {@code v}, de
+		 * modo que los ids de la carga no chocan con los que asigne Hibernate
+		 */
+		private long siguienteId(JdbcTemplate jdbc) {
+			if (this.siguienteId > this.ultimoId) {
+				this.ultimoId = jdbc.queryForObject("select next value for movimiento_cuenta_seq", Long.class);
+				this.siguienteId = Math.max(1, this.ultimoId - this.incrementoSecuencia + 1);
+			}
+			return this.siguienteId++;
+		}
+	}
+}
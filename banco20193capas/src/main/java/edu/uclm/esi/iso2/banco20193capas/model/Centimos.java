@@ -0,0 +1,47 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversiones y cálculos con importes en céntimos. Los importes se guardan en la base de datos y se suman
+ * como enteros de céntimos (columnas BIGINT), de forma que los saldos y las sumas de movimientos son exactos;
+ * las operaciones públicas siguen recibiendo y devolviendo euros, que se convierten al entrar y al salir.
+ *
+ */
+public final class Centimos {
+	private Centimos() {
+	}
+
+	/**
+	 * @param euros	Un importe en euros
+	 * @return	El importe en céntimos, redondeado al céntimo más próximo
+	 */
+	public static long de(double euros) {
+		return Math.round(euros * 100);
+	}
+
+	/**
+	 * @param centimos	Un importe en céntimos
+	 * @return	El importe en euros
+	 */
+	public static double aEuros(long centimos) {
+		return centimos / 100.0;
+	}
+
+	/**
+	 * Calcula la comisión de una transferencia: el 1% del importe, redondeado al céntimo, con un mínimo de 1.5 euros
+	 * @param centimos	El importe transferido, en céntimos (positivo)
+	 * @return	La comisión en céntimos
+	 */
+	public static long comisionTransferencia(long centimos) {
+		return Math.max((centimos + 50) / 100, 150);
+	}
+
+	/**
+	 * @param centimos	Un importe en céntimos
+	 * @return	El importe en euros con dos decimales y punto decimal (por ejemplo, -1234.50)
+	 */
+	public static String formatear(long centimos) {
+		return BigDecimal.valueOf(centimos, 2).toPlainString();
+	}
+}
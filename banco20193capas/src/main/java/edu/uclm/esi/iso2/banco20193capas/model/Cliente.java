@@ -1,16 +1,17 @@
 package edu.uclm.esi.iso2.banco20193capas.model;
 
-import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
 @Entity
+@Table(uniqueConstraints = { @UniqueConstraint(name = "uk_cliente_nif", columnNames = "nif") })
 public class Cliente {
 	@Id @GeneratedValue(strategy = GenerationType.AUTO)
 	private Long id;
-	@Column(unique = true)
 	protected String nif;
 	
 	private String nombre;
@@ -62,5 +63,6 @@ public class Cliente {
 	 */
 	public void insert() {
 		Manager.getClienteDAO().save(this);
+		Manager.getCacheClientes().invalidar(this.nif);
 	}
 }
@@ -2,20 +2,21 @@ package edu.uclm.esi.iso2.banco20193capas.model;
 
 public class Compra {
 
-	private double importe;
+	/** En céntimos (ver {@link Centimos}) */
+	private long importe;
 	private int token;
 
 	public Compra(double importe, int token) {
-		this.importe = importe;
+		this.importe = Centimos.de(importe);
 		this.token = token;
 	}
 
 	public double getImporte() {
-		return importe;
+		return Centimos.aEuros(importe);
 	}
 
 	public void setImporte(double importe) {
-		this.importe = importe;
+		this.importe = Centimos.de(importe);
 	}
 
 	public int getToken() {
@@ -0,0 +1,99 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+import org.springframework.data.domain.Persistable;
+
+/**
+ * Compra por Internet pendiente de confirmar, tal como la guarda {@link AlmacenComprasBaseDatos}.
+ * Su id es el id de la tarjeta y el token, separados por dos puntos
+ *
+ */
+@Entity
+@Table(indexes = { @Index(name = "ix_compra_pendiente_tarjeta", columnList = "tarjetaId"),
+		@Index(name = "ix_compra_pendiente_caducidad", columnList = "caducidad") })
+public class CompraPendiente implements Persistable<String> {
+	@Id
+	private String id;
+	private Long tarjetaId;
+	private int token;
+	/** En céntimos (ver {@link Centimos}) */
+	@Column(name = "importe_centimos")
+	private long importe;
+	private long caducidad;
+	@Transient
+	private boolean nueva;
+
+	public CompraPendiente() {
+	}
+
+	/**
+	 * @param tarjetaId	El id de la tarjeta
+	 * @param token	El token que confirmará la compra
+	 * @param importe	El importe de la compra
+	 * @param caducidad	El instante, en milisegundos desde 1970, a partir del cual la compra ya no puede confirmarse
+	 */
+	public CompraPendiente(Long tarjetaId, int token, double importe, long caducidad) {
+		this.id = tarjetaId + ":" + token;
+		this.tarjetaId = tarjetaId;
+		this.token = token;
+		this.importe = Centimos.de(importe);
+		this.caducidad = caducidad;
+		this.nueva = true;
+	}
+
+	/**
+	 * Como el id se asigna antes de guardar, la compra indica si es nueva para que guardarla sea una inserción
+	 * directa, sin leer antes la fila
+	 */
+	@Override
+	public boolean isNew() {
+		return this.nueva;
+	}
+
+	@Override
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public Long getTarjetaId() {
+		return tarjetaId;
+	}
+
+	public void setTarjetaId(Long tarjetaId) {
+		this.tarjetaId = tarjetaId;
+	}
+
+	public int getToken() {
+		return token;
+	}
+
+	public void setToken(int token) {
+		this.token = token;
+	}
+
+	public double getImporte() {
+		return Centimos.aEuros(importe);
+	}
+
+	public void setImporte(double importe) {
+		this.importe = Centimos.de(importe);
+	}
+
+	public long getCaducidad() {
+		return caducidad;
+	}
+
+	public void setCaducidad(long caducidad) {
+		this.caducidad = caducidad;
+	}
+}
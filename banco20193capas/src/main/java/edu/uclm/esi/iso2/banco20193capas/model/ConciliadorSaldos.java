@@ -0,0 +1,65 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+/**
+ * Proceso de conciliación del saldo materializado de las cuentas (ver {@link Cuenta#getSaldo()})
+ * con su libro de movimientos. Como los saldos y los importes se guardan en céntimos, la comparación es
+ * exacta: cualquier diferencia es un descuadre.
+ *
+ * Cada cuenta se concilia en una transacción que bloquea su fila antes de leer el saldo y los movimientos,
+ * como la carga del {@link LibroCuentasFrecuentes}: mientras tanto no puede confirmarse ningún movimiento de
+ * la cuenta, así que un movimiento que llega a la vez no se confunde con un descuadre. Si el diario de
+ * movimientos está activo, antes se espera a que se apliquen los de la cuenta.
+ *
+ */
+public class ConciliadorSaldos {
+
+	/**
+	 * Compara el saldo materializado de cada cuenta con la suma de sus movimientos
+	 * @param corregir	Si es true, el saldo de las cuentas descuadradas se reconstruye a partir de sus movimientos
+	 * @return	Las cuentas descuadradas, con la diferencia entre el saldo materializado y la suma de sus movimientos
+	 */
+	public Map<Long, Double> conciliar(boolean corregir) {
+		Map<Long, Double> descuadres = new LinkedHashMap<>();
+		for (Long id : Manager.getCuentaDAO().findAllIds()) {
+			double descuadre = this.conciliar(id, corregir);
+			if (descuadre != 0)
+				descuadres.put(id, descuadre);
+		}
+		return descuadres;
+	}
+
+	/**
+	 * Compara el saldo materializado de una cuenta con la suma de sus movimientos
+	 * @param id	El id de la cuenta
+	 * @param corregir	Si es true y hay descuadre, el saldo se reconstruye a partir de los movimientos
+	 * @return	La diferencia entre el saldo materializado y la suma de los movimientos
+	 */
+	public double conciliar(final Long id, final boolean corregir) {
+		DiarioMovimientos diario = Manager.getDiarioMovimientos();
+		if (diario != null)
+			diario.esperarCuenta(id);
+		long descuadre = Manager.getTransactionTemplate().execute(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				List<Long> saldo = Manager.getJdbcTemplate().queryForList("select saldo_centimos from cuenta where id = ? for update",
+						Long.class, id);
+				long descuadre = (saldo.isEmpty() ? 0 : saldo.get(0)) - Manager.getMovimientoDAO().sumImporteByCuentaId(id);
+				if (corregir && descuadre != 0) {
+					Manager.getCuentaDAO().reconstruirSaldo(id);
+					LibroCuentasFrecuentes libro = Manager.getLibroCuentasFrecuentes();
+					if (libro != null)
+						libro.descartar(id);
+				}
+				return descuadre;
+			}
+		});
+		return Centimos.aEuros(descuadre);
+	}
+}
@@ -1,13 +1,24 @@
 package edu.uclm.esi.iso2.banco20193capas.model;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
 import javax.persistence.ManyToMany;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.Persistence;
+import javax.persistence.Transient;
+
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import edu.uclm.esi.iso2.banco20193capas.exceptions.ClienteNoAutorizadoException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.ClienteNoEncontradoException;
@@ -16,21 +27,33 @@ import edu.uclm.esi.iso2.banco20193capas.exceptions.CuentaSinTitularesException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.CuentaYaCreadaException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.ImporteInvalidoException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas.Operacion;
+import edu.uclm.esi.iso2.banco20193capas.model.RegistroCerrojos.Bloqueo;
 
 /**
 * La clase {@code Cuenta} representa una cuenta bancaria, que ha de tener al menos un {@see Cliente} que sea titular.
 * 
+* Los titulares se cargan de forma perezosa: las operaciones que los necesitan los piden con el grafo
+* {@code Cuenta.titulares} (ver {@link edu.uclm.esi.iso2.banco20193capas.dao.CuentaDAO#findConTitularesById(Long)}).
 * 
 */
 @Entity
+@NamedEntityGraph(name = "Cuenta.titulares", attributeNodes = @NamedAttributeNode("titulares"))
 public class Cuenta {
 	@Id 
 	protected Long id;
 
-	@ManyToMany(fetch = FetchType.EAGER)
+	@ManyToMany(fetch = FetchType.LAZY)
 	private List<Cliente> titulares;
 	
 	private boolean creada;
+	
+	/** En céntimos (ver {@link Centimos}) */
+	@Column(name = "saldo_centimos", updatable = false)
+	private long saldo;
+
+	@Transient
+	private Set<String> nifsTitulares;
 		
 	public Cuenta() {
 		this.titulares=new ArrayList<>();
@@ -54,90 +77,245 @@ public class Cuenta {
 		if (creada)
 			throw new CuentaYaCreadaException();
 		this.titulares.add(cliente);
+		this.nifsTitulares = null;
 	}
 	
 	/**
 	 * Realiza un ingreso en la cuenta
 	 * @param importe	El importe que se ingresa
-	 * @throws ImporteInvalidoException	Si el importe es <=0
+	 * @throws ImporteInvalidoException	Si el importe, redondeado al céntimo, es <=0
 	 */
-	public void ingresar(double importe) throws ImporteInvalidoException {
-		this.ingresar(importe, "Ingreso de efectivo");
+	public void ingresar(final double importe) throws ImporteInvalidoException {
+		long inicio = Metricas.iniciar();
+		try {
+			ingresar(importe, "Ingreso de efectivo");
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.INGRESAR, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.INGRESAR, inicio);
+		}
 	}
 
 	private void ingresar(double importe, String concepto) throws ImporteInvalidoException {
-		if (importe<=0)
+		long centimos = Centimos.de(importe);
+		if (centimos<=0)
 			throw new ImporteInvalidoException(importe);
-		MovimientoCuenta movimiento = new MovimientoCuenta(this, importe, concepto);
-		Manager.getMovimientoDAO().save(movimiento);
+		MovimientoCuenta movimiento = MovimientoCuenta.enCentimos(this, centimos, concepto);
+		this.registrar(movimiento);
 	}
 	
 	/**
 	 * Realiza una retirada de la cuenta
 	 * @param importe	El importe que se retira
-	 * @throws ImporteInvalidoException	Si el importe es <=0
+	 * @throws ImporteInvalidoException	Si el importe, redondeado al céntimo, es <=0
 	 * @throws SaldoInsuficienteException	Si el importe>getSaldo()
 	 */
-	public void retirar(double importe) throws ImporteInvalidoException, SaldoInsuficienteException {
-		this.retirar(importe, "Retirada de efectivo");
+	public void retirar(final double importe) throws ImporteInvalidoException, SaldoInsuficienteException {
+		long inicio = Metricas.iniciar();
+		try {
+			retirar(importe, "Retirada de efectivo");
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.RETIRAR, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.RETIRAR, inicio);
+		}
 	}
 		
 	private void retirar(double importe, String concepto) throws ImporteInvalidoException, SaldoInsuficienteException {
-		if (importe<=0)
+		long centimos = Centimos.de(importe);
+		if (centimos<=0)
 			throw new ImporteInvalidoException(importe);
-		if (importe>getSaldo())
-			throw new SaldoInsuficienteException();
-		MovimientoCuenta movimiento = new MovimientoCuenta(this, -importe, concepto);
-		Manager.getMovimientoDAO().save(movimiento);
+		final MovimientoCuenta movimiento = MovimientoCuenta.enCentimos(this, -centimos, concepto);
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearCuentas(this.id)) {
+			boolean retirado;
+			DiarioMovimientos diario = Manager.getDiarioMovimientos();
+			EscritorMovimientos escritor = Manager.getEscritorMovimientos();
+			if (diario != null)
+				retirado = diario.cargar(movimiento);
+			else if (escritor != null)
+				retirado = escritor.cargar(movimiento);
+			else
+				retirado = Manager.getTransactionTemplate().execute(new TransactionCallback<Boolean>() {
+					@Override
+					public Boolean doInTransaction(TransactionStatus status) {
+						return cargar(movimiento);
+					}
+				});
+			if (!retirado)
+				throw new SaldoInsuficienteException();
+		}
 	}
 
 	/**
 	 * Retira el importe de la cuenta, incluso aunque esta no tenga saldo suficiente
 	 * @param importe	El importe que se retira
 	 * @param concepto	El concepto del movimiento
+	 * @throws IllegalArgumentException	Si el concepto ocupa más de {@link RegistroDiario#MAX_CONCEPTO} bytes en UTF-8,
+	 * 	esté o no activo el diario de movimientos
 	 */
 	public void retiroForzoso(double importe, String concepto) {
-		MovimientoCuenta movimiento = new MovimientoCuenta(this, -importe, concepto);
-		Manager.getMovimientoDAO().save(movimiento);
+		this.retiroForzosoCentimos(Centimos.de(importe), RegistroDiario.comprobarConcepto(concepto));
+	}
+
+	/**
+	 * Como {@link #retiroForzoso(double, String)}, con el importe en céntimos
+	 * @param centimos	El importe que se retira, en céntimos
+	 * @param concepto	El concepto del movimiento
+	 */
+	void retiroForzosoCentimos(long centimos, String concepto) {
+		this.registrar(MovimientoCuenta.enCentimos(this, -centimos, concepto));
 	}
 	
 	/**
 	 * Realiza una transferencia desde esta cuenta a la cuenta que se pasa como primer parámetro.
-	 * Se cobra una comisión del 1%, con un mínimo de 1.5 euros
+	 * Se cobra una comisión del 1%, redondeada al céntimo, con un mínimo de 1.5 euros.
+	 * La transferencia se hace en una única transacción, y las dos cuentas se bloquean siempre en orden
+	 * de id, de forma que dos transferencias simultáneas entre las mismas cuentas no pueden interbloquearse.
+	 * Como el saldo se comprueba en la base de datos, si el diario de movimientos está activo se espera
+	 * antes a que se apliquen los movimientos pendientes de esta cuenta
 	 * @param numeroCuentaDestino	El id de la cuenta destino
 	 * @param importe				El importe que se transfiere
 	 * @param concepto				El concepto de la transferencia
 	 * @throws CuentaInvalidaException	Si la cuenta destino es esta misma o no existe en la BD
-	 * @throws ImporteInvalidoException	Si el importe es <=0
+	 * @throws ImporteInvalidoException	Si el importe, redondeado al céntimo, es <=0
 	 * @throws SaldoInsuficienteException	Si la cuenta no tiene saldo suficiente para afrontar el importe y la comisión
 	 */
-	public void transferir(Long numeroCuentaDestino, double importe, String concepto) throws CuentaInvalidaException, ImporteInvalidoException, SaldoInsuficienteException {
+	public void transferir(final Long numeroCuentaDestino, final double importe, final String concepto) throws CuentaInvalidaException, ImporteInvalidoException, SaldoInsuficienteException {
+		long inicio = Metricas.iniciar();
+		try {
+			realizarTransferencia(numeroCuentaDestino, importe, concepto);
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.TRANSFERIR, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.TRANSFERIR, inicio);
+		}
+	}
+
+	private void realizarTransferencia(final Long numeroCuentaDestino, double importe, String concepto) throws CuentaInvalidaException, ImporteInvalidoException, SaldoInsuficienteException {
 		if (this.getId().equals(numeroCuentaDestino))
 			throw new CuentaInvalidaException(numeroCuentaDestino);
-		this.retirar(importe, "Transferencia emitida");
-		double comision = Math.max(0.01*importe, 1.5);
-		this.retirar(comision, "Comisión por transferencia");
-		Cuenta destino = this.load(numeroCuentaDestino);
-		destino.ingresar(importe, "Transferencia recibida");
+		long centimos = Centimos.de(importe);
+		if (centimos<=0)
+			throw new ImporteInvalidoException(importe);
+		long comision = Centimos.comisionTransferencia(centimos);
+		final Cuenta destino = new Cuenta(numeroCuentaDestino);
+		final MovimientoCuenta emitida = MovimientoCuenta.enCentimos(this, -centimos, "Transferencia emitida");
+		final MovimientoCuenta mComision = MovimientoCuenta.enCentimos(this, -comision, "Comisión por transferencia");
+		final MovimientoCuenta recibida = MovimientoCuenta.enCentimos(destino, centimos, "Transferencia recibida");
+		Exception error;
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearCuentas(this.id, numeroCuentaDestino)) {
+			DiarioMovimientos diario = Manager.getDiarioMovimientos();
+			if (diario != null)
+				diario.esperarCuenta(this.id);
+			error = Manager.getTransactionTemplate().execute(new TransactionCallback<Exception>() {
+				@Override
+				public Exception doInTransaction(TransactionStatus status) {
+					Exception error = null;
+					if (id.compareTo(numeroCuentaDestino) < 0) {
+						if (!cargar(emitida, mComision))
+							error = new SaldoInsuficienteException();
+						else if (!destino.registrar(recibida))
+							error = new CuentaInvalidaException(numeroCuentaDestino);
+					} else {
+						if (!destino.registrar(recibida))
+							error = new CuentaInvalidaException(numeroCuentaDestino);
+						else if (!cargar(emitida, mComision))
+							error = new SaldoInsuficienteException();
+					}
+					if (error!=null)
+						status.setRollbackOnly();
+					return error;
+				}
+			});
+		}
+		if (error instanceof CuentaInvalidaException)
+			throw (CuentaInvalidaException) error;
+		if (error instanceof SaldoInsuficienteException)
+			throw (SaldoInsuficienteException) error;
 	}
 	
-	private Cuenta load(Long numero) throws CuentaInvalidaException {
-		Optional<Cuenta> optCuenta = Manager.getCuentaDAO().findById(numero);
-		if (!optCuenta.isPresent())
-			throw new CuentaInvalidaException(numero);
-		return optCuenta.get();
+	/**
+	 * Guarda el movimiento, lo acumula en el saldo materializado de la cuenta y lo anota en el {@link DiarioEventos}.
+	 * Si no hay una transacción en curso, el movimiento se delega en el {@link DiarioMovimientos} o, si la
+	 * escritura agrupada está activa, en el {@link EscritorMovimientos}
+	 * @param movimiento	El movimiento que se registra
+	 * @return	false si la cuenta no existe, en cuyo caso no se registra nada
+	 */
+	private boolean registrar(final MovimientoCuenta movimiento) {
+		if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+			DiarioMovimientos diario = Manager.getDiarioMovimientos();
+			if (diario != null)
+				return diario.abonar(movimiento);
+			EscritorMovimientos escritor = Manager.getEscritorMovimientos();
+			if (escritor != null)
+				return escritor.abonar(movimiento);
+		}
+		return Manager.getTransactionTemplate().execute(new TransactionCallback<Boolean>() {
+			@Override
+			public Boolean doInTransaction(TransactionStatus status) {
+				if (Manager.getCuentaDAO().actualizarSaldo(id, movimiento.getCentimos()) == 0)
+					return false;
+				Manager.getMovimientoDAO().save(movimiento);
+				Manager.getDiarioEventos().anotar(EventoDominio.de(movimiento));
+				return true;
+			}
+		});
+	}
+	
+	/**
+	 * Descuenta los movimientos (de importe negativo) del saldo materializado de la cuenta, los guarda y los
+	 * anota en el {@link DiarioEventos}, pero solo si el saldo los cubre. La comprobación y el descuento se hacen con una única sentencia, que bloquea
+	 * la fila de la cuenta hasta el final de la transacción en curso, por lo que dos retiradas simultáneas
+	 * no pueden dejar la cuenta en descubierto
+	 * @param movimientos	Los movimientos que se cargan en la cuenta
+	 * @return	false si el saldo no cubre el importe total, en cuyo caso no se registra nada
+	 */
+	private boolean cargar(MovimientoCuenta... movimientos) {
+		long importe = 0;
+		for (MovimientoCuenta movimiento : movimientos)
+			importe = importe - movimiento.getCentimos();
+		if (Manager.getCuentaDAO().retirarSaldo(this.id, importe) == 0)
+			return false;
+		for (MovimientoCuenta movimiento : movimientos) {
+			Manager.getMovimientoDAO().save(movimiento);
+			Manager.getDiarioEventos().anotar(EventoDominio.de(movimiento));
+		}
+		return true;
 	}
 
 	/**
-	 * Devuelve el saldo de la cuenta
+	 * Devuelve el saldo de la cuenta. El saldo se mantiene materializado en la base de datos
+	 * en céntimos y se actualiza con cada movimiento, por lo que no es necesario recorrer los movimientos
+	 * (ver {@link ConciliadorSaldos} para reconstruirlo a partir de ellos). Si el diario de movimientos está
+	 * activo, incluye los movimientos que aún no se han aplicado a la base de datos; si no, el saldo de las
+	 * cuentas más consultadas se lee del {@link LibroCuentasFrecuentes}, si está activo
 	 * @return	El saldo de la cuenta
 	 */
 	public double getSaldo() {
-		List<MovimientoCuenta> mm = Manager.getMovimientoDAO().findByCuentaId(this.id);
-		double saldo = 0.0;
-		for (MovimientoCuenta m : mm)
-			saldo = saldo + m.getImporte();
-		return saldo;
+		long inicio = Metricas.iniciar();
+		try {
+			return leerSaldo();
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.GET_SALDO, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.GET_SALDO, inicio);
+		}
+	}
+
+	private double leerSaldo() {
+		DiarioMovimientos diario = Manager.getDiarioMovimientos();
+		if (diario == null) {
+			LibroCuentasFrecuentes libro = Manager.getLibroCuentasFrecuentes();
+			long saldo = libro == null ? LibroCuentasFrecuentes.NO_CARGADA : libro.getSaldo(this.id);
+			if (saldo != LibroCuentasFrecuentes.NO_CARGADA)
+				return Centimos.aEuros(saldo);
+		}
+		Long saldo = diario != null ? diario.getSaldo(this.id) : Manager.getCuentaDAO().findSaldoById(this.id);
+		return saldo == null ? 0.0 : Centimos.aEuros(saldo);
 	}
 
 	/**
@@ -159,23 +337,13 @@ public class Cuenta {
 	 * @throws ClienteNoAutorizadoException	Si el cliente no es titular de esta cuenta
 	 */
 	public TarjetaDebito emitirTarjetaDebito(String nif) throws ClienteNoEncontradoException, ClienteNoAutorizadoException {
-		Optional<Cliente> optCliente = Manager.getClienteDAO().findByNif(nif);
-		if (!optCliente.isPresent())
-			throw new ClienteNoEncontradoException(nif);
-		Cliente cliente = optCliente.get();
-		boolean encontrado = false;
-		for (Cliente titular : this.titulares)
-			if (titular.getNif().equals(cliente.nif)) {
-				encontrado = true;
-				break;
-			}
-
-		if (!encontrado)
-			throw new ClienteNoAutorizadoException(nif, this.id);
+		Cliente cliente = this.buscarTitular(nif);
 		TarjetaDebito tarjeta = new TarjetaDebito();
 		tarjeta.setCuenta(this);
 		tarjeta.setTitular(cliente);
 		Manager.getTarjetaDebitoDAO().save(tarjeta);
+		Manager.getDiarioEventos().anotar(EventoDominio.emision(tarjeta, 0));
+		Manager.getCacheTarjetas().actualizar(tarjeta.getId(), EstadoTarjeta.de(tarjeta));
 		return tarjeta;
 	}
 
@@ -188,26 +356,50 @@ public class Cuenta {
 	 * @throws ClienteNoAutorizadoException	Si el cliente no es titular de esta cuenta
 	 */
 	public TarjetaCredito emitirTarjetaCredito(String nif, double credito) throws ClienteNoEncontradoException, ClienteNoAutorizadoException {
-		Optional<Cliente> optCliente = Manager.getClienteDAO().findByNif(nif);
-		if (!optCliente.isPresent())
-			throw new ClienteNoEncontradoException(nif);
-		Cliente cliente = optCliente.get();
-		boolean encontrado = false;
-		for (Cliente titular : this.titulares)
-			if (titular.getNif().equals(cliente.nif)) {
-				encontrado = true;
-				break;
-			}
-		if (!encontrado)
-			throw new ClienteNoAutorizadoException(nif, this.id);
+		Cliente cliente = this.buscarTitular(nif);
 		TarjetaCredito tarjeta = new TarjetaCredito();
 		tarjeta.setCuenta(this);
 		tarjeta.setTitular(cliente);
 		tarjeta.setCredito(credito);
 		Manager.getTarjetaCreditoDAO().save(tarjeta);
+		Manager.getDiarioEventos().anotar(EventoDominio.emision(tarjeta, tarjeta.getCreditoCentimos()));
+		Manager.getCacheTarjetas().actualizar(tarjeta.getId(), EstadoTarjeta.de(tarjeta));
 		return tarjeta;
 	}
 
+	/**
+	 * Busca un cliente por su NIF (a través de la {@link CacheClientes}) y comprueba que es titular de la cuenta
+	 * @param nif	El NIF del cliente
+	 * @return	El cliente
+	 * @throws ClienteNoEncontradoException	Si el cliente no está en la base de datos
+	 * @throws ClienteNoAutorizadoException	Si el cliente no es titular de esta cuenta
+	 */
+	private Cliente buscarTitular(String nif) throws ClienteNoEncontradoException, ClienteNoAutorizadoException {
+		Optional<Cliente> optCliente = Manager.getCacheClientes().buscar(nif);
+		if (!optCliente.isPresent())
+			throw new ClienteNoEncontradoException(nif);
+		if (!this.isTitular(nif))
+			throw new ClienteNoAutorizadoException(nif, this.id);
+		return optCliente.get();
+	}
+
+	/**
+	 * Comprueba si el cliente con el NIF indicado es titular de la cuenta. El conjunto de NIF de los
+	 * titulares se construye la primera vez y se descarta cuando cambian los titulares
+	 * @param nif	El NIF del cliente
+	 * @return	true si es titular
+	 */
+	public boolean isTitular(String nif) {
+		Set<String> nifs = this.nifsTitulares;
+		if (nifs == null) {
+			nifs = new HashSet<>();
+			for (Cliente titular : this.getTitulares())
+				nifs.add(titular.getNif());
+			this.nifsTitulares = nifs;
+		}
+		return nifs.contains(nif);
+	}
+
 	public Long getId() {
 		return id;
 	}
@@ -216,12 +408,22 @@ public class Cuenta {
 		this.id = id;
 	}
 
+	/**
+	 * Devuelve los titulares de la cuenta. Si la cuenta se leyó de la base de datos sin ellos y ya no
+	 * está asociada a una sesión abierta, se vuelven a leer con el grafo {@code Cuenta.titulares}
+	 * @return	Los titulares
+	 */
 	public List<Cliente> getTitulares() {
+		if (!Persistence.getPersistenceUtil().isLoaded(this, "titulares")) {
+			Optional<Cuenta> cuenta = Manager.getCuentaDAO().findConTitularesById(this.id);
+			this.titulares = cuenta.isPresent() ? cuenta.get().titulares : new ArrayList<Cliente>();
+		}
 		return titulares;
 	}
 
 	public void setTitulares(List<Cliente> titulares) {
 		this.titulares = titulares;
+		this.nifsTitulares = null;
 	}
 
 	public boolean isCreada() {
@@ -0,0 +1,188 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import edu.uclm.esi.iso2.banco20193capas.dao.EventoDominioDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.InstantaneaAgregadoDAO;
+import edu.uclm.esi.iso2.banco20193capas.model.EventoDominio.Agregado;
+
+/**
+ * Diario de eventos de cuentas y tarjetas: cada cambio de estado (ingresos, retiradas, transferencias,
+ * bloqueos, cambios de pin, gastos y liquidaciones) se anota como un {@link EventoDominio} en la misma
+ * transacción que el cambio, y los eventos no se modifican nunca. El estado de una cuenta o tarjeta se
+ * reconstruye a partir de su última {@link InstantaneaAgregado} y de los eventos posteriores, tanto el
+ * actual como el que tenía en cualquier instante anterior.
+ *
+ * Las instantáneas se toman periódicamente para las cuentas y tarjetas con al menos {@code intervalo}
+ * eventos desde la anterior, de forma que la reconstrucción nunca aplica muchos más eventos que esos.
+ * Una instantánea solo incluye eventos anotados hace más de {@code margen} milisegundos: los ids de los
+ * eventos se asignan al anotarlos, pero una transacción que todavía no se ha confirmado puede tener un
+ * evento con un id menor que otro ya confirmado; con el margen (que debe superar la duración de cualquier
+ * transacción) ese evento ya está confirmado cuando se toma la instantánea, y no queda fuera de ella.
+ *
+ */
+public class DiarioEventos {
+	private final EventoDominioDAO eventoDAO;
+	private final InstantaneaAgregadoDAO instantaneaDAO;
+	private final int intervalo;
+	private final long margen;
+	private long revisado;
+	private ScheduledExecutorService planificador;
+
+	/**
+	 * @param eventoDAO	El acceso a los eventos
+	 * @param instantaneaDAO	El acceso a las instantáneas
+	 * @param intervalo	Número de eventos de una cuenta o tarjeta a partir del cual se toma una nueva instantánea
+	 * @param margen	Antigüedad mínima, en milisegundos, de los eventos que se incluyen en una instantánea
+	 */
+	public DiarioEventos(EventoDominioDAO eventoDAO, InstantaneaAgregadoDAO instantaneaDAO, int intervalo, long margen) {
+		if (intervalo <= 0 || margen < 0)
+			throw new IllegalArgumentException("El intervalo debe ser positivo y el margen no puede ser negativo");
+		this.eventoDAO = eventoDAO;
+		this.instantaneaDAO = instantaneaDAO;
+		this.intervalo = intervalo;
+		this.margen = margen;
+	}
+
+	/**
+	 * Toma instantáneas cada cierto tiempo (ver {@link #tomarInstantaneas()}) en un hilo propio
+	 * @param periodo	Milisegundos entre dos revisiones
+	 */
+	public synchronized void iniciar(long periodo) {
+		if (this.planificador != null)
+			return;
+		this.planificador = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable tarea) {
+				Thread hilo = new Thread(tarea, "instantaneas");
+				hilo.setDaemon(true);
+				return hilo;
+			}
+		});
+		this.planificador.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					tomarInstantaneas();
+				} catch (RuntimeException e) {
+					// Se reintenta en la siguiente revisión
+				}
+			}
+		}, periodo, periodo, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void detener() {
+		if (this.planificador == null)
+			return;
+		this.planificador.shutdownNow();
+		this.planificador = null;
+	}
+
+	/**
+	 * Anota un evento, en la transacción en curso si la hay
+	 * @param evento	El evento
+	 */
+	public void anotar(EventoDominio evento) {
+		this.eventoDAO.save(evento);
+	}
+
+	/**
+	 * Anota varios eventos, en la transacción en curso si la hay
+	 * @param eventos	Los eventos
+	 */
+	public void anotar(Collection<EventoDominio> eventos) {
+		if (!eventos.isEmpty())
+			this.eventoDAO.saveAll(eventos);
+	}
+
+	/**
+	 * Reconstruye el estado actual de una cuenta o tarjeta
+	 * @param agregado	El tipo de objeto
+	 * @param id	Su id
+	 * @return	El estado (sin guardar) tras aplicar todos sus eventos confirmados
+	 */
+	public InstantaneaAgregado reconstruir(Agregado agregado, Long id) {
+		InstantaneaAgregado estado = partida(this.instantaneaDAO.findFirstByAgregadoAndAgregadoIdOrderByUltimoEventoDesc(agregado, id),
+				agregado, id);
+		for (EventoDominio evento : this.eventoDAO.findTramo(agregado, id, estado.getUltimoEvento()))
+			estado.aplicar(evento);
+		return estado;
+	}
+
+	/**
+	 * Reconstruye el estado que tenía una cuenta o tarjeta en un instante anterior
+	 * @param agregado	El tipo de objeto
+	 * @param id	Su id
+	 * @param hasta	El instante
+	 * @return	El estado (sin guardar) tras aplicar los eventos anotados hasta ese instante, incluido
+	 */
+	public InstantaneaAgregado reconstruir(Agregado agregado, Long id, Instant hasta) {
+		InstantaneaAgregado estado = partida(this.instantaneaDAO
+				.findFirstByAgregadoAndAgregadoIdAndFechaLessThanEqualOrderByUltimoEventoDesc(agregado, id, hasta), agregado, id);
+		for (EventoDominio evento : this.eventoDAO.findTramoHasta(agregado, id, estado.getUltimoEvento(), hasta))
+			estado.aplicar(evento);
+		return estado;
+	}
+
+	/**
+	 * Guarda una instantánea de una cuenta o tarjeta con sus eventos anotados hace más del margen. Los eventos
+	 * se aplican en orden de id hasta el primero que no tenga esa antigüedad
+	 * @param agregado	El tipo de objeto
+	 * @param id	Su id
+	 * @return	La instantánea guardada, o null si no hay eventos nuevos con la antigüedad necesaria
+	 */
+	public InstantaneaAgregado tomarInstantanea(Agregado agregado, Long id) {
+		Instant corte = Instant.now().minusMillis(this.margen);
+		InstantaneaAgregado estado = partida(this.instantaneaDAO.findFirstByAgregadoAndAgregadoIdOrderByUltimoEventoDesc(agregado, id),
+				agregado, id);
+		long eventos = estado.getEventos();
+		for (EventoDominio evento : this.eventoDAO.findTramo(agregado, id, estado.getUltimoEvento())) {
+			if (evento.getFecha().isAfter(corte))
+				break;
+			estado.aplicar(evento);
+		}
+		if (estado.getEventos() == eventos)
+			return null;
+		return this.instantaneaDAO.save(estado);
+	}
+
+	/**
+	 * Toma una instantánea de cada cuenta o tarjeta con al menos {@code intervalo} eventos desde la anterior.
+	 * Solo se revisan las cuentas y tarjetas con eventos desde la revisión anterior
+	 * @return	El número de instantáneas tomadas
+	 */
+	public synchronized int tomarInstantaneas() {
+		Long hasta = this.eventoDAO.findMaxIdHasta(Instant.now().minusMillis(this.margen));
+		int tomadas = 0;
+		for (Object[] fila : this.eventoDAO.findAgregadosDesde(this.revisado)) {
+			Agregado agregado = (Agregado) fila[0];
+			Long id = (Long) fila[1];
+			Optional<InstantaneaAgregado> anterior = this.instantaneaDAO.findFirstByAgregadoAndAgregadoIdOrderByUltimoEventoDesc(agregado, id);
+			long desde = anterior.isPresent() ? anterior.get().getUltimoEvento() : 0;
+			if (this.eventoDAO.countTramo(agregado, id, desde) >= this.intervalo && this.tomarInstantanea(agregado, id) != null)
+				tomadas++;
+		}
+		// Los eventos más recientes que el margen se vuelven a revisar la próxima vez
+		if (hasta != null)
+			this.revisado = Math.max(this.revisado, hasta);
+		return tomadas;
+	}
+
+	private static InstantaneaAgregado partida(Optional<InstantaneaAgregado> instantanea, Agregado agregado, Long id) {
+		return instantanea.isPresent() ? instantanea.get().copia() : InstantaneaAgregado.inicial(agregado, id);
+	}
+
+	public int getIntervalo() {
+		return this.intervalo;
+	}
+
+	public long getMargen() {
+		return this.margen;
+	}
+}
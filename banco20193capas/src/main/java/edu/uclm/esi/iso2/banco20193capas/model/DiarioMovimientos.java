@@ -0,0 +1,683 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import edu.uclm.esi.iso2.banco20193capas.dao.PuntoControlDiarioDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.RegistroApartadoDAO;
+import edu.uclm.esi.iso2.banco20193capas.model.RegistroDiario.Tipo;
+
+/**
+ * Diario de escritura anticipada de movimientos. Los ingresos, retiradas y gastos con tarjeta de crédito se
+ * escriben primero en un {@link ArchivoDiario} proyectado en memoria, y la operación termina en cuanto su
+ * registro es duradero en el archivo; después, un hilo propio los aplica a la base de datos por lotes (saldo,
+ * movimientos y eventos), cada lote en una transacción que también guarda el {@link PuntoControlDiario}.
+ *
+ * Un hilo de forzado lleva el archivo al disco: mientras fuerza un grupo de registros se acumulan los
+ * siguientes, que se fuerzan juntos en la siguiente llamada, por lo que muchas operaciones simultáneas
+ * comparten la misma sincronización con el disco. Solo se aplican registros ya forzados.
+ *
+ * Si un lote no puede aplicarse, sus apuntes se aplican de uno en uno, para que un apunte que falla no
+ * bloquee a los demás. Un apunte que sigue fallando tras {@link #INTENTOS} intentos se aparta: no se aplica,
+ * y sus registros se guardan como {@link RegistroApartado} en la misma transacción en que el punto de control
+ * avanza sin él, por lo que sobreviven a un reinicio (ver {@link #getRegistrosApartados()}).
+ *
+ * Al arrancar ({@link #iniciar()}) se aplican los registros del archivo posteriores al punto de control, que
+ * son los de operaciones ya confirmadas que no llegaron a la base de datos. Como el punto de control se
+ * guarda en la misma transacción que los movimientos, ningún registro se aplica dos veces.
+ *
+ * Hasta que se aplican, los registros se acumulan por cuenta y por tarjeta, y {@link #getSaldo(Long)} y
+ * {@link #getGastos(Long)} los suman a los valores de la base de datos. Las consultas de movimientos (extractos,
+ * liquidaciones masivas) solo ven los registros ya aplicados.
+ *
+ */
+public class DiarioMovimientos {
+	/**
+	 * Marca que despierta al hilo de aplicación para que no espere a completar el lote
+	 */
+	private static final Apunte AVISO = new Apunte();
+	/**
+	 * Número de veces que se intenta aplicar por separado un apunte de un lote fallido antes de apartarlo
+	 */
+	private static final int INTENTOS = 3;
+
+	private final ArchivoDiario archivo;
+	private final PuntoControlDiarioDAO puntoControlDAO;
+	private final RegistroApartadoDAO registroApartadoDAO;
+	private final int tamanoLote;
+	private final long latenciaMaxima;
+	private final BlockingQueue<Apunte> porAplicar = new LinkedBlockingQueue<>();
+	private final List<Apunte> sinForzar = new ArrayList<>();
+	private final Map<Long, Pendiente> pendientesCuentas = new HashMap<>();
+	private final Map<Long, Pendiente> pendientesTarjetas = new HashMap<>();
+	/**
+	 * Impide que se consulte la base de datos mientras se aplica un lote, para no sumar dos veces sus registros
+	 */
+	private final ReentrantReadWriteLock vista = new ReentrantReadWriteLock();
+	private final AtomicLong forzados = new AtomicLong();
+	private final AtomicLong lotes = new AtomicLong();
+	private final AtomicLong apartados = new AtomicLong();
+	private int hueco;
+	private long siguiente;
+	private long escrito;
+	private long duradero;
+	private long aplicado;
+	private long recuperados;
+	private volatile int esperando;
+	private volatile boolean activo;
+	private volatile boolean aplicando;
+	private Thread hiloForzado;
+	private Thread hiloAplicacion;
+
+	/**
+	 * @param puntoControlDAO	El acceso al punto de control
+	 * @param registroApartadoDAO	El acceso a los registros apartados
+	 * @param ruta	La ruta del archivo del diario
+	 * @param capacidad	Número de registros que caben en el archivo
+	 * @param tamanoLote	Número máximo de operaciones que se aplican en cada transacción
+	 * @param latenciaMaxima	Tiempo máximo, en milisegundos, que una operación espera a que se complete su lote de aplicación
+	 * @throws IOException	Si no puede abrirse el archivo
+	 */
+	public DiarioMovimientos(PuntoControlDiarioDAO puntoControlDAO, RegistroApartadoDAO registroApartadoDAO, Path ruta, int capacidad, int tamanoLote, long latenciaMaxima)
+			throws IOException {
+		if (capacidad < 16 || tamanoLote <= 0 || latenciaMaxima < 0)
+			throw new IllegalArgumentException("La capacidad debe ser de al menos 16 registros, el tamaño de lote positivo y la latencia no negativa");
+		this.puntoControlDAO = puntoControlDAO;
+		this.registroApartadoDAO = registroApartadoDAO;
+		this.archivo = new ArchivoDiario(ruta, capacidad);
+		this.tamanoLote = tamanoLote;
+		this.latenciaMaxima = latenciaMaxima;
+	}
+
+	/**
+	 * Aplica los registros del archivo posteriores al punto de control y arranca los hilos de forzado y de aplicación.
+	 * Los restos de un grupo escrito a medias, que nunca llegó a confirmarse, se descartan
+	 */
+	public void iniciar() {
+		if (this.activo)
+			return;
+		Optional<PuntoControlDiario> puntoControl = this.puntoControlDAO.findById(PuntoControlDiario.ID);
+		long punto = puntoControl.isPresent() ? puntoControl.get().getSecuencia() : 0;
+		List<Apunte> apuntes = new ArrayList<>();
+		List<RegistroDiario> cadena = this.archivo.leer();
+		List<RegistroDiario> grupo = new ArrayList<>();
+		int fin = 0;
+		long ultima = 0;
+		for (int i = 0; i < cadena.size(); i++) {
+			RegistroDiario registro = cadena.get(i);
+			if (!grupo.isEmpty() && registro.getRestantes() != grupo.get(grupo.size() - 1).getRestantes() - 1)
+				break;
+			grupo.add(registro);
+			if (registro.getRestantes() == 0) {
+				apuntes.add(new Apunte(grupo.toArray(new RegistroDiario[grupo.size()])));
+				grupo.clear();
+				fin = i + 1;
+				ultima = registro.getSecuencia();
+			}
+		}
+		if (ultima < punto) {
+			// El archivo no corresponde a la base de datos (se ha sustituido o borrado): se empieza de nuevo
+			apuntes.clear();
+			fin = 0;
+			ultima = punto;
+		}
+		this.archivo.borrarDesde(fin);
+		this.archivo.forzar();
+		this.hueco = fin;
+		this.siguiente = ultima + 1;
+		this.escrito = this.duradero = this.aplicado = ultima;
+
+		List<Apunte> lote = new ArrayList<>(this.tamanoLote);
+		this.recuperados = 0;
+		for (Apunte apunte : apuntes) {
+			if (apunte.getUltima() <= punto)
+				continue;
+			lote.add(apunte);
+			this.acumular(apunte, 1);
+			this.recuperados = this.recuperados + apunte.registros.length;
+			if (lote.size() == this.tamanoLote) {
+				this.aplicar(lote);
+				lote.clear();
+			}
+		}
+		if (!lote.isEmpty())
+			this.aplicar(lote);
+
+		this.activo = true;
+		this.aplicando = true;
+		this.hiloForzado = new Thread("diario-forzado") {
+			@Override
+			public void run() {
+				forzar();
+			}
+		};
+		this.hiloAplicacion = new Thread("diario-aplicacion") {
+			@Override
+			public void run() {
+				aplicarPendientes();
+			}
+		};
+		this.hiloForzado.setDaemon(true);
+		this.hiloAplicacion.setDaemon(true);
+		this.hiloForzado.start();
+		this.hiloAplicacion.start();
+	}
+
+	/**
+	 * Detiene el diario, después de forzar los registros escritos y de aplicar los que ya estaban pendientes.
+	 * Los que no puedan aplicarse se aplicarán la próxima vez que se inicie el diario
+	 */
+	public void detener() {
+		synchronized (this) {
+			if (!this.activo)
+				return;
+			this.activo = false;
+			this.notifyAll();
+		}
+		try {
+			this.hiloForzado.join();
+			this.aplicando = false;
+			this.porAplicar.add(AVISO);
+			this.hiloAplicacion.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			this.notifyAll();
+		}
+		try {
+			this.archivo.close();
+		} catch (IOException e) {
+			// El archivo ya está forzado
+		}
+	}
+
+	/**
+	 * Anota un movimiento de cuenta, sin comprobar el saldo, y espera a que sea duradero
+	 * @param movimiento	El movimiento
+	 * @return	false si la cuenta no existe, en cuyo caso no se anota nada
+	 */
+	public boolean abonar(MovimientoCuenta movimiento) {
+		if (Manager.getCuentaDAO().findSaldoById(movimiento.getCuenta().getId()) == null)
+			return false;
+		this.anotar(new Apunte(RegistroDiario.de(movimiento)));
+		return true;
+	}
+
+	/**
+	 * Anota unos movimientos de cuenta (de importe negativo), solo si el saldo, incluidos los registros aún no
+	 * aplicados, los cubre, y espera a que sean duraderos. Quien llama debe tener bloqueada la cuenta (ver
+	 * {@link RegistroCerrojos}), para que otra retirada no pueda anotarse entre la comprobación y la anotación
+	 * @param movimientos	Los movimientos, todos de la misma cuenta
+	 * @return	false si el saldo no cubre el importe total, en cuyo caso no se anota nada
+	 */
+	public boolean cargar(MovimientoCuenta... movimientos) {
+		long importe = 0;
+		RegistroDiario[] registros = new RegistroDiario[movimientos.length];
+		for (int i = 0; i < movimientos.length; i++) {
+			importe = importe - movimientos[i].getCentimos();
+			registros[i] = RegistroDiario.de(movimientos[i]);
+		}
+		Long saldo = this.getSaldo(movimientos[0].getCuenta().getId());
+		if (saldo == null || saldo < importe)
+			return false;
+		this.anotar(new Apunte(registros));
+		return true;
+	}
+
+	/**
+	 * Anota unos movimientos de tarjeta de crédito y espera a que sean duraderos
+	 * @param movimientos	Los movimientos, todos de la misma tarjeta
+	 */
+	public void guardar(MovimientoTarjetaCredito... movimientos) {
+		RegistroDiario[] registros = new RegistroDiario[movimientos.length];
+		for (int i = 0; i < movimientos.length; i++)
+			registros[i] = RegistroDiario.de(movimientos[i]);
+		this.anotar(new Apunte(registros));
+	}
+
+	/**
+	 * @param cuentaId	El id de la cuenta
+	 * @return	El saldo en céntimos de la cuenta en la base de datos más el de sus registros aún no aplicados, o null si la cuenta no existe
+	 */
+	public Long getSaldo(Long cuentaId) {
+		this.vista.readLock().lock();
+		try {
+			Long saldo = Manager.getCuentaDAO().findSaldoById(cuentaId);
+			return saldo == null ? null : saldo + this.pendiente(this.pendientesCuentas, cuentaId);
+		} finally {
+			this.vista.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param tarjetaId	El id de la tarjeta de crédito
+	 * @return	Los gastos no liquidados en céntimos de la tarjeta en la base de datos más los de sus registros aún no aplicados
+	 */
+	public long getGastos(Long tarjetaId) {
+		this.vista.readLock().lock();
+		try {
+			return Manager.getMovimientoTarjetaCreditoDAO().sumImporteNoLiquidadoByTarjetaId(tarjetaId)
+					+ this.pendiente(this.pendientesTarjetas, tarjetaId);
+		} finally {
+			this.vista.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Espera a que se apliquen todos los registros de la cuenta, para las operaciones que trabajan
+	 * directamente sobre la base de datos
+	 * @param cuentaId	El id de la cuenta
+	 */
+	public void esperarCuenta(Long cuentaId) {
+		this.esperar(this.pendientesCuentas, cuentaId);
+	}
+
+	/**
+	 * Espera a que se apliquen todos los registros de la tarjeta de crédito, para las operaciones que trabajan
+	 * directamente sobre la base de datos
+	 * @param tarjetaId	El id de la tarjeta
+	 */
+	public void esperarTarjeta(Long tarjetaId) {
+		this.esperar(this.pendientesTarjetas, tarjetaId);
+	}
+
+	/**
+	 * Espera a que se apliquen todos los registros escritos hasta ahora
+	 */
+	public synchronized void esperarAplicados() {
+		long hasta = this.escrito;
+		this.esperando++;
+		this.porAplicar.add(AVISO);
+		try {
+			while (this.aplicado < hasta && this.aplicando)
+				this.wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrumpido mientras se esperaba la aplicación del diario", e);
+		} finally {
+			this.esperando--;
+		}
+	}
+
+	private synchronized void esperar(Map<Long, Pendiente> pendientes, Long id) {
+		if (!pendientes.containsKey(id))
+			return;
+		this.esperando++;
+		this.porAplicar.add(AVISO);
+		try {
+			while (pendientes.containsKey(id) && this.aplicando)
+				this.wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrumpido mientras se esperaba la aplicación del diario", e);
+		} finally {
+			this.esperando--;
+		}
+	}
+
+	/**
+	 * Escribe los registros del apunte en huecos consecutivos y espera a que el hilo de forzado los lleve al disco.
+	 * Si el archivo está lleno, espera a que se apliquen todos sus registros para volver a escribir desde el principio
+	 */
+	private void anotar(Apunte apunte) {
+		int numero = apunte.registros.length;
+		synchronized (this) {
+			try {
+				while (this.activo && this.hueco + numero > this.archivo.getCapacidad()) {
+					if (this.aplicado == this.escrito) {
+						this.hueco = 0;
+						break;
+					}
+					this.esperando++;
+					this.porAplicar.add(AVISO);
+					try {
+						this.wait();
+					} finally {
+						this.esperando--;
+					}
+				}
+				if (!this.activo)
+					throw new IllegalStateException("El diario de movimientos no está activo");
+				for (int i = 0; i < numero; i++) {
+					RegistroDiario registro = apunte.registros[i];
+					registro.setSecuencia(this.siguiente++);
+					registro.setRestantes(numero - 1 - i);
+					this.archivo.escribir(this.hueco++, registro);
+				}
+				this.escrito = this.siguiente - 1;
+				this.sinForzar.add(apunte);
+				this.acumular(apunte, 1);
+				this.notifyAll();
+				while (this.duradero < apunte.getUltima())
+					this.wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrumpido mientras se esperaba la escritura en el diario", e);
+			}
+		}
+	}
+
+	private void forzar() {
+		while (true) {
+			long hasta;
+			List<Apunte> forzando;
+			synchronized (this) {
+				try {
+					while (this.activo && this.duradero == this.escrito)
+						this.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (this.duradero == this.escrito)
+					return;
+				hasta = this.escrito;
+				forzando = new ArrayList<>(this.sinForzar);
+				this.sinForzar.clear();
+			}
+			// Mientras se fuerza, las demás operaciones siguen escribiendo en los huecos siguientes
+			this.archivo.forzar();
+			this.forzados.incrementAndGet();
+			synchronized (this) {
+				this.duradero = hasta;
+				this.notifyAll();
+			}
+			this.porAplicar.addAll(forzando);
+		}
+	}
+
+	private void aplicarPendientes() {
+		List<Apunte> lote = new ArrayList<>(this.tamanoLote);
+		while (this.aplicando || !this.porAplicar.isEmpty()) {
+			try {
+				Apunte primero = this.porAplicar.poll(100, TimeUnit.MILLISECONDS);
+				if (primero == null)
+					continue;
+				lote.add(primero);
+				long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.latenciaMaxima);
+				while (lote.size() < this.tamanoLote) {
+					this.porAplicar.drainTo(lote, this.tamanoLote - lote.size());
+					long restante = limite - System.nanoTime();
+					if (lote.size() >= this.tamanoLote || restante <= 0 || this.esperando > 0 || !this.aplicando)
+						break;
+					Apunte siguiente = this.porAplicar.poll(restante, TimeUnit.NANOSECONDS);
+					if (siguiente != null)
+						lote.add(siguiente);
+				}
+				lote.removeAll(Collections.singleton(AVISO));
+				// Si el diario se está deteniendo y el lote falla, los registros se aplicarán al iniciarlo de nuevo
+				if (!lote.isEmpty() && !this.aplicarUnoAUno(lote))
+					return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				lote.clear();
+			}
+		}
+	}
+
+	/**
+	 * Aplica un lote y, si falla, cada uno de sus apuntes en su propia transacción, en el orden del diario. Un
+	 * apunte que falla {@link #INTENTOS} veces seguidas se aparta; si tampoco puede apartarse (la base de datos
+	 * no responde), se sigue intentando aplicar, de forma que ningún apunte se pierde mientras dura la caída
+	 * @return	false si el diario se está deteniendo y ha dejado de intentarlo
+	 */
+	private boolean aplicarUnoAUno(List<Apunte> lote) throws InterruptedException {
+		try {
+			this.aplicar(lote);
+			return true;
+		} catch (RuntimeException e) {
+			// Se aplican de uno en uno
+		}
+		for (Apunte apunte : lote) {
+			int fallos = 0;
+			while (true) {
+				try {
+					this.aplicar(Collections.singletonList(apunte));
+					break;
+				} catch (RuntimeException e) {
+					if (!this.aplicando)
+						return false;
+					if (++fallos >= INTENTOS)
+						try {
+							this.apartar(apunte, e);
+							break;
+						} catch (RuntimeException f) {
+							// Se reintenta
+						}
+					Thread.sleep(Math.max(this.latenciaMaxima, 100));
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Aparta un apunte que no puede aplicarse: guarda sus registros como {@link RegistroApartado} y, en la
+	 * misma transacción, el punto de control que lo deja atrás
+	 */
+	private void apartar(final Apunte apunte, final Exception causa) {
+		this.vista.writeLock().lock();
+		try {
+			Manager.getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					List<RegistroApartado> apartados = new ArrayList<>(apunte.registros.length);
+					for (RegistroDiario registro : apunte.registros)
+						apartados.add(new RegistroApartado(registro, causa));
+					registroApartadoDAO.saveAll(apartados);
+					puntoControlDAO.save(new PuntoControlDiario(apunte.getUltima()));
+				}
+			});
+			synchronized (this) {
+				this.acumular(apunte, -1);
+				this.apartados.incrementAndGet();
+				this.aplicado = apunte.getUltima();
+				this.notifyAll();
+			}
+		} finally {
+			this.vista.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Aplica un lote en una única transacción junto con el nuevo punto de control. Los apuntes de cuenta se
+	 * aplican en orden de id de cuenta (respetando el orden del diario dentro de cada cuenta) para bloquear
+	 * las cuentas en el mismo orden que {@link Cuenta#transferir(Long, double, String)}
+	 */
+	private void aplicar(List<Apunte> lote) {
+		final List<Apunte> ordenados = new ArrayList<>(lote);
+		final long ultima = lote.get(lote.size() - 1).getUltima();
+		Collections.sort(ordenados, new Comparator<Apunte>() {
+			@Override
+			public int compare(Apunte a, Apunte b) {
+				long x = a.getCuentaId() == null ? Long.MIN_VALUE : a.getCuentaId();
+				long y = b.getCuentaId() == null ? Long.MIN_VALUE : b.getCuentaId();
+				return x < y ? -1 : (x == y ? 0 : 1);
+			}
+		});
+		this.vista.writeLock().lock();
+		try {
+			Manager.getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					List<MovimientoCuenta> movimientos = new ArrayList<>();
+					List<MovimientoTarjetaCredito> movimientosTarjeta = new ArrayList<>();
+					for (Apunte apunte : ordenados)
+						apunte.aplicar(movimientos, movimientosTarjeta);
+					Manager.getMovimientoDAO().saveAll(movimientos);
+					Manager.getMovimientoTarjetaCreditoDAO().saveAll(movimientosTarjeta);
+					List<EventoDominio> eventos = new ArrayList<>(movimientos.size() + movimientosTarjeta.size());
+					for (MovimientoCuenta movimiento : movimientos)
+						eventos.add(EventoDominio.de(movimiento));
+					for (MovimientoTarjetaCredito movimiento : movimientosTarjeta)
+						eventos.add(EventoDominio.de(movimiento));
+					Manager.getDiarioEventos().anotar(eventos);
+					puntoControlDAO.save(new PuntoControlDiario(ultima));
+				}
+			});
+			synchronized (this) {
+				for (Apunte apunte : lote)
+					this.acumular(apunte, -1);
+				this.aplicado = ultima;
+				this.notifyAll();
+			}
+			this.lotes.incrementAndGet();
+		} finally {
+			this.vista.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Suma (o resta, con signo -1) el importe del apunte a los pendientes de su cuenta o tarjeta
+	 */
+	private void acumular(Apunte apunte, int signo) {
+		RegistroDiario primero = apunte.registros[0];
+		Map<Long, Pendiente> pendientes = primero.getTipo() == Tipo.CUENTA ? this.pendientesCuentas : this.pendientesTarjetas;
+		Pendiente pendiente = pendientes.get(primero.getId());
+		if (pendiente == null) {
+			pendiente = new Pendiente();
+			pendientes.put(primero.getId(), pendiente);
+		}
+		pendiente.importe = pendiente.importe + signo * apunte.getImporte();
+		pendiente.apuntes = pendiente.apuntes + signo;
+		if (pendiente.apuntes == 0)
+			pendientes.remove(primero.getId());
+	}
+
+	private synchronized long pendiente(Map<Long, Pendiente> pendientes, Long id) {
+		Pendiente pendiente = pendientes.get(id);
+		return pendiente == null ? 0 : pendiente.importe;
+	}
+
+	/**
+	 * @return	El número de registros que se aplicaron al iniciar el diario
+	 */
+	public synchronized long getRecuperados() {
+		return this.recuperados;
+	}
+
+	/**
+	 * @return	El número de veces que se ha llevado el archivo al disco
+	 */
+	public long getForzados() {
+		return this.forzados.get();
+	}
+
+	/**
+	 * @return	El número de lotes aplicados a la base de datos
+	 */
+	public long getLotes() {
+		return this.lotes.get();
+	}
+
+	/**
+	 * @return	El número de apuntes apartados desde que se inició el diario porque no podían aplicarse
+	 */
+	public long getApartados() {
+		return this.apartados.get();
+	}
+
+	/**
+	 * @return	Los registros de todos los apuntes apartados, también los de antes de iniciar el diario, en el orden del diario
+	 */
+	public List<RegistroApartado> getRegistrosApartados() {
+		return this.registroApartadoDAO.findAllByOrderBySecuencia();
+	}
+
+	/**
+	 * @return	La secuencia del último registro escrito
+	 */
+	public synchronized long getEscrito() {
+		return this.escrito;
+	}
+
+	/**
+	 * @return	La secuencia del último registro aplicado
+	 */
+	public synchronized long getAplicado() {
+		return this.aplicado;
+	}
+
+	public int getCapacidad() {
+		return this.archivo.getCapacidad();
+	}
+
+	public int getTamanoLote() {
+		return this.tamanoLote;
+	}
+
+	public long getLatenciaMaxima() {
+		return this.latenciaMaxima;
+	}
+
+	/**
+	 * Importe (en céntimos) y número de apuntes aún no aplicados de una cuenta o tarjeta
+	 */
+	private static class Pendiente {
+		private long importe;
+		private int apuntes;
+	}
+
+	/**
+	 * Operación anotada en el diario: uno o varios registros que se aplican juntos
+	 */
+	private static class Apunte {
+		private final RegistroDiario[] registros;
+
+		private Apunte(RegistroDiario... registros) {
+			this.registros = registros;
+		}
+
+		private Long getCuentaId() {
+			return this.registros[0].getTipo() == Tipo.CUENTA ? this.registros[0].getId() : null;
+		}
+
+		private long getUltima() {
+			return this.registros[this.registros.length - 1].getSecuencia();
+		}
+
+		private long getImporte() {
+			long importe = 0;
+			for (RegistroDiario registro : this.registros)
+				importe = importe + registro.getCentimos();
+			return importe;
+		}
+
+		/**
+		 * Actualiza el saldo de la cuenta del apunte y añade sus movimientos a los que se guardan. Si la cuenta
+		 * o la tarjeta ya no existen, el apunte se descarta
+		 */
+		private void aplicar(List<MovimientoCuenta> movimientos, List<MovimientoTarjetaCredito> movimientosTarjeta) {
+			RegistroDiario primero = this.registros[0];
+			if (primero.getTipo() == Tipo.CUENTA) {
+				if (Manager.getCuentaDAO().actualizarSaldo(primero.getId(), this.getImporte()) == 0)
+					return;
+				for (RegistroDiario registro : this.registros)
+					movimientos.add(registro.getMovimientoCuenta());
+			} else {
+				Optional<TarjetaCredito> tarjeta = Manager.getTarjetaCreditoDAO().findById(primero.getId());
+				if (tarjeta.isPresent())
+					for (RegistroDiario registro : this.registros)
+						movimientosTarjeta.add(registro.getMovimientoTarjetaCredito(tarjeta.get()));
+			}
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+/**
+ * Escritor de movimientos con confirmación agrupada. Los movimientos que llegan de muchos hilos a la vez
+ * se acumulan en lotes, y cada lote se guarda, junto con sus eventos (ver {@link DiarioEventos}), en una
+ * única transacción (con las inserciones agrupadas en lotes JDBC). Cada hilo queda esperando hasta que la transacción de su lote se ha confirmado, por lo que
+ * cuando {@link #abonar(MovimientoCuenta)}, {@link #cargar(MovimientoCuenta...)} o
+ * {@link #guardar(MovimientoTarjetaCredito...)} terminan, el movimiento ya es duradero.
+ *
+ * Un lote se cierra cuando alcanza el tamaño máximo o cuando su primer movimiento lleva esperando la
+ * latencia máxima, lo que antes ocurra.
+ *
+ * Si el hilo del escritor termina antes de tiempo (lo interrumpen o falla de forma inesperada), el escritor
+ * deja de estar activo y los apuntes que quedaban sin guardar fallan en lugar de quedarse esperando.
+ *
+ */
+public class EscritorMovimientos {
+	/**
+	 * Tiempo máximo, en milisegundos, que un hilo espera la confirmación de su apunte
+	 */
+	public static final long ESPERA_MAXIMA = 30000;
+
+	private final int tamanoLote;
+	private final long latenciaMaxima;
+	private final BlockingQueue<Apunte> pendientes;
+	private final AtomicLong lotes = new AtomicLong();
+	private final AtomicLong apuntes = new AtomicLong();
+	private final AtomicLong fallidos = new AtomicLong();
+	private volatile boolean activo;
+	private Thread hilo;
+
+	/**
+	 * @param tamanoLote	Número máximo de apuntes por lote
+	 * @param latenciaMaxima	Tiempo máximo, en milisegundos, que un apunte espera a que se complete su lote
+	 */
+	public EscritorMovimientos(int tamanoLote, long latenciaMaxima) {
+		if (tamanoLote <= 0 || latenciaMaxima < 0)
+			throw new IllegalArgumentException("El tamaño de lote debe ser positivo y la latencia no puede ser negativa");
+		this.tamanoLote = tamanoLote;
+		this.latenciaMaxima = latenciaMaxima;
+		this.pendientes = new LinkedBlockingQueue<>();
+	}
+
+	public synchronized void iniciar() {
+		if (this.activo)
+			return;
+		this.activo = true;
+		this.hilo = new Thread("escritor-movimientos") {
+			@Override
+			public void run() {
+				escribir();
+			}
+		};
+		this.hilo.setDaemon(true);
+		this.hilo.start();
+	}
+
+	/**
+	 * Detiene el escritor, después de guardar los apuntes que ya estaban pendientes
+	 */
+	public void detener() {
+		Thread escritor;
+		synchronized (this) {
+			if (!this.activo)
+				return;
+			this.activo = false;
+			escritor = this.hilo;
+		}
+		// Sin el monitor, que el hilo necesita al terminar
+		try {
+			escritor.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Guarda un movimiento de cuenta y lo acumula en su saldo
+	 * @param movimiento	El movimiento
+	 * @return	false si la cuenta no existe, en cuyo caso no se guarda nada
+	 */
+	public boolean abonar(MovimientoCuenta movimiento) {
+		return this.encolar(new Apunte(movimiento.getCuenta().getId(), false, new MovimientoCuenta[] { movimiento }, null));
+	}
+
+	/**
+	 * Guarda unos movimientos de cuenta (de importe negativo) y los descuenta de su saldo, solo si este los cubre
+	 * @param movimientos	Los movimientos, todos de la misma cuenta
+	 * @return	false si el saldo no cubre el importe total, en cuyo caso no se guarda nada
+	 */
+	public boolean cargar(MovimientoCuenta... movimientos) {
+		return this.encolar(new Apunte(movimientos[0].getCuenta().getId(), true, movimientos, null));
+	}
+
+	/**
+	 * Guarda unos movimientos de tarjeta de crédito
+	 * @param movimientos	Los movimientos
+	 */
+	public void guardar(MovimientoTarjetaCredito... movimientos) {
+		this.encolar(new Apunte(null, false, null, movimientos));
+	}
+
+	private boolean encolar(Apunte apunte) {
+		synchronized (this) {
+			if (!this.activo)
+				throw new IllegalStateException("El escritor de movimientos no está activo");
+			this.pendientes.add(apunte);
+		}
+		try {
+			return apunte.resultado.get(ESPERA_MAXIMA, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrumpido mientras se esperaba la confirmación del movimiento", e);
+		} catch (TimeoutException e) {
+			throw new IllegalStateException("El movimiento no se ha confirmado en " + ESPERA_MAXIMA + " ms", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private void escribir() {
+		List<Apunte> lote = new ArrayList<>(this.tamanoLote);
+		try {
+			while (this.activo || !this.pendientes.isEmpty()) {
+				Apunte primero = this.pendientes.poll(100, TimeUnit.MILLISECONDS);
+				if (primero == null)
+					continue;
+				lote.add(primero);
+				long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.latenciaMaxima);
+				while (lote.size() < this.tamanoLote) {
+					this.pendientes.drainTo(lote, this.tamanoLote - lote.size());
+					long restante = limite - System.nanoTime();
+					if (lote.size() >= this.tamanoLote || restante <= 0)
+						break;
+					Apunte siguiente = this.pendientes.poll(restante, TimeUnit.NANOSECONDS);
+					if (siguiente != null)
+						lote.add(siguiente);
+				}
+				this.confirmar(lote);
+				lote.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			this.abandonar(lote);
+		}
+	}
+
+	/**
+	 * Deja de aceptar apuntes y hace fallar los que ya no va a guardar nadie: los del lote en curso que no se
+	 * hayan completado y los que seguían en la cola. Si el hilo termina con normalidad, no queda ninguno
+	 */
+	private void abandonar(List<Apunte> lote) {
+		List<Apunte> abandonados = new ArrayList<>(lote);
+		synchronized (this) {
+			this.activo = false;
+			this.pendientes.drainTo(abandonados);
+		}
+		IllegalStateException detenido = new IllegalStateException("El escritor de movimientos se ha detenido");
+		for (Apunte apunte : abandonados)
+			if (apunte.resultado.completeExceptionally(detenido))
+				this.fallidos.incrementAndGet();
+	}
+
+	/**
+	 * Guarda un lote en una única transacción. Los apuntes de cuenta se aplican en orden de id de cuenta
+	 * (respetando el orden de llegada dentro de cada cuenta) para bloquear las cuentas en el mismo orden
+	 * que {@link Cuenta#transferir(Long, double, String)}. Si la transacción del lote falla, los apuntes se
+	 * reintentan uno a uno, cada uno en su propia transacción, de forma que un apunte erróneo solo hace
+	 * fallar a su propio hilo
+	 */
+	private void confirmar(final List<Apunte> lote) {
+		final List<Apunte> ordenados = new ArrayList<>(lote);
+		Collections.sort(ordenados, new Comparator<Apunte>() {
+			@Override
+			public int compare(Apunte a, Apunte b) {
+				long x = a.cuentaId == null ? Long.MIN_VALUE : a.cuentaId;
+				long y = b.cuentaId == null ? Long.MIN_VALUE : b.cuentaId;
+				return x < y ? -1 : (x == y ? 0 : 1);
+			}
+		});
+		try {
+			this.guardarApuntes(ordenados);
+			this.lotes.incrementAndGet();
+			this.apuntes.addAndGet(lote.size());
+			for (Apunte apunte : lote)
+				apunte.resultado.complete(apunte.aplicado);
+		} catch (RuntimeException e) {
+			for (Apunte apunte : lote) {
+				apunte.descartarIds();
+				try {
+					this.guardarApuntes(Collections.singletonList(apunte));
+					this.apuntes.incrementAndGet();
+					apunte.resultado.complete(apunte.aplicado);
+				} catch (RuntimeException fallo) {
+					this.fallidos.incrementAndGet();
+					apunte.resultado.completeExceptionally(fallo);
+				}
+			}
+		}
+	}
+
+	private void guardarApuntes(final List<Apunte> apuntes) {
+		Manager.getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				List<MovimientoCuenta> movimientos = new ArrayList<>();
+				List<MovimientoTarjetaCredito> movimientosTarjeta = new ArrayList<>();
+				for (Apunte apunte : apuntes) {
+					apunte.aplicado = apunte.aplicar();
+					if (apunte.aplicado && apunte.movimientos != null)
+						Collections.addAll(movimientos, apunte.movimientos);
+					if (apunte.movimientosTarjeta != null)
+						Collections.addAll(movimientosTarjeta, apunte.movimientosTarjeta);
+				}
+				Manager.getMovimientoDAO().saveAll(movimientos);
+				Manager.getMovimientoTarjetaCreditoDAO().saveAll(movimientosTarjeta);
+				List<EventoDominio> eventos = new ArrayList<>(movimientos.size() + movimientosTarjeta.size());
+				for (MovimientoCuenta movimiento : movimientos)
+					eventos.add(EventoDominio.de(movimiento));
+				for (MovimientoTarjetaCredito movimiento : movimientosTarjeta)
+					eventos.add(EventoDominio.de(movimiento));
+				Manager.getDiarioEventos().anotar(eventos);
+			}
+		});
+	}
+
+	/**
+	 * @return	El número de lotes confirmados
+	 */
+	public long getLotes() {
+		return this.lotes.get();
+	}
+
+	/**
+	 * @return	El número de apuntes confirmados
+	 */
+	public long getApuntes() {
+		return this.apuntes.get();
+	}
+
+	/**
+	 * @return	El número de apuntes que no se han podido guardar ni siquiera por separado del resto de su lote, o
+	 * que se han abandonado al terminar el hilo del escritor
+	 */
+	public long getFallidos() {
+		return this.fallidos.get();
+	}
+
+	public int getTamanoLote() {
+		return this.tamanoLote;
+	}
+
+	public long getLatenciaMaxima() {
+		return this.latenciaMaxima;
+	}
+
+	private static class Apunte {
+		private final Long cuentaId;
+		private final boolean cargo;
+		private final MovimientoCuenta[] movimientos;
+		private final MovimientoTarjetaCredito[] movimientosTarjeta;
+		private final CompletableFuture<Boolean> resultado = new CompletableFuture<>();
+		private boolean aplicado;
+
+		private Apunte(Long cuentaId, boolean cargo, MovimientoCuenta[] movimientos, MovimientoTarjetaCredito[] movimientosTarjeta) {
+			this.cuentaId = cuentaId;
+			this.cargo = cargo;
+			this.movimientos = movimientos;
+			this.movimientosTarjeta = movimientosTarjeta;
+		}
+
+		/**
+		 * Olvida los ids que los movimientos recibieron en una transacción que se ha deshecho, para que
+		 * vuelvan a guardarse como nuevos
+		 */
+		private void descartarIds() {
+			if (this.movimientos != null)
+				for (MovimientoCuenta movimiento : this.movimientos)
+					movimiento.setId(null);
+			if (this.movimientosTarjeta != null)
+				for (MovimientoTarjetaCredito movimiento : this.movimientosTarjeta)
+					movimiento.setId(null);
+		}
+
+		/**
+		 * Actualiza el saldo de la cuenta del apunte
+		 * @return	false si el apunte no puede aplicarse y sus movimientos no deben guardarse
+		 */
+		private boolean aplicar() {
+			if (this.movimientos == null)
+				return true;
+			long importe = 0;
+			for (MovimientoCuenta movimiento : this.movimientos)
+				importe = importe + movimiento.getCentimos();
+			if (this.cargo)
+				return Manager.getCuentaDAO().retirarSaldo(this.cuentaId, -importe) > 0;
+			return Manager.getCuentaDAO().actualizarSaldo(this.cuentaId, importe) > 0;
+		}
+	}
+}
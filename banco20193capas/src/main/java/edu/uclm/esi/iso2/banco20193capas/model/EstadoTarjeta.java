@@ -0,0 +1,48 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+/**
+ * Estado de una tarjeta que se necesita para autorizar sus operaciones: el pin, si está activa,
+ * los intentos fallidos de pin y la cuenta asociada. Es inmutable: cada cambio produce un estado nuevo.
+ *
+ */
+public class EstadoTarjeta {
+	private final int pin;
+	private final boolean activa;
+	private final int intentos;
+	private final Long cuentaId;
+
+	public EstadoTarjeta(Integer pin, Boolean activa, Integer intentos, Long cuentaId) {
+		this.pin = pin == null ? 0 : pin;
+		this.activa = activa == null ? false : activa;
+		this.intentos = intentos == null ? 0 : intentos;
+		this.cuentaId = cuentaId;
+	}
+
+	/**
+	 * @param tarjeta	La tarjeta
+	 * @return	El estado que tiene en memoria la tarjeta
+	 */
+	public static EstadoTarjeta de(Tarjeta tarjeta) {
+		return new EstadoTarjeta(tarjeta.pin, tarjeta.activa, tarjeta.intentos, tarjeta.cuenta == null ? null : tarjeta.cuenta.getId());
+	}
+
+	public EstadoTarjeta conIntentos(int intentos) {
+		return new EstadoTarjeta(this.pin, this.activa, intentos, this.cuentaId);
+	}
+
+	public int getPin() {
+		return pin;
+	}
+
+	public boolean isActiva() {
+		return activa;
+	}
+
+	public int getIntentos() {
+		return intentos;
+	}
+
+	public Long getCuentaId() {
+		return cuentaId;
+	}
+}
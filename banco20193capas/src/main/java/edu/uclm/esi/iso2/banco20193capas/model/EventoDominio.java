@@ -0,0 +1,215 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+/**
+ * Un cambio de estado de una cuenta o de una tarjeta, tal como se anota en el {@link DiarioEventos}. Los
+ * eventos no se modifican ni se borran nunca: el estado de una cuenta o tarjeta en cualquier momento es
+ * el resultado de aplicar en orden de id todos sus eventos hasta ese momento. La fecha de un evento es la
+ * de su anotación, no la del movimiento que lo origina (que puede ser anterior si se ha cargado después).
+ *
+ * Los ids se toman de una secuencia en bloques, como los de los movimientos, para que Hibernate pueda
+ * insertar los eventos de una transacción en un solo lote. Todos los eventos se anotan a través de
+ * Hibernate, de forma que el orden de los ids es el mismo en que se anotaron (ver {@link DiarioEventos})
+ *
+ */
+@Entity
+@Table(indexes = { @Index(name = "ix_evento_dominio_agregado", columnList = "agregado, agregadoId, id") })
+public class EventoDominio {
+	/**
+	 * Tipo de objeto al que afecta el evento
+	 */
+	public enum Agregado {
+		CUENTA, TARJETA
+	}
+
+	public enum Tipo {
+		/** Ingreso en una cuenta, de cualquier origen. El concepto es el del movimiento */
+		ABONO,
+		/** Cargo en una cuenta, de cualquier origen. El concepto es el del movimiento */
+		CARGO,
+		/** Emisión de una tarjeta, con su crédito (en el importe) y su cuenta (en la referencia). El pin no se anota */
+		EMISION,
+		PIN_FALLIDO,
+		PIN_CORRECTO,
+		BLOQUEO,
+		/** Cambio de pin. Solo se anota que ha cambiado, nunca el pin */
+		CAMBIO_PIN,
+		/** Gasto con una tarjeta de crédito, pendiente de liquidar */
+		GASTO,
+		/** Liquidación de los gastos pendientes de una tarjeta de crédito */
+		LIQUIDACION
+	}
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "evento_dominio")
+	@SequenceGenerator(name = "evento_dominio", sequenceName = "evento_dominio_seq", allocationSize = 50)
+	private Long id;
+	@Enumerated(EnumType.STRING)
+	private Agregado agregado;
+	private Long agregadoId;
+	@Enumerated(EnumType.STRING)
+	private Tipo tipo;
+	/** En céntimos (ver {@link Centimos}) */
+	@Column(name = "importe_centimos")
+	private long importe;
+	private Long referencia;
+	private String concepto;
+	private Instant fecha;
+
+	public EventoDominio() {
+	}
+
+	public EventoDominio(Agregado agregado, Long agregadoId, Tipo tipo) {
+		this.agregado = agregado;
+		this.agregadoId = agregadoId;
+		this.tipo = tipo;
+		this.fecha = Instant.now();
+	}
+
+	/**
+	 * @param movimiento	Un movimiento de cuenta
+	 * @return	El abono o cargo correspondiente al movimiento
+	 */
+	public static EventoDominio de(MovimientoCuenta movimiento) {
+		EventoDominio evento = new EventoDominio(Agregado.CUENTA, movimiento.getCuenta().getId(),
+				movimiento.getCentimos() >= 0 ? Tipo.ABONO : Tipo.CARGO);
+		evento.importe = movimiento.getCentimos();
+		evento.concepto = movimiento.getConcepto();
+		return evento;
+	}
+
+	/**
+	 * @param movimiento	Un movimiento de tarjeta de crédito
+	 * @return	El gasto correspondiente al movimiento
+	 */
+	public static EventoDominio de(MovimientoTarjetaCredito movimiento) {
+		EventoDominio evento = new EventoDominio(Agregado.TARJETA, movimiento.getTarjeta().getId(), Tipo.GASTO);
+		evento.importe = movimiento.getCentimos();
+		evento.concepto = movimiento.getConcepto();
+		return evento;
+	}
+
+	/**
+	 * @param tarjeta	Una tarjeta recién emitida
+	 * @param credito	El crédito concedido en céntimos, o 0 si es de débito
+	 * @return	La emisión de la tarjeta
+	 */
+	public static EventoDominio emision(Tarjeta tarjeta, long credito) {
+		EventoDominio evento = new EventoDominio(Agregado.TARJETA, tarjeta.getId(), Tipo.EMISION);
+		evento.importe = credito;
+		evento.referencia = tarjeta.getCuenta() == null ? null : tarjeta.getCuenta().getId();
+		return evento;
+	}
+
+	/**
+	 * @param tarjetaId	El id de la tarjeta
+	 * @param tipo	El tipo de evento
+	 * @return	Un evento de la tarjeta sin más datos
+	 */
+	public static EventoDominio tarjeta(Long tarjetaId, Tipo tipo) {
+		return new EventoDominio(Agregado.TARJETA, tarjetaId, tipo);
+	}
+
+	/**
+	 * @param tarjetaId	El id de la tarjeta
+	 * @return	El cambio de pin, sin el pin nuevo
+	 */
+	public static EventoDominio cambioPin(Long tarjetaId) {
+		return tarjeta(tarjetaId, Tipo.CAMBIO_PIN);
+	}
+
+	/**
+	 * @param tarjetaId	El id de la tarjeta
+	 * @param importe	El importe liquidado, en céntimos
+	 * @return	La liquidación
+	 */
+	public static EventoDominio liquidacion(Long tarjetaId, long importe) {
+		EventoDominio evento = tarjeta(tarjetaId, Tipo.LIQUIDACION);
+		evento.importe = importe;
+		return evento;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public Agregado getAgregado() {
+		return agregado;
+	}
+
+	public void setAgregado(Agregado agregado) {
+		this.agregado = agregado;
+	}
+
+	public Long getAgregadoId() {
+		return agregadoId;
+	}
+
+	public void setAgregadoId(Long agregadoId) {
+		this.agregadoId = agregadoId;
+	}
+
+	public Tipo getTipo() {
+		return tipo;
+	}
+
+	public void setTipo(Tipo tipo) {
+		this.tipo = tipo;
+	}
+
+	public double getImporte() {
+		return Centimos.aEuros(importe);
+	}
+
+	public void setImporte(double importe) {
+		this.importe = Centimos.de(importe);
+	}
+
+	public long getCentimos() {
+		return importe;
+	}
+
+	public void setCentimos(long centimos) {
+		this.importe = centimos;
+	}
+
+	public Long getReferencia() {
+		return referencia;
+	}
+
+	public void setReferencia(Long referencia) {
+		this.referencia = referencia;
+	}
+
+	public String getConcepto() {
+		return concepto;
+	}
+
+	public void setConcepto(String concepto) {
+		this.concepto = concepto;
+	}
+
+	public Instant getFecha() {
+		return fecha;
+	}
+
+	public void setFecha(Instant fecha) {
+		this.fecha = fecha;
+	}
+}
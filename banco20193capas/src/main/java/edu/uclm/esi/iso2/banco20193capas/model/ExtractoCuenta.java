@@ -0,0 +1,136 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+/**
+ * Extracto de los movimientos de una cuenta, con el saldo acumulado después de cada uno. Los movimientos
+ * se leen en páginas por orden de id (ver
+ * {@link edu.uclm.esi.iso2.banco20193capas.dao.MovimientoCuentaDAO#findPaginaByCuentaId(Long, Long, org.springframework.data.domain.Pageable)}),
+ * y cada página se escribe antes de leer la siguiente, de forma que nunca hay en memoria más de una página,
+ * por larga que sea la historia de la cuenta.
+ *
+ * El extracto se escribe en CSV, con los campos {@code id}, {@code fecha}, {@code cuenta}, {@code importe},
+ * {@code concepto} y {@code saldo}, de forma que puede volver a cargarse con {@link CargadorMasivo#cargarMovimientos(Path)}.
+ *
+ */
+public class ExtractoCuenta {
+	private int tamanoPagina;
+
+	/**
+	 * @param tamanoPagina	Número de movimientos que se leen de cada vez
+	 */
+	public ExtractoCuenta(int tamanoPagina) {
+		if (tamanoPagina <= 0)
+			throw new IllegalArgumentException("El tamaño de página debe ser positivo");
+		this.tamanoPagina = tamanoPagina;
+	}
+
+	/**
+	 * Escribe el extracto de una cuenta en un fichero, sustituyéndolo si ya existe
+	 * @param cuenta	El id de la cuenta
+	 * @param fichero	El fichero, que se escribe en UTF-8
+	 * @return	El número de movimientos escritos
+	 * @throws IOException	Si falla la escritura del fichero
+	 */
+	public long exportar(Long cuenta, Path fichero) throws IOException {
+		long movimientos = 0;
+		long saldo = 0;
+		long desde = 0;
+		PageRequest pagina = PageRequest.of(0, this.tamanoPagina);
+		try (BufferedWriter escritor = abrir(fichero)) {
+			List<MovimientoCuenta> lote;
+			do {
+				lote = Manager.getMovimientoDAO().findPaginaByCuentaId(cuenta, desde, pagina);
+				for (MovimientoCuenta movimiento : lote) {
+					saldo = escribir(escritor, cuenta, movimiento, saldo);
+					desde = movimiento.getId();
+				}
+				movimientos = movimientos + lote.size();
+			} while (lote.size() == this.tamanoPagina);
+		}
+		return movimientos;
+	}
+
+	/**
+	 * Escribe el extracto de una cuenta en un periodo, por orden de fecha, sustituyendo el fichero si ya existe.
+	 * El saldo de partida se calcula restando del saldo actual los movimientos posteriores al inicio del
+	 * periodo, de forma que no se leen los movimientos anteriores. Las dos lecturas se hacen en una transacción
+	 * que bloquea la fila de la cuenta, como en {@link ConciliadorSaldos}, para que ningún movimiento se
+	 * confirme entre una y otra
+	 * @param cuenta	El id de la cuenta
+	 * @param desde	Inicio del periodo, incluido
+	 * @param hasta	Fin del periodo, excluido
+	 * @param fichero	El fichero, que se escribe en UTF-8
+	 * @return	El número de movimientos escritos
+	 * @throws IOException	Si falla la escritura del fichero
+	 */
+	public long exportar(Long cuenta, Instant desde, Instant hasta, Path fichero) throws IOException {
+		long movimientos = 0;
+		// Los movimientos aún no aplicados del diario se aplican antes, para que el saldo actual y los
+		// movimientos que se restan de él sean los mismos
+		DiarioMovimientos diario = Manager.getDiarioMovimientos();
+		if (diario != null)
+			diario.esperarAplicados();
+		long saldo = saldoInicial(cuenta, desde);
+		Instant fecha = desde;
+		long ultimo = 0;
+		PageRequest pagina = PageRequest.of(0, this.tamanoPagina);
+		try (BufferedWriter escritor = abrir(fichero)) {
+			List<MovimientoCuenta> lote;
+			do {
+				lote = Manager.getMovimientoDAO().findPaginaPeriodoByCuentaId(cuenta, fecha, ultimo, hasta, pagina);
+				for (MovimientoCuenta movimiento : lote) {
+					saldo = escribir(escritor, cuenta, movimiento, saldo);
+					fecha = movimiento.getFecha();
+					ultimo = movimiento.getId();
+				}
+				movimientos = movimientos + lote.size();
+			} while (lote.size() == this.tamanoPagina);
+		}
+		return movimientos;
+	}
+
+	private static long saldoInicial(final Long cuenta, final Instant desde) {
+		return Manager.getTransactionTemplate().execute(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				List<Long> saldo = Manager.getJdbcTemplate().queryForList("select saldo_centimos from cuenta where id = ? for update",
+						Long.class, cuenta);
+				return (saldo.isEmpty() ? 0 : saldo.get(0)) - Manager.getMovimientoDAO().sumImporteDesdeByCuentaId(cuenta, desde);
+			}
+		});
+	}
+
+	private static BufferedWriter abrir(Path fichero) throws IOException {
+		BufferedWriter escritor = Files.newBufferedWriter(fichero, StandardCharsets.UTF_8);
+		escritor.write("id,fecha,cuenta,importe,concepto,saldo");
+		escritor.newLine();
+		return escritor;
+	}
+
+	private static long escribir(BufferedWriter escritor, Long cuenta, MovimientoCuenta movimiento, long saldo) throws IOException {
+		long nuevoSaldo = saldo + movimiento.getCentimos();
+		escritor.write(String.format(Locale.ROOT, "%d,%s,%d,%s,%s,%s", movimiento.getId(),
+				movimiento.getFecha() == null ? "" : movimiento.getFecha().toString(), cuenta,
+				Centimos.formatear(movimiento.getCentimos()), entrecomillar(movimiento.getConcepto()), Centimos.formatear(nuevoSaldo)));
+		escritor.newLine();
+		return nuevoSaldo;
+	}
+
+	private static String entrecomillar(String texto) {
+		if (texto == null)
+			return "";
+		return "\"" + texto.replace("\"", "\"\"") + "\"";
+	}
+}
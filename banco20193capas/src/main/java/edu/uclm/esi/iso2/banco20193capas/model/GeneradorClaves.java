@@ -0,0 +1,49 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Genera los pines de las tarjetas y los tokens de las compras por Internet, de cuatro cifras.
+ *
+ * Cada hilo tiene su propio generador SHA1PRNG, que se siembra una sola vez con bytes de un generador
+ * compartido del sistema; a partir de ahí, generar una clave no bloquea ni compite con los demás hilos
+ * (el generador nativo serializa todas las lecturas de /dev/urandom con un único cerrojo).
+ *
+ */
+public class GeneradorClaves {
+	private static final int CLAVES = 10000;
+	private static final SecureRandom SEMILLAS = new SecureRandom();
+	private static final ThreadLocal<SecureRandom> DADOS = new ThreadLocal<SecureRandom>() {
+		@Override
+		protected SecureRandom initialValue() {
+			SecureRandom dado;
+			try {
+				dado = SecureRandom.getInstance("SHA1PRNG");
+			} catch (NoSuchAlgorithmException e) {
+				return new SecureRandom();
+			}
+			byte[] semilla = new byte[32];
+			SEMILLAS.nextBytes(semilla);
+			dado.setSeed(semilla);
+			return dado;
+		}
+	};
+
+	private GeneradorClaves() {
+	}
+
+	/**
+	 * @return	Un pin aleatorio, entre 0 y 9999
+	 */
+	public static int generarPin() {
+		return DADOS.get().nextInt(CLAVES);
+	}
+
+	/**
+	 * @return	Un token aleatorio para confirmar una compra por Internet, entre 0 y 9999
+	 */
+	public static int generarToken() {
+		return DADOS.get().nextInt(CLAVES);
+	}
+}
@@ -0,0 +1,232 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import edu.uclm.esi.iso2.banco20193capas.model.EventoDominio.Agregado;
+
+/**
+ * Estado de una cuenta o de una tarjeta tras aplicar sus eventos hasta {@link #getUltimoEvento()}. Las
+ * instantáneas se guardan periódicamente (ver {@link DiarioEventos}), y la reconstrucción del estado
+ * parte de la última instantánea y aplica solo los eventos posteriores.
+ *
+ * Para una cuenta, el estado es su saldo; para una tarjeta, si está activa, los intentos fallidos de pin,
+ * cuántas veces se ha cambiado el pin, su cuenta, su crédito (0 si es de débito) y, en {@link #getSaldo()},
+ * los gastos pendientes de liquidar. El pin no se guarda nunca en las instantáneas ni en los eventos.
+ *
+ */
+@Entity
+@Table(indexes = { @Index(name = "ix_instantanea_agregado", columnList = "agregado, agregadoId, ultimoEvento") })
+public class InstantaneaAgregado {
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "instantanea_agregado")
+	@SequenceGenerator(name = "instantanea_agregado", sequenceName = "instantanea_agregado_seq", allocationSize = 50)
+	private Long id;
+	@Enumerated(EnumType.STRING)
+	private Agregado agregado;
+	private Long agregadoId;
+	private long ultimoEvento;
+	private long eventos;
+	private Instant fecha;
+	/** En céntimos (ver {@link Centimos}) */
+	@Column(name = "saldo_centimos")
+	private long saldo;
+	/** En céntimos */
+	@Column(name = "credito_centimos")
+	private long credito;
+	private int cambiosPin;
+	private Boolean activa;
+	private int intentos;
+	private Long cuentaId;
+
+	public InstantaneaAgregado() {
+	}
+
+	/**
+	 * @param agregado	El tipo de objeto
+	 * @param agregadoId	Su id
+	 * @return	El estado antes del primer evento
+	 */
+	public static InstantaneaAgregado inicial(Agregado agregado, Long agregadoId) {
+		InstantaneaAgregado estado = new InstantaneaAgregado();
+		estado.agregado = agregado;
+		estado.agregadoId = agregadoId;
+		return estado;
+	}
+
+	/**
+	 * @return	Una copia sin id de esta instantánea, a la que se pueden aplicar más eventos sin modificar la guardada
+	 */
+	public InstantaneaAgregado copia() {
+		InstantaneaAgregado copia = inicial(this.agregado, this.agregadoId);
+		copia.ultimoEvento = this.ultimoEvento;
+		copia.eventos = this.eventos;
+		copia.fecha = this.fecha;
+		copia.saldo = this.saldo;
+		copia.credito = this.credito;
+		copia.cambiosPin = this.cambiosPin;
+		copia.activa = this.activa;
+		copia.intentos = this.intentos;
+		copia.cuentaId = this.cuentaId;
+		return copia;
+	}
+
+	/**
+	 * Aplica un evento, que debe ser posterior a {@link #getUltimoEvento()}
+	 * @param evento	El evento
+	 */
+	public void aplicar(EventoDominio evento) {
+		switch (evento.getTipo()) {
+		case ABONO:
+		case CARGO:
+		case GASTO:
+			this.saldo = this.saldo + evento.getCentimos();
+			break;
+		case LIQUIDACION:
+			this.saldo = this.saldo - evento.getCentimos();
+			break;
+		case EMISION:
+			this.activa = true;
+			this.intentos = 0;
+			this.credito = evento.getCentimos();
+			this.cuentaId = evento.getReferencia();
+			break;
+		case PIN_FALLIDO:
+			this.intentos++;
+			break;
+		case PIN_CORRECTO:
+			this.intentos = 0;
+			break;
+		case BLOQUEO:
+			this.activa = false;
+			break;
+		case CAMBIO_PIN:
+			this.cambiosPin++;
+			break;
+		}
+		this.ultimoEvento = evento.getId();
+		this.fecha = evento.getFecha();
+		this.eventos++;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public Agregado getAgregado() {
+		return agregado;
+	}
+
+	public void setAgregado(Agregado agregado) {
+		this.agregado = agregado;
+	}
+
+	public Long getAgregadoId() {
+		return agregadoId;
+	}
+
+	public void setAgregadoId(Long agregadoId) {
+		this.agregadoId = agregadoId;
+	}
+
+	/**
+	 * @return	El id del último evento aplicado, o 0 si no se ha aplicado ninguno
+	 */
+	public long getUltimoEvento() {
+		return ultimoEvento;
+	}
+
+	public void setUltimoEvento(long ultimoEvento) {
+		this.ultimoEvento = ultimoEvento;
+	}
+
+	/**
+	 * @return	El número total de eventos aplicados
+	 */
+	public long getEventos() {
+		return eventos;
+	}
+
+	public void setEventos(long eventos) {
+		this.eventos = eventos;
+	}
+
+	/**
+	 * @return	La fecha del último evento aplicado
+	 */
+	public Instant getFecha() {
+		return fecha;
+	}
+
+	public void setFecha(Instant fecha) {
+		this.fecha = fecha;
+	}
+
+	/**
+	 * @return	El saldo de la cuenta o, si es una tarjeta de crédito, los gastos pendientes de liquidar
+	 */
+	public double getSaldo() {
+		return Centimos.aEuros(saldo);
+	}
+
+	public void setSaldo(double saldo) {
+		this.saldo = Centimos.de(saldo);
+	}
+
+	public double getCredito() {
+		return Centimos.aEuros(credito);
+	}
+
+	public void setCredito(double credito) {
+		this.credito = Centimos.de(credito);
+	}
+
+	/**
+	 * @return	El número de veces que se ha cambiado el pin de la tarjeta desde su emisión
+	 */
+	public int getCambiosPin() {
+		return cambiosPin;
+	}
+
+	public void setCambiosPin(int cambiosPin) {
+		this.cambiosPin = cambiosPin;
+	}
+
+	public Boolean getActiva() {
+		return activa;
+	}
+
+	public void setActiva(Boolean activa) {
+		this.activa = activa;
+	}
+
+	public int getIntentos() {
+		return intentos;
+	}
+
+	public void setIntentos(int intentos) {
+		this.intentos = intentos;
+	}
+
+	public Long getCuentaId() {
+		return cuentaId;
+	}
+
+	public void setCuentaId(Long cuentaId) {
+		this.cuentaId = cuentaId;
+	}
+}
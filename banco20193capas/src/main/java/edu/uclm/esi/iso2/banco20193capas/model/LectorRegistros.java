@@ -0,0 +1,145 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Lee, de uno en uno, los registros de un fichero de carga (ver {@link CargadorMasivo}), sin cargar
+ * el fichero entero en memoria. En CSV, la primera línea tiene los nombres de los campos, los campos
+ * se separan por comas y pueden ir entre comillas dobles (dos comillas seguidas dentro de un campo
+ * entrecomillado representan una comilla). En JSON, cada línea es un objeto.
+ *
+ * Cada registro se devuelve como un mapa de nombre de campo a valor: los valores son cadenas, salvo
+ * los arrays JSON, que se devuelven como listas de cadenas. Las líneas en blanco se ignoran.
+ *
+ */
+class LectorRegistros implements Closeable {
+	private final BufferedReader lector;
+	private final CargadorMasivo.Formato formato;
+	private String[] cabecera;
+	private int linea;
+
+	LectorRegistros(Reader lector, CargadorMasivo.Formato formato) {
+		this.lector = lector instanceof BufferedReader ? (BufferedReader) lector : new BufferedReader(lector);
+		this.formato = formato;
+	}
+
+	/**
+	 * @return	El siguiente registro, o null si no quedan
+	 * @throws IOException	Si falla la lectura
+	 * @throws IllegalArgumentException	Si la línea leída no tiene el formato esperado. Se puede seguir
+	 * 					leyendo a partir de la línea siguiente
+	 */
+	Map<String, Object> siguiente() throws IOException {
+		if (this.formato == CargadorMasivo.Formato.CSV && this.cabecera == null) {
+			String primera = this.leerLinea();
+			if (primera == null)
+				return null;
+			List<String> nombres = separarCsv(primera);
+			this.cabecera = nombres.toArray(new String[nombres.size()]);
+		}
+		String texto = this.leerLinea();
+		if (texto == null)
+			return null;
+		return this.formato == CargadorMasivo.Formato.CSV ? this.registroCsv(texto) : registroJson(texto);
+	}
+
+	/**
+	 * @return	El número de la última línea leída, empezando por 1
+	 */
+	int getLinea() {
+		return linea;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.lector.close();
+	}
+
+	private String leerLinea() throws IOException {
+		String texto;
+		do {
+			texto = this.lector.readLine();
+			if (texto == null)
+				return null;
+			this.linea++;
+		} while (texto.trim().isEmpty());
+		return texto;
+	}
+
+	private Map<String, Object> registroCsv(String texto) {
+		List<String> valores = separarCsv(texto);
+		if (valores.size() != this.cabecera.length)
+			throw new IllegalArgumentException("Se esperaban " + this.cabecera.length + " campos y hay " + valores.size());
+		Map<String, Object> registro = new LinkedHashMap<>();
+		for (int i = 0; i < this.cabecera.length; i++)
+			registro.put(this.cabecera[i], valores.get(i));
+		return registro;
+	}
+
+	private static Map<String, Object> registroJson(String texto) {
+		JSONObject objeto;
+		try {
+			objeto = new JSONObject(texto);
+		} catch (JSONException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+		Map<String, Object> registro = new LinkedHashMap<>();
+		Iterator<String> claves = objeto.keys();
+		while (claves.hasNext()) {
+			String clave = claves.next();
+			Object valor = objeto.get(clave);
+			if (valor instanceof JSONArray) {
+				JSONArray array = (JSONArray) valor;
+				List<String> lista = new ArrayList<>(array.length());
+				for (int i = 0; i < array.length(); i++)
+					lista.add(array.get(i).toString());
+				registro.put(clave, lista);
+			} else if (valor != JSONObject.NULL) {
+				registro.put(clave, valor.toString());
+			}
+		}
+		return registro;
+	}
+
+	static List<String> separarCsv(String texto) {
+		List<String> valores = new ArrayList<>();
+		StringBuilder valor = new StringBuilder();
+		boolean entreComillas = false;
+		for (int i = 0; i < texto.length(); i++) {
+			char c = texto.charAt(i);
+			if (entreComillas) {
+				if (c == '"' && i + 1 < texto.length() && texto.charAt(i + 1) == '"') {
+					valor.append('"');
+					i++;
+				} else if (c == '"') {
+					entreComillas = false;
+				} else {
+					valor.append(c);
+				}
+			} else if (c == '"') {
+				entreComillas = true;
+			} else if (c == ',') {
+				valores.add(valor.toString().trim());
+				valor.setLength(0);
+			} else {
+				valor.append(c);
+			}
+		}
+		if (entreComillas)
+			throw new IllegalArgumentException("Comillas sin cerrar");
+		valores.add(valor.toString().trim());
+		return valores;
+	}
+}
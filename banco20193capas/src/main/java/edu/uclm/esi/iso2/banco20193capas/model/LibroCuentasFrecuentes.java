@@ -0,0 +1,413 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Libro en memoria del saldo y los últimos movimientos de las cuentas más consultadas (por ejemplo, las de
+ * los comercios que reciben la mayor parte de los pagos), que responde a {@link Cuenta#getSaldo()} y a la
+ * consulta de los últimos movimientos sin leer la base de datos.
+ *
+ * Cada cuenta del libro guarda su saldo y sus últimos movimientos en arrays de tipos primitivos (ids,
+ * importes en céntimos y fechas en milisegundos) usados como búfer circular, de forma que las consultas no
+ * crean objetos: el saldo se devuelve como un long y los movimientos se copian en arrays del llamador.
+ *
+ * Los movimientos se anotan en el libro cuando se confirma la transacción que los guarda (ver
+ * {@link OyenteMovimientos}). Para que una cuenta que se incorpora al libro no cuente dos veces un movimiento
+ * confirmado mientras se carga, la carga bloquea la fila de la cuenta (con lo que no puede confirmarse
+ * ningún movimiento nuevo de la cuenta) y espera a que se anoten los movimientos ya confirmados antes de leer
+ * su saldo. Las transacciones en curso se cuentan por franjas de cuentas, como los cerrojos de
+ * {@link RegistroCerrojos}.
+ *
+ * Cada periodo se revisan los accesos de cada cuenta: las {@code maximo} cuentas más consultadas que
+ * superan el umbral de accesos se incorporan al libro, y las que han dejado de estarlo salen de él.
+ *
+ */
+public class LibroCuentasFrecuentes {
+	/**
+	 * Valor que devuelve {@link #getSaldo(Long)} para una cuenta que no está en el libro
+	 */
+	public static final long NO_CARGADA = Long.MIN_VALUE;
+
+	/**
+	 * Número máximo de cuentas fuera del libro de las que se cuentan los accesos en cada periodo
+	 */
+	private static final int MAX_CANDIDATAS = 10000;
+	private static final int FRANJAS = 256;
+
+	private final int maximo;
+	private final int umbral;
+	private final int capacidad;
+	private final long periodo;
+	private final long esperaMaxima;
+	private final ConcurrentHashMap<Long, Libro> libros = new ConcurrentHashMap<>();
+	private volatile ConcurrentHashMap<Long, AtomicInteger> candidatas = new ConcurrentHashMap<>();
+	private final AtomicIntegerArray enCurso = new AtomicIntegerArray(FRANJAS);
+	/**
+	 * Monitor en que las cargas esperan a que se anoten los movimientos confirmados, y número de cargas que
+	 * esperan: mientras no hay ninguna, anotar un movimiento no toma el monitor
+	 */
+	private final Object anotados = new Object();
+	private volatile int esperando;
+	private ScheduledExecutorService planificador;
+
+	/**
+	 * @param maximo	Número máximo de cuentas en el libro
+	 * @param umbral	Número mínimo de accesos en un periodo para que una cuenta entre (o siga) en el libro
+	 * @param capacidad	Número de movimientos que se guardan de cada cuenta
+	 * @param periodo	Tiempo, en milisegundos, entre dos revisiones de los accesos
+	 * @param esperaMaxima	Tiempo máximo, en milisegundos, que la carga de una cuenta espera a que se anoten los
+	 * movimientos confirmados; si se agota, la cuenta no se carga y se intenta en la siguiente revisión
+	 */
+	public LibroCuentasFrecuentes(int maximo, int umbral, int capacidad, long periodo, long esperaMaxima) {
+		if (maximo <= 0 || umbral <= 0 || capacidad <= 0 || periodo <= 0 || esperaMaxima < 0)
+			throw new IllegalArgumentException("El máximo de cuentas, el umbral, la capacidad y el periodo deben ser positivos");
+		this.maximo = maximo;
+		this.umbral = umbral;
+		this.capacidad = capacidad;
+		this.periodo = periodo;
+		this.esperaMaxima = esperaMaxima;
+	}
+
+	public synchronized void iniciar() {
+		if (this.planificador != null)
+			return;
+		this.planificador = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable tarea) {
+				Thread hilo = new Thread(tarea, "libro-cuentas-frecuentes");
+				hilo.setDaemon(true);
+				return hilo;
+			}
+		});
+		this.planificador.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					revisar();
+				} catch (RuntimeException e) {
+					// Un fallo al cargar una cuenta no debe detener las revisiones siguientes
+				}
+			}
+		}, this.periodo, this.periodo, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Detiene las revisiones y vacía el libro
+	 */
+	public synchronized void detener() {
+		if (this.planificador != null) {
+			this.planificador.shutdownNow();
+			this.planificador = null;
+		}
+		this.libros.clear();
+		this.candidatas = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Devuelve el saldo de una cuenta del libro, y cuenta el acceso
+	 * @param cuenta	El id de la cuenta
+	 * @return	El saldo en céntimos, o {@link #NO_CARGADA} si la cuenta no está en el libro
+	 */
+	public long getSaldo(Long cuenta) {
+		Libro libro = this.acceder(cuenta);
+		return libro == null ? NO_CARGADA : libro.getSaldo();
+	}
+
+	/**
+	 * Copia los últimos movimientos de una cuenta del libro, del más reciente al más antiguo, y cuenta el acceso.
+	 * Se copian tantos movimientos como quepan en el más corto de los arrays, como mucho los que guarda el libro
+	 * @param cuenta	El id de la cuenta
+	 * @param ids	Donde se copian los ids de los movimientos
+	 * @param importes	Donde se copian los importes, en céntimos
+	 * @param fechas	Donde se copian las fechas, en milisegundos desde 1970
+	 * @return	El número de movimientos copiados, o -1 si la cuenta no está en el libro
+	 */
+	public int getUltimos(Long cuenta, long[] ids, long[] importes, long[] fechas) {
+		Libro libro = this.acceder(cuenta);
+		return libro == null ? -1 : libro.copiar(ids, importes, fechas);
+	}
+
+	/**
+	 * @param cuenta	El id de la cuenta
+	 * @return	true si la cuenta está en el libro (y ya se ha cargado)
+	 */
+	public boolean isCargada(Long cuenta) {
+		Libro libro = this.libros.get(cuenta);
+		return libro != null && libro.isCargado();
+	}
+
+	/**
+	 * @return	El número de cuentas cargadas en el libro
+	 */
+	public int getCargadas() {
+		int n = 0;
+		for (Libro libro : this.libros.values())
+			if (libro.isCargado())
+				n++;
+		return n;
+	}
+
+	private Libro acceder(Long cuenta) {
+		Libro libro = this.libros.get(cuenta);
+		if (libro != null) {
+			libro.accesos.incrementAndGet();
+			return libro.isCargado() ? libro : null;
+		}
+		ConcurrentHashMap<Long, AtomicInteger> accesos = this.candidatas;
+		AtomicInteger n = accesos.get(cuenta);
+		if (n == null) {
+			if (accesos.size() >= MAX_CANDIDATAS)
+				return null;
+			AtomicInteger nuevo = new AtomicInteger();
+			n = accesos.putIfAbsent(cuenta, nuevo);
+			if (n == null)
+				n = nuevo;
+		}
+		n.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Anota un movimiento de cuenta, ya guardado, para cuando se confirme la transacción que lo guarda
+	 * @param movimiento	El movimiento
+	 */
+	public void anotar(MovimientoCuenta movimiento) {
+		final Long cuenta = movimiento.getCuenta().getId();
+		if (cuenta == null)
+			return;
+		final long id = movimiento.getId() == null ? 0 : movimiento.getId();
+		final long importe = movimiento.getCentimos();
+		final long fecha = movimiento.getFecha().toEpochMilli();
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			this.aplicar(cuenta, id, importe, fecha);
+			return;
+		}
+		final int franja = franja(cuenta);
+		// Se cuenta al registrarse y no en beforeCommit: con ids de secuencia, Hibernate inserta el movimiento
+		// (y llama a este método) al vaciar la sesión durante el commit, cuando ya han pasado los beforeCommit
+		enCurso.incrementAndGet(franja);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int estado) {
+				if (estado == TransactionSynchronization.STATUS_COMMITTED)
+					aplicar(cuenta, id, importe, fecha);
+				if (enCurso.decrementAndGet(franja) == 0 && esperando > 0)
+					synchronized (anotados) {
+						anotados.notifyAll();
+					}
+			}
+		});
+	}
+
+	private void aplicar(Long cuenta, long id, long importe, long fecha) {
+		Libro libro = this.libros.get(cuenta);
+		if (libro != null)
+			libro.anotar(id, importe, fecha);
+	}
+
+	/**
+	 * Saca una cuenta del libro, por ejemplo porque su saldo se ha corregido sin pasar por un movimiento
+	 * (ver {@link ConciliadorSaldos})
+	 * @param cuenta	El id de la cuenta
+	 */
+	public void descartar(Long cuenta) {
+		this.libros.remove(cuenta);
+	}
+
+	/**
+	 * Revisa los accesos del último periodo: incorpora al libro las cuentas más consultadas y saca de él
+	 * las que no han llegado al umbral. Se llama periódicamente, pero puede llamarse en cualquier momento
+	 * @return	El número de cuentas que se han incorporado al libro
+	 */
+	public synchronized int revisar() {
+		final Map<Long, Integer> accesos = new HashMap<>();
+		for (Map.Entry<Long, Libro> libro : this.libros.entrySet())
+			accesos.put(libro.getKey(), libro.getValue().accesos.getAndSet(0));
+		ConcurrentHashMap<Long, AtomicInteger> candidatas = this.candidatas;
+		this.candidatas = new ConcurrentHashMap<>();
+		for (Map.Entry<Long, AtomicInteger> candidata : candidatas.entrySet())
+			accesos.put(candidata.getKey(), candidata.getValue().get());
+
+		List<Long> cuentas = new ArrayList<>(accesos.keySet());
+		Collections.sort(cuentas, new Comparator<Long>() {
+			@Override
+			public int compare(Long a, Long b) {
+				return Integer.compare(accesos.get(b), accesos.get(a));
+			}
+		});
+		int incorporadas = 0;
+		for (int i = 0; i < cuentas.size(); i++) {
+			Long cuenta = cuentas.get(i);
+			boolean frecuente = i < this.maximo && accesos.get(cuenta) >= this.umbral;
+			if (!frecuente)
+				this.libros.remove(cuenta);
+			else if (!this.libros.containsKey(cuenta) && this.cargar(cuenta))
+				incorporadas++;
+		}
+		return incorporadas;
+	}
+
+	/**
+	 * Incorpora una cuenta al libro, cargando su saldo y sus últimos movimientos
+	 * @param cuenta	El id de la cuenta
+	 * @return	true si la cuenta se ha cargado (o ya estaba en el libro); false si no existe o si se ha agotado
+	 * la espera por los movimientos confirmados
+	 */
+	public boolean cargar(final Long cuenta) {
+		final Libro libro = new Libro(this.capacidad);
+		Libro anterior = this.libros.putIfAbsent(cuenta, libro);
+		if (anterior != null)
+			return true;
+		boolean cargada = false;
+		try {
+			cargada = Manager.getTransactionTemplate().execute(new TransactionCallback<Boolean>() {
+				@Override
+				public Boolean doInTransaction(TransactionStatus status) {
+					JdbcTemplate jdbc = Manager.getJdbcTemplate();
+					// Mientras la fila está bloqueada no puede confirmarse ningún movimiento nuevo de la cuenta
+					List<Long> saldo = jdbc.queryForList("select saldo_centimos from cuenta where id = ? for update", Long.class, cuenta);
+					if (saldo.isEmpty() || !esperarAnotados(cuenta))
+						return false;
+					jdbc.query("select id, importe_centimos, fecha from movimiento_cuenta where cuenta_id = ? order by id desc limit ?",
+							new RowCallbackHandler() {
+								@Override
+								public void processRow(ResultSet fila) throws SQLException {
+									libro.cargarAnterior(fila.getLong(1), fila.getLong(2), fila.getTimestamp(3).getTime());
+								}
+							}, cuenta, capacidad);
+					// Se activa antes de liberar la fila, para que se anoten los movimientos que se confirmen después
+					libro.activar(saldo.get(0));
+					return true;
+				}
+			});
+		} finally {
+			if (!cargada)
+				this.libros.remove(cuenta, libro);
+		}
+		return cargada;
+	}
+
+	/**
+	 * Espera, como mucho {@code esperaMaxima} milisegundos, a que no quede ninguna transacción en curso con
+	 * movimientos de la franja de la cuenta. Quien deja la franja a cero despierta a las cargas que esperan
+	 * @return	false si se agota la espera o se interrumpe el hilo
+	 */
+	private boolean esperarAnotados(Long cuenta) {
+		int franja = franja(cuenta);
+		long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.esperaMaxima);
+		synchronized (this.anotados) {
+			this.esperando++;
+			try {
+				while (this.enCurso.get(franja) > 0) {
+					long restante = limite - System.nanoTime();
+					if (restante <= 0)
+						return false;
+					TimeUnit.NANOSECONDS.timedWait(this.anotados, restante);
+				}
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				this.esperando--;
+			}
+		}
+	}
+
+	private static int franja(Long cuenta) {
+		long h = cuenta * 0x9e3779b97f4a7c15L;
+		return (int) (h >>> 56) & (FRANJAS - 1);
+	}
+
+	/**
+	 * Saldo y últimos movimientos de una cuenta. Mientras se carga, los movimientos que se anotan se ignoran,
+	 * porque el saldo que se lee al cargarla ya los incluye
+	 */
+	private static class Libro {
+		private final long[] ids;
+		private final long[] importes;
+		private final long[] fechas;
+		private final AtomicInteger accesos = new AtomicInteger();
+		private int siguiente;
+		private int tamano;
+		private long saldo;
+		private volatile boolean cargado;
+
+		Libro(int capacidad) {
+			this.ids = new long[capacidad];
+			this.importes = new long[capacidad];
+			this.fechas = new long[capacidad];
+		}
+
+		boolean isCargado() {
+			return this.cargado;
+		}
+
+		synchronized long getSaldo() {
+			return this.saldo;
+		}
+
+		/**
+		 * Añade, durante la carga, un movimiento anterior a los ya cargados
+		 */
+		synchronized void cargarAnterior(long id, long importe, long fecha) {
+			if (this.tamano == this.ids.length)
+				return;
+			int i = (this.siguiente - this.tamano - 1 + 2 * this.ids.length) % this.ids.length;
+			this.ids[i] = id;
+			this.importes[i] = importe;
+			this.fechas[i] = fecha;
+			this.tamano++;
+		}
+
+		synchronized void activar(long saldo) {
+			this.saldo = saldo;
+			this.cargado = true;
+		}
+
+		synchronized void anotar(long id, long importe, long fecha) {
+			if (!this.cargado)
+				return;
+			this.saldo = this.saldo + importe;
+			this.ids[this.siguiente] = id;
+			this.importes[this.siguiente] = importe;
+			this.fechas[this.siguiente] = fecha;
+			this.siguiente = (this.siguiente + 1) % this.ids.length;
+			if (this.tamano < this.ids.length)
+				this.tamano++;
+		}
+
+		synchronized int copiar(long[] ids, long[] importes, long[] fechas) {
+			int n = Math.min(this.tamano, Math.min(ids.length, Math.min(importes.length, fechas.length)));
+			for (int k = 0; k < n; k++) {
+				int i = (this.siguiente - 1 - k + this.ids.length) % this.ids.length;
+				ids[k] = this.ids[i];
+				importes[k] = this.importes[i];
+				fechas[k] = this.fechas[i];
+			}
+			return n;
+		}
+	}
+}
@@ -1,17 +1,45 @@
 package edu.uclm.esi.iso2.banco20193capas.model;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import edu.uclm.esi.iso2.banco20193capas.dao.ClienteDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.CompraPendienteDAO;
 import edu.uclm.esi.iso2.banco20193capas.dao.CuentaDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.EventoDominioDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.InstantaneaAgregadoDAO;
 import edu.uclm.esi.iso2.banco20193capas.dao.MovimientoCuentaDAO;
 import edu.uclm.esi.iso2.banco20193capas.dao.MovimientoTarjetaCreditoDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.ParticionLiquidacionDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.PuntoControlDiarioDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.RegistroApartadoDAO;
 import edu.uclm.esi.iso2.banco20193capas.dao.TarjetaCreditoDAO;
 import edu.uclm.esi.iso2.banco20193capas.dao.TarjetaDebitoDAO;
 
 /**
- * El Manager da acceso a las clases DAO asociadas a las clases de dominio
+ * El Manager da acceso a las clases DAO asociadas a las clases de dominio, a las transacciones
+ * que necesitan las operaciones que deben ejecutarse de forma atómica, a los cerrojos que
+ * serializan las operaciones sobre una misma cuenta o tarjeta, a las cachés de clientes y de
+ * estado de las tarjetas, al almacén de compras por Internet pendientes de confirmar, a los avisos
+ * de movimientos, al diario de eventos, al diario de escritura anticipada de movimientos, al libro en
+ * memoria de las cuentas más consultadas y a las métricas de las operaciones
  *
  */
 @Component
@@ -22,19 +50,279 @@ public class Manager {
 	private static ClienteDAO clienteDAO;
 	private static TarjetaDebitoDAO tarjetaDebitoDAO;
 	private static TarjetaCreditoDAO tarjetaCreditoDAO;
+	private static ParticionLiquidacionDAO particionLiquidacionDAO;
+	private static TransactionTemplate transactionTemplate;
+	private static JdbcTemplate jdbcTemplate;
+	private static RegistroCerrojos cerrojos;
+	private static CacheClientes cacheClientes;
+	private static CacheTarjetas cacheTarjetas;
+	private static AlmacenCompras almacenCompras;
+	private static volatile EscritorMovimientos escritorMovimientos;
+	private static volatile AvisosMovimientos avisosMovimientos;
+	private static DiarioEventos diarioEventos;
+	private static PuntoControlDiarioDAO puntoControlDiarioDAO;
+	private static RegistroApartadoDAO registroApartadoDAO;
+	private static volatile DiarioMovimientos diarioMovimientos;
+	private static volatile LibroCuentasFrecuentes libroCuentasFrecuentes;
+	private static volatile Metricas metricas;
+	private boolean diarioActivo;
+	private Path archivoDiario;
+	private int capacidadDiario;
+	private int loteDiario;
+	private long latenciaDiario;
 	
 	private Manager() {	}
 	
 	@Autowired
 	private void loadDAO(CuentaDAO cuentaDao, MovimientoCuentaDAO movimientoDao, 
 			ClienteDAO clienteDAO, MovimientoTarjetaCreditoDAO movimientoTCDAO, TarjetaDebitoDAO tarjetaDebitoDAO,
-			TarjetaCreditoDAO tarjetaCreditoDAO) {
+			TarjetaCreditoDAO tarjetaCreditoDAO, ParticionLiquidacionDAO particionLiquidacionDAO) {
 		Manager.cuentaDAO = cuentaDao;
 		Manager.movimientoDAO = movimientoDao;
 		Manager.clienteDAO = clienteDAO;
 		Manager.movimientoTarjetaCreditoDAO = movimientoTCDAO;
 		Manager.tarjetaDebitoDAO = tarjetaDebitoDAO;
 		Manager.tarjetaCreditoDAO = tarjetaCreditoDAO;
+		Manager.particionLiquidacionDAO = particionLiquidacionDAO;
+	}
+	
+	@Autowired
+	private void loadTransactionManager(PlatformTransactionManager transactionManager) {
+		Manager.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+	
+	@Autowired
+	private void loadJdbcTemplate(JdbcTemplate jdbcTemplate) {
+		Manager.jdbcTemplate = jdbcTemplate;
+	}
+	
+	@Autowired
+	private void loadCerrojos(@Value("${banco.cerrojos.franjas:256}") int franjas) {
+		Manager.cerrojos = new RegistroCerrojos(franjas);
+	}
+	
+	@Autowired
+	private void loadCaches(@Value("${banco.clientes.cache.tamano:10000}") int tamanoMaximo,
+			@Value("${banco.clientes.cache.ttl:300000}") long ttl) {
+		Manager.cacheClientes = new CacheClientes(tamanoMaximo, ttl);
+		Manager.cacheTarjetas = new CacheTarjetas();
+	}
+	
+	@Autowired
+	private void loadAlmacenCompras(CompraPendienteDAO compraPendienteDAO,
+			@Value("${banco.compras.almacen:memoria}") String almacen,
+			@Value("${banco.compras.tamano:100000}") int tamanoMaximo,
+			@Value("${banco.compras.ttl:300000}") long ttl,
+			@Value("${banco.compras.purga:60000}") long periodoPurga) {
+		if ("memoria".equals(almacen))
+			Manager.almacenCompras = new AlmacenComprasMemoria(tamanoMaximo, ttl);
+		else if ("basedatos".equals(almacen)) {
+			AlmacenComprasBaseDatos almacenBaseDatos = new AlmacenComprasBaseDatos(compraPendienteDAO, tamanoMaximo, ttl, periodoPurga);
+			almacenBaseDatos.iniciar();
+			Manager.almacenCompras = almacenBaseDatos;
+		} else
+			throw new IllegalArgumentException("Almacén de compras desconocido: " + almacen);
+	}
+	
+	@Autowired
+	private void loadEscritorMovimientos(@Value("${banco.movimientos.agrupados.activo:false}") boolean activo,
+			@Value("${banco.movimientos.agrupados.lote:100}") int tamanoLote,
+			@Value("${banco.movimientos.agrupados.latencia:5}") long latenciaMaxima) {
+		if (activo)
+			activarEscrituraAgrupada(tamanoLote, latenciaMaxima);
+	}
+	
+	/**
+	 * Los avisos solo se activan si hay un broker de mensajes configurado (ver
+	 * {@link edu.uclm.esi.iso2.banco20193capas.web.ConfiguracionAvisos}), lo que no ocurre si la aplicación
+	 * se arranca sin servidor web
+	 */
+	@Autowired
+	private void loadAvisosMovimientos(ObjectProvider<SimpMessageSendingOperations> mensajeria,
+			@Value("${banco.avisos.intervalo:1000}") long intervalo,
+			@Value("${banco.avisos.movimientos:20}") int maxMovimientos) {
+		SimpMessageSendingOperations operaciones = mensajeria.getIfAvailable();
+		if (operaciones != null) {
+			AvisosMovimientos avisos = new AvisosMovimientos(operaciones, intervalo, maxMovimientos);
+			avisos.iniciar();
+			Manager.avisosMovimientos = avisos;
+		}
+	}
+	
+	@Autowired
+	private void loadDiarioEventos(EventoDominioDAO eventoDAO, InstantaneaAgregadoDAO instantaneaDAO,
+			@Value("${banco.eventos.instantaneas.intervalo:100}") int intervalo,
+			@Value("${banco.eventos.instantaneas.margen:60000}") long margen,
+			@Value("${banco.eventos.instantaneas.periodo:60000}") long periodo) {
+		Manager.diarioEventos = new DiarioEventos(eventoDAO, instantaneaDAO, intervalo, margen);
+		Manager.diarioEventos.iniciar(periodo);
+	}
+	
+	@Autowired
+	private void loadDiarioMovimientos(PuntoControlDiarioDAO puntoControlDiarioDAO, RegistroApartadoDAO registroApartadoDAO,
+			@Value("${banco.diario.activo:false}") boolean activo,
+			@Value("${banco.diario.archivo:diario-movimientos.dat}") String archivo,
+			@Value("${banco.diario.capacidad:65536}") int capacidad,
+			@Value("${banco.diario.lote:500}") int tamanoLote,
+			@Value("${banco.diario.latencia:10}") long latenciaMaxima) {
+		Manager.puntoControlDiarioDAO = puntoControlDiarioDAO;
+		Manager.registroApartadoDAO = registroApartadoDAO;
+		this.diarioActivo = activo;
+		this.archivoDiario = Paths.get(archivo);
+		this.capacidadDiario = capacidad;
+		this.loteDiario = tamanoLote;
+		this.latenciaDiario = latenciaMaxima;
+	}
+	
+	@Autowired
+	private void loadLibroCuentasFrecuentes(@Value("${banco.cuentas.frecuentes.activo:false}") boolean activo,
+			@Value("${banco.cuentas.frecuentes.maximo:64}") int maximo,
+			@Value("${banco.cuentas.frecuentes.umbral:1000}") int umbral,
+			@Value("${banco.cuentas.frecuentes.movimientos:100}") int capacidad,
+			@Value("${banco.cuentas.frecuentes.periodo:10000}") long periodo,
+			@Value("${banco.cuentas.frecuentes.espera:100}") long esperaMaxima) {
+		if (activo)
+			activarLibroCuentasFrecuentes(maximo, umbral, capacidad, periodo, esperaMaxima);
+	}
+	
+	@Autowired
+	private void loadMetricas(@Value("${banco.metricas.activo:false}") boolean activo) {
+		if (activo)
+			activarMetricas();
+	}
+	
+	/**
+	 * El diario de movimientos se activa cuando ya están cargados todos los DAO, porque al activarlo se
+	 * aplican los movimientos que quedaron pendientes en su archivo
+	 */
+	@PostConstruct
+	private void iniciar() throws IOException {
+		if (this.diarioActivo)
+			activarDiarioMovimientos(this.archivoDiario, this.capacidadDiario, this.loteDiario, this.latenciaDiario);
+	}
+	
+	@PreDestroy
+	private void detener() {
+		desactivarMetricas();
+		desactivarLibroCuentasFrecuentes();
+		desactivarDiarioMovimientos();
+		diarioEventos.detener();
+		desactivarEscrituraAgrupada();
+		setAvisosMovimientos(null);
+		if (almacenCompras instanceof AlmacenComprasBaseDatos)
+			((AlmacenComprasBaseDatos) almacenCompras).detener();
+	}
+	
+	/**
+	 * Activa la escritura agrupada de movimientos (ver {@link EscritorMovimientos})
+	 * @param tamanoLote	Número máximo de movimientos por lote
+	 * @param latenciaMaxima	Tiempo máximo, en milisegundos, que un movimiento espera a que se complete su lote
+	 */
+	public static synchronized void activarEscrituraAgrupada(int tamanoLote, long latenciaMaxima) {
+		desactivarEscrituraAgrupada();
+		EscritorMovimientos escritor = new EscritorMovimientos(tamanoLote, latenciaMaxima);
+		escritor.iniciar();
+		Manager.escritorMovimientos = escritor;
+	}
+	
+	/**
+	 * Desactiva la escritura agrupada de movimientos, después de guardar los que estuvieran pendientes
+	 */
+	public static synchronized void desactivarEscrituraAgrupada() {
+		EscritorMovimientos escritor = Manager.escritorMovimientos;
+		Manager.escritorMovimientos = null;
+		if (escritor != null)
+			escritor.detener();
+	}
+	
+	/**
+	 * Activa el diario de escritura anticipada de movimientos (ver {@link DiarioMovimientos}), después de aplicar
+	 * los movimientos que quedaran pendientes en su archivo
+	 * @param archivo	La ruta del archivo del diario
+	 * @param capacidad	Número de registros que caben en el archivo
+	 * @param tamanoLote	Número máximo de operaciones que se aplican en cada transacción
+	 * @param latenciaMaxima	Tiempo máximo, en milisegundos, que una operación espera a que se complete su lote de aplicación
+	 * @throws IOException	Si no puede abrirse el archivo
+	 */
+	public static synchronized void activarDiarioMovimientos(Path archivo, int capacidad, int tamanoLote, long latenciaMaxima)
+			throws IOException {
+		desactivarDiarioMovimientos();
+		DiarioMovimientos diario = new DiarioMovimientos(puntoControlDiarioDAO, registroApartadoDAO, archivo, capacidad, tamanoLote, latenciaMaxima);
+		diario.iniciar();
+		Manager.diarioMovimientos = diario;
+	}
+	
+	/**
+	 * Desactiva el diario de movimientos, después de aplicar los que estuvieran pendientes. Hasta entonces, el
+	 * saldo de las cuentas sigue teniendo en cuenta los movimientos pendientes
+	 */
+	public static synchronized void desactivarDiarioMovimientos() {
+		DiarioMovimientos diario = Manager.diarioMovimientos;
+		if (diario != null)
+			diario.detener();
+		Manager.diarioMovimientos = null;
+	}
+	
+	/**
+	 * Activa el libro en memoria de las cuentas más consultadas (ver {@link LibroCuentasFrecuentes})
+	 * @param maximo	Número máximo de cuentas en el libro
+	 * @param umbral	Número mínimo de consultas de una cuenta en un periodo para que entre en el libro
+	 * @param capacidad	Número de movimientos que se guardan de cada cuenta
+	 * @param periodo	Tiempo, en milisegundos, entre dos revisiones de las consultas
+	 * @param esperaMaxima	Tiempo máximo, en milisegundos, que la carga de una cuenta espera a que se anoten sus
+	 * movimientos confirmados
+	 */
+	public static synchronized void activarLibroCuentasFrecuentes(int maximo, int umbral, int capacidad, long periodo, long esperaMaxima) {
+		desactivarLibroCuentasFrecuentes();
+		LibroCuentasFrecuentes libro = new LibroCuentasFrecuentes(maximo, umbral, capacidad, periodo, esperaMaxima);
+		libro.iniciar();
+		Manager.libroCuentasFrecuentes = libro;
+	}
+	
+	/**
+	 * Desactiva el libro de las cuentas más consultadas, cuyo saldo vuelve a leerse de la base de datos
+	 */
+	public static synchronized void desactivarLibroCuentasFrecuentes() {
+		LibroCuentasFrecuentes libro = Manager.libroCuentasFrecuentes;
+		Manager.libroCuentasFrecuentes = null;
+		if (libro != null)
+			libro.detener();
+	}
+	
+	/**
+	 * Activa unas métricas nuevas de las operaciones (ver {@link Metricas}), y las publica como MXBean en
+	 * lugar de las anteriores
+	 */
+	public static synchronized void activarMetricas() {
+		desactivarMetricas();
+		Metricas nuevas = new Metricas();
+		try {
+			MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+			ObjectName nombre = new ObjectName(Metricas.NOMBRE_JMX);
+			if (servidor.isRegistered(nombre))
+				servidor.unregisterMBean(nombre);
+			servidor.registerMBean(nuevas, nombre);
+		} catch (JMException e) {
+			throw new IllegalStateException("No se pueden publicar las métricas", e);
+		}
+		Manager.metricas = nuevas;
+	}
+	
+	/**
+	 * Desactiva las métricas de las operaciones, que dejan de medirse y de publicarse
+	 */
+	public static synchronized void desactivarMetricas() {
+		if (Manager.metricas == null)
+			return;
+		Manager.metricas = null;
+		try {
+			MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+			ObjectName nombre = new ObjectName(Metricas.NOMBRE_JMX);
+			if (servidor.isRegistered(nombre))
+				servidor.unregisterMBean(nombre);
+		} catch (JMException e) {
+			throw new IllegalStateException("No se pueden retirar las métricas", e);
+		}
 	}
 	
 	public static CuentaDAO getCuentaDAO() {
@@ -60,4 +348,93 @@ public class Manager {
 	public static TarjetaCreditoDAO getTarjetaCreditoDAO() {
 		return tarjetaCreditoDAO;
 	}
+	
+	public static ParticionLiquidacionDAO getParticionLiquidacionDAO() {
+		return particionLiquidacionDAO;
+	}
+	
+	public static TransactionTemplate getTransactionTemplate() {
+		return transactionTemplate;
+	}
+	
+	/**
+	 * @return	Acceso JDBC directo, para las operaciones masivas que no pasan por las entidades (ver {@link CargadorMasivo})
+	 */
+	public static JdbcTemplate getJdbcTemplate() {
+		return jdbcTemplate;
+	}
+	
+	public static RegistroCerrojos getCerrojos() {
+		return cerrojos;
+	}
+	
+	public static CacheClientes getCacheClientes() {
+		return cacheClientes;
+	}
+	
+	public static CacheTarjetas getCacheTarjetas() {
+		return cacheTarjetas;
+	}
+	
+	public static AlmacenCompras getAlmacenCompras() {
+		return almacenCompras;
+	}
+	
+	/**
+	 * Sustituye el almacén de compras pendientes. Las compras pendientes en el almacén anterior se pierden
+	 * @param almacenCompras	El nuevo almacén
+	 */
+	public static void setAlmacenCompras(AlmacenCompras almacenCompras) {
+		Manager.almacenCompras = almacenCompras;
+	}
+	
+	/**
+	 * @return	El escritor agrupado de movimientos, o null si la escritura agrupada no está activa
+	 */
+	public static EscritorMovimientos getEscritorMovimientos() {
+		return escritorMovimientos;
+	}
+	
+	/**
+	 * @return	El diario de escritura anticipada de movimientos, o null si no está activo
+	 */
+	public static DiarioMovimientos getDiarioMovimientos() {
+		return diarioMovimientos;
+	}
+	
+	/**
+	 * @return	El libro en memoria de las cuentas más consultadas, o null si no está activo
+	 */
+	public static LibroCuentasFrecuentes getLibroCuentasFrecuentes() {
+		return libroCuentasFrecuentes;
+	}
+	
+	/**
+	 * @return	Las métricas de las operaciones, o null si no están activas
+	 */
+	public static Metricas getMetricas() {
+		return metricas;
+	}
+	
+	public static DiarioEventos getDiarioEventos() {
+		return diarioEventos;
+	}
+	
+	/**
+	 * @return	Los avisos de movimientos a los suscriptores de cada cuenta, o null si no están activos
+	 */
+	public static AvisosMovimientos getAvisosMovimientos() {
+		return avisosMovimientos;
+	}
+	
+	/**
+	 * Sustituye los avisos de movimientos, deteniendo los anteriores
+	 * @param avisos	Los nuevos avisos, o null para desactivarlos
+	 */
+	public static synchronized void setAvisosMovimientos(AvisosMovimientos avisos) {
+		AvisosMovimientos anteriores = Manager.avisosMovimientos;
+		Manager.avisosMovimientos = avisos;
+		if (anteriores != null && anteriores != avisos)
+			anteriores.detener();
+	}
 }
@@ -0,0 +1,246 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de las operaciones de dominio: para cada operación, el número de llamadas y un histograma de su
+ * duración; el número de veces que se ha lanzado cada excepción en esas operaciones, y el número de
+ * llamadas y la duración de cada método de los DAO (ver
+ * {@link edu.uclm.esi.iso2.banco20193capas.dao.MedidorDAO}).
+ *
+ * Cada operación se mide llamando a {@link #iniciar()} al empezar, a {@link #fallo(Operacion, Exception)} si
+ * lanza una excepción y a {@link #terminar(Operacion, long)} en un bloque finally, sin crear ningún objeto;
+ * ninguno de los tres lee el reloj si las métricas no están activas (ver {@link Manager#activarMetricas()}). Las métricas se publican en
+ * {@code /api/metricas} y como MXBean.
+ *
+ */
+public class Metricas implements MetricasMXBean {
+	/**
+	 * Nombre con el que se publican las métricas activas por JMX
+	 */
+	public static final String NOMBRE_JMX = "edu.uclm.esi.iso2.banco20193capas:type=Metricas";
+
+	/**
+	 * Las operaciones de dominio que se miden
+	 */
+	public enum Operacion {
+		INGRESAR, RETIRAR, TRANSFERIR, GET_SALDO, SACAR_DINERO, COMPRAR, COMPRAR_POR_INTERNET, CONFIRMAR_COMPRA, LIQUIDAR
+	}
+
+	private final Temporizador[] operaciones;
+	private final ConcurrentHashMap<String, LongAdder> excepciones = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Temporizador> dao = new ConcurrentHashMap<>();
+
+	public Metricas() {
+		this.operaciones = new Temporizador[Operacion.values().length];
+		for (int i = 0; i < this.operaciones.length; i++)
+			this.operaciones[i] = new Temporizador();
+	}
+
+	/**
+	 * Marca el inicio de una operación
+	 * @return	El instante de inicio, en nanosegundos, o 0 si las métricas no están activas
+	 */
+	public static long iniciar() {
+		return Manager.getMetricas() == null ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * Anota la duración de una operación, tanto si ha terminado bien como si ha lanzado una excepción
+	 * @param operacion	La operación
+	 * @param inicio	El valor devuelto por {@link #iniciar()} al empezar la operación
+	 */
+	public static void terminar(Operacion operacion, long inicio) {
+		Metricas metricas = Manager.getMetricas();
+		if (metricas != null && inicio != 0)
+			metricas.operaciones[operacion.ordinal()].anotar(System.nanoTime() - inicio);
+	}
+
+	/**
+	 * Cuenta una excepción lanzada por una operación. Las excepciones se cuentan por operación, de forma que una
+	 * excepción que atraviesa dos operaciones medidas (por ejemplo, la retirada de la cuenta al sacar dinero con
+	 * una tarjeta de débito) se cuenta en las dos
+	 * @param operacion	La operación
+	 * @param excepcion	La excepción
+	 */
+	public static void fallo(Operacion operacion, Exception excepcion) {
+		Metricas metricas = Manager.getMetricas();
+		if (metricas != null)
+			contar(metricas.excepciones, operacion.name() + "." + excepcion.getClass().getSimpleName());
+	}
+
+	/**
+	 * @param metodo	El nombre de un método de un DAO, con el nombre del DAO (por ejemplo, {@code CuentaDAO.findSaldoById})
+	 * @return	El temporizador de las llamadas al método
+	 */
+	public Temporizador getTemporizadorDAO(String metodo) {
+		Temporizador temporizador = this.dao.get(metodo);
+		if (temporizador == null) {
+			Temporizador nuevo = new Temporizador();
+			temporizador = this.dao.putIfAbsent(metodo, nuevo);
+			if (temporizador == null)
+				temporizador = nuevo;
+		}
+		return temporizador;
+	}
+
+	/**
+	 * @param operacion	Una operación
+	 * @return	El temporizador de la operación
+	 */
+	public Temporizador getTemporizador(Operacion operacion) {
+		return this.operaciones[operacion.ordinal()];
+	}
+
+	/**
+	 * @return	El resumen de cada operación que se ha llamado alguna vez, por nombre de la operación
+	 */
+	@Override
+	public Map<String, Resumen> getOperaciones() {
+		Map<String, Resumen> resumen = new TreeMap<>();
+		for (Operacion operacion : Operacion.values()) {
+			Temporizador temporizador = this.operaciones[operacion.ordinal()];
+			if (temporizador.getLlamadas() > 0)
+				resumen.put(operacion.name(), temporizador.resumir());
+		}
+		return resumen;
+	}
+
+	/**
+	 * @return	El número de veces que se ha lanzado cada excepción, por operación y nombre de la excepción (por
+	 * ejemplo, {@code RETIRAR.SaldoInsuficienteException})
+	 */
+	@Override
+	public Map<String, Long> getExcepciones() {
+		Map<String, Long> resumen = new TreeMap<>();
+		for (Map.Entry<String, LongAdder> excepcion : this.excepciones.entrySet())
+			resumen.put(excepcion.getKey(), excepcion.getValue().sum());
+		return resumen;
+	}
+
+	/**
+	 * @return	El resumen de cada método de los DAO que se ha llamado alguna vez
+	 */
+	@Override
+	public Map<String, Resumen> getDao() {
+		Map<String, Resumen> resumen = new TreeMap<>();
+		for (Map.Entry<String, Temporizador> metodo : this.dao.entrySet())
+			resumen.put(metodo.getKey(), metodo.getValue().resumir());
+		return resumen;
+	}
+
+	private static void contar(ConcurrentHashMap<String, LongAdder> contadores, String nombre) {
+		LongAdder contador = contadores.get(nombre);
+		if (contador == null) {
+			LongAdder nuevo = new LongAdder();
+			contador = contadores.putIfAbsent(nombre, nuevo);
+			if (contador == null)
+				contador = nuevo;
+		}
+		contador.increment();
+	}
+
+	/**
+	 * Número de llamadas y histograma de la duración de una operación. Cada cubeta del histograma cuenta las
+	 * llamadas que han durado menos del doble que las de la cubeta anterior, a partir de un microsegundo, por
+	 * lo que los percentiles se conocen con un error de como mucho el doble
+	 */
+	public static class Temporizador {
+		private static final int CUBETAS = 32;
+
+		private final LongAdder llamadas = new LongAdder();
+		private final LongAdder total = new LongAdder();
+		private final AtomicLong maximo = new AtomicLong();
+		private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+
+		/**
+		 * @param nanos	La duración de una llamada, en nanosegundos
+		 */
+		public void anotar(long nanos) {
+			long micros = Math.max(0, nanos / 1000);
+			this.llamadas.increment();
+			this.total.add(micros);
+			this.cubetas.incrementAndGet(Math.min(CUBETAS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+			long anterior = this.maximo.get();
+			while (micros > anterior && !this.maximo.compareAndSet(anterior, micros))
+				anterior = this.maximo.get();
+		}
+
+		public long getLlamadas() {
+			return this.llamadas.sum();
+		}
+
+		/**
+		 * @param percentil	El percentil, entre 0 y 1
+		 * @return	La duración, en microsegundos, que no supera esa fracción de las llamadas (el límite superior de su cubeta)
+		 */
+		public long getPercentil(double percentil) {
+			long[] cuentas = new long[CUBETAS];
+			long n = 0;
+			for (int i = 0; i < CUBETAS; i++) {
+				cuentas[i] = this.cubetas.get(i);
+				n = n + cuentas[i];
+			}
+			long objetivo = (long) Math.ceil(percentil * n);
+			long acumuladas = 0;
+			for (int i = 0; i < CUBETAS; i++) {
+				acumuladas = acumuladas + cuentas[i];
+				if (acumuladas >= objetivo && acumuladas > 0)
+					return Math.min(this.maximo.get(), (1L << i) - 1);
+			}
+			return 0;
+		}
+
+		Resumen resumir() {
+			long n = this.getLlamadas();
+			return new Resumen(n, n == 0 ? 0 : (double) this.total.sum() / n, this.maximo.get(), this.getPercentil(0.5),
+					this.getPercentil(0.99));
+		}
+	}
+
+	/**
+	 * Resumen de un temporizador. Las duraciones están en microsegundos
+	 */
+	public static class Resumen {
+		private final long llamadas;
+		private final double media;
+		private final long maximo;
+		private final long mediana;
+		private final long percentil99;
+
+		@ConstructorProperties({ "llamadas", "media", "maximo", "mediana", "percentil99" })
+		public Resumen(long llamadas, double media, long maximo, long mediana, long percentil99) {
+			this.llamadas = llamadas;
+			this.media = media;
+			this.maximo = maximo;
+			this.mediana = mediana;
+			this.percentil99 = percentil99;
+		}
+
+		public long getLlamadas() {
+			return llamadas;
+		}
+
+		public double getMedia() {
+			return media;
+		}
+
+		public long getMaximo() {
+			return maximo;
+		}
+
+		public long getMediana() {
+			return mediana;
+		}
+
+		public long getPercentil99() {
+			return percentil99;
+		}
+	}
+}
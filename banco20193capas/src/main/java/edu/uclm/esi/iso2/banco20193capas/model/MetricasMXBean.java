@@ -0,0 +1,17 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.Map;
+
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas.Resumen;
+
+/**
+ * Vista JMX de las {@link Metricas}, que se registra como {@code edu.uclm.esi.iso2.banco20193capas:type=Metricas}
+ *
+ */
+public interface MetricasMXBean {
+	Map<String, Resumen> getOperaciones();
+
+	Map<String, Long> getExcepciones();
+
+	Map<String, Resumen> getDao();
+}
@@ -0,0 +1,141 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.LiquidacionIncompletaException;
+
+/**
+ * Liquida de forma masiva todas las tarjetas de crédito del banco (ver {@link TarjetaCredito#liquidar()}).
+ * Las tarjetas se reparten en particiones por rango de id, y cada partición se liquida en su propia
+ * transacción en un conjunto acotado de hilos. Cada partición liquidada deja un punto de control
+ * ({@link ParticionLiquidacion}), de forma que si la ejecución se interrumpe, al relanzarla con el
+ * mismo identificador solo se procesan las particiones pendientes.
+ *
+ * Si el diario de movimientos está activo, cada partición espera antes a que se apliquen los movimientos ya
+ * anotados en él, para liquidar también las compras que aún no se han llevado a la base de datos.
+ *
+ */
+public class MotorLiquidacion {
+	private int hilos;
+	private long tamanoParticion;
+
+	/**
+	 * @param hilos	Número máximo de particiones que se liquidan a la vez
+	 * @param tamanoParticion	Número de ids de tarjeta que abarca cada partición
+	 */
+	public MotorLiquidacion(int hilos, long tamanoParticion) {
+		if (hilos <= 0 || tamanoParticion <= 0)
+			throw new IllegalArgumentException("El número de hilos y el tamaño de partición deben ser positivos");
+		this.hilos = hilos;
+		this.tamanoParticion = tamanoParticion;
+	}
+
+	/**
+	 * Liquida todas las tarjetas de crédito
+	 * @param ejecucion	Identificador de la ejecución (por ejemplo, el periodo que se liquida). Las particiones
+	 * 					ya liquidadas con este identificador no se vuelven a liquidar
+	 * @return	El resultado de la liquidación, con su rendimiento
+	 * @throws LiquidacionIncompletaException	Si alguna partición no se ha podido liquidar. Las demás quedan
+	 * 					liquidadas, y basta con relanzar la ejecución para completarla
+	 */
+	public ResultadoLiquidacion liquidar(String ejecucion) throws LiquidacionIncompletaException {
+		long inicio = System.currentTimeMillis();
+		Long minimo = Manager.getTarjetaCreditoDAO().findMinId();
+		Long maximo = Manager.getTarjetaCreditoDAO().findMaxId();
+		if (minimo == null)
+			return new ResultadoLiquidacion(ejecucion, 0, 0, 0, 0, 0);
+
+		Set<String> liquidadas = new HashSet<>();
+		for (ParticionLiquidacion particion : Manager.getParticionLiquidacionDAO().findByEjecucion(ejecucion))
+			liquidadas.add(particion.getId());
+
+		int omitidas = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(this.hilos);
+		List<Future<ParticionLiquidacion>> pendientes = new ArrayList<>();
+		try {
+			for (long desde = minimo; desde <= maximo; desde = desde + this.tamanoParticion) {
+				ParticionLiquidacion particion = new ParticionLiquidacion(ejecucion, desde, Math.min(desde + this.tamanoParticion - 1, maximo));
+				if (liquidadas.contains(particion.getId()))
+					omitidas++;
+				else
+					pendientes.add(pool.submit(this.tarea(particion)));
+			}
+
+			int fallidas = 0;
+			Throwable causa = null;
+			long tarjetas = 0, movimientos = 0;
+			for (Future<ParticionLiquidacion> pendiente : pendientes) {
+				try {
+					ParticionLiquidacion particion = pendiente.get();
+					tarjetas = tarjetas + particion.getTarjetas();
+					movimientos = movimientos + particion.getMovimientos();
+				} catch (ExecutionException e) {
+					fallidas++;
+					causa = e.getCause();
+				}
+			}
+			if (fallidas > 0)
+				throw new LiquidacionIncompletaException(ejecucion, fallidas, causa);
+			return new ResultadoLiquidacion(ejecucion, pendientes.size(), omitidas, tarjetas, movimientos, System.currentTimeMillis() - inicio);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LiquidacionIncompletaException(ejecucion, pendientes.size(), e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private Callable<ParticionLiquidacion> tarea(final ParticionLiquidacion particion) {
+		return new Callable<ParticionLiquidacion>() {
+			@Override
+			public ParticionLiquidacion call() {
+				DiarioMovimientos diario = Manager.getDiarioMovimientos();
+				if (diario != null)
+					diario.esperarAplicados();
+				return Manager.getTransactionTemplate().execute(new TransactionCallback<ParticionLiquidacion>() {
+					@Override
+					public ParticionLiquidacion doInTransaction(TransactionStatus status) {
+						return liquidar(particion);
+					}
+				});
+			}
+		};
+	}
+
+	/**
+	 * Liquida las tarjetas de una partición. Como en {@link TarjetaCredito#liquidar()}, los movimientos se marcan
+	 * primero con un identificador propio de esta liquidación y después se suman sobre ese identificador, de forma
+	 * que se carga exactamente lo que se ha marcado aunque se guarden compras de la partición a la vez; las que
+	 * se confirman después de marcar quedan para la siguiente liquidación. Los cargos se hacen en orden de id
+	 * de cuenta para que dos particiones que cargan en las mismas cuentas las bloqueen siempre en el mismo orden
+	 */
+	private ParticionLiquidacion liquidar(ParticionLiquidacion particion) {
+		String liquidacion = UUID.randomUUID().toString();
+		int movimientos = Manager.getMovimientoTarjetaCreditoDAO().liquidarByTarjetaIdBetween(particion.getDesde(), particion.getHasta(), liquidacion);
+		List<Object[]> gastos = movimientos == 0 ? Collections.<Object[]>emptyList()
+				: Manager.getMovimientoTarjetaCreditoDAO().sumImporteByLiquidacionGroupByTarjeta(liquidacion);
+		for (Object[] gastosTarjeta : gastos) {
+			Cuenta cuenta = new Cuenta((Long) gastosTarjeta[1]);
+			long importe = ((Number) gastosTarjeta[2]).longValue();
+			cuenta.retiroForzosoCentimos(importe, "Liquidación de tarjeta de crédito");
+			Manager.getDiarioEventos().anotar(EventoDominio.liquidacion((Long) gastosTarjeta[0], importe));
+		}
+		particion.setTarjetas(gastos.size());
+		particion.setMovimientos(movimientos);
+		Manager.getParticionLiquidacionDAO().save(particion);
+		return particion;
+	}
+}
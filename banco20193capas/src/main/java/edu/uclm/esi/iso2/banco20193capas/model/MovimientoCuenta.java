@@ -1,34 +1,65 @@
 package edu.uclm.esi.iso2.banco20193capas.model;
 
+import java.time.Instant;
+
+import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 
 /**
  * Representa un movimiento en una cuenta bancaria
  * 
  */
 @Entity
+@EntityListeners(OyenteMovimientos.class)
+@Table(indexes = { @Index(name = "ix_movimiento_cuenta_cuenta", columnList = "cuenta_id, id"),
+		@Index(name = "ix_movimiento_cuenta_fecha", columnList = "cuenta_id, fecha"),
+		@Index(name = "ix_movimiento_cuenta_auditoria", columnList = "fecha") })
 public class MovimientoCuenta {
-	@Id @GeneratedValue(strategy = GenerationType.AUTO) 
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimiento_cuenta")
+	@SequenceGenerator(name = "movimiento_cuenta", sequenceName = "movimiento_cuenta_seq", allocationSize = 50)
 	private Long id;
 	@ManyToOne
 	private Cuenta cuenta;
 	
-	private double importe;
+	/** En céntimos (ver {@link Centimos}) */
+	@Column(name = "importe_centimos")
+	private long importe;
 	private String concepto;
+	private Instant fecha;
 	
 	public MovimientoCuenta() {
 	}
 
 	public MovimientoCuenta(Cuenta cuenta, double importe, String concepto) {
-		this.importe = importe;
+		this(cuenta, Centimos.de(importe), concepto);
+	}
+
+	private MovimientoCuenta(Cuenta cuenta, long centimos, String concepto) {
+		this.importe = centimos;
 		this.concepto = concepto;
+		this.fecha = Instant.now();
 		this.cuenta = cuenta;
 	}
 
+	/**
+	 * @param cuenta	La cuenta
+	 * @param centimos	El importe en céntimos
+	 * @param concepto	El concepto
+	 * @return	El movimiento
+	 */
+	public static MovimientoCuenta enCentimos(Cuenta cuenta, long centimos, String concepto) {
+		return new MovimientoCuenta(cuenta, centimos, concepto);
+	}
+
 	public Long getId() {
 		return id;
 	}
@@ -46,11 +77,19 @@ public class MovimientoCuenta {
 	}
 
 	public double getImporte() {
-		return importe;
+		return Centimos.aEuros(importe);
 	}
 
 	public void setImporte(double importe) {
-		this.importe = importe;
+		this.importe = Centimos.de(importe);
+	}
+
+	public long getCentimos() {
+		return importe;
+	}
+
+	public void setCentimos(long centimos) {
+		this.importe = centimos;
 	}
 
 	public String getConcepto() {
@@ -60,4 +99,15 @@ public class MovimientoCuenta {
 	public void setConcepto(String concepto) {
 		this.concepto = concepto;
 	}
+
+	/**
+	 * @return	El instante en que se creó el movimiento. Los movimientos con la misma fecha se ordenan por id
+	 */
+	public Instant getFecha() {
+		return fecha;
+	}
+
+	public void setFecha(Instant fecha) {
+		this.fecha = fecha;
+	}
 }
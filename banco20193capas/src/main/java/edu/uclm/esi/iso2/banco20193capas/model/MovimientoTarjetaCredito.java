@@ -1,35 +1,68 @@
 package edu.uclm.esi.iso2.banco20193capas.model;
 
+import java.time.Instant;
+
+import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 
 /**
  * Representa un movimiento asociado a una tarjeta de crédito
  *
  */
 @Entity
+@EntityListeners(OyenteMovimientos.class)
+@Table(indexes = { @Index(name = "ix_movimiento_tc_tarjeta_liquidado", columnList = "tarjeta_id, liquidado"),
+		@Index(name = "ix_movimiento_tc_tarjeta_fecha", columnList = "tarjeta_id, fecha"),
+		@Index(name = "ix_movimiento_tc_liquidacion", columnList = "liquidacion") })
 public class MovimientoTarjetaCredito {
-	@Id @GeneratedValue(strategy = GenerationType.AUTO) 
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "movimiento_tarjeta_credito")
+	@SequenceGenerator(name = "movimiento_tarjeta_credito", sequenceName = "movimiento_tarjeta_credito_seq", allocationSize = 50)
 	private Long id;
 	@ManyToOne
 	private TarjetaCredito tarjeta;
 	
-	private double importe;
+	/** En céntimos (ver {@link Centimos}) */
+	@Column(name = "importe_centimos")
+	private long importe;
 	private String concepto;
+	private Instant fecha;
 	private boolean liquidado;
+	/** Identificador de la liquidación en la que se ha liquidado el movimiento (ver {@link TarjetaCredito#liquidar()}) */
+	private String liquidacion;
 	
 	public MovimientoTarjetaCredito() {
 	}
 
 	public MovimientoTarjetaCredito(TarjetaCredito tarjeta, double importe, String concepto) {
-		this.importe = importe;
+		this(tarjeta, Centimos.de(importe), concepto);
+	}
+
+	private MovimientoTarjetaCredito(TarjetaCredito tarjeta, long centimos, String concepto) {
+		this.importe = centimos;
 		this.concepto = concepto;
+		this.fecha = Instant.now();
 		this.tarjeta = tarjeta;
 	}
 
+	/**
+	 * @param tarjeta	La tarjeta
+	 * @param centimos	El importe en céntimos
+	 * @param concepto	El concepto
+	 * @return	El movimiento
+	 */
+	public static MovimientoTarjetaCredito enCentimos(TarjetaCredito tarjeta, long centimos, String concepto) {
+		return new MovimientoTarjetaCredito(tarjeta, centimos, concepto);
+	}
+
 	public Long getId() {
 		return id;
 	}
@@ -47,11 +80,19 @@ public class MovimientoTarjetaCredito {
 	}
 
 	public double getImporte() {
-		return importe;
+		return Centimos.aEuros(importe);
 	}
 
 	public void setImporte(double importe) {
-		this.importe = importe;
+		this.importe = Centimos.de(importe);
+	}
+
+	public long getCentimos() {
+		return importe;
+	}
+
+	public void setCentimos(long centimos) {
+		this.importe = centimos;
 	}
 
 	public String getConcepto() {
@@ -69,6 +110,25 @@ public class MovimientoTarjetaCredito {
 	public void setLiquidado(boolean liquidado) {
 		this.liquidado = liquidado;
 	}
+
+	public String getLiquidacion() {
+		return liquidacion;
+	}
+
+	public void setLiquidacion(String liquidacion) {
+		this.liquidacion = liquidacion;
+	}
 	
 	
+
+	/**
+	 * @return	El instante en que se creó el movimiento. Los movimientos con la misma fecha se ordenan por id
+	 */
+	public Instant getFecha() {
+		return fecha;
+	}
+
+	public void setFecha(Instant fecha) {
+		this.fecha = fecha;
+	}
 }
@@ -0,0 +1,30 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import javax.persistence.PostPersist;
+
+/**
+ * Anota en los {@link AvisosMovimientos} y en el {@link LibroCuentasFrecuentes} los movimientos que se guardan
+ * a través de JPA. Los movimientos
+ * que se insertan directamente por JDBC (ver {@link CargadorMasivo}) se anotan explícitamente
+ *
+ */
+public class OyenteMovimientos {
+
+	/**
+	 * JPA solo admite un método por evento en cada oyente, así que el mismo método atiende a los dos tipos de movimiento
+	 * @param movimiento	Un {@link MovimientoCuenta} o un {@link MovimientoTarjetaCredito}
+	 */
+	@PostPersist
+	public void guardado(Object movimiento) {
+		LibroCuentasFrecuentes libro = Manager.getLibroCuentasFrecuentes();
+		if (libro != null && movimiento instanceof MovimientoCuenta)
+			libro.anotar((MovimientoCuenta) movimiento);
+		AvisosMovimientos avisos = Manager.getAvisosMovimientos();
+		if (avisos == null)
+			return;
+		if (movimiento instanceof MovimientoCuenta)
+			avisos.anotar((MovimientoCuenta) movimiento);
+		else if (movimiento instanceof MovimientoTarjetaCredito)
+			avisos.anotar((MovimientoTarjetaCredito) movimiento);
+	}
+}
@@ -0,0 +1,79 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Punto de control de una liquidación masiva (ver {@link MotorLiquidacion}): indica que el rango de
+ * tarjetas [desde, hasta] ya se ha liquidado en la ejecución indicada. Se guarda en la misma transacción
+ * que la propia liquidación del rango
+ *
+ */
+@Entity
+public class ParticionLiquidacion {
+	@Id
+	private String id;
+	private String ejecucion;
+	private Long desde;
+	private Long hasta;
+	private long tarjetas;
+	private long movimientos;
+
+	public ParticionLiquidacion() {
+	}
+
+	public ParticionLiquidacion(String ejecucion, Long desde, Long hasta) {
+		this.id = ejecucion + ":" + desde;
+		this.ejecucion = ejecucion;
+		this.desde = desde;
+		this.hasta = hasta;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getEjecucion() {
+		return ejecucion;
+	}
+
+	public void setEjecucion(String ejecucion) {
+		this.ejecucion = ejecucion;
+	}
+
+	public Long getDesde() {
+		return desde;
+	}
+
+	public void setDesde(Long desde) {
+		this.desde = desde;
+	}
+
+	public Long getHasta() {
+		return hasta;
+	}
+
+	public void setHasta(Long hasta) {
+		this.hasta = hasta;
+	}
+
+	public long getTarjetas() {
+		return tarjetas;
+	}
+
+	public void setTarjetas(long tarjetas) {
+		this.tarjetas = tarjetas;
+	}
+
+	public long getMovimientos() {
+		return movimientos;
+	}
+
+	public void setMovimientos(long movimientos) {
+		this.movimientos = movimientos;
+	}
+}
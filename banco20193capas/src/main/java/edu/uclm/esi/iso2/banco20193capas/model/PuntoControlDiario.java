@@ -0,0 +1,61 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.time.Instant;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Punto de control del diario de movimientos (ver {@link DiarioMovimientos}): indica el último registro del
+ * diario que ya se ha aplicado a la base de datos. Se guarda en la misma transacción que los movimientos
+ * que aplica, por lo que al arrancar solo se vuelven a aplicar los registros posteriores
+ *
+ */
+@Entity
+public class PuntoControlDiario {
+	/**
+	 * Solo hay un punto de control, con este id
+	 */
+	public static final Long ID = 1L;
+
+	@Id
+	private Long id;
+	private long secuencia;
+	private Instant fecha;
+
+	public PuntoControlDiario() {
+	}
+
+	public PuntoControlDiario(long secuencia) {
+		this.id = ID;
+		this.secuencia = secuencia;
+		this.fecha = Instant.now();
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return	La secuencia del último registro aplicado
+	 */
+	public long getSecuencia() {
+		return secuencia;
+	}
+
+	public void setSecuencia(long secuencia) {
+		this.secuencia = secuencia;
+	}
+
+	public Instant getFecha() {
+		return fecha;
+	}
+
+	public void setFecha(Instant fecha) {
+		this.fecha = fecha;
+	}
+}
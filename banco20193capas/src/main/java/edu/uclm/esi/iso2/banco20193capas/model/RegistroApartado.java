@@ -0,0 +1,149 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+
+import edu.uclm.esi.iso2.banco20193capas.model.RegistroDiario.Tipo;
+
+/**
+ * Registro del diario de movimientos que no ha podido aplicarse y se ha apartado (ver
+ * {@link DiarioMovimientos}). Se guarda en la misma transacción que el punto de control que lo deja atrás,
+ * de forma que un movimiento ya confirmado nunca desaparece: o se aplica al arrancar, o queda en esta tabla
+ *
+ */
+@Entity
+public class RegistroApartado {
+	@Id
+	private Long secuencia;
+	@Enumerated(EnumType.STRING)
+	private Tipo tipo;
+	private int restantes;
+	private Long cuentaOTarjetaId;
+	/** En céntimos (ver {@link Centimos}) */
+	@Column(name = "importe_centimos")
+	private long importe;
+	private String concepto;
+	private Instant fecha;
+	private Instant apartado;
+	private String causa;
+
+	public RegistroApartado() {
+	}
+
+	/**
+	 * @param registro	El registro del diario
+	 * @param causa	La excepción por la que no pudo aplicarse
+	 */
+	public RegistroApartado(RegistroDiario registro, Exception causa) {
+		this.secuencia = registro.getSecuencia();
+		this.tipo = registro.getTipo();
+		this.restantes = registro.getRestantes();
+		this.cuentaOTarjetaId = registro.getId();
+		this.importe = registro.getCentimos();
+		this.concepto = registro.getConcepto();
+		this.fecha = registro.getFecha();
+		this.apartado = Instant.now();
+		String mensaje = causa.getClass().getSimpleName() + ": " + causa.getMessage();
+		this.causa = mensaje.length() > 255 ? mensaje.substring(0, 255) : mensaje;
+	}
+
+	/**
+	 * @return	La secuencia del registro en el diario
+	 */
+	public Long getSecuencia() {
+		return secuencia;
+	}
+
+	public void setSecuencia(Long secuencia) {
+		this.secuencia = secuencia;
+	}
+
+	public Tipo getTipo() {
+		return tipo;
+	}
+
+	public void setTipo(Tipo tipo) {
+		this.tipo = tipo;
+	}
+
+	/**
+	 * @return	El número de registros de su grupo que siguen a este
+	 */
+	public int getRestantes() {
+		return restantes;
+	}
+
+	public void setRestantes(int restantes) {
+		this.restantes = restantes;
+	}
+
+	/**
+	 * @return	El id de la cuenta o de la tarjeta de crédito
+	 */
+	public Long getCuentaOTarjetaId() {
+		return cuentaOTarjetaId;
+	}
+
+	public void setCuentaOTarjetaId(Long cuentaOTarjetaId) {
+		this.cuentaOTarjetaId = cuentaOTarjetaId;
+	}
+
+	public double getImporte() {
+		return Centimos.aEuros(importe);
+	}
+
+	public void setImporte(double importe) {
+		this.importe = Centimos.de(importe);
+	}
+
+	public long getCentimos() {
+		return importe;
+	}
+
+	public void setCentimos(long centimos) {
+		this.importe = centimos;
+	}
+
+	public String getConcepto() {
+		return concepto;
+	}
+
+	public void setConcepto(String concepto) {
+		this.concepto = concepto;
+	}
+
+	public Instant getFecha() {
+		return fecha;
+	}
+
+	public void setFecha(Instant fecha) {
+		this.fecha = fecha;
+	}
+
+	/**
+	 * @return	El momento en que se apartó
+	 */
+	public Instant getApartado() {
+		return apartado;
+	}
+
+	public void setApartado(Instant apartado) {
+		this.apartado = apartado;
+	}
+
+	/**
+	 * @return	La excepción por la que no pudo aplicarse, con su mensaje
+	 */
+	public String getCausa() {
+		return causa;
+	}
+
+	public void setCausa(String causa) {
+		this.causa = causa;
+	}
+}
@@ -0,0 +1,163 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Registro de cerrojos por franjas que serializa, dentro de este proceso, las operaciones sobre una misma
+ * cuenta o tarjeta. Cada cuenta y cada tarjeta se asocia (por su id) a una de las franjas, de forma que
+ * las operaciones sobre cuentas o tarjetas distintas se ejecutan en paralelo salvo que coincidan en la
+ * misma franja. Cuando una operación necesita varias franjas, las bloquea siempre en orden ascendente,
+ * por lo que dos operaciones no pueden interbloquearse.
+ *
+ * Para cada franja se lleva la cuenta de las adquisiciones, las que han tenido que esperar, el tiempo
+ * total de espera y la longitud máxima de la cola, lo que permite dimensionar el número de franjas.
+ *
+ */
+public class RegistroCerrojos {
+	private final ReentrantLock[] cerrojos;
+	private final int mascara;
+	private final AtomicLongArray adquisiciones;
+	private final AtomicLongArray esperas;
+	private final AtomicLongArray tiempoEspera;
+	private final AtomicLongArray colaMaxima;
+
+	/**
+	 * @param franjas	El número de franjas, que se redondea a la siguiente potencia de 2
+	 */
+	public RegistroCerrojos(int franjas) {
+		if (franjas <= 0)
+			throw new IllegalArgumentException("El número de franjas debe ser positivo");
+		int n = Integer.highestOneBit(franjas);
+		if (n < franjas)
+			n = n << 1;
+		this.cerrojos = new ReentrantLock[n];
+		for (int i = 0; i < n; i++)
+			this.cerrojos[i] = new ReentrantLock();
+		this.mascara = n - 1;
+		this.adquisiciones = new AtomicLongArray(n);
+		this.esperas = new AtomicLongArray(n);
+		this.tiempoEspera = new AtomicLongArray(n);
+		this.colaMaxima = new AtomicLongArray(n);
+	}
+
+	/**
+	 * Bloquea las cuentas indicadas
+	 * @param ids	Los ids de las cuentas
+	 * @return	El bloqueo, que debe liberarse con {@link Bloqueo#close()}
+	 */
+	public Bloqueo bloquearCuentas(Long... ids) {
+		int[] franjas = new int[ids.length];
+		for (int i = 0; i < ids.length; i++)
+			franjas[i] = this.franja(ids[i], 0);
+		return this.bloquear(franjas);
+	}
+
+	/**
+	 * Bloquea una tarjeta y, si se indica, la cuenta a la que está asociada
+	 * @param tarjetaId	El id de la tarjeta
+	 * @param cuentaId	El id de la cuenta, o null si la operación no afecta a la cuenta
+	 * @return	El bloqueo, que debe liberarse con {@link Bloqueo#close()}
+	 */
+	public Bloqueo bloquearTarjeta(Long tarjetaId, Long cuentaId) {
+		if (cuentaId == null)
+			return this.bloquear(new int[] { this.franja(tarjetaId, 1) });
+		return this.bloquear(new int[] { this.franja(tarjetaId, 1), this.franja(cuentaId, 0) });
+	}
+
+	private int franja(Long id, int tipo) {
+		long h = (id == null ? 0 : id) * 2 + tipo;
+		h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+		h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		h = h ^ (h >>> 33);
+		return (int) h & this.mascara;
+	}
+
+	private Bloqueo bloquear(int[] franjas) {
+		Arrays.sort(franjas);
+		int n = 0;
+		for (int i = 0; i < franjas.length; i++)
+			if (i == 0 || franjas[i] != franjas[i - 1])
+				franjas[n++] = franjas[i];
+		int[] distintas = Arrays.copyOf(franjas, n);
+		for (int i = 0; i < distintas.length; i++)
+			this.adquirir(distintas[i]);
+		return new Bloqueo(distintas);
+	}
+
+	private void adquirir(int franja) {
+		ReentrantLock cerrojo = this.cerrojos[franja];
+		this.adquisiciones.incrementAndGet(franja);
+		if (cerrojo.tryLock())
+			return;
+		long inicio = System.nanoTime();
+		long cola = cerrojo.getQueueLength() + 1;
+		long maxima = this.colaMaxima.get(franja);
+		while (cola > maxima && !this.colaMaxima.compareAndSet(franja, maxima, cola))
+			maxima = this.colaMaxima.get(franja);
+		cerrojo.lock();
+		this.esperas.incrementAndGet(franja);
+		this.tiempoEspera.addAndGet(franja, System.nanoTime() - inicio);
+	}
+
+	public int getFranjas() {
+		return this.cerrojos.length;
+	}
+
+	/**
+	 * @return	El número de veces que se ha adquirido la franja
+	 */
+	public long getAdquisiciones(int franja) {
+		return this.adquisiciones.get(franja);
+	}
+
+	/**
+	 * @return	El número de adquisiciones de la franja que han tenido que esperar porque estaba bloqueada
+	 */
+	public long getEsperas(int franja) {
+		return this.esperas.get(franja);
+	}
+
+	/**
+	 * @return	El tiempo total, en nanosegundos, que se ha esperado por la franja
+	 */
+	public long getTiempoEspera(int franja) {
+		return this.tiempoEspera.get(franja);
+	}
+
+	/**
+	 * @return	El número de hilos que esperan ahora mismo por la franja
+	 */
+	public int getLongitudCola(int franja) {
+		return this.cerrojos[franja].getQueueLength();
+	}
+
+	/**
+	 * @return	El mayor número de hilos que han llegado a esperar a la vez por la franja
+	 */
+	public long getLongitudColaMaxima(int franja) {
+		return this.colaMaxima.get(franja);
+	}
+
+	/**
+	 * Un conjunto de franjas bloqueadas por el hilo actual
+	 *
+	 */
+	public class Bloqueo implements AutoCloseable {
+		private final int[] franjas;
+
+		private Bloqueo(int[] franjas) {
+			this.franjas = franjas;
+		}
+
+		/**
+		 * Libera las franjas en orden inverso al de bloqueo
+		 */
+		@Override
+		public void close() {
+			for (int i = this.franjas.length - 1; i >= 0; i--)
+				cerrojos[this.franjas[i]].unlock();
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.CRC32;
+
+/**
+ * Registro de tamaño fijo ({@link #TAMANO} bytes) del diario de movimientos (ver {@link DiarioMovimientos}).
+ * Cada registro guarda un movimiento de cuenta o de tarjeta de crédito y termina con el CRC32 de todos
+ * los bytes anteriores, de forma que un registro escrito a medias se detecta al leerlo.
+ *
+ * Los movimientos que deben aplicarse juntos (una retirada y su comisión) se escriben en registros
+ * consecutivos que forman un grupo: cada registro indica cuántos registros del grupo le siguen.
+ *
+ * Formato: secuencia (long), tipo (byte), restantes (byte), longitud del concepto (short), reservado (int),
+ * id de la cuenta o tarjeta (long), importe en céntimos (long), fecha en segundos (long) y nanosegundos (int),
+ * concepto en UTF-8 ({@link #MAX_CONCEPTO} bytes como máximo) y CRC32 (int). El concepto nunca se recorta:
+ * uno más largo se rechaza (ver {@link #comprobarConcepto(String)}).
+ *
+ */
+public class RegistroDiario {
+	public static final int TAMANO = 304;
+	public static final int MAX_CONCEPTO = 255;
+	private static final int CRC = TAMANO - 4;
+
+	public enum Tipo {
+		CUENTA, TARJETA_CREDITO
+	}
+
+	private long secuencia;
+	private final Tipo tipo;
+	private int restantes;
+	private final Long id;
+	private final long importe;
+	private final Instant fecha;
+	private final String concepto;
+
+	private RegistroDiario(Tipo tipo, Long id, long importe, Instant fecha, String concepto) {
+		this.tipo = tipo;
+		this.id = id;
+		this.importe = importe;
+		this.fecha = fecha;
+		this.concepto = comprobarConcepto(concepto == null ? "" : concepto);
+	}
+
+	public static RegistroDiario de(MovimientoCuenta movimiento) {
+		return new RegistroDiario(Tipo.CUENTA, movimiento.getCuenta().getId(), movimiento.getCentimos(), movimiento.getFecha(),
+				movimiento.getConcepto());
+	}
+
+	public static RegistroDiario de(MovimientoTarjetaCredito movimiento) {
+		return new RegistroDiario(Tipo.TARJETA_CREDITO, movimiento.getTarjeta().getId(), movimiento.getCentimos(),
+				movimiento.getFecha(), movimiento.getConcepto());
+	}
+
+	/**
+	 * @return	El movimiento de cuenta del registro, sin guardar
+	 */
+	public MovimientoCuenta getMovimientoCuenta() {
+		MovimientoCuenta movimiento = MovimientoCuenta.enCentimos(new Cuenta(this.id), this.importe, this.concepto);
+		movimiento.setFecha(this.fecha);
+		return movimiento;
+	}
+
+	/**
+	 * @param tarjeta	La tarjeta del registro
+	 * @return	El movimiento de tarjeta de crédito del registro, sin guardar
+	 */
+	public MovimientoTarjetaCredito getMovimientoTarjetaCredito(TarjetaCredito tarjeta) {
+		MovimientoTarjetaCredito movimiento = MovimientoTarjetaCredito.enCentimos(tarjeta, this.importe, this.concepto);
+		movimiento.setFecha(this.fecha);
+		return movimiento;
+	}
+
+	/**
+	 * Escribe el registro en la posición indicada
+	 * @param destino	El buffer en que se escribe
+	 * @param posicion	La posición, en bytes, del registro dentro del buffer
+	 */
+	public void escribir(ByteBuffer destino, int posicion) {
+		byte[] bytes = new byte[TAMANO];
+		ByteBuffer registro = ByteBuffer.wrap(bytes);
+		byte[] texto = this.concepto.getBytes(StandardCharsets.UTF_8);
+		registro.putLong(this.secuencia);
+		registro.put((byte) (this.tipo.ordinal() + 1));
+		registro.put((byte) this.restantes);
+		registro.putShort((short) texto.length);
+		registro.putInt(0);
+		registro.putLong(this.id);
+		registro.putLong(this.importe);
+		registro.putLong(this.fecha.getEpochSecond());
+		registro.putInt(this.fecha.getNano());
+		registro.put(texto);
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, CRC);
+		registro.putInt(CRC, (int) crc.getValue());
+		ByteBuffer copia = destino.duplicate();
+		copia.position(posicion);
+		copia.put(bytes);
+	}
+
+	/**
+	 * Lee el registro de la posición indicada
+	 * @param origen	El buffer del que se lee
+	 * @param posicion	La posición, en bytes, del registro dentro del buffer
+	 * @return	El registro, o null si no hay un registro válido en esa posición (nunca se escribió, o se escribió a medias)
+	 */
+	public static RegistroDiario leer(ByteBuffer origen, int posicion) {
+		byte[] bytes = new byte[TAMANO];
+		ByteBuffer copia = origen.duplicate();
+		copia.position(posicion);
+		copia.get(bytes);
+		ByteBuffer registro = ByteBuffer.wrap(bytes);
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, CRC);
+		if (registro.getInt(CRC) != (int) crc.getValue())
+			return null;
+		long secuencia = registro.getLong();
+		int tipo = registro.get();
+		int restantes = registro.get();
+		int longitud = registro.getShort();
+		registro.getInt();
+		if (tipo < 1 || tipo > Tipo.values().length || restantes < 0 || longitud < 0 || longitud > MAX_CONCEPTO)
+			return null;
+		Long id = registro.getLong();
+		long importe = registro.getLong();
+		Instant fecha = Instant.ofEpochSecond(registro.getLong(), registro.getInt());
+		byte[] texto = new byte[longitud];
+		registro.get(texto);
+		RegistroDiario leido = new RegistroDiario(Tipo.values()[tipo - 1], id, importe, fecha, new String(texto, StandardCharsets.UTF_8));
+		leido.secuencia = secuencia;
+		leido.restantes = restantes;
+		return leido;
+	}
+
+	/**
+	 * Comprueba que el concepto cabe en un registro
+	 * @param concepto	El concepto
+	 * @return	El mismo concepto
+	 * @throws IllegalArgumentException	Si el concepto ocupa más de {@link #MAX_CONCEPTO} bytes en UTF-8
+	 */
+	public static String comprobarConcepto(String concepto) {
+		if (concepto != null && concepto.getBytes(StandardCharsets.UTF_8).length > MAX_CONCEPTO)
+			throw new IllegalArgumentException("El concepto ocupa más de " + MAX_CONCEPTO + " bytes: " + concepto);
+		return concepto;
+	}
+
+	public long getSecuencia() {
+		return secuencia;
+	}
+
+	public void setSecuencia(long secuencia) {
+		this.secuencia = secuencia;
+	}
+
+	public Tipo getTipo() {
+		return tipo;
+	}
+
+	/**
+	 * @return	El número de registros de su grupo que siguen a este
+	 */
+	public int getRestantes() {
+		return restantes;
+	}
+
+	public void setRestantes(int restantes) {
+		this.restantes = restantes;
+	}
+
+	/**
+	 * @return	El id de la cuenta o de la tarjeta de crédito
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	public double getImporte() {
+		return Centimos.aEuros(importe);
+	}
+
+	public long getCentimos() {
+		return importe;
+	}
+
+	public Instant getFecha() {
+		return fecha;
+	}
+
+	public String getConcepto() {
+		return concepto;
+	}
+}
@@ -0,0 +1,80 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de la carga de un fichero con el {@link CargadorMasivo}
+ *
+ */
+public class ResultadoCarga {
+	static final int MAXIMO_ERRORES = 100;
+
+	private String tipo;
+	private long leidas;
+	private long cargadas;
+	private long rechazadas;
+	private List<String> errores = new ArrayList<>();
+	private long milisegundos;
+
+	ResultadoCarga(String tipo) {
+		this.tipo = tipo;
+	}
+
+	void cargadas(long filas) {
+		this.leidas = this.leidas + filas;
+		this.cargadas = this.cargadas + filas;
+	}
+
+	void rechazada(int linea, String motivo) {
+		this.leidas++;
+		this.rechazadas++;
+		if (this.errores.size() < MAXIMO_ERRORES)
+			this.errores.add("Línea " + linea + ": " + motivo);
+	}
+
+	void terminar(long milisegundos) {
+		this.milisegundos = milisegundos;
+	}
+
+	/**
+	 * @return	Lo que se ha cargado: clientes, cuentas o movimientos
+	 */
+	public String getTipo() {
+		return tipo;
+	}
+
+	public long getLeidas() {
+		return leidas;
+	}
+
+	public long getCargadas() {
+		return cargadas;
+	}
+
+	public long getRechazadas() {
+		return rechazadas;
+	}
+
+	/**
+	 * @return	El motivo del rechazo de las primeras filas rechazadas (como mucho, {@value #MAXIMO_ERRORES})
+	 */
+	public List<String> getErrores() {
+		return Collections.unmodifiableList(errores);
+	}
+
+	public long getMilisegundos() {
+		return milisegundos;
+	}
+
+	public double getFilasPorSegundo() {
+		return milisegundos == 0 ? leidas * 1000.0 : leidas * 1000.0 / milisegundos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Carga de %s: %d filas leídas, %d cargadas y %d rechazadas en %d ms (%.1f filas/s)",
+				tipo, leidas, cargadas, rechazadas, milisegundos, getFilasPorSegundo());
+	}
+}
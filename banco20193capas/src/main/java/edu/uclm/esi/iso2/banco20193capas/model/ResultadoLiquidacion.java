@@ -0,0 +1,71 @@
+package edu.uclm.esi.iso2.banco20193capas.model;
+
+/**
+ * Resultado de una ejecución del {@link MotorLiquidacion}
+ *
+ */
+public class ResultadoLiquidacion {
+	private String ejecucion;
+	private int particiones;
+	private int particionesOmitidas;
+	private long tarjetas;
+	private long movimientos;
+	private long milisegundos;
+
+	public ResultadoLiquidacion(String ejecucion, int particiones, int particionesOmitidas, long tarjetas, long movimientos, long milisegundos) {
+		this.ejecucion = ejecucion;
+		this.particiones = particiones;
+		this.particionesOmitidas = particionesOmitidas;
+		this.tarjetas = tarjetas;
+		this.movimientos = movimientos;
+		this.milisegundos = milisegundos;
+	}
+
+	public String getEjecucion() {
+		return ejecucion;
+	}
+
+	/**
+	 * @return	El número de particiones liquidadas en esta ejecución
+	 */
+	public int getParticiones() {
+		return particiones;
+	}
+
+	/**
+	 * @return	El número de particiones que no se han procesado por estar ya liquidadas en una ejecución anterior
+	 */
+	public int getParticionesOmitidas() {
+		return particionesOmitidas;
+	}
+
+	public long getTarjetas() {
+		return tarjetas;
+	}
+
+	public long getMovimientos() {
+		return movimientos;
+	}
+
+	public long getMilisegundos() {
+		return milisegundos;
+	}
+
+	public double getTarjetasPorSegundo() {
+		return porSegundo(tarjetas);
+	}
+
+	public double getMovimientosPorSegundo() {
+		return porSegundo(movimientos);
+	}
+
+	private double porSegundo(long n) {
+		return milisegundos == 0 ? n * 1000.0 : n * 1000.0 / milisegundos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Liquidación %s: %d particiones (%d omitidas), %d tarjetas, %d movimientos en %d ms (%.1f tarjetas/s, %.1f movimientos/s)",
+				ejecucion, particiones, particionesOmitidas, tarjetas, movimientos, milisegundos, getTarjetasPorSegundo(), getMovimientosPorSegundo());
+	}
+}
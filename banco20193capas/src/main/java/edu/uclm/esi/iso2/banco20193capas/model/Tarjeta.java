@@ -1,7 +1,5 @@
 package edu.uclm.esi.iso2.banco20193capas.model;
 
-import java.security.SecureRandom;
-
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -9,13 +7,13 @@ import javax.persistence.Id;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 import javax.persistence.ManyToOne;
-import javax.persistence.Transient;
 
 import edu.uclm.esi.iso2.banco20193capas.exceptions.ImporteInvalidoException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.PinInvalidoException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.TarjetaBloqueadaException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.TokenInvalidoException;
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas.Operacion;
 
 /**
  * Representa una tarjeta bancaria, bien de débito o bien de crédito.
@@ -32,9 +30,6 @@ public abstract class Tarjeta {
 	protected Boolean activa;
 	protected Integer intentos;
 
-	@Transient
-	protected Compra compra;
-	
 	@ManyToOne
 	protected Cliente titular;
 	
@@ -44,25 +39,60 @@ public abstract class Tarjeta {
 	public Tarjeta() {
 		activa = true;
 		this.intentos = 0;
-		SecureRandom dado = new SecureRandom();
-		pin = 0;
-		for (int i=0; i<=3; i++)
-			pin = (int) (pin + dado.nextInt(10) * Math.pow(10, i));	
+		pin = GeneradorClaves.generarPin();
 	}
 	
+	/**
+	 * Comprueba que la tarjeta está activa y que el pin es correcto, con el estado de la tarjeta que hay
+	 * en la {@link CacheTarjetas}. Un pin incorrecto suma un intento fallido, y al tercero se bloquea la
+	 * tarjeta; un pin correcto pone a cero los intentos fallidos. Los cambios de intentos se anotan en el
+	 * {@link DiarioEventos}
+	 * @param pin	El pin que introduce el usuario
+	 * @throws TarjetaBloqueadaException	Si la tarjeta está bloqueada
+	 * @throws PinInvalidoException	Si el pin es incorrecto
+	 */
 	protected void comprobar(int pin) throws TarjetaBloqueadaException, PinInvalidoException {
-		if (!this.isActiva())
+		EstadoTarjeta estado = this.sincronizar();
+		if (!estado.isActiva())
 			throw new TarjetaBloqueadaException();
-		if (this.pin!=pin) {
+		if (estado.getPin()!=pin) {
 			this.intentos++;
+			Manager.getDiarioEventos().anotar(EventoDominio.tarjeta(this.id, EventoDominio.Tipo.PIN_FALLIDO));
+			Manager.getCacheTarjetas().actualizar(this.id, estado.conIntentos(this.intentos));
 			if (intentos == 3)
 				bloquear();
 			throw new PinInvalidoException();
-		}		
+		}
+		if (estado.getIntentos()!=0) {
+			this.intentos = 0;
+			Manager.getDiarioEventos().anotar(EventoDominio.tarjeta(this.id, EventoDominio.Tipo.PIN_CORRECTO));
+			Manager.getCacheTarjetas().actualizar(this.id, estado.conIntentos(0));
+		}
+	}
+	
+	/**
+	 * Copia en esta instancia el estado de la tarjeta que hay en la {@link CacheTarjetas}, que puede haber
+	 * cambiado a través de otra instancia de la misma tarjeta
+	 * @return	El estado de la tarjeta
+	 */
+	protected EstadoTarjeta sincronizar() {
+		EstadoTarjeta estado = Manager.getCacheTarjetas().obtener(this);
+		this.pin = estado.getPin();
+		this.activa = estado.isActiva();
+		this.intentos = estado.getIntentos();
+		return estado;
 	}
 	
+	/**
+	 * Lee de la base de datos el estado de la tarjeta
+	 * @return	El estado, o null si la tarjeta no está en la base de datos
+	 */
+	protected abstract EstadoTarjeta cargarEstado();
+	
 	/**
 	 * Permite confirmar una compra que se ha iniciado por Internet. El método {@link #comprarPorInternet(int, double)} devuelve un token que debe ser introducido en este método.
+	 * La compra pendiente se guarda en el {@link AlmacenCompras} del {@link Manager}, por lo que puede confirmarse desde cualquier
+	 * instancia de la tarjeta mientras no caduque. Un token inválido descarta todas las compras pendientes de la tarjeta
 	 * @param token	El token que introduce el usuario. Para que la compra se confirme, ha de coincidir con el token devuelto por {@link #comprarPorInternet(int, double)}
 	 * @throws TokenInvalidoException	Si el {@code token} introducido es distinto del recibido desde {@link #comprarPorInternet(int, double)}
 	 * @throws ImporteInvalidoException	 Si el importe<=0
@@ -71,14 +101,38 @@ public abstract class Tarjeta {
 	 * @throws TarjetaBloqueadaException	Si la tarjeta está bloqueada
 	 * @throws PinInvalidoException	Si el pin que se introdujo es inválido
 	 */
-	public void confirmarCompraPorInternet(int token) throws TokenInvalidoException, ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
-		if (token!=this.compra.getToken()) {
-			this.compra = null;
-			throw new TokenInvalidoException();
+	public void confirmarCompraPorInternet(final int token) throws TokenInvalidoException, ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
+		long inicio = Metricas.iniciar();
+		try {
+			AlmacenCompras almacen = Manager.getAlmacenCompras();
+			Compra compra = almacen.retirar(id, token);
+			if (compra==null) {
+				almacen.descartar(id);
+				throw new TokenInvalidoException();
+			}
+			// La compra confirmada se mide solo como CONFIRMAR_COMPRA, no también como COMPRAR. El pin ya se
+			// comprobó al iniciarla; se usa el de la caché, porque el de esta instancia puede haber cambiado
+			realizarCompra(sincronizar().getPin(), compra.getImporte());
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.CONFIRMAR_COMPRA, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.CONFIRMAR_COMPRA, inicio);
 		}
-		this.comprar(this.pin, this.compra.getImporte());
 	}
 
+	/**
+	 * Hace una compra en un comercio sin medirla en las {@link Metricas}: la usan {@link #comprar(int, double)},
+	 * que la mide como COMPRAR, y {@link #confirmarCompraPorInternet(int)}, que se mide como CONFIRMAR_COMPRA
+	 * @param pin	El pin que introduce el usuario
+	 * @param importe	El importe de la compra
+	 * @throws ImporteInvalidoException	Si el importe<=0
+	 * @throws SaldoInsuficienteException	Si el saldo de la cuenta o el crédito de la tarjeta no cubren el importe
+	 * @throws TarjetaBloqueadaException	Si la tarjeta está bloqueada
+	 * @throws PinInvalidoException	Si el pin introducido es incorrecto
+	 */
+	protected abstract void realizarCompra(int pin, double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException;
+
 	protected abstract void bloquear();
 
 	public Long getId() {
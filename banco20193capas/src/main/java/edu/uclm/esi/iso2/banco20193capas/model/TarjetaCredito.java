@@ -1,18 +1,25 @@
 package edu.uclm.esi.iso2.banco20193capas.model;
 
-import java.security.SecureRandom;
-import java.util.List;
+import java.util.UUID;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
 import edu.uclm.esi.iso2.banco20193capas.exceptions.ImporteInvalidoException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.PinInvalidoException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.TarjetaBloqueadaException;
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas.Operacion;
+import edu.uclm.esi.iso2.banco20193capas.model.RegistroCerrojos.Bloqueo;
 
 @Entity
 public class TarjetaCredito extends Tarjeta {
-	private Double credito;
+	/** En céntimos (ver {@link Centimos}) */
+	@Column(name = "credito_centimos")
+	private long credito;
 	
 	public TarjetaCredito() {
 		super();
@@ -22,24 +29,31 @@ public class TarjetaCredito extends Tarjeta {
 	 * Permite sacar dinero del cajero automático
 	 * @param pin	El pin que introduce el usuario
 	 * @param importe	El {@code importe} que desea sacar
-	 * @throws ImporteInvalidoException	Si el {@code importe<=0}
+	 * @throws ImporteInvalidoException	Si el {@code importe}, redondeado al céntimo, es {@code <=0}
 	 * @throws SaldoInsuficienteException	Si el crédito disponible de la tarjeta es menor que el importe
 	 * @throws TarjetaBloqueadaException	Si la tarjeta está bloqueada
 	 * @throws PinInvalidoException	Si el pin introducido es distinto del pin de la tarjeta
 	 */
 	@Override
-	public void sacarDinero(int pin, double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
-		comprobar(pin);
-		this.intentos = 0;
-		if (importe>getCreditoDisponible())
-			throw new SaldoInsuficienteException();
-		if (importe<=0)
-			throw new ImporteInvalidoException(importe);
-		MovimientoTarjetaCredito principal = new MovimientoTarjetaCredito(this, importe, "Retirada de efectivo");
-		double comision = 3;
-		MovimientoTarjetaCredito mComision = new MovimientoTarjetaCredito(this, comision, "Comisión por retirada de efectivo");
-		Manager.getMovimientoTarjetaCreditoDAO().save(principal);
-		Manager.getMovimientoTarjetaCreditoDAO().save(mComision);
+	public void sacarDinero(final int pin, final double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
+		long inicio = Metricas.iniciar();
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearTarjeta(id, null)) {
+			comprobar(pin);
+			long centimos = Centimos.de(importe);
+			if (centimos>getDisponible())
+				throw new SaldoInsuficienteException();
+			if (centimos<=0)
+				throw new ImporteInvalidoException(importe);
+			MovimientoTarjetaCredito principal = MovimientoTarjetaCredito.enCentimos(this, centimos, "Retirada de efectivo");
+			long comision = 300;
+			MovimientoTarjetaCredito mComision = MovimientoTarjetaCredito.enCentimos(this, comision, "Comisión por retirada de efectivo");
+			guardar(principal, mComision);
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.SACAR_DINERO, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.SACAR_DINERO, inicio);
+		}
 	}
 	
 	/**
@@ -50,87 +64,180 @@ public class TarjetaCredito extends Tarjeta {
 	 * @throws TarjetaBloqueadaException	Si la tarjeta está bloqueada
 	 * @throws PinInvalidoException	Si el pin introducido es distinto del pin de la tarjeta
 	 * @throws SaldoInsuficienteException	Si el crédito disponible de la tarjeta ({@link #get}) es menor que el importe
-	 * @throws ImporteInvalidoException	Si el importe<=0
+	 * @throws ImporteInvalidoException	Si el importe, redondeado al céntimo, es <=0
 	 */
 	@Override
-	public Integer comprarPorInternet(int pin, double importe) throws TarjetaBloqueadaException, PinInvalidoException, SaldoInsuficienteException, ImporteInvalidoException {
-		comprobar(pin);
-		this.intentos = 0;
-		if (importe>getCreditoDisponible())
-			throw new SaldoInsuficienteException();
-		if (importe<=0)
-			throw new ImporteInvalidoException(importe);
-		SecureRandom dado = new SecureRandom();
-		int token = 0;
-		for (int i=0; i<=3; i++)
-			token = (int) (token  + dado.nextInt(10) * Math.pow(10, i));
-		token = 1234;
-		this.compra = new Compra(importe, token);
-		return token;
+	public Integer comprarPorInternet(final int pin, final double importe) throws TarjetaBloqueadaException, PinInvalidoException, SaldoInsuficienteException, ImporteInvalidoException {
+		long inicio = Metricas.iniciar();
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearTarjeta(id, null)) {
+			comprobar(pin);
+			long centimos = Centimos.de(importe);
+			if (centimos>getDisponible())
+				throw new SaldoInsuficienteException();
+			if (centimos<=0)
+				throw new ImporteInvalidoException(importe);
+			int token = GeneradorClaves.generarToken();
+			Manager.getAlmacenCompras().guardar(id, token, importe);
+			return token;
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.COMPRAR_POR_INTERNET, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.COMPRAR_POR_INTERNET, inicio);
+		}
 	}
 	
 	/**
 	 * Permite hacer un compra en un comercio
 	 * @param pin	El pin que introduce el usuario
 	 * @param importe	El importe de la compra
-	 * @throws ImporteInvalidoException	Si el importe<=0
+	 * @throws ImporteInvalidoException	Si el importe, redondeado al céntimo, es <=0
 	 * @throws SaldoInsuficienteException	Si el crédito disponible ({@link #getCreditoDisponible()}) de la tarjeta es menor que el importe
 	 * @throws TarjetaBloqueadaException	Si la tarjeta está bloqueada
 	 * @throws PinInvalidoException	Si el pin introducido es incorrecto
 	 */
 	@Override
-	public void comprar(int pin, double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
-		comprobar(pin);
-		this.intentos = 0;
-		if (importe>getCreditoDisponible())
-			throw new SaldoInsuficienteException();
-		if (importe<=0)
-			throw new ImporteInvalidoException(importe);
-		MovimientoTarjetaCredito principal = new MovimientoTarjetaCredito(this, importe, "Retirada de efectivo");
-		Manager.getMovimientoTarjetaCreditoDAO().save(principal);
+	public void comprar(final int pin, final double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
+		long inicio = Metricas.iniciar();
+		try {
+			realizarCompra(pin, importe);
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.COMPRAR, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.COMPRAR, inicio);
+		}
+	}
+
+	@Override
+	protected void realizarCompra(int pin, double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearTarjeta(this.id, null)) {
+			comprobar(pin);
+			long centimos = Centimos.de(importe);
+			if (centimos>getDisponible())
+				throw new SaldoInsuficienteException();
+			if (centimos<=0)
+				throw new ImporteInvalidoException(importe);
+			MovimientoTarjetaCredito principal = MovimientoTarjetaCredito.enCentimos(this, centimos, "Retirada de efectivo");
+			this.guardar(principal);
+		}
+	}
+	
+	/**
+	 * Guarda los movimientos y los anota en el {@link DiarioEventos}, todo en la misma transacción, o a través
+	 * del {@link DiarioMovimientos} o del {@link EscritorMovimientos} si están activos
+	 * @param movimientos	Los movimientos que se guardan
+	 */
+	private void guardar(final MovimientoTarjetaCredito... movimientos) {
+		DiarioMovimientos diario = Manager.getDiarioMovimientos();
+		EscritorMovimientos escritor = Manager.getEscritorMovimientos();
+		if (diario != null)
+			diario.guardar(movimientos);
+		else if (escritor != null)
+			escritor.guardar(movimientos);
+		else
+			Manager.getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					for (MovimientoTarjetaCredito movimiento : movimientos) {
+						Manager.getMovimientoTarjetaCreditoDAO().save(movimiento);
+						Manager.getDiarioEventos().anotar(EventoDominio.de(movimiento));
+					}
+				}
+			});
 	}
 	
 	@Override
 	protected void bloquear() {
 		this.activa = false;
 		Manager.getTarjetaCreditoDAO().save(this);
+		Manager.getDiarioEventos().anotar(EventoDominio.tarjeta(this.id, EventoDominio.Tipo.BLOQUEO));
+		Manager.getCacheTarjetas().actualizar(this.id, EstadoTarjeta.de(this));
+	}
+	
+	@Override
+	protected EstadoTarjeta cargarEstado() {
+		return Manager.getTarjetaCreditoDAO().findEstadoById(this.id);
 	}
 	
+	/**
+	 * Liquida la tarjeta: marca como liquidados todos sus movimientos pendientes con una única
+	 * sentencia y carga su importe en la cuenta asociada (ver {@link Cuenta#retiroForzoso(double, String)}).
+	 * Los movimientos marcados llevan el identificador de esta liquidación, y el importe se suma sobre ese
+	 * identificador, por lo que se carga exactamente lo que se ha marcado aunque otro proceso guarde compras
+	 * de la tarjeta a la vez. Todo ello se hace en la misma transacción, de forma que o se liquida todo o no se liquida nada. Si el
+	 * diario de movimientos está activo, se espera antes a que se apliquen los movimientos pendientes de la tarjeta
+	 */
 	public void liquidar() {
-		double gastos = 0.0;
-		List<MovimientoTarjetaCredito> mm = Manager.getMovimientoTarjetaCreditoDAO().findByTarjetaId(this.id);
-		for (MovimientoTarjetaCredito m : mm) {
-			if (!m.isLiquidado()) {
-				gastos = gastos+m.getImporte();
-				m.setLiquidado(true);
-				Manager.getMovimientoTarjetaCreditoDAO().save(m);
-			}
+		long inicio = Metricas.iniciar();
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearTarjeta(id, cuenta.getId())) {
+			DiarioMovimientos diario = Manager.getDiarioMovimientos();
+			if (diario != null)
+				diario.esperarTarjeta(id);
+			Manager.getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					String liquidacion = UUID.randomUUID().toString();
+					int liquidados = Manager.getMovimientoTarjetaCreditoDAO().liquidarByTarjetaId(id, liquidacion);
+					if (liquidados > 0) {
+						long gastos = Manager.getMovimientoTarjetaCreditoDAO().sumImporteByLiquidacion(liquidacion);
+						cuenta.retiroForzosoCentimos(gastos, "Liquidación de tarjeta de crédito");
+						Manager.getDiarioEventos().anotar(EventoDominio.liquidacion(id, gastos));
+					}
+				}
+			});
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.LIQUIDAR, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.LIQUIDAR, inicio);
 		}
-		this.cuenta.retiroForzoso(gastos, "Liquidación de tarjeta de crédito");
 	}
 
-	public Double getCredito() {
+	public double getCredito() {
+		return Centimos.aEuros(credito);
+	}
+
+	/**
+	 * @return	El crédito concedido, en céntimos
+	 */
+	public long getCreditoCentimos() {
 		return credito;
 	}
 	
-	public Double getCreditoDisponible() {
-		double gastos = 0.0;
-		List<MovimientoTarjetaCredito> mm = Manager.getMovimientoTarjetaCreditoDAO().findByTarjetaId(this.id);
-		for (MovimientoTarjetaCredito m : mm)
-			if (!m.isLiquidado())
-				gastos = gastos + m.getImporte();
+	/**
+	 * Devuelve el crédito disponible: el crédito concedido menos los movimientos aún no liquidados,
+	 * que se suman en la base de datos (junto con los que aún no se han aplicado, si el diario de movimientos está activo)
+	 * @return	El crédito disponible
+	 */
+	public double getCreditoDisponible() {
+		return Centimos.aEuros(this.getDisponible());
+	}
+
+	/**
+	 * @return	El crédito disponible, en céntimos
+	 */
+	private long getDisponible() {
+		DiarioMovimientos diario = Manager.getDiarioMovimientos();
+		long gastos = diario != null ? diario.getGastos(this.id) : Manager.getMovimientoTarjetaCreditoDAO().sumImporteNoLiquidadoByTarjetaId(this.id);
 		return credito - gastos;
 	}
 
-	public void setCredito(Double credito) {
-		this.credito = credito;
+	public void setCredito(double credito) {
+		this.credito = Centimos.de(credito);
 	}
 
 	@Override
 	public void cambiarPin(int pinViejo, int pinNuevo) throws PinInvalidoException {
-		if (this.pin!=pinViejo)
-			throw new PinInvalidoException();
-		this.pin = pinNuevo;
-		Manager.getTarjetaCreditoDAO().save(this);
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearTarjeta(this.id, null)) {
+			this.sincronizar();
+			if (this.pin!=pinViejo)
+				throw new PinInvalidoException();
+			this.pin = pinNuevo;
+			Manager.getTarjetaCreditoDAO().save(this);
+			Manager.getDiarioEventos().anotar(EventoDominio.cambioPin(this.id));
+			Manager.getCacheTarjetas().actualizar(this.id, EstadoTarjeta.de(this));
+		}
 	}
+
 }
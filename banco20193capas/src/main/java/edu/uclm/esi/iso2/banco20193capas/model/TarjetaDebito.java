@@ -1,13 +1,13 @@
 package edu.uclm.esi.iso2.banco20193capas.model;
 
-import java.security.SecureRandom;
-
 import javax.persistence.Entity;
 
 import edu.uclm.esi.iso2.banco20193capas.exceptions.ImporteInvalidoException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.PinInvalidoException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.TarjetaBloqueadaException;
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas.Operacion;
+import edu.uclm.esi.iso2.banco20193capas.model.RegistroCerrojos.Bloqueo;
 
 @Entity
 public class TarjetaDebito extends Tarjeta {
@@ -22,10 +22,17 @@ public class TarjetaDebito extends Tarjeta {
 	 * @throws PinInvalidoException	Si el pin introducido es distinto del pin de la tarjeta
 	 */
 	@Override
-	public void sacarDinero(int pin, double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
-		comprobar(pin);
-		this.intentos = 0;
-		this.cuenta.retirar(importe);
+	public void sacarDinero(final int pin, final double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
+		long inicio = Metricas.iniciar();
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearTarjeta(id, cuenta.getId())) {
+			comprobar(pin);
+			cuenta.retirar(importe);
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.SACAR_DINERO, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.SACAR_DINERO, inicio);
+		}
 	}
 
 	/**
@@ -39,16 +46,19 @@ public class TarjetaDebito extends Tarjeta {
 	 * @throws ImporteInvalidoException	Si el importe<=0
 	 */
 	@Override
-	public Integer comprarPorInternet(int pin, double importe) throws TarjetaBloqueadaException, PinInvalidoException, SaldoInsuficienteException, ImporteInvalidoException {
-		comprobar(pin);
-		this.intentos = 0;
-		SecureRandom dado = new SecureRandom();
-		int token = 0;
-		for (int i=0; i<=3; i++)
-			token = (int) (token + dado.nextInt(10) * Math.pow(10, i));
-		token =  1234;
-		this.compra = new Compra(importe, token);
-		return token;
+	public Integer comprarPorInternet(final int pin, final double importe) throws TarjetaBloqueadaException, PinInvalidoException, SaldoInsuficienteException, ImporteInvalidoException {
+		long inicio = Metricas.iniciar();
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearTarjeta(id, null)) {
+			comprobar(pin);
+			int token = GeneradorClaves.generarToken();
+			Manager.getAlmacenCompras().guardar(id, token, importe);
+			return token;
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.COMPRAR_POR_INTERNET, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.COMPRAR_POR_INTERNET, inicio);
+		}
 	}
 	
 	/**
@@ -61,23 +71,50 @@ public class TarjetaDebito extends Tarjeta {
 	 * @throws PinInvalidoException	Si el pin introducido es incorrecto
 	 */
 	@Override
-	public void comprar(int pin, double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
-		comprobar(pin);
-		this.intentos = 0;
-		this.cuenta.retirar(importe);
+	public void comprar(final int pin, final double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
+		long inicio = Metricas.iniciar();
+		try {
+			realizarCompra(pin, importe);
+		} catch (Exception e) {
+			Metricas.fallo(Operacion.COMPRAR, e);
+			throw e;
+		} finally {
+			Metricas.terminar(Operacion.COMPRAR, inicio);
+		}
+	}
+
+	@Override
+	protected void realizarCompra(int pin, double importe) throws ImporteInvalidoException, SaldoInsuficienteException, TarjetaBloqueadaException, PinInvalidoException {
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearTarjeta(this.id, this.cuenta.getId())) {
+			comprobar(pin);
+			this.cuenta.retirar(importe);
+		}
 	}
 
 	@Override
 	protected void bloquear() {
 		this.activa = false;
 		Manager.getTarjetaDebitoDAO().save(this);
+		Manager.getDiarioEventos().anotar(EventoDominio.tarjeta(this.id, EventoDominio.Tipo.BLOQUEO));
+		Manager.getCacheTarjetas().actualizar(this.id, EstadoTarjeta.de(this));
+	}
+	
+	@Override
+	protected EstadoTarjeta cargarEstado() {
+		return Manager.getTarjetaDebitoDAO().findEstadoById(this.id);
 	}
 	
 	@Override
 	public void cambiarPin(int pinViejo, int pinNuevo) throws PinInvalidoException {
-		if (this.pin!=pinViejo)
-			throw new PinInvalidoException();
-		this.pin = pinNuevo;
-		Manager.getTarjetaDebitoDAO().save(this);
+		try (Bloqueo bloqueo = Manager.getCerrojos().bloquearTarjeta(this.id, null)) {
+			this.sincronizar();
+			if (this.pin!=pinViejo)
+				throw new PinInvalidoException();
+			this.pin = pinNuevo;
+			Manager.getTarjetaDebitoDAO().save(this);
+			Manager.getDiarioEventos().anotar(EventoDominio.cambioPin(this.id));
+			Manager.getCacheTarjetas().actualizar(this.id, EstadoTarjeta.de(this));
+		}
 	}
+
 }
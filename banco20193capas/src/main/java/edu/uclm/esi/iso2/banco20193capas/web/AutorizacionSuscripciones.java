@@ -0,0 +1,43 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+import java.security.Principal;
+import java.util.Optional;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.ClienteNoAutorizadoException;
+import edu.uclm.esi.iso2.banco20193capas.model.AvisosMovimientos;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+
+/**
+ * Solo deja suscribirse a los avisos de una cuenta ({@code /topic/cuentas/{id}}) a sus titulares. El usuario
+ * de la sesión es el que autenticó la petición HTTP con la que se abrió el WebSocket, y su nombre es el NIF
+ * del cliente. Cualquier otra suscripción (sin usuario, a otro destino o con comodines) se rechaza, y el
+ * cliente recibe un frame ERROR
+ *
+ */
+public class AutorizacionSuscripciones implements ChannelInterceptor {
+
+	@Override
+	public Message<?> preSend(Message<?> mensaje, MessageChannel canal) {
+		StompHeaderAccessor cabeceras = StompHeaderAccessor.wrap(mensaje);
+		if (!StompCommand.SUBSCRIBE.equals(cabeceras.getCommand()))
+			return mensaje;
+		Long cuenta = SuscripcionesAvisos.cuenta(cabeceras.getDestination());
+		if (cuenta == null)
+			throw new MessagingException(mensaje, "Solo pueden recibirse avisos de una cuenta: " + AvisosMovimientos.DESTINO + "{id}");
+		Principal usuario = cabeceras.getUser();
+		if (usuario == null)
+			throw new MessagingException(mensaje, "Suscripción sin autenticar a la cuenta " + cuenta);
+		Optional<Cuenta> titulares = Manager.getCuentaDAO().findConTitularesById(cuenta);
+		if (!titulares.isPresent() || !titulares.get().isTitular(usuario.getName()))
+			throw new MessagingException(mensaje, new ClienteNoAutorizadoException(usuario.getName(), cuenta).getMessage());
+		return mensaje;
+	}
+}
@@ -0,0 +1,39 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Configuración del API HTTP: el ejecutor acotado en el que corren las operaciones (que usan JDBC y, por
+ * tanto, bloquean) y el tiempo máximo que una petición asíncrona espera a su resultado.
+ *
+ * Java 8 no tiene hilos virtuales, así que las operaciones se ejecutan en un conjunto fijo de hilos
+ * de plataforma con una cola de tamaño limitado.
+ *
+ */
+@Configuration
+public class ConfiguracionApi implements WebMvcConfigurer {
+	@Value("${banco.api.timeout:10000}")
+	private long timeout;
+
+	@Bean(name = "ejecutorBanco")
+	public ThreadPoolTaskExecutor ejecutorBanco(@Value("${banco.api.hilos:32}") int hilos,
+			@Value("${banco.api.cola:1000}") int cola) {
+		ThreadPoolTaskExecutor ejecutor = new ThreadPoolTaskExecutor();
+		ejecutor.setCorePoolSize(hilos);
+		ejecutor.setMaxPoolSize(hilos);
+		ejecutor.setQueueCapacity(cola);
+		ejecutor.setThreadNamePrefix("banco-api-");
+		ejecutor.setWaitForTasksToCompleteOnShutdown(true);
+		return ejecutor;
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurador) {
+		configurador.setDefaultTimeout(this.timeout);
+	}
+}
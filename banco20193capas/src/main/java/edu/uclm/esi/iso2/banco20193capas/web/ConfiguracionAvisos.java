@@ -0,0 +1,42 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+
+import edu.uclm.esi.iso2.banco20193capas.model.AvisosMovimientos;
+
+/**
+ * Avisos de saldo y movimientos por WebSocket: los clientes se conectan por STOMP a {@code /avisos} y se
+ * suscriben a {@code /topic/cuentas/{id}} para recibir los avisos de cada cuenta (ver {@link AvisosMovimientos}).
+ *
+ * Los navegadores solo pueden conectarse desde el mismo origen o desde los de {@code banco.avisos.origenes}, y
+ * solo los titulares de una cuenta pueden suscribirse a sus avisos (ver {@link AutorizacionSuscripciones})
+ *
+ */
+@Configuration
+@EnableWebSocketMessageBroker
+public class ConfiguracionAvisos implements WebSocketMessageBrokerConfigurer {
+	@Value("${banco.avisos.origenes:}")
+	private String[] origenes;
+
+	@Override
+	public void registerStompEndpoints(StompEndpointRegistry registro) {
+		registro.addEndpoint("/avisos").setAllowedOrigins(this.origenes);
+	}
+
+	@Override
+	public void configureClientInboundChannel(ChannelRegistration registro) {
+		registro.interceptors(new AutorizacionSuscripciones());
+	}
+
+	@Override
+	public void configureMessageBroker(MessageBrokerRegistry registro) {
+		registro.enableSimpleBroker("/topic");
+		registro.setApplicationDestinationPrefixes("/app");
+	}
+}
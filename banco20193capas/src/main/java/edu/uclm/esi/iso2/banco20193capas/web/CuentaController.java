@@ -0,0 +1,109 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+import java.security.Principal;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.ClienteNoAutorizadoException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.CuentaInvalidaException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.LoginException;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+
+/**
+ * Operaciones sobre cuentas: saldo, ingresos, retiradas y transferencias. Las operaciones se ejecutan
+ * en el {@link EjecutorOperaciones}, y los errores se traducen a códigos HTTP en {@link GestorErrores}.
+ *
+ * Las retiradas y las transferencias sacan dinero de la cuenta, así que solo puede hacerlas un titular: el
+ * usuario que autenticó la petición, cuyo nombre es el NIF del cliente (como en {@link AutorizacionSuscripciones})
+ *
+ */
+@RestController
+@RequestMapping("/api/cuentas")
+public class CuentaController {
+	@Autowired
+	private EjecutorOperaciones ejecutor;
+
+	@GetMapping("/{id}/saldo")
+	public CompletableFuture<RespuestaSaldo> getSaldo(@PathVariable final Long id) {
+		return this.ejecutor.ejecutar(new Operacion<RespuestaSaldo>() {
+			@Override
+			public RespuestaSaldo ejecutar() throws Exception {
+				// El saldo se lee como en el resto de la aplicación (diario, libro de cuentas frecuentes y métricas);
+				// una cuenta inexistente tiene saldo 0, así que solo en ese caso se comprueba que existe
+				double saldo = new Cuenta(id).getSaldo();
+				if (saldo == 0 && !Manager.getCuentaDAO().existsById(id))
+					throw new CuentaInvalidaException(id);
+				return new RespuestaSaldo(id, saldo);
+			}
+		});
+	}
+
+	@PostMapping("/{id}/ingresos")
+	public CompletableFuture<ResponseEntity<Void>> ingresar(@PathVariable final Long id, @RequestBody final SolicitudImporte solicitud) {
+		return this.ejecutor.ejecutar(new Operacion<ResponseEntity<Void>>() {
+			@Override
+			public ResponseEntity<Void> ejecutar() throws Exception {
+				cuenta(id).ingresar(solicitud.getImporte());
+				return ResponseEntity.noContent().build();
+			}
+		});
+	}
+
+	@PostMapping("/{id}/retiradas")
+	public CompletableFuture<ResponseEntity<Void>> retirar(@PathVariable final Long id, @RequestBody final SolicitudImporte solicitud,
+			final Principal usuario) {
+		return this.ejecutor.ejecutar(new Operacion<ResponseEntity<Void>>() {
+			@Override
+			public ResponseEntity<Void> ejecutar() throws Exception {
+				titular(id, usuario).retirar(solicitud.getImporte());
+				return ResponseEntity.noContent().build();
+			}
+		});
+	}
+
+	@PostMapping("/{id}/transferencias")
+	public CompletableFuture<ResponseEntity<Void>> transferir(@PathVariable final Long id, @RequestBody final SolicitudTransferencia solicitud,
+			final Principal usuario) {
+		return this.ejecutor.ejecutar(new Operacion<ResponseEntity<Void>>() {
+			@Override
+			public ResponseEntity<Void> ejecutar() throws Exception {
+				titular(id, usuario).transferir(solicitud.getDestino(), solicitud.getImporte(), solicitud.getConcepto());
+				return ResponseEntity.noContent().build();
+			}
+		});
+	}
+
+	/**
+	 * Las operaciones de {@link Cuenta} solo necesitan el id, así que la cuenta no se lee entera: solo se
+	 * comprueba que existe, porque un ingreso en una cuenta inexistente no se registra pero tampoco falla
+	 */
+	private static Cuenta cuenta(Long id) throws CuentaInvalidaException {
+		if (!Manager.getCuentaDAO().existsById(id))
+			throw new CuentaInvalidaException(id);
+		return new Cuenta(id);
+	}
+
+	/**
+	 * Comprueba que la cuenta existe y que el usuario de la petición es uno de sus titulares
+	 */
+	private static Cuenta titular(Long id, Principal usuario) throws LoginException, CuentaInvalidaException, ClienteNoAutorizadoException {
+		if (usuario == null)
+			throw new LoginException();
+		Optional<Cuenta> cuenta = Manager.getCuentaDAO().findConTitularesById(id);
+		if (!cuenta.isPresent())
+			throw new CuentaInvalidaException(id);
+		if (!cuenta.get().isTitular(usuario.getName()))
+			throw new ClienteNoAutorizadoException(usuario.getName(), id);
+		return cuenta.get();
+	}
+}
@@ -0,0 +1,49 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ejecuta las operaciones del API en el conjunto acotado de hilos {@code ejecutorBanco} (ver
+ * {@link ConfiguracionApi}), de forma que los hilos de las peticiones HTTP no se quedan bloqueados
+ * esperando a la base de datos. Si la cola del ejecutor está llena, la operación se rechaza en el
+ * momento con {@link RejectedExecutionException} en lugar de acumular trabajo sin límite.
+ *
+ */
+@Component
+public class EjecutorOperaciones {
+	private final AsyncTaskExecutor ejecutor;
+
+	@Autowired
+	public EjecutorOperaciones(@Qualifier("ejecutorBanco") AsyncTaskExecutor ejecutor) {
+		this.ejecutor = ejecutor;
+	}
+
+	/**
+	 * @param operacion	La operación
+	 * @return	Un futuro que se completa con el resultado de la operación, o con la excepción que lance
+	 */
+	public <T> CompletableFuture<T> ejecutar(final Operacion<T> operacion) {
+		final CompletableFuture<T> futuro = new CompletableFuture<>();
+		try {
+			this.ejecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						futuro.complete(operacion.ejecutar());
+					} catch (Exception e) {
+						futuro.completeExceptionally(e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			futuro.completeExceptionally(e);
+		}
+		return futuro;
+	}
+}
@@ -0,0 +1,68 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.ClienteNoAutorizadoException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.CuentaInvalidaException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.ImporteInvalidoException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.LoginException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.PinInvalidoException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.TarjetaBloqueadaException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.TarjetaInvalidaException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.TokenInvalidoException;
+
+/**
+ * Traduce las excepciones del dominio a respuestas HTTP con un {@link RespuestaError}
+ *
+ */
+@RestControllerAdvice(basePackageClasses = GestorErrores.class)
+public class GestorErrores {
+
+	@ExceptionHandler(ImporteInvalidoException.class)
+	public ResponseEntity<RespuestaError> importeInvalido(ImporteInvalidoException e) {
+		return responder(HttpStatus.BAD_REQUEST, e);
+	}
+
+	@ExceptionHandler({ CuentaInvalidaException.class, TarjetaInvalidaException.class })
+	public ResponseEntity<RespuestaError> noEncontrada(Exception e) {
+		return responder(HttpStatus.NOT_FOUND, e);
+	}
+
+	@ExceptionHandler(SaldoInsuficienteException.class)
+	public ResponseEntity<RespuestaError> saldoInsuficiente(SaldoInsuficienteException e) {
+		return responder(HttpStatus.CONFLICT, e);
+	}
+
+	@ExceptionHandler(LoginException.class)
+	public ResponseEntity<RespuestaError> sinAutenticar(LoginException e) {
+		return responder(HttpStatus.UNAUTHORIZED, e);
+	}
+
+	@ExceptionHandler({ PinInvalidoException.class, TokenInvalidoException.class, ClienteNoAutorizadoException.class })
+	public ResponseEntity<RespuestaError> credencialInvalida(Exception e) {
+		return responder(HttpStatus.FORBIDDEN, e);
+	}
+
+	@ExceptionHandler(TarjetaBloqueadaException.class)
+	public ResponseEntity<RespuestaError> tarjetaBloqueada(TarjetaBloqueadaException e) {
+		return responder(HttpStatus.LOCKED, e);
+	}
+
+	/**
+	 * El ejecutor de operaciones está saturado: el cliente puede reintentar más tarde
+	 */
+	@ExceptionHandler(RejectedExecutionException.class)
+	public ResponseEntity<RespuestaError> saturado(RejectedExecutionException e) {
+		return responder(HttpStatus.SERVICE_UNAVAILABLE, e);
+	}
+
+	private static ResponseEntity<RespuestaError> responder(HttpStatus estado, Exception e) {
+		return ResponseEntity.status(estado).body(new RespuestaError(e));
+	}
+}
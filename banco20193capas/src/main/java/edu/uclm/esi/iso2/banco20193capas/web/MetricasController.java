@@ -0,0 +1,28 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas;
+
+/**
+ * Publica las {@link Metricas} de las operaciones. La consulta no accede a la base de datos, por lo que
+ * se responde directamente, sin pasar por el {@link EjecutorOperaciones}
+ *
+ */
+@RestController
+public class MetricasController {
+
+	/**
+	 * @return	Las métricas, o 404 si no están activas
+	 */
+	@GetMapping("/api/metricas")
+	public ResponseEntity<RespuestaMetricas> getMetricas() {
+		Metricas metricas = Manager.getMetricas();
+		if (metricas == null)
+			return ResponseEntity.notFound().build();
+		return ResponseEntity.ok(new RespuestaMetricas(metricas.getOperaciones(), metricas.getExcepciones(), metricas.getDao()));
+	}
+}
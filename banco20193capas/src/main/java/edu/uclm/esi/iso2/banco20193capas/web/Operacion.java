@@ -0,0 +1,10 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+/**
+ * Operación del banco que se ejecuta fuera del hilo de la petición (ver {@link EjecutorOperaciones})
+ *
+ * @param <T>	El tipo del resultado
+ */
+public interface Operacion<T> {
+	T ejecutar() throws Exception;
+}
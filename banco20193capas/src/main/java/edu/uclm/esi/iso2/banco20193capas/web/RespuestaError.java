@@ -0,0 +1,23 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+/**
+ * Cuerpo de las respuestas de error del API: el nombre de la excepción y su mensaje
+ *
+ */
+public class RespuestaError {
+	private String error;
+	private String mensaje;
+
+	public RespuestaError(Throwable causa) {
+		this.error = causa.getClass().getSimpleName();
+		this.mensaje = causa.getMessage();
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public String getMensaje() {
+		return mensaje;
+	}
+}
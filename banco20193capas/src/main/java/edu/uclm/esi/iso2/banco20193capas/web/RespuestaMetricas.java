@@ -0,0 +1,29 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+import java.util.Map;
+
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas.Resumen;
+
+public class RespuestaMetricas {
+	private Map<String, Resumen> operaciones;
+	private Map<String, Long> excepciones;
+	private Map<String, Resumen> dao;
+
+	public RespuestaMetricas(Map<String, Resumen> operaciones, Map<String, Long> excepciones, Map<String, Resumen> dao) {
+		this.operaciones = operaciones;
+		this.excepciones = excepciones;
+		this.dao = dao;
+	}
+
+	public Map<String, Resumen> getOperaciones() {
+		return operaciones;
+	}
+
+	public Map<String, Long> getExcepciones() {
+		return excepciones;
+	}
+
+	public Map<String, Resumen> getDao() {
+		return dao;
+	}
+}
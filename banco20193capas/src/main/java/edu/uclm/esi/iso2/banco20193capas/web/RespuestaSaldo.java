@@ -0,0 +1,19 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+public class RespuestaSaldo {
+	private Long cuenta;
+	private double saldo;
+
+	public RespuestaSaldo(Long cuenta, double saldo) {
+		this.cuenta = cuenta;
+		this.saldo = saldo;
+	}
+
+	public Long getCuenta() {
+		return cuenta;
+	}
+
+	public double getSaldo() {
+		return saldo;
+	}
+}
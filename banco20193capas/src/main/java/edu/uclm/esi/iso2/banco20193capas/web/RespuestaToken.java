@@ -0,0 +1,17 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+/**
+ * Respuesta al inicio de una compra por Internet, con el token que debe enviarse para confirmarla
+ *
+ */
+public class RespuestaToken {
+	private int token;
+
+	public RespuestaToken(int token) {
+		this.token = token;
+	}
+
+	public int getToken() {
+		return token;
+	}
+}
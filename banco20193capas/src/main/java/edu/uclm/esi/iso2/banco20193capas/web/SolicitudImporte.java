@@ -0,0 +1,17 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+/**
+ * Cuerpo de las peticiones de ingreso y de retirada en una cuenta
+ *
+ */
+public class SolicitudImporte {
+	private double importe;
+
+	public double getImporte() {
+		return importe;
+	}
+
+	public void setImporte(double importe) {
+		this.importe = importe;
+	}
+}
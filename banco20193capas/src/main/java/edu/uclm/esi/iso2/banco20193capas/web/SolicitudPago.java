@@ -0,0 +1,26 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+/**
+ * Cuerpo de las peticiones de compra y de retirada de efectivo con tarjeta
+ *
+ */
+public class SolicitudPago {
+	private int pin;
+	private double importe;
+
+	public int getPin() {
+		return pin;
+	}
+
+	public void setPin(int pin) {
+		this.pin = pin;
+	}
+
+	public double getImporte() {
+		return importe;
+	}
+
+	public void setImporte(double importe) {
+		this.importe = importe;
+	}
+}
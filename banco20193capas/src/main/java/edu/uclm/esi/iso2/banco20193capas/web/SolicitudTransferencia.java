@@ -0,0 +1,35 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+/**
+ * Cuerpo de las peticiones de transferencia
+ *
+ */
+public class SolicitudTransferencia {
+	private Long destino;
+	private double importe;
+	private String concepto;
+
+	public Long getDestino() {
+		return destino;
+	}
+
+	public void setDestino(Long destino) {
+		this.destino = destino;
+	}
+
+	public double getImporte() {
+		return importe;
+	}
+
+	public void setImporte(double importe) {
+		this.importe = importe;
+	}
+
+	public String getConcepto() {
+		return concepto;
+	}
+
+	public void setConcepto(String concepto) {
+		this.concepto = concepto;
+	}
+}
@@ -0,0 +1,81 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import edu.uclm.esi.iso2.banco20193capas.model.AvisosMovimientos;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+
+/**
+ * Lleva la cuenta de los suscriptores de cada cuenta, para que {@link AvisosMovimientos} solo anote los
+ * movimientos de las cuentas que alguien está mirando. Solo llegan aquí las suscripciones que ha aceptado
+ * {@link AutorizacionSuscripciones}. Las bajas llegan solo con el id de la suscripción, así que se guarda la
+ * cuenta de cada suscripción abierta
+ *
+ */
+@Component
+public class SuscripcionesAvisos {
+	private final Map<String, Long> suscripciones = new ConcurrentHashMap<>();
+
+	@EventListener
+	public void suscrito(SessionSubscribeEvent evento) {
+		StompHeaderAccessor cabeceras = StompHeaderAccessor.wrap(evento.getMessage());
+		Long cuenta = cuenta(cabeceras.getDestination());
+		AvisosMovimientos avisos = Manager.getAvisosMovimientos();
+		if (cuenta == null || avisos == null)
+			return;
+		if (this.suscripciones.put(clave(cabeceras.getSessionId(), cabeceras.getSubscriptionId()), cuenta) == null)
+			avisos.suscribir(cuenta);
+	}
+
+	@EventListener
+	public void cancelado(SessionUnsubscribeEvent evento) {
+		StompHeaderAccessor cabeceras = StompHeaderAccessor.wrap(evento.getMessage());
+		cancelar(this.suscripciones.remove(clave(cabeceras.getSessionId(), cabeceras.getSubscriptionId())));
+	}
+
+	@EventListener
+	public void desconectado(SessionDisconnectEvent evento) {
+		String prefijo = evento.getSessionId() + ":";
+		Iterator<Map.Entry<String, Long>> it = this.suscripciones.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Long> suscripcion = it.next();
+			if (suscripcion.getKey().startsWith(prefijo)) {
+				it.remove();
+				cancelar(suscripcion.getValue());
+			}
+		}
+	}
+
+	private static void cancelar(Long cuenta) {
+		AvisosMovimientos avisos = Manager.getAvisosMovimientos();
+		if (cuenta != null && avisos != null)
+			avisos.cancelar(cuenta);
+	}
+
+	private static String clave(String sesion, String suscripcion) {
+		return sesion + ":" + suscripcion;
+	}
+
+	/**
+	 * @param destino	El destino de una suscripción
+	 * @return	La cuenta de un destino {@code /topic/cuentas/{id}}, o null si el destino no es de ese tipo
+	 */
+	static Long cuenta(String destino) {
+		if (destino == null || !destino.startsWith(AvisosMovimientos.DESTINO))
+			return null;
+		try {
+			return Long.valueOf(destino.substring(AvisosMovimientos.DESTINO.length()));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package edu.uclm.esi.iso2.banco20193capas.web;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.TarjetaInvalidaException;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.Tarjeta;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaDebito;
+
+/**
+ * Operaciones con tarjetas de débito ({@code /api/tarjetas/debito/{id}}) y de crédito
+ * ({@code /api/tarjetas/credito/{id}}): compras, retiradas de efectivo y compras por Internet
+ *
+ */
+@RestController
+@RequestMapping("/api/tarjetas/{tipo}/{id}")
+public class TarjetaController {
+	@Autowired
+	private EjecutorOperaciones ejecutor;
+
+	@PostMapping("/compras")
+	public CompletableFuture<ResponseEntity<Void>> comprar(@PathVariable final String tipo, @PathVariable final Long id,
+			@RequestBody final SolicitudPago solicitud) {
+		return this.ejecutor.ejecutar(new Operacion<ResponseEntity<Void>>() {
+			@Override
+			public ResponseEntity<Void> ejecutar() throws Exception {
+				tarjeta(tipo, id).comprar(solicitud.getPin(), solicitud.getImporte());
+				return ResponseEntity.noContent().build();
+			}
+		});
+	}
+
+	@PostMapping("/retiradas")
+	public CompletableFuture<ResponseEntity<Void>> sacarDinero(@PathVariable final String tipo, @PathVariable final Long id,
+			@RequestBody final SolicitudPago solicitud) {
+		return this.ejecutor.ejecutar(new Operacion<ResponseEntity<Void>>() {
+			@Override
+			public ResponseEntity<Void> ejecutar() throws Exception {
+				tarjeta(tipo, id).sacarDinero(solicitud.getPin(), solicitud.getImporte());
+				return ResponseEntity.noContent().build();
+			}
+		});
+	}
+
+	@PostMapping("/compras-internet")
+	public CompletableFuture<RespuestaToken> comprarPorInternet(@PathVariable final String tipo, @PathVariable final Long id,
+			@RequestBody final SolicitudPago solicitud) {
+		return this.ejecutor.ejecutar(new Operacion<RespuestaToken>() {
+			@Override
+			public RespuestaToken ejecutar() throws Exception {
+				return new RespuestaToken(tarjeta(tipo, id).comprarPorInternet(solicitud.getPin(), solicitud.getImporte()));
+			}
+		});
+	}
+
+	@PostMapping("/compras-internet/{token}")
+	public CompletableFuture<ResponseEntity<Void>> confirmarCompraPorInternet(@PathVariable final String tipo, @PathVariable final Long id,
+			@PathVariable final int token) {
+		return this.ejecutor.ejecutar(new Operacion<ResponseEntity<Void>>() {
+			@Override
+			public ResponseEntity<Void> ejecutar() throws Exception {
+				tarjeta(tipo, id).confirmarCompraPorInternet(token);
+				return ResponseEntity.noContent().build();
+			}
+		});
+	}
+
+	private static Tarjeta tarjeta(String tipo, Long id) throws TarjetaInvalidaException {
+		Tarjeta tarjeta = null;
+		if ("debito".equals(tipo)) {
+			Optional<TarjetaDebito> optTarjeta = Manager.getTarjetaDebitoDAO().findById(id);
+			tarjeta = optTarjeta.isPresent() ? optTarjeta.get() : null;
+		} else if ("credito".equals(tipo)) {
+			Optional<TarjetaCredito> optTarjeta = Manager.getTarjetaCreditoDAO().findById(id);
+			tarjeta = optTarjeta.isPresent() ? optTarjeta.get() : null;
+		}
+		if (tarjeta == null)
+			throw new TarjetaInvalidaException(id);
+		return tarjeta;
+	}
+}
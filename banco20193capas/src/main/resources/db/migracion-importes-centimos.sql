@@ -0,0 +1,48 @@
+-- Migración de los importes de euros (DOUBLE) a céntimos (BIGINT), ver la clase Centimos.
+--
+-- Debe ejecutarse sobre una base de datos persistente antes de arrancar la versión que guarda los importes
+-- en céntimos (con la aplicación parada), por ejemplo con:
+--   java -cp h2.jar org.h2.tools.RunScript -url jdbc:h2:file:./banco -user sa -script migracion-importes-centimos.sql
+-- Cada importe se redondea al céntimo más próximo y el saldo de cada cuenta se obtiene de sus movimientos. Las columnas antiguas se borran, porque la aplicación ya
+-- no las escribe y algunas no admiten nulos.
+
+ALTER TABLE movimiento_cuenta ADD COLUMN IF NOT EXISTS importe_centimos BIGINT;
+UPDATE movimiento_cuenta SET importe_centimos = ROUND(importe * 100);
+ALTER TABLE movimiento_cuenta ALTER COLUMN importe_centimos SET NOT NULL;
+ALTER TABLE movimiento_cuenta DROP COLUMN importe;
+
+-- El saldo no se redondea por separado: se recalcula con los movimientos ya migrados, para que coincida
+-- con su suma (y con la conciliación de saldos) aunque cada redondeo acumule una diferencia distinta
+ALTER TABLE cuenta ADD COLUMN IF NOT EXISTS saldo_centimos BIGINT;
+UPDATE cuenta SET saldo_centimos = (SELECT COALESCE(SUM(importe_centimos), 0) FROM movimiento_cuenta m WHERE m.cuenta_id = cuenta.id);
+ALTER TABLE cuenta ALTER COLUMN saldo_centimos SET NOT NULL;
+ALTER TABLE cuenta DROP COLUMN saldo;
+
+ALTER TABLE movimiento_tarjeta_credito ADD COLUMN IF NOT EXISTS importe_centimos BIGINT;
+UPDATE movimiento_tarjeta_credito SET importe_centimos = ROUND(importe * 100);
+ALTER TABLE movimiento_tarjeta_credito ALTER COLUMN importe_centimos SET NOT NULL;
+ALTER TABLE movimiento_tarjeta_credito DROP COLUMN importe;
+
+-- El crédito era nulable (Double); una tarjeta sin crédito pasa a tener crédito 0
+ALTER TABLE tarjeta_credito ADD COLUMN IF NOT EXISTS credito_centimos BIGINT;
+UPDATE tarjeta_credito SET credito_centimos = COALESCE(ROUND(credito * 100), 0);
+ALTER TABLE tarjeta_credito ALTER COLUMN credito_centimos SET NOT NULL;
+ALTER TABLE tarjeta_credito DROP COLUMN credito;
+
+ALTER TABLE compra_pendiente ADD COLUMN IF NOT EXISTS importe_centimos BIGINT;
+UPDATE compra_pendiente SET importe_centimos = ROUND(importe * 100);
+ALTER TABLE compra_pendiente ALTER COLUMN importe_centimos SET NOT NULL;
+ALTER TABLE compra_pendiente DROP COLUMN importe;
+
+ALTER TABLE evento_dominio ADD COLUMN IF NOT EXISTS importe_centimos BIGINT;
+UPDATE evento_dominio SET importe_centimos = ROUND(importe * 100);
+ALTER TABLE evento_dominio ALTER COLUMN importe_centimos SET NOT NULL;
+ALTER TABLE evento_dominio DROP COLUMN importe;
+
+ALTER TABLE instantanea_agregado ADD COLUMN IF NOT EXISTS saldo_centimos BIGINT;
+ALTER TABLE instantanea_agregado ADD COLUMN IF NOT EXISTS credito_centimos BIGINT;
+UPDATE instantanea_agregado SET saldo_centimos = ROUND(saldo * 100), credito_centimos = ROUND(credito * 100);
+ALTER TABLE instantanea_agregado ALTER COLUMN saldo_centimos SET NOT NULL;
+ALTER TABLE instantanea_agregado ALTER COLUMN credito_centimos SET NOT NULL;
+ALTER TABLE instantanea_agregado DROP COLUMN saldo;
+ALTER TABLE instantanea_agregado DROP COLUMN credito;
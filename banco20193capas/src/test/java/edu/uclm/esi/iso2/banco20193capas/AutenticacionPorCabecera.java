@@ -0,0 +1,49 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.io.IOException;
+import java.security.Principal;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Hace las veces, en las pruebas, de la capa de autenticación que en producción pone el usuario de la petición
+ * HTTP: el usuario es el NIF de la cabecera {@link #CABECERA}. No es un componente, para que el escaneo no la
+ * recoja: se añade con {@code @Import} o como fuente de la aplicación
+ *
+ */
+public class AutenticacionPorCabecera {
+	public static final String CABECERA = "X-Nif";
+
+	@Bean
+	public OncePerRequestFilter autenticacionPorCabecera() {
+		return new OncePerRequestFilter() {
+			@Override
+			protected void doFilterInternal(HttpServletRequest peticion, HttpServletResponse respuesta, FilterChain cadena)
+					throws ServletException, IOException {
+				final String nif = peticion.getHeader(CABECERA);
+				if (nif == null) {
+					cadena.doFilter(peticion, respuesta);
+					return;
+				}
+				cadena.doFilter(new HttpServletRequestWrapper(peticion) {
+					@Override
+					public Principal getUserPrincipal() {
+						return new Principal() {
+							@Override
+							public String getName() {
+								return nif;
+							}
+						};
+					}
+				}, respuesta);
+			}
+		};
+	}
+}
@@ -0,0 +1,199 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.dao.CompraPendienteDAO;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.TokenInvalidoException;
+import edu.uclm.esi.iso2.banco20193capas.model.AlmacenCompras;
+import edu.uclm.esi.iso2.banco20193capas.model.AlmacenComprasBaseDatos;
+import edu.uclm.esi.iso2.banco20193capas.model.AlmacenComprasMemoria;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Compra;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestAlmacenCompras extends TestCase {
+	@Autowired
+	private CompraPendienteDAO compraPendienteDAO;
+	@Autowired
+	private EntityManagerFactory emf;
+	private AlmacenCompras almacenOriginal;
+	private TarjetaCredito tcPepe;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+		this.compraPendienteDAO.deleteAll();
+		this.almacenOriginal = Manager.getAlmacenCompras();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		Cuenta cuentaPepe = new Cuenta(1);
+		try {
+			cuentaPepe.addTitular(pepe);
+			cuentaPepe.insert();
+			this.tcPepe = cuentaPepe.emitirTarjetaCredito(pepe.getNif(), 1000);
+			this.tcPepe.cambiarPin(this.tcPepe.getPin(), 1234);
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		Manager.setAlmacenCompras(this.almacenOriginal);
+	}
+
+	@Test
+	public void testConfirmarDesdeOtraInstancia() {
+		Manager.setAlmacenCompras(new AlmacenComprasBaseDatos(this.compraPendienteDAO, 100, 60000, 60000));
+		try {
+			int token = this.tcPepe.comprarPorInternet(1234, 100);
+			TarjetaCredito otra = Manager.getTarjetaCreditoDAO().findById(this.tcPepe.getId()).get();
+			otra.confirmarCompraPorInternet(token);
+			assertEquals(900.0, otra.getCreditoDisponible());
+			assertEquals(0, this.compraPendienteDAO.count());
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+		try {
+			this.tcPepe.confirmarCompraPorInternet(0);
+			fail("Esperaba TokenInvalidoException");
+		} catch (TokenInvalidoException e) {
+		} catch (Exception e) {
+			fail("Esperaba TokenInvalidoException");
+		}
+	}
+
+	@Test
+	public void testConfirmarTrasCambiarElPin() {
+		Manager.setAlmacenCompras(new AlmacenComprasMemoria(100, 60000));
+		try {
+			TarjetaCredito vieja = Manager.getTarjetaCreditoDAO().findById(this.tcPepe.getId()).get();
+			this.tcPepe.cambiarPin(1234, 4321);
+			int token = this.tcPepe.comprarPorInternet(4321, 100);
+			vieja.confirmarCompraPorInternet(token);
+			assertEquals(900.0, vieja.getCreditoDisponible());
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+	}
+
+	@Test
+	public void testTokenInvalidoDescartaLaCompra() {
+		Manager.setAlmacenCompras(new AlmacenComprasMemoria(100, 60000));
+		int token = 0;
+		try {
+			token = this.tcPepe.comprarPorInternet(1234, 100);
+			this.tcPepe.confirmarCompraPorInternet((token + 1) % 10000);
+			fail("Esperaba TokenInvalidoException");
+		} catch (TokenInvalidoException e) {
+		} catch (Exception e) {
+			fail("Esperaba TokenInvalidoException");
+		}
+		try {
+			this.tcPepe.confirmarCompraPorInternet(token);
+			fail("Esperaba TokenInvalidoException");
+		} catch (TokenInvalidoException e) {
+		} catch (Exception e) {
+			fail("Esperaba TokenInvalidoException");
+		}
+		assertEquals(1000.0, this.tcPepe.getCreditoDisponible());
+	}
+
+	@Test
+	public void testCaducidad() throws InterruptedException {
+		AlmacenCompras[] almacenes = { new AlmacenComprasMemoria(100, 50),
+				new AlmacenComprasBaseDatos(this.compraPendienteDAO, 100, 50, 60000) };
+		for (AlmacenCompras almacen : almacenes) {
+			almacen.guardar(1L, 1111, 10);
+			almacen.guardar(1L, 2222, 20);
+			Thread.sleep(100);
+			assertNull(almacen.retirar(1L, 1111));
+			assertTrue(almacen.purgar() >= 1);
+			assertEquals(0, almacen.getPendientes());
+		}
+	}
+
+	@Test
+	public void testTamanoMaximo() throws InterruptedException {
+		AlmacenCompras memoria = new AlmacenComprasMemoria(3, 60000);
+		for (int i = 0; i < 5; i++)
+			memoria.guardar(1L, i, 10 * i);
+		assertEquals(3, memoria.getPendientes());
+		assertNull(memoria.retirar(1L, 0));
+		assertNull(memoria.retirar(1L, 1));
+		assertEquals(40.0, memoria.retirar(1L, 4).getImporte());
+
+		AlmacenCompras baseDatos = new AlmacenComprasBaseDatos(this.compraPendienteDAO, 3, 60000, 60000);
+		for (int i = 0; i < 5; i++) {
+			baseDatos.guardar(1L, i, 10 * i);
+			Thread.sleep(2);
+		}
+		// El tamaño máximo se impone al purgar
+		assertEquals(5, baseDatos.getPendientes());
+		assertEquals(2, baseDatos.purgar());
+		assertEquals(3, baseDatos.getPendientes());
+		assertNull(baseDatos.retirar(1L, 0));
+		assertNull(baseDatos.retirar(1L, 1));
+		Compra ultima = baseDatos.retirar(1L, 4);
+		assertEquals(40.0, ultima.getImporte());
+		assertNull(baseDatos.retirar(1L, 4));
+	}
+
+	/**
+	 * Guardar una compra en la base de datos es una única inserción, salvo que la tarjeta ya tenga una
+	 * pendiente con el mismo token, que se sustituye
+	 */
+	@Test
+	public void testGuardarEsUnaInsercion() {
+		AlmacenCompras baseDatos = new AlmacenComprasBaseDatos(this.compraPendienteDAO, 100, 60000, 60000);
+		Statistics estadisticas = this.emf.unwrap(SessionFactory.class).getStatistics();
+		estadisticas.setStatisticsEnabled(true);
+		try {
+			estadisticas.clear();
+			baseDatos.guardar(1L, 1111, 10);
+			assertEquals(1, estadisticas.getPrepareStatementCount());
+			assertEquals(1, estadisticas.getEntityInsertCount());
+		} finally {
+			estadisticas.setStatisticsEnabled(false);
+		}
+		baseDatos.guardar(1L, 1111, 20);
+		assertEquals(1, baseDatos.getPendientes());
+		assertEquals(20.0, baseDatos.retirar(1L, 1111).getImporte());
+	}
+
+	@Test
+	public void testDescartarPorTarjeta() {
+		AlmacenCompras[] almacenes = { new AlmacenComprasMemoria(100, 60000),
+				new AlmacenComprasBaseDatos(this.compraPendienteDAO, 100, 60000, 60000) };
+		for (AlmacenCompras almacen : almacenes) {
+			almacen.guardar(1L, 1111, 10);
+			almacen.guardar(1L, 2222, 20);
+			almacen.guardar(2L, 1111, 30);
+			almacen.descartar(1L);
+			assertEquals(1, almacen.getPendientes());
+			assertNull(almacen.retirar(1L, 2222));
+			assertEquals(30.0, almacen.retirar(2L, 1111).getImporte());
+		}
+	}
+}
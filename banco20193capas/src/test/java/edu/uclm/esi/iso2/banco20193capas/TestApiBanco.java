@@ -0,0 +1,151 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.security.Principal;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaDebito;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class TestApiBanco extends TestCase {
+	private static final Principal PEPE = new Principal() {
+		@Override
+		public String getName() {
+			return "12345X";
+		}
+	};
+
+	@Autowired
+	private MockMvc mvc;
+
+	private Cuenta cuentaPepe, cuentaAna;
+	private TarjetaDebito tarjeta;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		this.cuentaPepe = new Cuenta(1);
+		this.cuentaAna = new Cuenta(2);
+		try {
+			this.cuentaPepe.addTitular(pepe);
+			this.cuentaPepe.insert();
+			this.cuentaAna.addTitular(pepe);
+			this.cuentaAna.insert();
+			this.tarjeta = this.cuentaPepe.emitirTarjetaDebito(pepe.getNif());
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+	}
+
+	@Test
+	public void testIngresoYSaldo() throws Exception {
+		peticion(post("/api/cuentas/1/ingresos").content("{\"importe\": 1000}")).andExpect(status().isNoContent());
+		peticion(post("/api/cuentas/1/retiradas").principal(PEPE).content("{\"importe\": 200}")).andExpect(status().isNoContent());
+		peticion(post("/api/cuentas/1/transferencias").principal(PEPE).content("{\"destino\": 2, \"importe\": 300, \"concepto\": \"Alquiler\"}"))
+				.andExpect(status().isNoContent());
+		peticion(get("/api/cuentas/1/saldo")).andExpect(status().isOk()).andExpect(jsonPath("$.cuenta").value(1))
+				.andExpect(jsonPath("$.saldo").value(497.0));
+		assertEquals(300.0, this.cuentaAna.getSaldo());
+	}
+
+	@Test
+	public void testErrores() throws Exception {
+		peticion(post("/api/cuentas/1/retiradas").principal(PEPE).content("{\"importe\": 100}")).andExpect(status().isConflict())
+				.andExpect(jsonPath("$.error").value("SaldoInsuficienteException"));
+		peticion(post("/api/cuentas/1/ingresos").content("{\"importe\": -5}")).andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.error").value("ImporteInvalidoException"));
+		peticion(post("/api/cuentas/7/ingresos").content("{\"importe\": 5}")).andExpect(status().isNotFound());
+		peticion(get("/api/cuentas/7/saldo")).andExpect(status().isNotFound());
+		peticion(post("/api/tarjetas/credito/" + this.tarjeta.getId() + "/compras").content("{\"pin\": 1, \"importe\": 5}"))
+				.andExpect(status().isNotFound()).andExpect(jsonPath("$.error").value("TarjetaInvalidaException"));
+		assertEquals(0.0, this.cuentaPepe.getSaldo());
+	}
+
+	/**
+	 * Solo un titular autenticado puede sacar dinero de la cuenta
+	 */
+	@Test
+	public void testRetiradasSoloDelTitular() throws Exception {
+		this.cuentaPepe.ingresar(1000);
+		Principal ana = new Principal() {
+			@Override
+			public String getName() {
+				return "99999Z";
+			}
+		};
+		peticion(post("/api/cuentas/1/retiradas").content("{\"importe\": 100}")).andExpect(status().isUnauthorized())
+				.andExpect(jsonPath("$.error").value("LoginException"));
+		peticion(post("/api/cuentas/1/transferencias").content("{\"destino\": 2, \"importe\": 100, \"concepto\": \"Robo\"}"))
+				.andExpect(status().isUnauthorized());
+		peticion(post("/api/cuentas/1/retiradas").principal(ana).content("{\"importe\": 100}")).andExpect(status().isForbidden())
+				.andExpect(jsonPath("$.error").value("ClienteNoAutorizadoException"));
+		peticion(post("/api/cuentas/1/transferencias").principal(ana).content("{\"destino\": 2, \"importe\": 100, \"concepto\": \"Robo\"}"))
+				.andExpect(status().isForbidden());
+		peticion(post("/api/cuentas/7/retiradas").principal(PEPE).content("{\"importe\": 100}")).andExpect(status().isNotFound());
+		assertEquals(1000.0, this.cuentaPepe.getSaldo());
+		assertEquals(0.0, this.cuentaAna.getSaldo());
+	}
+
+	@Test
+	public void testTarjeta() throws Exception {
+		this.cuentaPepe.ingresar(1000);
+		String ruta = "/api/tarjetas/debito/" + this.tarjeta.getId();
+		int pin = this.tarjeta.getPin();
+		peticion(post(ruta + "/compras").content("{\"pin\": " + pin + ", \"importe\": 100}")).andExpect(status().isNoContent());
+		peticion(post(ruta + "/retiradas").content("{\"pin\": " + pin + ", \"importe\": 50}")).andExpect(status().isNoContent());
+		peticion(post(ruta + "/compras").content("{\"pin\": " + (pin + 1) + ", \"importe\": 100}")).andExpect(status().isForbidden())
+				.andExpect(jsonPath("$.error").value("PinInvalidoException"));
+		assertEquals(850.0, this.cuentaPepe.getSaldo());
+
+		MvcResult compra = peticion(post(ruta + "/compras-internet").content("{\"pin\": " + pin + ", \"importe\": 200}"))
+				.andExpect(status().isOk()).andReturn();
+		int token = new JSONObject(compra.getResponse().getContentAsString()).getInt("token");
+		peticion(post(ruta + "/compras-internet/" + token)).andExpect(status().isNoContent());
+		assertEquals(650.0, this.cuentaPepe.getSaldo());
+		peticion(post(ruta + "/compras-internet/" + token)).andExpect(status().isForbidden())
+				.andExpect(jsonPath("$.error").value("TokenInvalidoException"));
+	}
+
+	/**
+	 * Las operaciones del API son asíncronas: la primera petición solo arranca la operación, y la respuesta
+	 * se obtiene al redirigirla cuando el resultado está disponible
+	 */
+	private ResultActions peticion(MockHttpServletRequestBuilder peticion) throws Exception {
+		MvcResult arranque = this.mvc.perform(peticion.contentType(MediaType.APPLICATION_JSON)).andExpect(request().asyncStarted()).andReturn();
+		arranque.getAsyncResult();
+		return this.mvc.perform(asyncDispatch(arranque));
+	}
+}
@@ -0,0 +1,257 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import edu.uclm.esi.iso2.banco20193capas.model.AvisoCuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.AvisosMovimientos;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@Import(AutenticacionPorCabecera.class)
+public class TestAvisosMovimientos extends TestCase {
+	@LocalServerPort
+	private int puerto;
+
+	private AvisosMovimientos original;
+	private List<Message<?>> enviados;
+	private Cuenta cuentaPepe, cuentaAna;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+
+		this.original = Manager.getAvisosMovimientos();
+		this.enviados = new ArrayList<>();
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		this.cuentaPepe = new Cuenta(1);
+		this.cuentaAna = new Cuenta(2);
+		try {
+			this.cuentaPepe.addTitular(pepe);
+			this.cuentaPepe.insert();
+			this.cuentaAna.addTitular(pepe);
+			this.cuentaAna.insert();
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		this.original.iniciar();
+		Manager.setAvisosMovimientos(this.original);
+	}
+
+	@Test
+	public void testAgrupacion() throws Exception {
+		AvisosMovimientos avisos = registrar(2);
+		avisos.suscribir(1L);
+		this.cuentaPepe.ingresar(100);
+		this.cuentaPepe.ingresar(200);
+		this.cuentaPepe.retirar(50);
+		this.cuentaAna.ingresar(1000);
+		assertEquals(1, avisos.enviar());
+		assertEquals(1, this.enviados.size());
+		AvisoCuenta aviso = (AvisoCuenta) this.enviados.get(0).getPayload();
+		assertEquals(Long.valueOf(1), aviso.getCuenta());
+		assertEquals(250.0, aviso.getSaldo());
+		assertEquals(2, aviso.getMovimientos().size());
+		assertEquals(1, aviso.getOmitidos());
+		assertEquals(200.0, aviso.getMovimientos().get(0).getImporte());
+		assertEquals(-50.0, aviso.getMovimientos().get(1).getImporte());
+		assertEquals(0, avisos.enviar());
+
+		avisos.cancelar(1L);
+		this.cuentaPepe.ingresar(1);
+		assertEquals(0, avisos.enviar());
+	}
+
+	@Test
+	public void testSoloTransaccionesConfirmadas() throws Exception {
+		AvisosMovimientos avisos = registrar(20);
+		avisos.suscribir(1L);
+		Manager.getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				Manager.getMovimientoDAO().save(new MovimientoCuenta(cuentaPepe, 500, "Deshecho"));
+				status.setRollbackOnly();
+			}
+		});
+		assertEquals(0, avisos.enviar());
+
+		TarjetaCredito tc = this.cuentaPepe.emitirTarjetaCredito("12345X", 1000);
+		tc.comprar(tc.getPin(), 30);
+		assertEquals(1, avisos.enviar());
+		AvisoCuenta aviso = (AvisoCuenta) this.enviados.get(0).getPayload();
+		assertEquals(0.0, aviso.getSaldo());
+		assertEquals(1, aviso.getMovimientos().size());
+		assertEquals(tc.getId(), aviso.getMovimientos().get(0).getTarjeta());
+	}
+
+	@Test
+	public void testSuscripcionWebSocket() throws Exception {
+		WebSocketStompClient cliente = new WebSocketStompClient(new StandardWebSocketClient());
+		cliente.setMessageConverter(new MappingJackson2MessageConverter());
+		StompSession sesion = cliente.connect("ws://localhost:" + this.puerto + "/avisos", autenticar("12345X"),
+				new StompSessionHandlerAdapter() {
+				}).get(5, TimeUnit.SECONDS);
+		final BlockingQueue<AvisoCuenta> recibidos = new LinkedBlockingQueue<>();
+		try {
+			sesion.subscribe(AvisosMovimientos.DESTINO + "1", new StompFrameHandler() {
+				@Override
+				public Type getPayloadType(StompHeaders headers) {
+					return AvisoCuenta.class;
+				}
+
+				@Override
+				public void handleFrame(StompHeaders headers, Object payload) {
+					recibidos.add((AvisoCuenta) payload);
+				}
+			});
+			long limite = System.currentTimeMillis() + 5000;
+			while (!Manager.getAvisosMovimientos().isSuscrita(1L) && System.currentTimeMillis() < limite)
+				Thread.sleep(10);
+			assertTrue(Manager.getAvisosMovimientos().isSuscrita(1L));
+
+			for (int i = 1; i <= 5; i++)
+				this.cuentaPepe.ingresar(i);
+			AvisoCuenta aviso = recibidos.poll(5, TimeUnit.SECONDS);
+			assertNotNull(aviso);
+			double saldo = aviso.getSaldo();
+			int movimientos = aviso.getMovimientos().size();
+			while (movimientos < 5) {
+				aviso = recibidos.poll(5, TimeUnit.SECONDS);
+				assertNotNull(aviso);
+				saldo = aviso.getSaldo();
+				movimientos = movimientos + aviso.getMovimientos().size();
+			}
+			assertEquals(5, movimientos);
+			assertEquals(15.0, saldo);
+		} finally {
+			sesion.disconnect();
+			cliente.stop();
+		}
+	}
+
+	/**
+	 * Sin usuario, con un cliente que no es titular o con comodines, la suscripción se rechaza con un frame ERROR.
+	 * Desde otro origen, ni siquiera se abre el WebSocket
+	 */
+	@Test
+	public void testSuscripcionesRechazadas() throws Exception {
+		new Cliente("99999Z", "Ana", "López").insert();
+		assertEquals("Suscripción sin autenticar a la cuenta 1", suscribirRechazado(null, AvisosMovimientos.DESTINO + "1"));
+		assertEquals("El cliente con NIF 99999Z no está autorizado para operar en la cuenta 1",
+				suscribirRechazado("99999Z", AvisosMovimientos.DESTINO + "1"));
+		assertTrue(suscribirRechazado("12345X", AvisosMovimientos.DESTINO + "**").startsWith("Solo pueden recibirse avisos de una cuenta"));
+		assertFalse(Manager.getAvisosMovimientos().isSuscrita(1L));
+
+		WebSocketStompClient cliente = new WebSocketStompClient(new StandardWebSocketClient());
+		WebSocketHttpHeaders cabeceras = autenticar("12345X");
+		cabeceras.setOrigin("http://otro.example.com");
+		try {
+			cliente.connect("ws://localhost:" + this.puerto + "/avisos", cabeceras, new StompSessionHandlerAdapter() {
+			}).get(5, TimeUnit.SECONDS);
+			fail("Esperaba que se rechazara el origen");
+		} catch (ExecutionException e) {
+		} finally {
+			cliente.stop();
+		}
+	}
+
+	/**
+	 * Se suscribe al destino y espera el frame ERROR con que el servidor rechaza la suscripción
+	 * @return	El mensaje del frame ERROR
+	 */
+	private String suscribirRechazado(String nif, String destino) throws Exception {
+		WebSocketStompClient cliente = new WebSocketStompClient(new StandardWebSocketClient());
+		cliente.setMessageConverter(new MappingJackson2MessageConverter());
+		final BlockingQueue<String> errores = new LinkedBlockingQueue<>();
+		StompSession sesion = cliente.connect("ws://localhost:" + this.puerto + "/avisos", autenticar(nif),
+				new StompSessionHandlerAdapter() {
+					@Override
+					public void handleFrame(StompHeaders headers, Object payload) {
+						errores.add(headers.getFirst("message"));
+					}
+				}).get(5, TimeUnit.SECONDS);
+		try {
+			sesion.subscribe(destino, new StompSessionHandlerAdapter() {
+			});
+			String error = errores.poll(5, TimeUnit.SECONDS);
+			assertNotNull(error);
+			return error;
+		} finally {
+			if (sesion.isConnected())
+				sesion.disconnect();
+			cliente.stop();
+		}
+	}
+
+	private static WebSocketHttpHeaders autenticar(String nif) {
+		WebSocketHttpHeaders cabeceras = new WebSocketHttpHeaders();
+		if (nif != null)
+			cabeceras.add(AutenticacionPorCabecera.CABECERA, nif);
+		return cabeceras;
+	}
+
+	/**
+	 * Sustituye los avisos por unos que no se envían solos, sino al llamar a {@link AvisosMovimientos#enviar()},
+	 * y que guardan los mensajes en {@link #enviados}
+	 */
+	private AvisosMovimientos registrar(int maxMovimientos) {
+		AvisosMovimientos avisos = new AvisosMovimientos(new SimpMessagingTemplate(new MessageChannel() {
+			@Override
+			public boolean send(Message<?> message) {
+				return send(message, 0);
+			}
+
+			@Override
+			public boolean send(Message<?> message, long timeout) {
+				enviados.add(message);
+				return true;
+			}
+		}), 1000, maxMovimientos);
+		Manager.setAvisosMovimientos(avisos);
+		return avisos;
+	}
+}
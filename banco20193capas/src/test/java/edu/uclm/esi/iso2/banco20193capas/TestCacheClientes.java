@@ -0,0 +1,128 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.ClienteNoAutorizadoException;
+import edu.uclm.esi.iso2.banco20193capas.model.CacheClientes;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestCacheClientes extends TestCase {
+	private Cliente pepe, ana, luis;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+		Manager.getCacheClientes().vaciar();
+
+		this.pepe = new Cliente("12345X", "Pepe", "Pérez");
+		this.pepe.insert();
+		this.ana = new Cliente("98765F", "Ana", "López");
+		this.ana.insert();
+		this.luis = new Cliente("55555L", "Luis", "García");
+		this.luis.insert();
+	}
+
+	@Test
+	public void testEmisionUsaLaCache() {
+		CacheClientes cache = Manager.getCacheClientes();
+		long aciertos = cache.getAciertos(), fallos = cache.getFallos();
+		try {
+			Cuenta cuenta = new Cuenta(1);
+			cuenta.addTitular(this.pepe);
+			cuenta.insert();
+			for (int i = 0; i < 5; i++)
+				cuenta.emitirTarjetaDebito(this.pepe.getNif());
+			cuenta.emitirTarjetaCredito(this.pepe.getNif(), 1000);
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+		assertEquals(fallos + 1, cache.getFallos());
+		assertEquals(aciertos + 5, cache.getAciertos());
+		assertEquals(6, Manager.getTarjetaDebitoDAO().count() + Manager.getTarjetaCreditoDAO().count());
+	}
+
+	@Test
+	public void testInsertInvalida() {
+		CacheClientes cache = Manager.getCacheClientes();
+		assertFalse(cache.buscar("11111A").isPresent());
+		Cliente nuevo = new Cliente("11111A", "Eva", "Martín");
+		nuevo.insert();
+		assertEquals(nuevo.getId(), cache.buscar("11111A").get().getId());
+
+		assertEquals(this.pepe.getId(), cache.buscar(this.pepe.getNif()).get().getId());
+		Manager.getClienteDAO().delete(this.pepe);
+		Cliente otroPepe = new Cliente("12345X", "Pepe", "Pérez");
+		otroPepe.insert();
+		assertEquals(otroPepe.getId(), cache.buscar("12345X").get().getId());
+	}
+
+	@Test
+	public void testDesalojoPorTamano() {
+		CacheClientes cache = new CacheClientes(2, 60000);
+		cache.buscar(this.pepe.getNif());
+		cache.buscar(this.ana.getNif());
+		cache.buscar(this.pepe.getNif());
+		cache.buscar(this.luis.getNif());
+		assertEquals(2, cache.getTamano());
+		assertEquals(1, cache.getDesalojos());
+		assertEquals(1, cache.getAciertos());
+		cache.buscar(this.pepe.getNif());
+		assertEquals(2, cache.getAciertos());
+		cache.buscar(this.ana.getNif());
+		assertEquals(4, cache.getFallos());
+	}
+
+	@Test
+	public void testCaducidad() throws Exception {
+		CacheClientes cache = new CacheClientes(10, 50);
+		cache.buscar(this.pepe.getNif());
+		cache.buscar(this.ana.getNif());
+		Thread.sleep(100);
+		cache.buscar(this.pepe.getNif());
+		assertEquals(0, cache.getAciertos());
+		assertEquals(3, cache.getFallos());
+		assertEquals(1, cache.getDesalojos());
+		assertEquals(1, cache.purgar());
+		assertEquals(1, cache.getTamano());
+		assertEquals(2, cache.getDesalojos());
+	}
+
+	@Test
+	public void testTitulares() {
+		Cuenta cuenta = new Cuenta(1);
+		try {
+			cuenta.addTitular(this.pepe);
+			assertTrue(cuenta.isTitular(this.pepe.getNif()));
+			assertFalse(cuenta.isTitular(this.ana.getNif()));
+			cuenta.addTitular(this.ana);
+			assertTrue(cuenta.isTitular(this.ana.getNif()));
+			cuenta.insert();
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+		try {
+			cuenta.emitirTarjetaDebito(this.luis.getNif());
+			fail("Esperaba ClienteNoAutorizadoException");
+		} catch (ClienteNoAutorizadoException e) {
+		} catch (Exception e) {
+			fail("Esperaba ClienteNoAutorizadoException");
+		}
+		Cuenta recuperada = Manager.getCuentaDAO().findById(cuenta.getId()).get();
+		assertTrue(recuperada.isTitular(this.ana.getNif()));
+		assertFalse(recuperada.isTitular(this.luis.getNif()));
+	}
+}
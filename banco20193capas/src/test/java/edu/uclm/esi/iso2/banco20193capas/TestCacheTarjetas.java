@@ -0,0 +1,137 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.PinInvalidoException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.TarjetaBloqueadaException;
+import edu.uclm.esi.iso2.banco20193capas.model.CacheTarjetas;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaDebito;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestCacheTarjetas extends TestCase {
+	private TarjetaDebito tdPepe;
+	private TarjetaCredito tcPepe;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		Cuenta cuentaPepe = new Cuenta(1);
+		try {
+			cuentaPepe.addTitular(pepe);
+			cuentaPepe.insert();
+			cuentaPepe.ingresar(1000);
+			this.tdPepe = cuentaPepe.emitirTarjetaDebito(pepe.getNif());
+			this.tdPepe.cambiarPin(this.tdPepe.getPin(), 1234);
+			this.tcPepe = cuentaPepe.emitirTarjetaCredito(pepe.getNif(), 1000);
+			this.tcPepe.cambiarPin(this.tcPepe.getPin(), 1234);
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+	}
+
+	@Test
+	public void testComprobacionSinBaseDeDatos() {
+		CacheTarjetas cache = Manager.getCacheTarjetas();
+		long fallos = cache.getFallos();
+		try {
+			for (int i = 0; i < 10; i++) {
+				this.tdPepe.comprarPorInternet(1234, 10);
+				this.tcPepe.comprarPorInternet(1234, 10);
+			}
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+		assertEquals(fallos, cache.getFallos());
+	}
+
+	@Test
+	public void testBloqueoVisibleEnOtraInstancia() {
+		TarjetaDebito otra = Manager.getTarjetaDebitoDAO().findById(this.tdPepe.getId()).get();
+		for (int i = 0; i < 3; i++)
+			try {
+				this.tdPepe.comprar(1, 10);
+				fail("Esperaba PinInvalidoException");
+			} catch (PinInvalidoException e) {
+			} catch (Exception e) {
+				fail("Esperaba PinInvalidoException");
+			}
+		try {
+			otra.comprar(1234, 10);
+			fail("Esperaba TarjetaBloqueadaException");
+		} catch (TarjetaBloqueadaException e) {
+		} catch (Exception e) {
+			fail("Esperaba TarjetaBloqueadaException");
+		}
+		assertFalse(Manager.getTarjetaDebitoDAO().findById(this.tdPepe.getId()).get().isActiva());
+	}
+
+	@Test
+	public void testIntentosCompartidos() {
+		TarjetaCredito otra = Manager.getTarjetaCreditoDAO().findById(this.tcPepe.getId()).get();
+		try {
+			this.tcPepe.comprar(1, 10);
+			fail("Esperaba PinInvalidoException");
+		} catch (PinInvalidoException e) {
+		} catch (Exception e) {
+			fail("Esperaba PinInvalidoException");
+		}
+		try {
+			otra.comprar(1, 10);
+			fail("Esperaba PinInvalidoException");
+		} catch (PinInvalidoException e) {
+		} catch (Exception e) {
+			fail("Esperaba PinInvalidoException");
+		}
+		try {
+			this.tcPepe.comprar(1234, 10);
+			otra.comprar(1, 10);
+			fail("Esperaba PinInvalidoException");
+		} catch (PinInvalidoException e) {
+		} catch (Exception e) {
+			fail("Esperaba PinInvalidoException");
+		}
+		assertTrue(this.tcPepe.isActiva());
+		assertEquals(990, this.tcPepe.getCreditoDisponible(), 0.01);
+	}
+
+	@Test
+	public void testCambioDePinYInvalidacion() {
+		TarjetaDebito otra = Manager.getTarjetaDebitoDAO().findById(this.tdPepe.getId()).get();
+		try {
+			this.tdPepe.cambiarPin(1234, 4321);
+			otra.comprar(4321, 10);
+			assertEquals(4321, otra.getPin().intValue());
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+		CacheTarjetas cache = Manager.getCacheTarjetas();
+		cache.invalidar(this.tdPepe.getId());
+		long fallos = cache.getFallos();
+		try {
+			this.tdPepe.comprar(4321, 10);
+			this.tdPepe.comprar(4321, 10);
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+		assertEquals(fallos + 1, cache.getFallos());
+		assertEquals(970, this.tdPepe.getCuenta().getSaldo(), 0.01);
+	}
+}
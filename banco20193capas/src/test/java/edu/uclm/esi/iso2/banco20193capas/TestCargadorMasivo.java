@@ -0,0 +1,94 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.model.CargadorMasivo;
+import edu.uclm.esi.iso2.banco20193capas.model.CargadorMasivo.Formato;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.ResultadoCarga;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestCargadorMasivo extends TestCase {
+	private CargadorMasivo cargador;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+		this.cargador = new CargadorMasivo(2);
+	}
+
+	@Test
+	public void testCargaCompleta() throws IOException {
+		Path directorio = Files.createTempDirectory("carga");
+		Path clientes = directorio.resolve("clientes.csv");
+		Files.write(clientes, Arrays.asList("nif,nombre,apellidos", "1X,Pepe,Pérez", "2X,Ana,\"López, García\"", "3X,Luis,Ruiz",
+				",Sin,Nif", "1X,Pepe,Repetido"), StandardCharsets.UTF_8);
+		Path cuentas = directorio.resolve("cuentas.csv");
+		Files.write(cuentas, Arrays.asList("id,titulares", "1,1X;2X", "2,3X", "3,", "4,9X", "1,3X"), StandardCharsets.UTF_8);
+		Path movimientos = directorio.resolve("movimientos.jsonl");
+		Files.write(movimientos, Arrays.asList("{\"cuenta\": 1, \"importe\": 1000, \"concepto\": \"Saldo inicial\"}",
+				"{\"cuenta\": 1, \"importe\": -250.5}", "{\"cuenta\": 2, \"importe\": 300}", "{\"cuenta\": 2, \"importe\": 0}",
+				"{\"cuenta\": 7, \"importe\": 10}", "no es json"), StandardCharsets.UTF_8);
+
+		ResultadoCarga resultado = this.cargador.cargarClientes(clientes);
+		assertEquals(5, resultado.getLeidas());
+		assertEquals(3, resultado.getCargadas());
+		assertEquals(2, resultado.getRechazadas());
+		assertEquals("López, García", Manager.getClienteDAO().findByNif("2X").get().getApellidos());
+
+		resultado = this.cargador.cargarCuentas(cuentas);
+		assertEquals(2, resultado.getCargadas());
+		assertEquals(3, resultado.getRechazadas());
+		assertTrue(resultado.getErrores().toString(), resultado.getErrores().get(0).startsWith("Línea 4: Falta indicar el titular"));
+
+		resultado = this.cargador.cargarMovimientos(movimientos);
+		assertEquals(3, resultado.getCargadas());
+		assertEquals(3, resultado.getRechazadas());
+		assertTrue(resultado.getFilasPorSegundo() > 0);
+
+		Cuenta cuenta = Manager.getCuentaDAO().findById(1L).get();
+		assertEquals(749.5, cuenta.getSaldo());
+		assertEquals(74950, Manager.getMovimientoDAO().sumImporteByCuentaId(1L));
+		assertTrue(cuenta.isTitular("1X"));
+		assertTrue(cuenta.isTitular("2X"));
+		assertFalse(cuenta.isTitular("3X"));
+		assertEquals(300.0, Manager.getCuentaDAO().findById(2L).get().getSaldo());
+	}
+
+	@Test
+	public void testConvivenciaConHibernate() throws Exception {
+		this.cargador.cargarClientes(new StringReader("{\"nif\": \"1X\", \"nombre\": \"Pepe\"}\n{\"nif\": \"2X\"}"), Formato.JSON_LINEAS);
+		this.cargador.cargarCuentas(new StringReader("{\"id\": 1, \"titulares\": [\"1X\"]}"), Formato.JSON_LINEAS);
+		this.cargador.cargarMovimientos(new StringReader("cuenta,importe\n1,100\n1,200\n1,300"), Formato.CSV);
+
+		Cliente ana = new Cliente("3X", "Ana", "López");
+		ana.insert();
+		Cuenta cuenta = Manager.getCuentaDAO().findById(1L).get();
+		for (int i = 0; i < 60; i++)
+			cuenta.ingresar(1);
+		this.cargador.cargarMovimientos(new StringReader("cuenta,importe\n1,1000"), Formato.CSV);
+		assertEquals(3, Manager.getClienteDAO().count());
+		assertEquals(64, Manager.getMovimientoDAO().count());
+		assertEquals(1660.0, cuenta.getSaldo());
+	}
+}
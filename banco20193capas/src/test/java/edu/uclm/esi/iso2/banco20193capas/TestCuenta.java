@@ -2,6 +2,7 @@ package edu.uclm.esi.iso2.banco20193capas;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -21,6 +22,8 @@ import edu.uclm.esi.iso2.banco20193capas.exceptions.PinInvalidoException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
 import edu.uclm.esi.iso2.banco20193capas.exceptions.TarjetaBloqueadaException;
 import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.ConciliadorSaldos;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
 import edu.uclm.esi.iso2.banco20193capas.model.Tarjeta;
 import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
 import edu.uclm.esi.iso2.banco20193capas.model.TarjetaDebito;
@@ -313,4 +316,32 @@ public class TestCuenta extends TestCase {
 			fail("Excepción inesperada: " + e.getMessage());
 		}
 	}
+
+	@Test
+	public void testConciliacionSaldos() {
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+
+		Cuenta cuentaPepe = new Cuenta(1);
+		try {
+			cuentaPepe.addTitular(pepe);
+			cuentaPepe.insert();
+			cuentaPepe.ingresar(1000);
+			cuentaPepe.retirar(200);
+
+			ConciliadorSaldos conciliador = new ConciliadorSaldos();
+			assertTrue(conciliador.conciliar(false).isEmpty());
+
+			Manager.getMovimientoDAO().save(new MovimientoCuenta(cuentaPepe, 50, "Movimiento sin saldo"));
+			assertTrue(cuentaPepe.getSaldo() == 800);
+
+			Map<Long, Double> descuadres = conciliador.conciliar(true);
+			assertTrue(descuadres.size() == 1);
+			assertTrue(descuadres.get(cuentaPepe.getId()) == -50);
+			assertTrue(cuentaPepe.getSaldo() == 850);
+			assertTrue(conciliador.conciliar(false).isEmpty());
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e.getMessage());
+		}
+	}
 }
@@ -91,4 +91,22 @@ public class TestCuentaConFixtures extends TestCase {
 		}
 	}
 
+	@Test
+	public void testLiquidacion() {
+		try {
+			this.tcPepe.comprar(1234, 100);
+			this.tcPepe.comprar(1234, 50);
+			this.tcPepe.sacarDinero(1234, 20);
+			assertTrue(this.tcPepe.getCreditoDisponible() == 1827);
+			this.tcPepe.liquidar();
+			assertTrue(this.tcPepe.getCreditoDisponible() == 2000);
+			assertTrue(this.cuentaPepe.getSaldo() == 827);
+			this.tcPepe.liquidar();
+			assertTrue(this.cuentaPepe.getSaldo() == 827);
+			assertTrue(Manager.getMovimientoDAO().findByCuentaId(this.cuentaPepe.getId()).size() == 2);
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+	}
+
 }
@@ -0,0 +1,162 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.time.Instant;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.dao.EventoDominioDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.InstantaneaAgregadoDAO;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.PinInvalidoException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.TarjetaBloqueadaException;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.DiarioEventos;
+import edu.uclm.esi.iso2.banco20193capas.model.EventoDominio.Agregado;
+import edu.uclm.esi.iso2.banco20193capas.model.InstantaneaAgregado;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaDebito;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestDiarioEventos extends TestCase {
+	@Autowired
+	private EventoDominioDAO eventoDAO;
+	@Autowired
+	private InstantaneaAgregadoDAO instantaneaDAO;
+
+	private Cliente pepe;
+	private Cuenta cuentaPepe, cuentaAna;
+	private DiarioEventos diario;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+		this.instantaneaDAO.deleteAll();
+		this.eventoDAO.deleteAll();
+
+		// Sin margen, para que las instantáneas incluyan los eventos recién anotados
+		this.diario = new DiarioEventos(this.eventoDAO, this.instantaneaDAO, 5, 0);
+		this.pepe = new Cliente("12345X", "Pepe", "Pérez");
+		this.pepe.insert();
+		this.cuentaPepe = new Cuenta(1);
+		this.cuentaAna = new Cuenta(2);
+		try {
+			this.cuentaPepe.addTitular(this.pepe);
+			this.cuentaPepe.insert();
+			this.cuentaAna.addTitular(this.pepe);
+			this.cuentaAna.insert();
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+	}
+
+	@Test
+	public void testReconstruccionCuenta() throws Exception {
+		this.cuentaPepe.ingresar(1000);
+		this.cuentaPepe.retirar(200);
+		this.cuentaPepe.transferir(2L, 300, "Alquiler");
+		InstantaneaAgregado pepe = this.diario.reconstruir(Agregado.CUENTA, 1L);
+		assertEquals(this.cuentaPepe.getSaldo(), pepe.getSaldo());
+		assertEquals(4, pepe.getEventos());
+		InstantaneaAgregado ana = this.diario.reconstruir(Agregado.CUENTA, 2L);
+		assertEquals(300.0, ana.getSaldo());
+		assertEquals(1, ana.getEventos());
+	}
+
+	@Test
+	public void testInstantaneas() throws Exception {
+		for (int i = 1; i <= 12; i++)
+			this.cuentaPepe.ingresar(i);
+		this.cuentaAna.ingresar(1);
+		assertEquals(1, this.diario.tomarInstantaneas());
+		assertEquals(1, this.instantaneaDAO.count());
+		for (int i = 1; i <= 3; i++)
+			this.cuentaPepe.ingresar(100);
+		assertEquals(0, this.diario.tomarInstantaneas());
+
+		InstantaneaAgregado estado = this.diario.reconstruir(Agregado.CUENTA, 1L);
+		assertEquals(15, estado.getEventos());
+		assertEquals(378.0, estado.getSaldo());
+		assertEquals(this.cuentaPepe.getSaldo(), estado.getSaldo());
+
+		for (int i = 1; i <= 2; i++)
+			this.cuentaPepe.ingresar(1);
+		assertEquals(1, this.diario.tomarInstantaneas());
+		InstantaneaAgregado ultima = this.instantaneaDAO.findFirstByAgregadoAndAgregadoIdOrderByUltimoEventoDesc(Agregado.CUENTA, 1L).get();
+		assertEquals(17, ultima.getEventos());
+		assertEquals(380.0, ultima.getSaldo());
+
+		// Con margen, los eventos recién anotados todavía no entran en una instantánea
+		this.cuentaPepe.ingresar(1);
+		assertNull(new DiarioEventos(this.eventoDAO, this.instantaneaDAO, 1, 60000).tomarInstantanea(Agregado.CUENTA, 1L));
+	}
+
+	@Test
+	public void testPuntoEnElTiempo() throws Exception {
+		this.cuentaPepe.ingresar(100);
+		Thread.sleep(20);
+		Instant antes = Instant.now();
+		Thread.sleep(20);
+		for (int i = 1; i <= 5; i++)
+			this.cuentaPepe.ingresar(50);
+		this.diario.tomarInstantanea(Agregado.CUENTA, 1L);
+		assertEquals(100.0, this.diario.reconstruir(Agregado.CUENTA, 1L, antes).getSaldo());
+		assertEquals(350.0, this.diario.reconstruir(Agregado.CUENTA, 1L, Instant.now()).getSaldo());
+		assertEquals(0.0, this.diario.reconstruir(Agregado.CUENTA, 1L, antes.minusSeconds(60)).getSaldo());
+	}
+
+	@Test
+	public void testReconstruccionTarjetas() throws Exception {
+		TarjetaDebito td = this.cuentaPepe.emitirTarjetaDebito(this.pepe.getNif());
+		int pin = td.getPin();
+		this.cuentaPepe.ingresar(1000);
+		fallarPin(td, pin);
+		InstantaneaAgregado estado = this.diario.reconstruir(Agregado.TARJETA, td.getId());
+		assertEquals(1, estado.getIntentos());
+		td.comprar(pin, 10);
+		assertEquals(0, this.diario.reconstruir(Agregado.TARJETA, td.getId()).getIntentos());
+		td.cambiarPin(pin, pin + 1);
+		for (int i = 0; i < 3; i++)
+			fallarPin(td, pin);
+		estado = this.diario.reconstruir(Agregado.TARJETA, td.getId());
+		assertFalse(estado.getActiva());
+		assertEquals(3, estado.getIntentos());
+		assertEquals(1, estado.getCambiosPin());
+		assertEquals(Long.valueOf(1), estado.getCuentaId());
+		// El pin no se guarda ni en los eventos ni en las instantáneas
+		assertEquals(Integer.valueOf(0), Manager.getJdbcTemplate().queryForObject("select count(*) from information_schema.columns "
+				+ "where table_name in ('EVENTO_DOMINIO', 'INSTANTANEA_AGREGADO') and column_name = 'PIN'", Integer.class));
+
+		TarjetaCredito tc = this.cuentaPepe.emitirTarjetaCredito(this.pepe.getNif(), 1000);
+		tc.comprar(tc.getPin(), 100);
+		tc.sacarDinero(tc.getPin(), 50);
+		InstantaneaAgregado credito = this.diario.reconstruir(Agregado.TARJETA, tc.getId());
+		assertEquals(1000.0, credito.getCredito());
+		assertEquals(153.0, credito.getSaldo());
+		tc.liquidar();
+		assertEquals(0.0, this.diario.reconstruir(Agregado.TARJETA, tc.getId()).getSaldo());
+		assertEquals(this.cuentaPepe.getSaldo(), this.diario.reconstruir(Agregado.CUENTA, 1L).getSaldo());
+	}
+
+	private static void fallarPin(TarjetaDebito tarjeta, int pin) throws Exception {
+		try {
+			tarjeta.comprar(pin + 2, 10);
+			fail("Esperaba PinInvalidoException");
+		} catch (PinInvalidoException e) {
+		} catch (TarjetaBloqueadaException e) {
+			fail("Esperaba PinInvalidoException");
+		}
+	}
+}
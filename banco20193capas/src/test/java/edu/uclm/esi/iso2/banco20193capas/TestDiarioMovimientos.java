@@ -0,0 +1,261 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.dao.PuntoControlDiarioDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.RegistroApartadoDAO;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
+import edu.uclm.esi.iso2.banco20193capas.model.ArchivoDiario;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.DiarioMovimientos;
+import edu.uclm.esi.iso2.banco20193capas.model.ExtractoCuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.PuntoControlDiario;
+import edu.uclm.esi.iso2.banco20193capas.model.RegistroApartado;
+import edu.uclm.esi.iso2.banco20193capas.model.RegistroDiario;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestDiarioMovimientos extends TestCase {
+	@Autowired
+	private PuntoControlDiarioDAO puntoControlDAO;
+	@Autowired
+	private RegistroApartadoDAO registroApartadoDAO;
+
+	private Path archivo;
+	private Cliente pepe;
+	private Cuenta cuentaPepe, cuentaAna;
+
+	@Before
+	public void setUp() throws Exception {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+		this.registroApartadoDAO.deleteAll();
+
+		this.archivo = Files.createTempFile("diario", ".dat");
+		this.pepe = new Cliente("12345X", "Pepe", "Pérez");
+		this.pepe.insert();
+		this.cuentaPepe = new Cuenta(1);
+		this.cuentaAna = new Cuenta(2);
+		try {
+			this.cuentaPepe.addTitular(this.pepe);
+			this.cuentaPepe.insert();
+			this.cuentaAna.addTitular(this.pepe);
+			this.cuentaAna.insert();
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Manager.desactivarDiarioMovimientos();
+		Files.deleteIfExists(this.archivo);
+	}
+
+	@Test
+	public void testOperacionesConDiario() throws Exception {
+		Manager.activarDiarioMovimientos(this.archivo, 1024, 50, 5);
+		TarjetaCredito tc = this.cuentaPepe.emitirTarjetaCredito(this.pepe.getNif(), 1000);
+		this.cuentaPepe.ingresar(1000);
+		this.cuentaPepe.retirar(100);
+		tc.comprar(tc.getPin(), 100);
+		tc.sacarDinero(tc.getPin(), 50);
+		assertEquals(900.0, this.cuentaPepe.getSaldo());
+		assertEquals(847.0, tc.getCreditoDisponible());
+
+		DiarioMovimientos diario = Manager.getDiarioMovimientos();
+		diario.esperarAplicados();
+		assertTrue(diario.getForzados() > 0);
+		assertEquals(Long.valueOf(90000), Manager.getCuentaDAO().findSaldoById(1L));
+		assertEquals(2, Manager.getMovimientoDAO().findByCuentaId(1L).size());
+		assertEquals(15300, Manager.getMovimientoTarjetaCreditoDAO().sumImporteNoLiquidadoByTarjetaId(tc.getId()));
+		assertEquals(diario.getEscrito(), this.puntoControlDAO.findById(PuntoControlDiario.ID).get().getSecuencia());
+
+		tc.liquidar();
+		assertEquals(747.0, this.cuentaPepe.getSaldo());
+		assertEquals(1000.0, tc.getCreditoDisponible());
+	}
+
+	@Test
+	public void testSaldoConMovimientosPendientes() throws Exception {
+		// Con este lote y esta latencia, los movimientos solo se aplican cuando alguien los espera
+		Manager.activarDiarioMovimientos(this.archivo, 1024, 1000, 60000);
+		this.cuentaPepe.ingresar(100);
+		this.cuentaPepe.retirar(60);
+		try {
+			this.cuentaPepe.retirar(60);
+			fail("Esperaba SaldoInsuficienteException");
+		} catch (SaldoInsuficienteException e) {
+		}
+		assertEquals(40.0, this.cuentaPepe.getSaldo());
+		assertEquals(Long.valueOf(0), Manager.getCuentaDAO().findSaldoById(1L));
+		assertEquals(0, Manager.getMovimientoDAO().findByCuentaId(1L).size());
+
+		// La transferencia comprueba el saldo en la base de datos, así que antes se aplican los pendientes
+		this.cuentaPepe.transferir(2L, 30, "Alquiler");
+		assertEquals(Long.valueOf(850), Manager.getCuentaDAO().findSaldoById(1L));
+		assertEquals(30.0, this.cuentaAna.getSaldo());
+		assertEquals(4, Manager.getMovimientoDAO().findByCuentaId(1L).size());
+	}
+
+	/**
+	 * Un apunte que no puede aplicarse se aparta sin impedir que se apliquen los demás de su lote
+	 */
+	@Test
+	public void testApunteQueNoPuedeAplicarse() throws Exception {
+		MethodInterceptor cuentaAnaFalla = new MethodInterceptor() {
+			@Override
+			public Object invoke(MethodInvocation invocacion) throws Throwable {
+				if (invocacion.getMethod().getName().equals("actualizarSaldo") && Long.valueOf(2).equals(invocacion.getArguments()[0]))
+					throw new IllegalStateException("Fallo simulado");
+				return invocacion.proceed();
+			}
+		};
+		Advised dao = (Advised) Manager.getCuentaDAO();
+		dao.addAdvice(0, cuentaAnaFalla);
+		try {
+			Manager.activarDiarioMovimientos(this.archivo, 1024, 50, 5);
+			this.cuentaPepe.ingresar(100);
+			this.cuentaAna.ingresar(50);
+			this.cuentaPepe.ingresar(10);
+			DiarioMovimientos diario = Manager.getDiarioMovimientos();
+			diario.esperarAplicados();
+
+			assertEquals(1, diario.getApartados());
+			List<RegistroApartado> apartados = diario.getRegistrosApartados();
+			assertEquals(1, apartados.size());
+			assertEquals(Long.valueOf(2), apartados.get(0).getCuentaOTarjetaId());
+			assertEquals(5000, apartados.get(0).getCentimos());
+			assertTrue(apartados.get(0).getCausa(), apartados.get(0).getCausa().contains("Fallo simulado"));
+			assertEquals(diario.getEscrito(), this.puntoControlDAO.findById(PuntoControlDiario.ID).get().getSecuencia());
+		} finally {
+			dao.removeAdvice(cuentaAnaFalla);
+		}
+		assertEquals(Long.valueOf(11000), Manager.getCuentaDAO().findSaldoById(1L));
+		assertEquals(2, Manager.getMovimientoDAO().findByCuentaId(1L).size());
+		assertEquals(Long.valueOf(0), Manager.getCuentaDAO().findSaldoById(2L));
+		assertEquals(0.0, this.cuentaAna.getSaldo());
+	}
+
+	@Test
+	public void testExtractoConMovimientosPendientes() throws Exception {
+		Manager.activarDiarioMovimientos(this.archivo, 1024, 1000, 60000);
+		Instant desde = Instant.now().minusSeconds(60);
+		this.cuentaPepe.ingresar(100);
+		this.cuentaPepe.retirar(60);
+		assertEquals(0, Manager.getMovimientoDAO().findByCuentaId(1L).size());
+
+		// El extracto aplica antes los pendientes, así que ve los dos movimientos y parte del saldo correcto
+		Path fichero = Files.createTempFile("extracto", ".csv");
+		try {
+			assertEquals(2, new ExtractoCuenta(10).exportar(1L, desde, Instant.now().plusSeconds(60), fichero));
+			List<String> lineas = Files.readAllLines(fichero, StandardCharsets.UTF_8);
+			assertEquals(3, lineas.size());
+			assertTrue(lineas.get(1), lineas.get(1).endsWith(",100.00"));
+			assertTrue(lineas.get(2), lineas.get(2).endsWith(",40.00"));
+		} finally {
+			Files.delete(fichero);
+		}
+	}
+
+	@Test
+	public void testRecuperacion() throws Exception {
+		Optional<PuntoControlDiario> puntoControl = this.puntoControlDAO.findById(PuntoControlDiario.ID);
+		long punto = puntoControl.isPresent() ? puntoControl.get().getSecuencia() : 0;
+		// Dos ingresos confirmados y el primer registro de una retirada con comisión que no llegó a escribirse entera
+		ArchivoDiario previo = new ArchivoDiario(this.archivo, 64);
+		previo.escribir(0, registro(punto + 1, 0, 100, "Ingreso de efectivo"));
+		previo.escribir(1, registro(punto + 2, 0, 200, "Ingreso de efectivo"));
+		previo.escribir(2, registro(punto + 3, 1, -50, "Retirada de efectivo"));
+		previo.forzar();
+		previo.close();
+
+		Manager.activarDiarioMovimientos(this.archivo, 64, 50, 5);
+		assertEquals(2, Manager.getDiarioMovimientos().getRecuperados());
+		assertEquals(Long.valueOf(30000), Manager.getCuentaDAO().findSaldoById(1L));
+		this.cuentaPepe.ingresar(5);
+		Manager.desactivarDiarioMovimientos();
+		assertEquals(Long.valueOf(30500), Manager.getCuentaDAO().findSaldoById(1L));
+		assertEquals(3, Manager.getMovimientoDAO().findByCuentaId(1L).size());
+
+		// Al volver a arrancar no hay nada pendiente: el punto de control evita aplicar dos veces los registros
+		Manager.activarDiarioMovimientos(this.archivo, 64, 50, 5);
+		assertEquals(0, Manager.getDiarioMovimientos().getRecuperados());
+		assertEquals(305.0, this.cuentaPepe.getSaldo());
+	}
+
+	@Test
+	public void testConceptoLargo() throws Exception {
+		StringBuilder texto = new StringBuilder();
+		while (texto.length() < 127)
+			texto.append('ñ');
+		String concepto = texto.toString();
+		String largo = concepto + "ñ";
+		try {
+			this.cuentaPepe.retiroForzoso(1, largo);
+			fail("Se esperaba IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+
+		Manager.activarDiarioMovimientos(this.archivo, 1024, 50, 5);
+		this.cuentaPepe.retiroForzoso(1, concepto);
+		try {
+			this.cuentaPepe.retiroForzoso(1, largo);
+			fail("Se esperaba IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		Manager.getDiarioMovimientos().esperarAplicados();
+		List<MovimientoCuenta> movimientos = Manager.getMovimientoDAO().findByCuentaId(1L);
+		assertEquals(1, movimientos.size());
+		assertEquals(concepto, movimientos.get(0).getConcepto());
+	}
+
+	@Test
+	public void testRegistroCorrupto() {
+		ByteBuffer buffer = ByteBuffer.allocate(2 * RegistroDiario.TAMANO);
+		RegistroDiario registro = registro(7, 0, 12.5, "Ingreso de efectivo");
+		registro.escribir(buffer, RegistroDiario.TAMANO);
+		RegistroDiario leido = RegistroDiario.leer(buffer, RegistroDiario.TAMANO);
+		assertEquals(7, leido.getSecuencia());
+		assertEquals(12.5, leido.getImporte());
+		assertEquals("Ingreso de efectivo", leido.getConcepto());
+		assertEquals(registro.getFecha(), leido.getFecha());
+		assertNull(RegistroDiario.leer(buffer, 0));
+
+		buffer.put(RegistroDiario.TAMANO + 30, (byte) (buffer.get(RegistroDiario.TAMANO + 30) ^ 1));
+		assertNull(RegistroDiario.leer(buffer, RegistroDiario.TAMANO));
+	}
+
+	private RegistroDiario registro(long secuencia, int restantes, double importe, String concepto) {
+		RegistroDiario registro = RegistroDiario.de(new MovimientoCuenta(this.cuentaPepe, importe, concepto));
+		registro.setSecuencia(secuencia);
+		registro.setRestantes(restantes);
+		return registro;
+	}
+}
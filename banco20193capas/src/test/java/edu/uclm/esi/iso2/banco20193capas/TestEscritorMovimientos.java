@@ -0,0 +1,218 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.ConciliadorSaldos;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.EscritorMovimientos;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestEscritorMovimientos extends TestCase {
+	private List<Cuenta> cuentas;
+	private TarjetaCredito tarjeta;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		this.cuentas = new ArrayList<>();
+		try {
+			for (int i = 1; i <= 4; i++) {
+				Cuenta cuenta = new Cuenta(i);
+				cuenta.addTitular(pepe);
+				cuenta.insert();
+				this.cuentas.add(cuenta);
+			}
+			this.tarjeta = this.cuentas.get(0).emitirTarjetaCredito(pepe.getNif(), 100000);
+			this.tarjeta.cambiarPin(this.tarjeta.getPin(), 1234);
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+		Manager.activarEscrituraAgrupada(64, 5);
+	}
+
+	@After
+	public void tearDown() {
+		Manager.desactivarEscrituraAgrupada();
+	}
+
+	@Test
+	public void testIngresosAgrupados() throws Exception {
+		EscritorMovimientos escritor = Manager.getEscritorMovimientos();
+		ExecutorService pool = Executors.newFixedThreadPool(32);
+		List<Future<?>> resultados = new ArrayList<>();
+		for (int i = 0; i < 800; i++) {
+			final Cuenta cuenta = this.cuentas.get(i % this.cuentas.size());
+			final boolean comprar = i % 8 == 0;
+			resultados.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					cuenta.ingresar(10);
+					if (comprar)
+						tarjeta.comprar(1234, 1);
+					return null;
+				}
+			}));
+		}
+		for (Future<?> resultado : resultados)
+			resultado.get();
+		pool.shutdown();
+
+		for (Cuenta cuenta : this.cuentas)
+			assertEquals(2000.0, cuenta.getSaldo(), 0.0001);
+		assertEquals(100000.0 - 100, this.tarjeta.getCreditoDisponible(), 0.0001);
+		assertEquals(900, escritor.getApuntes());
+		assertTrue(escritor.getLotes() < escritor.getApuntes());
+		assertTrue(new ConciliadorSaldos().conciliar(false).isEmpty());
+	}
+
+	/**
+	 * Un movimiento que no puede guardarse (su concepto no cabe en la columna) llega en el mismo lote que
+	 * otros correctos: solo falla el suyo
+	 */
+	@Test
+	public void testMovimientoErroneoEnUnLote() throws Exception {
+		Manager.desactivarEscrituraAgrupada();
+		Manager.activarEscrituraAgrupada(64, 500);
+		final EscritorMovimientos escritor = Manager.getEscritorMovimientos();
+		StringBuilder concepto = new StringBuilder();
+		for (int i = 0; i < 300; i++)
+			concepto.append('x');
+		final MovimientoCuenta erroneo = new MovimientoCuenta(this.cuentas.get(0), 5, concepto.toString());
+		ExecutorService pool = Executors.newFixedThreadPool(16);
+		List<Future<?>> resultados = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			final Cuenta cuenta = this.cuentas.get(i % this.cuentas.size());
+			final boolean comprar = i % 8 == 0;
+			resultados.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					cuenta.ingresar(10);
+					if (comprar)
+						tarjeta.comprar(1234, 1);
+					return null;
+				}
+			}));
+		}
+		Future<Boolean> resultadoErroneo = pool.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return escritor.abonar(erroneo);
+			}
+		});
+		for (Future<?> resultado : resultados)
+			resultado.get();
+		try {
+			resultadoErroneo.get();
+			fail("Esperaba que fallara el movimiento erróneo");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RuntimeException);
+		}
+		pool.shutdown();
+
+		for (Cuenta cuenta : this.cuentas)
+			assertEquals(40.0, cuenta.getSaldo(), 0.0001);
+		assertEquals(100000.0 - 2, this.tarjeta.getCreditoDisponible(), 0.0001);
+		assertEquals(18, escritor.getApuntes());
+		assertEquals(1, escritor.getFallidos());
+		assertTrue(new ConciliadorSaldos().conciliar(false).isEmpty());
+	}
+
+	@Test
+	public void testRetiradasAgrupadas() throws Exception {
+		final Cuenta cuenta = this.cuentas.get(0);
+		cuenta.ingresar(1000);
+		ExecutorService pool = Executors.newFixedThreadPool(16);
+		List<Future<Boolean>> resultados = new ArrayList<>();
+		for (int i = 0; i < 50; i++)
+			resultados.add(pool.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					try {
+						cuenta.retirar(100);
+						return true;
+					} catch (SaldoInsuficienteException e) {
+						return false;
+					}
+				}
+			}));
+		int realizadas = 0;
+		for (Future<Boolean> resultado : resultados)
+			if (resultado.get())
+				realizadas++;
+		pool.shutdown();
+
+		assertEquals(10, realizadas);
+		assertEquals(0.0, cuenta.getSaldo(), 0.0001);
+		assertTrue(new ConciliadorSaldos().conciliar(false).isEmpty());
+	}
+
+	/**
+	 * Si el hilo del escritor muere, los apuntes que esperaban fallan en vez de bloquear para siempre a sus
+	 * hilos, y los siguientes se rechazan
+	 */
+	@Test
+	public void testHiloInterrumpido() throws Exception {
+		// Con esta latencia, los ingresos se quedan esperando a que se complete el lote
+		Manager.activarEscrituraAgrupada(1000, 60000);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<?>> resultados = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			final Cuenta cuenta = this.cuentas.get(i);
+			resultados.add(pool.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					cuenta.ingresar(10);
+					return null;
+				}
+			}));
+		}
+		Thread.sleep(200);
+		for (Thread hilo : Thread.getAllStackTraces().keySet())
+			if (hilo.getName().equals("escritor-movimientos"))
+				hilo.interrupt();
+		for (Future<?> resultado : resultados)
+			try {
+				resultado.get(5, TimeUnit.SECONDS);
+				fail("Esperaba que el ingreso fallara");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		pool.shutdown();
+		assertEquals(4, Manager.getEscritorMovimientos().getFallidos());
+		try {
+			this.cuentas.get(0).ingresar(10);
+			fail("Esperaba IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+		assertEquals(0, Manager.getMovimientoDAO().count());
+	}
+}
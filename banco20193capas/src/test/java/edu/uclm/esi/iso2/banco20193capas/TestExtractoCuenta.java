@@ -0,0 +1,175 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+
+import edu.uclm.esi.iso2.banco20193capas.model.CargadorMasivo;
+import edu.uclm.esi.iso2.banco20193capas.model.CargadorMasivo.Formato;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.ExtractoCuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.ResultadoCarga;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestExtractoCuenta extends TestCase {
+	private Cuenta cuentaPepe;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		this.cuentaPepe = new Cuenta(1);
+		Cuenta cuentaAna = new Cuenta(2);
+		try {
+			this.cuentaPepe.addTitular(pepe);
+			this.cuentaPepe.insert();
+			cuentaAna.addTitular(pepe);
+			cuentaAna.insert();
+			for (int i = 1; i <= 20; i++) {
+				this.cuentaPepe.ingresar(i);
+				cuentaAna.ingresar(i);
+			}
+			this.cuentaPepe.retirar(10);
+			this.cuentaPepe.transferir(2L, 100, "Alquiler");
+			new CargadorMasivo(10).cargarMovimientos(new StringReader("cuenta,importe,concepto\n1,5,\"Bizum, \"\"junio\"\"\""), Formato.CSV);
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+	}
+
+	@Test
+	public void testPaginacionPorClave() {
+		long desde = 0;
+		int paginas = 0, movimientos = 0;
+		List<MovimientoCuenta> pagina;
+		do {
+			pagina = Manager.getMovimientoDAO().findPaginaByCuentaId(1L, desde, PageRequest.of(0, 10));
+			for (MovimientoCuenta movimiento : pagina) {
+				assertTrue(movimiento.getId() > desde);
+				assertEquals(Long.valueOf(1), movimiento.getCuenta().getId());
+				desde = movimiento.getId();
+			}
+			movimientos = movimientos + pagina.size();
+			paginas++;
+		} while (pagina.size() == 10);
+		assertEquals(24, movimientos);
+		assertEquals(3, paginas);
+	}
+
+	@Test
+	public void testRecorridoEnStream() {
+		Long leidos = Manager.getTransactionTemplate().execute(new TransactionCallback<Long>() {
+			@Override
+			public Long doInTransaction(TransactionStatus status) {
+				long anterior = 0, n = 0;
+				try (Stream<MovimientoCuenta> movimientos = Manager.getMovimientoDAO().streamByCuentaId(1L)) {
+					Iterator<MovimientoCuenta> it = movimientos.iterator();
+					while (it.hasNext()) {
+						MovimientoCuenta movimiento = it.next();
+						assertTrue(movimiento.getId() > anterior);
+						anterior = movimiento.getId();
+						n++;
+					}
+				}
+				return n;
+			}
+		});
+		assertEquals(24, leidos.longValue());
+	}
+
+	@Test
+	public void testExportar() throws Exception {
+		Path fichero = Files.createTempFile("extracto", ".csv");
+		try {
+			assertEquals(24, new ExtractoCuenta(7).exportar(1L, fichero));
+			List<String> lineas = Files.readAllLines(fichero, StandardCharsets.UTF_8);
+			assertEquals(25, lineas.size());
+			assertEquals("id,fecha,cuenta,importe,concepto,saldo", lineas.get(0));
+			assertTrue(lineas.get(1), lineas.get(1).endsWith(",1,1.00,\"Ingreso de efectivo\",1.00"));
+			assertTrue(lineas.get(22), lineas.get(22).endsWith(",1,-100.00,\"Transferencia emitida\",100.00"));
+			String ultima = lineas.get(24);
+			assertTrue(ultima, ultima.endsWith(",1,5.00,\"Bizum, \"\"junio\"\"\",103.50"));
+			assertEquals(String.format(Locale.ROOT, "%.2f", this.cuentaPepe.getSaldo()), ultima.substring(ultima.lastIndexOf(',') + 1));
+		} finally {
+			Files.delete(fichero);
+		}
+	}
+
+	@Test
+	public void testExportarPeriodo() throws Exception {
+		ResultadoCarga carga = new CargadorMasivo(10).cargarMovimientos(new StringReader("cuenta,importe,fecha\n"
+				+ "1,50,2019-01-10T10:00:00Z\n1,60,2019-02-10T10:00:00Z\n1,-30,2019-02-20T10:00:00Z\n1,70,2019-03-10T10:00:00Z\n1,1,ayer"), Formato.CSV);
+		assertEquals(4, carga.getCargadas());
+		assertEquals(1, carga.getRechazadas());
+		Instant febrero = Instant.parse("2019-02-01T00:00:00Z"), marzo = Instant.parse("2019-03-01T00:00:00Z");
+		assertEquals(2, Manager.getMovimientoDAO().findPeriodoByCuentaId(1L, febrero, marzo).size());
+
+		Path fichero = Files.createTempFile("extracto", ".csv");
+		try {
+			assertEquals(2, new ExtractoCuenta(1).exportar(1L, febrero, marzo, fichero));
+			List<String> lineas = Files.readAllLines(fichero, StandardCharsets.UTF_8);
+			assertEquals(3, lineas.size());
+			assertTrue(lineas.get(1), lineas.get(1).endsWith(",2019-02-10T10:00:00Z,1,60.00,\"Movimiento migrado\",110.00"));
+			assertTrue(lineas.get(2), lineas.get(2).endsWith(",2019-02-20T10:00:00Z,1,-30.00,\"Movimiento migrado\",80.00"));
+		} finally {
+			Files.delete(fichero);
+		}
+	}
+
+	@Test
+	public void testExportarPeriodoConIngresosConcurrentes() throws Exception {
+		new CargadorMasivo(10).cargarMovimientos(new StringReader("cuenta,importe,fecha\n"
+				+ "1,50,2019-01-10T10:00:00Z\n1,60,2019-02-10T10:00:00Z\n1,-30,2019-02-20T10:00:00Z\n1,70,2019-03-10T10:00:00Z"), Formato.CSV);
+		Instant febrero = Instant.parse("2019-02-01T00:00:00Z"), marzo = Instant.parse("2019-03-01T00:00:00Z");
+		Thread ingresos = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 200; i++)
+						cuentaPepe.ingresar(1);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		Path fichero = Files.createTempFile("extracto", ".csv");
+		try {
+			ingresos.start();
+			while (ingresos.isAlive()) {
+				assertEquals(2, new ExtractoCuenta(1).exportar(1L, febrero, marzo, fichero));
+				List<String> lineas = Files.readAllLines(fichero, StandardCharsets.UTF_8);
+				assertTrue(lineas.get(2), lineas.get(2).endsWith(",-30.00,\"Movimiento migrado\",80.00"));
+			}
+		} finally {
+			ingresos.join();
+			Files.delete(fichero);
+		}
+	}
+}
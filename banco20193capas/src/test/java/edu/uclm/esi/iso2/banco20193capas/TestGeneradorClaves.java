@@ -0,0 +1,47 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import edu.uclm.esi.iso2.banco20193capas.model.GeneradorClaves;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaDebito;
+import junit.framework.TestCase;
+
+public class TestGeneradorClaves extends TestCase {
+
+	@Test
+	public void testClavesDeCuatroCifras() {
+		Set<Integer> tokens = new HashSet<>();
+		for (int i = 0; i < 10000; i++) {
+			int pin = GeneradorClaves.generarPin();
+			int token = GeneradorClaves.generarToken();
+			assertTrue(pin >= 0 && pin <= 9999);
+			assertTrue(token >= 0 && token <= 9999);
+			tokens.add(token);
+		}
+		// Con 10000 tokens uniformes salen, en media, unos 6300 distintos
+		assertTrue("Tokens distintos: " + tokens.size(), tokens.size() > 5000);
+	}
+
+	@Test
+	public void testPinesConcurrentes() throws Exception {
+		final Set<Integer> pines = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+		final CountDownLatch fin = new CountDownLatch(32);
+		for (int i = 0; i < 32; i++)
+			new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 500; j++)
+						pines.add(new TarjetaDebito().getPin());
+					fin.countDown();
+				}
+			}.start();
+		fin.await();
+		assertTrue("Pines distintos: " + pines.size(), pines.size() > 5000);
+	}
+}
@@ -0,0 +1,208 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Random;
+
+import org.h2.tools.RunScript;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.dao.EventoDominioDAO;
+import edu.uclm.esi.iso2.banco20193capas.dao.InstantaneaAgregadoDAO;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
+import edu.uclm.esi.iso2.banco20193capas.model.Centimos;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.ConciliadorSaldos;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.DiarioEventos;
+import edu.uclm.esi.iso2.banco20193capas.model.EventoDominio.Agregado;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import junit.framework.TestCase;
+
+/**
+ * Propiedades de los importes en céntimos, comprobadas con importes aleatorios (con semillas fijas, que se
+ * indican en los mensajes de error para poder reproducir un fallo): las conversiones, la comisión de las
+ * transferencias y las sumas de los libros de movimientos son exactas
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestImportesCentimos extends TestCase {
+	private static final long[] SEMILLAS = { 1, 7, 2019, 123456789 };
+
+	@Autowired
+	private EventoDominioDAO eventoDAO;
+	@Autowired
+	private InstantaneaAgregadoDAO instantaneaDAO;
+
+	private Cuenta[] cuentas;
+
+	@Before
+	public void setUp() throws Exception {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+		this.instantaneaDAO.deleteAll();
+		this.eventoDAO.deleteAll();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		this.cuentas = new Cuenta[3];
+		for (int i = 0; i < this.cuentas.length; i++) {
+			this.cuentas[i] = new Cuenta(i + 1);
+			this.cuentas[i].addTitular(pepe);
+			this.cuentas[i].insert();
+		}
+	}
+
+	@Test
+	public void testConversiones() {
+		for (long semilla : SEMILLAS) {
+			Random azar = new Random(semilla);
+			for (int i = 0; i < 100000; i++) {
+				long centimos = (long) ((azar.nextDouble() * 2 - 1) * 1e13);
+				double euros = Centimos.aEuros(centimos);
+				assertEquals("Semilla " + semilla, centimos, Centimos.de(euros));
+				assertEquals("Semilla " + semilla, BigDecimal.valueOf(centimos, 2).doubleValue(), euros, 0.0);
+				assertEquals("Semilla " + semilla, centimos, Centimos.de(Double.parseDouble(Centimos.formatear(centimos))));
+			}
+		}
+	}
+
+	@Test
+	public void testComisionTransferencia() {
+		BigDecimal minimo = new BigDecimal("1.50");
+		for (long semilla : SEMILLAS) {
+			Random azar = new Random(semilla);
+			for (int i = 0; i < 100000; i++) {
+				long centimos = 1 + (long) (azar.nextDouble() * (i % 2 == 0 ? 100000 : 1e11));
+				BigDecimal comision = BigDecimal.valueOf(centimos, 2).multiply(new BigDecimal("0.01")).setScale(2, RoundingMode.HALF_UP).max(minimo);
+				assertEquals("Semilla " + semilla + ", importe " + centimos, comision.unscaledValue().longValue(),
+						Centimos.comisionTransferencia(centimos));
+			}
+		}
+	}
+
+	@Test
+	public void testSumasExactas() {
+		for (long semilla : SEMILLAS) {
+			Random azar = new Random(semilla);
+			long suma = 0;
+			BigDecimal esperada = BigDecimal.ZERO;
+			for (int i = 0; i < 100000; i++) {
+				double importe = Centimos.aEuros(azar.nextInt(2000001) - 1000000);
+				suma = suma + Centimos.de(importe);
+				esperada = esperada.add(BigDecimal.valueOf(importe));
+			}
+			assertEquals("Semilla " + semilla, 0, esperada.compareTo(BigDecimal.valueOf(suma, 2)));
+		}
+	}
+
+	/**
+	 * Hace ingresos, retiradas y transferencias aleatorias y comprueba que el saldo de cada cuenta es exactamente
+	 * el calculado con decimales exactos, que coincide con la suma de sus movimientos y con la de sus eventos
+	 */
+	@Test
+	public void testLibroDeMovimientos() throws Exception {
+		DiarioEventos diario = new DiarioEventos(this.eventoDAO, this.instantaneaDAO, 20, 0);
+		for (long semilla : SEMILLAS) {
+			this.setUp();
+			Random azar = new Random(semilla);
+			BigDecimal[] saldos = { BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO };
+			for (int i = 0; i < 150; i++) {
+				int origen = azar.nextInt(this.cuentas.length);
+				BigDecimal importe = BigDecimal.valueOf(1 + azar.nextInt(50000), 2);
+				int operacion = azar.nextInt(3);
+				try {
+					if (operacion == 0) {
+						this.cuentas[origen].ingresar(importe.doubleValue());
+						saldos[origen] = saldos[origen].add(importe);
+					} else if (operacion == 1) {
+						this.cuentas[origen].retirar(importe.doubleValue());
+						saldos[origen] = saldos[origen].subtract(importe);
+					} else {
+						int destino = (origen + 1 + azar.nextInt(this.cuentas.length - 1)) % this.cuentas.length;
+						this.cuentas[origen].transferir(this.cuentas[destino].getId(), importe.doubleValue(), "Prueba");
+						BigDecimal comision = importe.multiply(new BigDecimal("0.01")).setScale(2, RoundingMode.HALF_UP).max(new BigDecimal("1.50"));
+						saldos[origen] = saldos[origen].subtract(importe).subtract(comision);
+						saldos[destino] = saldos[destino].add(importe);
+					}
+				} catch (SaldoInsuficienteException e) {
+				}
+				assertTrue("Semilla " + semilla + ", operación " + i, saldos[origen].signum() >= 0);
+			}
+			for (int i = 0; i < this.cuentas.length; i++) {
+				Long id = this.cuentas[i].getId();
+				String mensaje = "Semilla " + semilla + ", cuenta " + id;
+				long esperado = saldos[i].unscaledValue().longValue();
+				assertEquals(mensaje, saldos[i].doubleValue(), this.cuentas[i].getSaldo(), 0.0);
+				assertEquals(mensaje, Long.valueOf(esperado), Manager.getCuentaDAO().findSaldoById(id));
+				assertEquals(mensaje, esperado, Manager.getMovimientoDAO().sumImporteByCuentaId(id));
+				assertEquals(mensaje, saldos[i].doubleValue(), diario.reconstruir(Agregado.CUENTA, id).getSaldo(), 0.0);
+			}
+			assertTrue(new ConciliadorSaldos().conciliar(false).isEmpty());
+		}
+	}
+
+	@Test
+	public void testMigracion() throws Exception {
+		try (Connection conexion = DriverManager.getConnection("jdbc:h2:mem:migracion;DB_CLOSE_DELAY=-1", "sa", "");
+				Statement sentencia = conexion.createStatement()) {
+			sentencia.execute("create table cuenta (id bigint primary key, creada boolean, saldo double not null)");
+			sentencia.execute("create table movimiento_cuenta (id bigint primary key, cuenta_id bigint, importe double not null)");
+			sentencia.execute("create table movimiento_tarjeta_credito (id bigint primary key, importe double not null)");
+			sentencia.execute("create table tarjeta_credito (id bigint primary key, credito double)");
+			sentencia.execute("create table compra_pendiente (id varchar(255) primary key, importe double not null)");
+			sentencia.execute("create table evento_dominio (id bigint primary key, importe double not null)");
+			sentencia.execute("create table instantanea_agregado (id bigint primary key, saldo double not null, credito double not null)");
+			sentencia.execute("insert into cuenta values (1, true, " + (0.1 + 0.2 - 250.5) + "), (2, true, 10), (3, true, 0)");
+			sentencia.execute("insert into movimiento_cuenta values (1, 1, 0.1), (2, 1, 0.2), (3, 1, -250.5), (4, 2, 0.333), (5, 2, 0.333), "
+					+ "(6, 2, 9.334)");
+			sentencia.execute("insert into movimiento_tarjeta_credito values (1, 1234.56)");
+			sentencia.execute("insert into tarjeta_credito values (1, 1000), (2, null)");
+			sentencia.execute("insert into compra_pendiente values ('1:1111', 19.99)");
+			sentencia.execute("insert into evento_dominio values (1, -0.07)");
+			sentencia.execute("insert into instantanea_agregado values (1, 99.9, 500)");
+
+			RunScript.execute(conexion, new InputStreamReader(this.getClass().getResourceAsStream("/db/migracion-importes-centimos.sql"),
+					StandardCharsets.UTF_8));
+
+			assertEquals(-25020, leer(sentencia, "select saldo_centimos from cuenta where id = 1"));
+			assertEquals(-25020, leer(sentencia, "select sum(importe_centimos) from movimiento_cuenta where cuenta_id = 1"));
+			assertEquals(999, leer(sentencia, "select saldo_centimos from cuenta where id = 2"));
+			assertEquals(999, leer(sentencia, "select sum(importe_centimos) from movimiento_cuenta where cuenta_id = 2"));
+			assertEquals(0, leer(sentencia, "select saldo_centimos from cuenta where id = 3"));
+			assertEquals(123456, leer(sentencia, "select importe_centimos from movimiento_tarjeta_credito"));
+			assertEquals(100000, leer(sentencia, "select credito_centimos from tarjeta_credito where id = 1"));
+			assertEquals(0, leer(sentencia, "select credito_centimos from tarjeta_credito where id = 2"));
+			assertEquals(1999, leer(sentencia, "select importe_centimos from compra_pendiente"));
+			assertEquals(-7, leer(sentencia, "select importe_centimos from evento_dominio"));
+			assertEquals(9990, leer(sentencia, "select saldo_centimos from instantanea_agregado"));
+			assertEquals(50000, leer(sentencia, "select credito_centimos from instantanea_agregado"));
+			assertEquals(0, leer(sentencia, "select count(*) from information_schema.columns where column_name in ('SALDO', 'IMPORTE', 'CREDITO') "
+					+ "and table_schema = 'PUBLIC'"));
+			sentencia.execute("drop all objects");
+		}
+	}
+
+	private static long leer(Statement sentencia, String consulta) throws Exception {
+		try (ResultSet fila = sentencia.executeQuery(consulta)) {
+			assertTrue(fila.next());
+			return fila.getLong(1);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.annotation.DirtiesContext.ClassMode;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+import junit.framework.TestCase;
+
+/**
+ * Comprueba, con el plan de ejecución de H2, que las búsquedas de movimientos por cuenta (también por páginas
+ * y por periodo), de movimientos no liquidados, por liquidación y por periodo por tarjeta, de movimientos por periodo y de
+ * clientes por NIF usan un índice. Por defecto las tablas tienen {@value #FILAS_POR_DEFECTO} filas; el perfil
+ * {@code benchmarks} repite la prueba con un millón (propiedad {@code banco.indices.filas}).
+ * Las filas de carga usan ids negativos para no chocar con las secuencias de Hibernate.
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@DirtiesContext(classMode = ClassMode.AFTER_CLASS)
+public class TestIndices extends TestCase {
+	private static final int FILAS_POR_DEFECTO = 5000;
+	private static final int FILAS = Integer.getInteger("banco.indices.filas", FILAS_POR_DEFECTO);
+	/** Una cuenta y una tarjeta por cada mil filas, con un mínimo de diez */
+	private static final int CUENTAS = Math.max(10, FILAS / 1000);
+	private static final int BLOQUE = 20000;
+	/**
+	 * Los movimientos se reparten hacia atrás desde el 1 de enero de 2019 a lo largo de un millón de minutos
+	 * (casi dos años), sea cual sea el número de filas
+	 */
+	private static final String FECHA = "dateadd('MINUTE', -x * " + (1000000 / FILAS) + ", timestamp '2019-01-01 00:00:00')";
+
+	@Autowired
+	private JdbcTemplate jdbc;
+
+	/**
+	 * Carga los datos solo para el primer test: las tablas cargadas se comparten entre todos los tests de
+	 * la clase, y la base de datos en memoria se descarta con el contexto al terminar la clase
+	 */
+	@Before
+	public void setUp() {
+		if (jdbc.queryForObject("select count(*) from cliente where id < 0", Long.class) > 0)
+			return;
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+
+		jdbc.update("insert into cuenta (id, creada, saldo_centimos) select -x, true, 0 from system_range(1, " + CUENTAS + ")");
+		jdbc.update("insert into tarjeta_credito (id, activa, intentos, pin, credito_centimos, cuenta_id, titular_id) select -x, true, 0, 0, 100000, null, null from system_range(1, " + CUENTAS + ")");
+		for (int desde = 1; desde <= FILAS; desde = desde + BLOQUE) {
+			String rango = "system_range(" + desde + ", " + Math.min(desde + BLOQUE - 1, FILAS) + ")";
+			jdbc.update("insert into cliente (id, nif, nombre, apellidos) select -x, concat('NIF', x), 'Cliente', 'De carga' from " + rango);
+			jdbc.update("insert into movimiento_cuenta (id, cuenta_id, importe_centimos, concepto, fecha) select -x, -1 - mod(x, " + CUENTAS + "), 100, 'Carga', " + FECHA + " from " + rango);
+			jdbc.update("insert into movimiento_tarjeta_credito (id, tarjeta_id, importe_centimos, concepto, liquidado, fecha) select -x, -1 - mod(x, " + CUENTAS + "), 100, 'Carga', mod(x, 10) > 0, " + FECHA + " from " + rango);
+		}
+		jdbc.execute("analyze");
+	}
+
+	@Test
+	public void testMovimientosPorCuenta() {
+		String plan = explicar("select * from movimiento_cuenta where cuenta_id = -7");
+		assertTrue(plan, plan.contains("CUENTA_ID = -7 */"));
+		assertFalse(plan, plan.contains("tableScan"));
+		assertEquals(FILAS / CUENTAS, Manager.getMovimientoDAO().findByCuentaId(-7L).size());
+		assertEquals(100L * FILAS / CUENTAS, Manager.getMovimientoDAO().sumImporteByCuentaId(-7L));
+	}
+
+	@Test
+	public void testPaginaDeMovimientos() {
+		long mitad = -FILAS / 2;
+		String plan = explicar("select * from movimiento_cuenta where cuenta_id = -7 and id > " + mitad + " order by id limit 100");
+		assertTrue(plan, plan.contains("IX_MOVIMIENTO_CUENTA_CUENTA: CUENTA_ID = -7"));
+		List<MovimientoCuenta> pagina = Manager.getMovimientoDAO().findPaginaByCuentaId(-7L, mitad, PageRequest.of(0, 100));
+		assertEquals(100, pagina.size());
+		assertTrue(pagina.get(0).getId() > mitad);
+	}
+
+	@Test
+	public void testMovimientosPorPeriodo() {
+		String periodo = "fecha >= timestamp '2018-06-01 00:00:00' and fecha < timestamp '2018-07-01 00:00:00'";
+		Instant desde = LocalDateTime.of(2018, 6, 1, 0, 0).atZone(ZoneId.systemDefault()).toInstant();
+		Instant hasta = LocalDateTime.of(2018, 7, 1, 0, 0).atZone(ZoneId.systemDefault()).toInstant();
+
+		String plan = explicar("select * from movimiento_cuenta where cuenta_id = -7 and " + periodo);
+		assertTrue(plan, plan.contains("IX_MOVIMIENTO_CUENTA_FECHA"));
+		long esperados = jdbc.queryForObject("select count(*) from movimiento_cuenta where cuenta_id = -7 and " + periodo, Long.class);
+		assertTrue(esperados > 0);
+		assertEquals(esperados, Manager.getMovimientoDAO().findPeriodoByCuentaId(-7L, desde, hasta).size());
+
+		plan = explicar("select * from movimiento_tarjeta_credito where tarjeta_id = -7 and " + periodo);
+		assertTrue(plan, plan.contains("IX_MOVIMIENTO_TC_TARJETA_FECHA"));
+		assertEquals(esperados, Manager.getMovimientoTarjetaCreditoDAO().findPeriodoByTarjetaId(-7L, desde, hasta).size());
+
+		plan = explicar("select * from movimiento_cuenta where " + periodo);
+		assertTrue(plan, plan.contains("IX_MOVIMIENTO_CUENTA_AUDITORIA"));
+	}
+
+	@Test
+	public void testMovimientosNoLiquidadosPorTarjeta() {
+		String plan = explicar("select coalesce(sum(importe_centimos), 0) from movimiento_tarjeta_credito where tarjeta_id = -7 and liquidado = false");
+		assertTrue(plan, plan.contains("IX_MOVIMIENTO_TC_TARJETA_LIQUIDADO"));
+		assertTrue(plan, plan.contains("LIQUIDADO = FALSE"));
+		assertEquals(FILAS / CUENTAS, Manager.getMovimientoTarjetaCreditoDAO().findByTarjetaId(-7L).size());
+
+		plan = explicar("select coalesce(sum(importe_centimos), 0) from movimiento_tarjeta_credito where liquidacion = 'L1'");
+		assertTrue(plan, plan.contains("IX_MOVIMIENTO_TC_LIQUIDACION"));
+	}
+
+	@Test
+	public void testClientePorNif() {
+		String plan = explicar("select * from cliente where nif = 'NIF" + FILAS / 2 + "'");
+		assertFalse(plan, plan.contains("tableScan"));
+		assertEquals(Long.valueOf(-FILAS / 2), Manager.getClienteDAO().findByNif("NIF" + FILAS / 2).get().getId());
+	}
+
+	private String explicar(String sql) {
+		List<String> filas = jdbc.queryForList("explain " + sql, String.class);
+		return filas.get(0);
+	}
+}
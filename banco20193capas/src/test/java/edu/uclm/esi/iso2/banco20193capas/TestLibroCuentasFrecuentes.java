@@ -0,0 +1,198 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.ImporteInvalidoException;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.LibroCuentasFrecuentes;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestLibroCuentasFrecuentes extends TestCase {
+	private Cuenta cuentaPepe, cuentaAna;
+
+	@Before
+	public void setUp() throws Exception {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		this.cuentaPepe = new Cuenta(1);
+		this.cuentaPepe.addTitular(pepe);
+		this.cuentaPepe.insert();
+		this.cuentaAna = new Cuenta(2);
+		this.cuentaAna.addTitular(pepe);
+		this.cuentaAna.insert();
+		// Las revisiones se hacen a mano en cada test
+		Manager.activarLibroCuentasFrecuentes(1, 5, 3, 3600000, 100);
+	}
+
+	@After
+	public void tearDown() {
+		Manager.desactivarLibroCuentasFrecuentes();
+	}
+
+	@Test
+	public void testIncorporacionPorAccesos() throws Exception {
+		LibroCuentasFrecuentes libro = Manager.getLibroCuentasFrecuentes();
+		this.cuentaPepe.ingresar(1000);
+		for (int i = 0; i < 10; i++)
+			assertEquals(1000.0, this.cuentaPepe.getSaldo());
+		for (int i = 0; i < 6; i++)
+			this.cuentaAna.getSaldo();
+		assertEquals(1, libro.revisar());
+		assertTrue(libro.isCargada(this.cuentaPepe.getId()));
+		// Solo cabe una cuenta en el libro
+		assertFalse(libro.isCargada(this.cuentaAna.getId()));
+		assertEquals(100000, libro.getSaldo(this.cuentaPepe.getId()));
+
+		this.cuentaPepe.retirar(200);
+		this.cuentaAna.ingresar(500);
+		this.cuentaAna.transferir(this.cuentaPepe.getId(), 300, "Alquiler");
+		this.cuentaPepe.transferir(this.cuentaAna.getId(), 100, "Devolución");
+		Manager.getTransactionTemplate().execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				try {
+					cuentaPepe.ingresar(5000);
+				} catch (ImporteInvalidoException e) {
+					fail();
+				}
+				status.setRollbackOnly();
+			}
+		});
+		assertEquals(Long.valueOf(99850), Manager.getCuentaDAO().findSaldoById(this.cuentaPepe.getId()));
+		assertEquals(998.5, this.cuentaPepe.getSaldo());
+		assertEquals(99850, libro.getSaldo(this.cuentaPepe.getId()));
+
+		long[] ids = new long[5], importes = new long[5], fechas = new long[5];
+		assertEquals(3, libro.getUltimos(this.cuentaPepe.getId(), ids, importes, fechas));
+		assertEquals(-150, importes[0]);
+		assertEquals(-10000, importes[1]);
+		assertEquals(30000, importes[2]);
+		assertTrue(ids[0] > ids[2]);
+		assertTrue(fechas[0] >= fechas[2]);
+		assertEquals(-1, libro.getUltimos(this.cuentaAna.getId(), ids, importes, fechas));
+
+		// Sin accesos en el periodo, la cuenta sale del libro
+		assertEquals(0, libro.revisar());
+		assertEquals(0, libro.getCargadas());
+		assertEquals(LibroCuentasFrecuentes.NO_CARGADA, libro.getSaldo(this.cuentaPepe.getId()));
+		assertEquals(998.5, this.cuentaPepe.getSaldo());
+	}
+
+	@Test
+	public void testCargaDeLosUltimosMovimientos() throws Exception {
+		LibroCuentasFrecuentes libro = Manager.getLibroCuentasFrecuentes();
+		for (int i = 1; i <= 5; i++)
+			this.cuentaPepe.ingresar(i);
+		assertTrue(libro.cargar(this.cuentaPepe.getId()));
+		assertFalse(libro.cargar(Long.valueOf(999)));
+
+		long[] ids = new long[2], importes = new long[3], fechas = new long[3];
+		assertEquals(2, libro.getUltimos(this.cuentaPepe.getId(), ids, importes, fechas));
+		assertEquals(500, importes[0]);
+		assertEquals(400, importes[1]);
+
+		ids = new long[3];
+		this.cuentaPepe.ingresar(6);
+		this.cuentaPepe.ingresar(7);
+		assertEquals(3, libro.getUltimos(this.cuentaPepe.getId(), ids, importes, fechas));
+		assertEquals(700, importes[0]);
+		assertEquals(600, importes[1]);
+		assertEquals(500, importes[2]);
+		List<MovimientoCuenta> movimientos = Manager.getMovimientoDAO().findByCuentaId(this.cuentaPepe.getId());
+		long ultimo = 0;
+		for (MovimientoCuenta movimiento : movimientos)
+			ultimo = Math.max(ultimo, movimiento.getId());
+		assertEquals(ultimo, ids[0]);
+		assertEquals(2800, libro.getSaldo(this.cuentaPepe.getId()));
+	}
+
+	/**
+	 * Carga y descarta repetidamente la cuenta mientras otros hilos hacen ingresos: ningún ingreso puede
+	 * contarse dos veces ni perderse
+	 */
+	@Test
+	public void testCargaConIngresosConcurrentes() throws Exception {
+		final LibroCuentasFrecuentes libro = Manager.getLibroCuentasFrecuentes();
+		final AtomicBoolean parar = new AtomicBoolean();
+		Thread[] hilos = new Thread[4];
+		for (int i = 0; i < hilos.length; i++) {
+			hilos[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						while (!parar.get())
+							cuentaPepe.ingresar(1);
+					} catch (ImporteInvalidoException e) {
+					}
+				}
+			};
+			hilos[i].start();
+		}
+		try {
+			for (int i = 0; i < 50; i++) {
+				libro.descartar(this.cuentaPepe.getId());
+				libro.cargar(this.cuentaPepe.getId());
+				Thread.sleep(5);
+			}
+		} finally {
+			parar.set(true);
+			for (Thread hilo : hilos)
+				hilo.join();
+		}
+		assertTrue(libro.isCargada(this.cuentaPepe.getId()));
+		Long saldo = Manager.getCuentaDAO().findSaldoById(this.cuentaPepe.getId());
+		assertTrue(saldo > 0);
+		assertEquals(saldo.longValue(), libro.getSaldo(this.cuentaPepe.getId()));
+		assertEquals(saldo.longValue(), Manager.getMovimientoDAO().sumImporteByCuentaId(this.cuentaPepe.getId()));
+	}
+
+	/**
+	 * Las consultas a una cuenta del libro no crean objetos
+	 */
+	@Test
+	public void testConsultasSinAsignaciones() throws Exception {
+		LibroCuentasFrecuentes libro = Manager.getLibroCuentasFrecuentes();
+		this.cuentaPepe.ingresar(10);
+		assertTrue(libro.cargar(this.cuentaPepe.getId()));
+		com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long[] ids = new long[3], importes = new long[3], fechas = new long[3];
+		Long id = this.cuentaPepe.getId();
+		long hilo = Thread.currentThread().getId();
+		double total = 0;
+		for (int vuelta = 0; vuelta < 2; vuelta++) {
+			long antes = hilos.getThreadAllocatedBytes(hilo);
+			for (int i = 0; i < 100000; i++) {
+				total = total + this.cuentaPepe.getSaldo();
+				total = total + libro.getUltimos(id, ids, importes, fechas);
+			}
+			long asignados = hilos.getThreadAllocatedBytes(hilo) - antes;
+			// La primera vuelta puede incluir la compilación; 100000 consultas que asignaran algo pasarían del megabyte
+			if (vuelta == 1)
+				assertTrue("Bytes asignados: " + asignados, asignados < 16384);
+		}
+		assertEquals(2 * 100000 * 11.0, total);
+	}
+}
@@ -0,0 +1,176 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.PinInvalidoException;
+import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas;
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas.Operacion;
+import edu.uclm.esi.iso2.banco20193capas.model.Metricas.Temporizador;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaDebito;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+public class TestMetricas extends TestCase {
+	@Autowired
+	private MockMvc mvc;
+
+	private Cuenta cuentaPepe, cuentaAna;
+	private TarjetaDebito tarjetaDebito;
+	private TarjetaCredito tarjetaCredito;
+
+	@Before
+	public void setUp() throws Exception {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		this.cuentaPepe = new Cuenta(1);
+		this.cuentaPepe.addTitular(pepe);
+		this.cuentaPepe.insert();
+		this.cuentaAna = new Cuenta(2);
+		this.cuentaAna.addTitular(pepe);
+		this.cuentaAna.insert();
+		this.tarjetaDebito = this.cuentaPepe.emitirTarjetaDebito(pepe.getNif());
+		this.tarjetaCredito = this.cuentaPepe.emitirTarjetaCredito(pepe.getNif(), 1000);
+		Manager.activarMetricas();
+	}
+
+	@After
+	public void tearDown() {
+		Manager.desactivarMetricas();
+	}
+
+	@Test
+	public void testOperacionesYExcepciones() throws Exception {
+		Metricas metricas = Manager.getMetricas();
+		this.cuentaPepe.ingresar(1000);
+		this.cuentaPepe.transferir(this.cuentaAna.getId(), 100, "Alquiler");
+		try {
+			this.cuentaAna.retirar(5000);
+			fail("Esperaba SaldoInsuficienteException");
+		} catch (SaldoInsuficienteException e) {
+		}
+		try {
+			this.tarjetaDebito.comprar(this.tarjetaDebito.getPin() + 1, 10);
+			fail("Esperaba PinInvalidoException");
+		} catch (PinInvalidoException e) {
+		}
+		this.tarjetaDebito.sacarDinero(this.tarjetaDebito.getPin(), 50);
+		this.tarjetaCredito.comprar(this.tarjetaCredito.getPin(), 200);
+		this.tarjetaCredito.liquidar();
+		assertEquals(648.5, this.cuentaPepe.getSaldo());
+
+		assertEquals(1, metricas.getTemporizador(Operacion.INGRESAR).getLlamadas());
+		assertEquals(1, metricas.getTemporizador(Operacion.TRANSFERIR).getLlamadas());
+		// La retirada fallida y la de la tarjeta de débito
+		assertEquals(2, metricas.getTemporizador(Operacion.RETIRAR).getLlamadas());
+		assertEquals(2, metricas.getTemporizador(Operacion.COMPRAR).getLlamadas());
+		assertEquals(1, metricas.getTemporizador(Operacion.SACAR_DINERO).getLlamadas());
+		assertEquals(1, metricas.getTemporizador(Operacion.LIQUIDAR).getLlamadas());
+		assertEquals(1, metricas.getTemporizador(Operacion.GET_SALDO).getLlamadas());
+		assertEquals(0, metricas.getTemporizador(Operacion.COMPRAR_POR_INTERNET).getLlamadas());
+		assertFalse(metricas.getOperaciones().containsKey(Operacion.COMPRAR_POR_INTERNET.name()));
+
+		assertEquals(2, metricas.getExcepciones().size());
+		assertEquals(Long.valueOf(1), metricas.getExcepciones().get("RETIRAR.SaldoInsuficienteException"));
+		assertEquals(Long.valueOf(1), metricas.getExcepciones().get("COMPRAR.PinInvalidoException"));
+
+		assertTrue(metricas.getDao().get("CuentaDAO.actualizarSaldo").getLlamadas() >= 2);
+		assertTrue(metricas.getDao().get("CuentaDAO.retirarSaldo").getLlamadas() >= 3);
+		assertEquals(1, metricas.getDao().get("MovimientoTarjetaCreditoDAO.liquidarByTarjetaId").getLlamadas());
+
+		// Desactivadas, las operaciones no se miden
+		Manager.desactivarMetricas();
+		this.cuentaPepe.ingresar(1);
+		this.cuentaPepe.getSaldo();
+		assertEquals(1, metricas.getTemporizador(Operacion.INGRESAR).getLlamadas());
+		assertEquals(1, metricas.getTemporizador(Operacion.GET_SALDO).getLlamadas());
+		assertEquals(0, Metricas.iniciar());
+	}
+
+	@Test
+	public void testCompraPorInternetConfirmada() throws Exception {
+		Metricas metricas = Manager.getMetricas();
+		this.cuentaPepe.ingresar(1000);
+		int token = this.tarjetaDebito.comprarPorInternet(this.tarjetaDebito.getPin(), 100);
+		this.tarjetaDebito.confirmarCompraPorInternet(token);
+		assertEquals(900.0, this.cuentaPepe.getSaldo());
+
+		assertEquals(1, metricas.getTemporizador(Operacion.COMPRAR_POR_INTERNET).getLlamadas());
+		assertEquals(1, metricas.getTemporizador(Operacion.CONFIRMAR_COMPRA).getLlamadas());
+		// La compra confirmada no se cuenta también como una compra en un comercio
+		assertEquals(0, metricas.getTemporizador(Operacion.COMPRAR).getLlamadas());
+		assertEquals(1, metricas.getTemporizador(Operacion.RETIRAR).getLlamadas());
+	}
+
+	@Test
+	public void testPublicacion() throws Exception {
+		this.cuentaPepe.ingresar(1000);
+		try {
+			this.cuentaAna.retirar(1);
+		} catch (SaldoInsuficienteException e) {
+		}
+		this.mvc.perform(get("/api/metricas")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.operaciones.INGRESAR.llamadas").value(1))
+				.andExpect(jsonPath("$.excepciones['RETIRAR.SaldoInsuficienteException']").value(1))
+				.andExpect(jsonPath("$.dao['CuentaDAO.actualizarSaldo'].llamadas").value(1));
+
+		MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+		ObjectName nombre = new ObjectName(Metricas.NOMBRE_JMX);
+		TabularData operaciones = (TabularData) servidor.getAttribute(nombre, "Operaciones");
+		CompositeData ingresar = (CompositeData) operaciones.get(new Object[] { "INGRESAR" }).get("value");
+		assertEquals(1L, ingresar.get("llamadas"));
+		TabularData excepciones = (TabularData) servidor.getAttribute(nombre, "Excepciones");
+		assertEquals(1, excepciones.size());
+
+		Manager.desactivarMetricas();
+		assertFalse(servidor.isRegistered(nombre));
+		this.mvc.perform(get("/api/metricas")).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void testPercentiles() {
+		Temporizador temporizador = new Temporizador();
+		assertEquals(0, temporizador.getPercentil(0.99));
+		for (int i = 1; i <= 1000; i++)
+			temporizador.anotar(i * 1000L);
+		// Cada percentil cae en una cubeta que no llega al doble del valor exacto
+		long mediana = temporizador.getPercentil(0.5);
+		assertTrue("Mediana " + mediana, mediana >= 500 && mediana < 1000);
+		long p99 = temporizador.getPercentil(0.99);
+		assertTrue("Percentil 99 " + p99, p99 >= 990 && p99 <= 1000);
+		assertEquals(1000, temporizador.getPercentil(1));
+		assertEquals(1000, temporizador.getLlamadas());
+	}
+}
@@ -0,0 +1,195 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.aop.framework.Advised;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MotorLiquidacion;
+import edu.uclm.esi.iso2.banco20193capas.model.ParticionLiquidacion;
+import edu.uclm.esi.iso2.banco20193capas.model.ResultadoLiquidacion;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaCredito;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestMotorLiquidacion extends TestCase {
+	private Cuenta cuentaPepe, cuentaAna;
+	private List<TarjetaCredito> tarjetas;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+		Manager.getParticionLiquidacionDAO().deleteAll();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		Cliente ana = new Cliente("98765F", "Ana", "López");
+		ana.insert();
+		this.cuentaPepe = new Cuenta(1);
+		this.cuentaAna = new Cuenta(2);
+		this.tarjetas = new ArrayList<>();
+		try {
+			this.cuentaPepe.addTitular(pepe);
+			this.cuentaPepe.insert();
+			this.cuentaPepe.ingresar(10000);
+			this.cuentaAna.addTitular(ana);
+			this.cuentaAna.insert();
+			this.cuentaAna.ingresar(10000);
+			for (int i = 0; i < 10; i++) {
+				TarjetaCredito tc = (i % 2 == 0 ? this.cuentaPepe.emitirTarjetaCredito(pepe.getNif(), 1000) : this.cuentaAna.emitirTarjetaCredito(ana.getNif(), 1000));
+				tc.cambiarPin(tc.getPin(), 1234);
+				this.tarjetas.add(tc);
+			}
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+	}
+
+	@Test
+	public void testLiquidacionMasiva() {
+		try {
+			for (TarjetaCredito tc : this.tarjetas) {
+				tc.comprar(1234, 100);
+				tc.comprar(1234, 50);
+			}
+			ResultadoLiquidacion resultado = new MotorLiquidacion(4, 3).liquidar("2026-10");
+			assertTrue(resultado.getTarjetas() == 10);
+			assertTrue(resultado.getMovimientos() == 20);
+			assertTrue(resultado.getParticionesOmitidas() == 0);
+			assertTrue(this.cuentaPepe.getSaldo() == 10000 - 5 * 150);
+			assertTrue(this.cuentaAna.getSaldo() == 10000 - 5 * 150);
+			for (TarjetaCredito tc : this.tarjetas)
+				assertTrue(tc.getCreditoDisponible() == 1000);
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+	}
+
+	/**
+	 * Varios hilos compran con las tarjetas mientras se liquidan repetidamente: cada compra debe cargarse en
+	 * su cuenta exactamente una vez, en la liquidación en curso o en una posterior
+	 */
+	@Test
+	public void testComprasDuranteLaLiquidacion() throws Exception {
+		final AtomicLong compras = new AtomicLong();
+		final AtomicBoolean fallo = new AtomicBoolean();
+		Thread[] hilos = new Thread[4];
+		for (int i = 0; i < hilos.length; i++) {
+			final int primera = i;
+			hilos[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 100; j++) {
+							tarjetas.get((primera + j) % tarjetas.size()).comprar(1234, 1);
+							compras.incrementAndGet();
+						}
+					} catch (Exception e) {
+						fallo.set(true);
+					}
+				}
+			};
+			hilos[i].start();
+		}
+		MotorLiquidacion motor = new MotorLiquidacion(4, 2);
+		int ejecucion = 0;
+		while (compras.get() < 400 && !fallo.get())
+			motor.liquidar("concurrente-" + ejecucion++);
+		for (Thread hilo : hilos)
+			hilo.join();
+		assertFalse(fallo.get());
+		assertTrue(ejecucion > 0);
+		motor.liquidar("final");
+
+		assertEquals(400, compras.get());
+		assertEquals(20000.0 - 400, this.cuentaPepe.getSaldo() + this.cuentaAna.getSaldo());
+		for (TarjetaCredito tc : this.tarjetas)
+			assertEquals(1000.0, tc.getCreditoDisponible());
+	}
+
+	/**
+	 * Una compra que se confirma desde otro hilo mientras la liquidación está en curso, justo antes de que
+	 * se marquen los movimientos de la partición, se carga en la propia liquidación
+	 */
+	@Test
+	public void testCompraDuranteLaLiquidacionDeSuParticion() throws Exception {
+		final TarjetaCredito tc = this.tarjetas.get(0);
+		tc.comprar(1234, 100);
+		final AtomicBoolean fallo = new AtomicBoolean();
+		MethodInterceptor compraIntercalada = new MethodInterceptor() {
+			private boolean hecha;
+
+			@Override
+			public Object invoke(MethodInvocation invocacion) throws Throwable {
+				if (!this.hecha && invocacion.getMethod().getName().equals("liquidarByTarjetaIdBetween")) {
+					this.hecha = true;
+					Thread hilo = new Thread() {
+						@Override
+						public void run() {
+							try {
+								tc.comprar(1234, 50);
+							} catch (Exception e) {
+								fallo.set(true);
+							}
+						}
+					};
+					hilo.start();
+					hilo.join();
+				}
+				return invocacion.proceed();
+			}
+		};
+		Advised dao = (Advised) Manager.getMovimientoTarjetaCreditoDAO();
+		dao.addAdvice(0, compraIntercalada);
+		try {
+			new MotorLiquidacion(1, 10).liquidar("intercalada");
+		} finally {
+			dao.removeAdvice(compraIntercalada);
+		}
+		assertFalse(fallo.get());
+		assertEquals(10000.0 - 150, this.cuentaPepe.getSaldo());
+		assertEquals(1000.0, tc.getCreditoDisponible());
+	}
+
+	@Test
+	public void testReanudacion() {
+		try {
+			for (TarjetaCredito tc : this.tarjetas)
+				tc.comprar(1234, 100);
+			Long primera = this.tarjetas.get(0).getId();
+			Manager.getParticionLiquidacionDAO().save(new ParticionLiquidacion("2026-10", primera, primera + 4));
+
+			MotorLiquidacion motor = new MotorLiquidacion(2, 5);
+			ResultadoLiquidacion resultado = motor.liquidar("2026-10");
+			assertTrue(resultado.getParticionesOmitidas() == 1);
+			assertTrue(resultado.getTarjetas() == 5);
+			assertTrue(this.tarjetas.get(0).getCreditoDisponible() == 900);
+			assertTrue(this.tarjetas.get(9).getCreditoDisponible() == 1000);
+
+			resultado = motor.liquidar("2026-10");
+			assertTrue(resultado.getParticiones() == 0);
+			assertTrue(resultado.getTarjetas() == 0);
+			assertTrue(this.cuentaPepe.getSaldo() + this.cuentaAna.getSaldo() == 20000 - 500);
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+	}
+}
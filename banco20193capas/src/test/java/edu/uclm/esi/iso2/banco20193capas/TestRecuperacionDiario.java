@@ -0,0 +1,230 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Test;
+import org.springframework.aop.framework.Advised;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import edu.uclm.esi.iso2.banco20193capas.model.Centimos;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.DiarioMovimientos;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.RegistroApartado;
+import junit.framework.TestCase;
+
+/**
+ * Mata, sin darle ocasión de terminar, un proceso que está haciendo ingresos con el diario de movimientos
+ * activo, y comprueba en un proceso nuevo que después de aplicar el diario están todos los ingresos
+ * confirmados, ninguno repetido, y que el saldo coincide con los movimientos. También comprueba que un
+ * ingreso confirmado que no pudo aplicarse y se apartó sigue apartado después de reiniciar
+ *
+ */
+public class TestRecuperacionDiario extends TestCase {
+	private static final int CONFIRMADOS = 400;
+
+	@Test
+	public void testCaidaDuranteLaCarga() throws Exception {
+		Path directorio = Files.createTempDirectory("recuperacion");
+		Set<Double> confirmados = new HashSet<>();
+		StringBuilder salida = new StringBuilder();
+		Process carga = lanzar("carga", directorio);
+		try (BufferedReader lector = new BufferedReader(new InputStreamReader(carga.getInputStream(), StandardCharsets.UTF_8))) {
+			String linea;
+			while (confirmados.size() < CONFIRMADOS && (linea = lector.readLine()) != null) {
+				if (linea.startsWith("CONFIRMADO "))
+					confirmados.add(Double.valueOf(linea.substring(11)));
+				else
+					salida.append(linea).append('\n');
+			}
+		} finally {
+			carga.destroyForcibly();
+			carga.waitFor();
+		}
+		assertTrue("Confirmados: " + confirmados.size() + "\n" + salida, confirmados.size() >= CONFIRMADOS);
+
+		Process comprobacion = lanzar("comprobacion", directorio);
+		List<Double> movimientos = new ArrayList<>();
+		Double saldo = null;
+		try (BufferedReader lector = new BufferedReader(new InputStreamReader(comprobacion.getInputStream(), StandardCharsets.UTF_8))) {
+			String linea;
+			while ((linea = lector.readLine()) != null) {
+				if (linea.startsWith("MOVIMIENTO "))
+					movimientos.add(Double.valueOf(linea.substring(11)));
+				else if (linea.startsWith("SALDO "))
+					saldo = Double.valueOf(linea.substring(6));
+			}
+		}
+		assertEquals(0, comprobacion.waitFor());
+		assertNotNull(saldo);
+		assertEquals("Movimientos repetidos", movimientos.size(), new HashSet<>(movimientos).size());
+		assertTrue("Faltan movimientos confirmados", movimientos.containsAll(confirmados));
+		double suma = 0.0;
+		for (double importe : movimientos)
+			suma = suma + importe;
+		assertEquals(suma, saldo, 0.001);
+	}
+
+	@Test
+	public void testApartadoTrasReiniciar() throws Exception {
+		Path directorio = Files.createTempDirectory("apartado");
+		StringBuilder salida = new StringBuilder();
+		boolean apartado = false;
+		Process carga = lanzar("apartado", directorio);
+		try (BufferedReader lector = new BufferedReader(new InputStreamReader(carga.getInputStream(), StandardCharsets.UTF_8))) {
+			String linea;
+			while ((linea = lector.readLine()) != null) {
+				apartado = apartado || linea.equals("APARTADOS 1");
+				salida.append(linea).append('\n');
+			}
+		}
+		assertEquals(salida.toString(), 0, carga.waitFor());
+		assertTrue(salida.toString(), apartado);
+
+		// Al reiniciar, el punto de control ya está detrás del ingreso, que no se aplica, pero sigue apartado
+		Process comprobacion = lanzar("apartados", directorio);
+		List<String> apartados = new ArrayList<>();
+		Double saldo = null;
+		try (BufferedReader lector = new BufferedReader(new InputStreamReader(comprobacion.getInputStream(), StandardCharsets.UTF_8))) {
+			String linea;
+			while ((linea = lector.readLine()) != null) {
+				if (linea.startsWith("APARTADO "))
+					apartados.add(linea.substring(9));
+				else if (linea.startsWith("SALDO "))
+					saldo = Double.valueOf(linea.substring(6));
+			}
+		}
+		assertEquals(0, comprobacion.waitFor());
+		assertEquals(1, apartados.size());
+		assertEquals("2 5000", apartados.get(0));
+		assertEquals(0.0, saldo);
+	}
+
+	private static Process lanzar(String modo, Path directorio) throws Exception {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		String classpath = System.getProperty("surefire.test.class.path", System.getProperty("java.class.path"));
+		ProcessBuilder proceso = new ProcessBuilder(java, "-cp", classpath, Proceso.class.getName(), modo, directorio.toString());
+		proceso.redirectErrorStream(true);
+		return proceso.start();
+	}
+
+	/**
+	 * Proceso hijo. En modo "carga" hace ingresos desde varios hilos y escribe una línea por cada ingreso
+	 * confirmado; los registros se aplican en lotes de 100, por lo que al matarlo quedan registros por aplicar.
+	 * En modo "comprobacion" arranca (lo que aplica el diario), y escribe el saldo y los movimientos.
+	 * En modo "apartado" hace un ingreso en una cuenta cuyo saldo no puede actualizarse, escribe cuántos
+	 * apuntes se han apartado y termina; en modo "apartados" arranca y escribe los registros apartados y el saldo de esa cuenta
+	 */
+	public static class Proceso {
+		public static void main(String[] args) throws Exception {
+			String modo = args[0];
+			Path directorio = Paths.get(args[1]);
+			// El reinicio de devtools volvería a llamar a main con los argumentos de Spring
+			System.setProperty("spring.devtools.restart.enabled", "false");
+			new SpringApplicationBuilder(Lanzadora.class).web(WebApplicationType.NONE).run(
+					"--spring.datasource.url=jdbc:h2:file:" + directorio.resolve("banco"),
+					"--banco.diario.activo=true",
+					"--banco.diario.archivo=" + directorio.resolve("diario.dat"),
+					"--banco.diario.lote=100",
+					"--banco.diario.latencia=" + ("carga".equals(modo) ? 60000 : 5),
+					"--banco.eventos.instantaneas.periodo=3600000");
+			if ("carga".equals(modo))
+				cargar();
+			else if ("apartado".equals(modo))
+				apartar();
+			else if ("apartados".equals(modo))
+				comprobarApartados();
+			else
+				comprobar();
+		}
+
+		private static void cargar() throws Exception {
+			Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+			pepe.insert();
+			final Cuenta cuenta = new Cuenta(1);
+			cuenta.addTitular(pepe);
+			cuenta.insert();
+			Thread[] hilos = new Thread[4];
+			for (int i = 0; i < hilos.length; i++) {
+				final int hilo = i;
+				hilos[i] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int n = 1; ; n++) {
+								double importe = hilo * 100000 + n;
+								cuenta.ingresar(importe);
+								System.out.println("CONFIRMADO " + importe);
+							}
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+					}
+				};
+				hilos[i].setDaemon(true);
+				hilos[i].start();
+			}
+			// Por si el test no llega a matarlo
+			Thread.sleep(120000);
+			System.exit(1);
+		}
+
+		private static void apartar() throws Exception {
+			Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+			pepe.insert();
+			Cuenta cuentaPepe = new Cuenta(1);
+			cuentaPepe.addTitular(pepe);
+			cuentaPepe.insert();
+			Cuenta cuentaAna = new Cuenta(2);
+			cuentaAna.addTitular(pepe);
+			cuentaAna.insert();
+			((Advised) Manager.getCuentaDAO()).addAdvice(0, new MethodInterceptor() {
+				@Override
+				public Object invoke(MethodInvocation invocacion) throws Throwable {
+					if (invocacion.getMethod().getName().equals("actualizarSaldo") && Long.valueOf(2).equals(invocacion.getArguments()[0]))
+						throw new IllegalStateException("Fallo simulado");
+					return invocacion.proceed();
+				}
+			});
+			cuentaPepe.ingresar(100);
+			cuentaAna.ingresar(50);
+			DiarioMovimientos diario = Manager.getDiarioMovimientos();
+			diario.esperarAplicados();
+			System.out.println("APARTADOS " + diario.getApartados());
+			System.exit(0);
+		}
+
+		private static void comprobarApartados() {
+			DiarioMovimientos diario = Manager.getDiarioMovimientos();
+			diario.esperarAplicados();
+			for (RegistroApartado registro : diario.getRegistrosApartados())
+				System.out.println("APARTADO " + registro.getCuentaOTarjetaId() + " " + registro.getCentimos());
+			System.out.println("SALDO " + Centimos.aEuros(Manager.getCuentaDAO().findSaldoById(2L)));
+			System.exit(0);
+		}
+
+		private static void comprobar() {
+			DiarioMovimientos diario = Manager.getDiarioMovimientos();
+			System.out.println("RECUPERADOS " + diario.getRecuperados());
+			diario.esperarAplicados();
+			System.out.println("SALDO " + Centimos.aEuros(Manager.getCuentaDAO().findSaldoById(1L)));
+			for (MovimientoCuenta movimiento : Manager.getMovimientoDAO().findByCuentaId(1L))
+				System.out.println("MOVIMIENTO " + movimiento.getImporte());
+			System.exit(0);
+		}
+	}
+}
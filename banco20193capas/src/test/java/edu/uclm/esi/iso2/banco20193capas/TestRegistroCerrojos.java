@@ -0,0 +1,125 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.uclm.esi.iso2.banco20193capas.model.RegistroCerrojos;
+import edu.uclm.esi.iso2.banco20193capas.model.RegistroCerrojos.Bloqueo;
+import junit.framework.TestCase;
+
+public class TestRegistroCerrojos extends TestCase {
+
+	@Test
+	public void testFranjasPotenciaDeDos() {
+		assertEquals(64, new RegistroCerrojos(64).getFranjas());
+		assertEquals(128, new RegistroCerrojos(100).getFranjas());
+		assertEquals(1, new RegistroCerrojos(1).getFranjas());
+	}
+
+	@Test
+	public void testMismaCuentaSeSerializa() throws Exception {
+		final RegistroCerrojos cerrojos = new RegistroCerrojos(16);
+		final AtomicInteger dentro = new AtomicInteger();
+		final AtomicInteger maximo = new AtomicInteger();
+		Thread[] hilos = new Thread[8];
+		for (int i = 0; i < hilos.length; i++) {
+			hilos[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 200; j++)
+						try (Bloqueo bloqueo = cerrojos.bloquearCuentas(7L)) {
+							int n = dentro.incrementAndGet();
+							if (n > maximo.get())
+								maximo.set(n);
+							dentro.decrementAndGet();
+						}
+				}
+			};
+			hilos[i].start();
+		}
+		for (Thread hilo : hilos)
+			hilo.join();
+		assertEquals(1, maximo.get());
+
+		long adquisiciones = 0;
+		for (int i = 0; i < cerrojos.getFranjas(); i++) {
+			adquisiciones = adquisiciones + cerrojos.getAdquisiciones(i);
+			assertTrue(cerrojos.getEsperas(i) <= cerrojos.getAdquisiciones(i));
+			assertEquals(0, cerrojos.getLongitudCola(i));
+		}
+		assertEquals(8 * 200, adquisiciones);
+	}
+
+	@Test
+	public void testCuentasDistintasEnParalelo() throws Exception {
+		final RegistroCerrojos cerrojos = new RegistroCerrojos(1024);
+		Long otra = 2L;
+		while (franja(cerrojos, otra) == franja(cerrojos, 1L))
+			otra++;
+		final Long segunda = otra;
+		final CountDownLatch bloqueada = new CountDownLatch(1);
+		final CountDownLatch liberar = new CountDownLatch(1);
+		Thread hilo = new Thread() {
+			@Override
+			public void run() {
+				try (Bloqueo bloqueo = cerrojos.bloquearCuentas(1L)) {
+					bloqueada.countDown();
+					liberar.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		hilo.start();
+		assertTrue(bloqueada.await(5, TimeUnit.SECONDS));
+		try (Bloqueo bloqueo = cerrojos.bloquearCuentas(segunda)) {
+			assertTrue(hilo.isAlive());
+		}
+		liberar.countDown();
+		hilo.join();
+	}
+
+	@Test
+	public void testContencionMedida() throws Exception {
+		final RegistroCerrojos cerrojos = new RegistroCerrojos(4);
+		final CountDownLatch bloqueada = new CountDownLatch(1);
+		Thread esperando;
+		try (Bloqueo bloqueo = cerrojos.bloquearTarjeta(3L, 9L)) {
+			esperando = new Thread() {
+				@Override
+				public void run() {
+					bloqueada.countDown();
+					try (Bloqueo bloqueo = cerrojos.bloquearCuentas(9L)) {
+					}
+				}
+			};
+			esperando.start();
+			assertTrue(bloqueada.await(5, TimeUnit.SECONDS));
+			Thread.sleep(100);
+		}
+		esperando.join();
+		long esperas = 0, tiempo = 0, cola = 0;
+		for (int i = 0; i < cerrojos.getFranjas(); i++) {
+			esperas = esperas + cerrojos.getEsperas(i);
+			tiempo = tiempo + cerrojos.getTiempoEspera(i);
+			cola = Math.max(cola, cerrojos.getLongitudColaMaxima(i));
+		}
+		assertEquals(1, esperas);
+		assertTrue(tiempo > 0);
+		assertEquals(1, cola);
+	}
+
+	private int franja(RegistroCerrojos cerrojos, Long cuenta) {
+		long[] antes = new long[cerrojos.getFranjas()];
+		for (int i = 0; i < antes.length; i++)
+			antes[i] = cerrojos.getAdquisiciones(i);
+		try (Bloqueo bloqueo = cerrojos.bloquearCuentas(cuenta)) {
+		}
+		for (int i = 0; i < antes.length; i++)
+			if (cerrojos.getAdquisiciones(i) != antes[i])
+				return i;
+		return -1;
+	}
+}
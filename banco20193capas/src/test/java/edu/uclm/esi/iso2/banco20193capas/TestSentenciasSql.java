@@ -0,0 +1,127 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.TarjetaDebito;
+import junit.framework.TestCase;
+
+/**
+ * Comprueba, con las estadísticas de Hibernate, que las operaciones más frecuentes no lanzan más sentencias
+ * SQL de las previstas y que cargar una tarjeta o una cuenta no arrastra a los titulares de la cuenta
+ *
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestSentenciasSql extends TestCase {
+	@Autowired
+	private EntityManagerFactory emf;
+	private Statistics estadisticas;
+	private Cliente pepe;
+	private Cuenta cuentaPepe, cuentaAna;
+	private TarjetaDebito tdPepe;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+
+		this.pepe = new Cliente("12345X", "Pepe", "Pérez");
+		this.pepe.insert();
+		Cliente ana = new Cliente("98765F", "Ana", "López");
+		ana.insert();
+		this.cuentaPepe = new Cuenta(1);
+		this.cuentaAna = new Cuenta(2);
+		try {
+			this.cuentaPepe.addTitular(this.pepe);
+			this.cuentaPepe.addTitular(ana);
+			this.cuentaPepe.insert();
+			this.cuentaPepe.ingresar(1000);
+			this.cuentaAna.addTitular(ana);
+			this.cuentaAna.insert();
+			this.tdPepe = this.cuentaPepe.emitirTarjetaDebito(this.pepe.getNif());
+			this.tdPepe.cambiarPin(this.tdPepe.getPin(), 1234);
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+		this.estadisticas = this.emf.unwrap(SessionFactory.class).getStatistics();
+		this.estadisticas.setStatisticsEnabled(true);
+		this.estadisticas.clear();
+	}
+
+	@After
+	public void tearDown() {
+		this.estadisticas.setStatisticsEnabled(false);
+	}
+
+	@Test
+	public void testTransferir() {
+		try {
+			this.cuentaPepe.transferir(this.cuentaAna.getId(), 100, "Alquiler");
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+		// Dos actualizaciones de saldo, tres movimientos, un lote con sus tres eventos y, como mucho, una lectura de la secuencia
+		assertTrue("Sentencias: " + this.estadisticas.getPrepareStatementCount(), this.estadisticas.getPrepareStatementCount() <= 7);
+		assertEquals(0, this.estadisticas.getCollectionFetchCount());
+	}
+
+	@Test
+	public void testComprarTarjetaDebito() {
+		try {
+			this.tdPepe.comprar(1234, 100);
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+		// Una actualización de saldo, un movimiento con su evento y, como mucho, una lectura de la secuencia
+		assertTrue("Sentencias: " + this.estadisticas.getPrepareStatementCount(), this.estadisticas.getPrepareStatementCount() <= 4);
+		assertEquals(0, this.estadisticas.getCollectionFetchCount());
+	}
+
+	@Test
+	public void testCargarTarjetaSinTitulares() {
+		TarjetaDebito td = Manager.getTarjetaDebitoDAO().findById(this.tdPepe.getId()).get();
+		assertEquals(1, this.estadisticas.getPrepareStatementCount());
+		assertEquals(0, this.estadisticas.getCollectionFetchCount());
+		try {
+			td.comprar(1234, 100);
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+		assertEquals(0, this.estadisticas.getCollectionFetchCount());
+	}
+
+	@Test
+	public void testEmitirConCuentaLeida() {
+		Cuenta cuenta = Manager.getCuentaDAO().findById(this.cuentaPepe.getId()).get();
+		assertEquals(1, this.estadisticas.getPrepareStatementCount());
+		try {
+			cuenta.emitirTarjetaDebito(this.pepe.getNif());
+			cuenta.emitirTarjetaCredito(this.pepe.getNif(), 1000);
+		} catch (Exception e) {
+			fail("Excepción inesperada: " + e);
+		}
+		assertEquals(2, cuenta.getTitulares().size());
+		// Los titulares se leen una sola vez, con el grafo Cuenta.titulares, y el cliente sale de la caché.
+		// Cada tarjeta necesita su id, la comprobación de que la cuenta existe, la inserción y su evento de emisión; además,
+		// como mucho, una lectura de la secuencia de los eventos
+		assertEquals(0, this.estadisticas.getCollectionFetchCount());
+		assertTrue("Sentencias: " + this.estadisticas.getPrepareStatementCount(), this.estadisticas.getPrepareStatementCount() <= 11);
+	}
+}
@@ -0,0 +1,167 @@
+package edu.uclm.esi.iso2.banco20193capas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import edu.uclm.esi.iso2.banco20193capas.exceptions.SaldoInsuficienteException;
+import edu.uclm.esi.iso2.banco20193capas.model.Cliente;
+import edu.uclm.esi.iso2.banco20193capas.model.ConciliadorSaldos;
+import edu.uclm.esi.iso2.banco20193capas.model.Cuenta;
+import edu.uclm.esi.iso2.banco20193capas.model.Manager;
+import edu.uclm.esi.iso2.banco20193capas.model.MovimientoCuenta;
+import junit.framework.TestCase;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class TestTransferenciasConcurrentes extends TestCase {
+	private static final int CUENTAS = 4;
+	private static final int HILOS = 16;
+	private static final int TRANSFERENCIAS = 2000;
+	private static final double SALDO_INICIAL = 5000;
+
+	private List<Cuenta> cuentas;
+
+	@Before
+	public void setUp() {
+		Manager.getMovimientoDAO().deleteAll();
+		Manager.getMovimientoTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaCreditoDAO().deleteAll();
+		Manager.getTarjetaDebitoDAO().deleteAll();
+		Manager.getCuentaDAO().deleteAll();
+		Manager.getClienteDAO().deleteAll();
+
+		Cliente pepe = new Cliente("12345X", "Pepe", "Pérez");
+		pepe.insert();
+		this.cuentas = new ArrayList<>();
+		try {
+			for (int i = 1; i <= CUENTAS; i++) {
+				Cuenta cuenta = new Cuenta(i);
+				cuenta.addTitular(pepe);
+				cuenta.insert();
+				cuenta.ingresar(SALDO_INICIAL);
+				this.cuentas.add(cuenta);
+			}
+		} catch (Exception e) {
+			fail("Excepción inesperada en setUp(): " + e);
+		}
+	}
+
+	@Test
+	public void testConservacionDelDinero() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+		List<Future<Boolean>> resultados = new ArrayList<>();
+		Random dado = new Random(2019);
+		for (int i = 0; i < TRANSFERENCIAS; i++) {
+			final Cuenta origen = this.cuentas.get(dado.nextInt(CUENTAS));
+			final Cuenta destino = this.cuentas.get((this.cuentas.indexOf(origen) + 1 + dado.nextInt(CUENTAS - 1)) % CUENTAS);
+			final double importe = 10 + dado.nextInt(140);
+			resultados.add(pool.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					try {
+						origen.transferir(destino.getId(), importe, "Prueba");
+						return true;
+					} catch (SaldoInsuficienteException e) {
+						return false;
+					}
+				}
+			}));
+		}
+		int realizadas = 0;
+		for (Future<Boolean> resultado : resultados)
+			if (resultado.get())
+				realizadas++;
+		pool.shutdown();
+
+		double total = 0.0;
+		for (Cuenta cuenta : this.cuentas) {
+			assertTrue(cuenta.getSaldo() >= 0);
+			total = total + cuenta.getSaldo();
+		}
+		double comisiones = 0.0;
+		int nComisiones = 0;
+		for (MovimientoCuenta movimiento : Manager.getMovimientoDAO().findAll())
+			if (movimiento.getConcepto().equals("Comisión por transferencia")) {
+				comisiones = comisiones - movimiento.getImporte();
+				nComisiones++;
+			}
+		assertTrue(realizadas > 0);
+		assertEquals(realizadas, nComisiones);
+		assertEquals(CUENTAS * SALDO_INICIAL, total + comisiones, 0.0001);
+		assertTrue(new ConciliadorSaldos().conciliar(false).isEmpty());
+	}
+
+	@Test
+	public void testConciliacionDuranteTransferencias() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+		List<Future<Boolean>> resultados = new ArrayList<>();
+		Random dado = new Random(2020);
+		for (int i = 0; i < TRANSFERENCIAS / 4; i++) {
+			final Cuenta origen = this.cuentas.get(dado.nextInt(CUENTAS));
+			final Cuenta destino = this.cuentas.get((this.cuentas.indexOf(origen) + 1 + dado.nextInt(CUENTAS - 1)) % CUENTAS);
+			resultados.add(pool.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					try {
+						origen.transferir(destino.getId(), 10, "Prueba");
+						return true;
+					} catch (SaldoInsuficienteException e) {
+						return false;
+					}
+				}
+			}));
+		}
+		ConciliadorSaldos conciliador = new ConciliadorSaldos();
+		int pendientes = resultados.size();
+		while (pendientes > 0) {
+			assertTrue(conciliador.conciliar(false).isEmpty());
+			pendientes = 0;
+			for (Future<Boolean> resultado : resultados)
+				if (!resultado.isDone())
+					pendientes++;
+		}
+		for (Future<Boolean> resultado : resultados)
+			resultado.get();
+		pool.shutdown();
+		assertTrue(conciliador.conciliar(false).isEmpty());
+	}
+
+	@Test
+	public void testRetiradasSimultaneasSinDescubierto() throws Exception {
+		final Cuenta cuenta = this.cuentas.get(0);
+		ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+		List<Future<Boolean>> resultados = new ArrayList<>();
+		for (int i = 0; i < 200; i++)
+			resultados.add(pool.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					try {
+						cuenta.retirar(100);
+						return true;
+					} catch (SaldoInsuficienteException e) {
+						return false;
+					}
+				}
+			}));
+		int realizadas = 0;
+		for (Future<Boolean> resultado : resultados)
+			if (resultado.get())
+				realizadas++;
+		pool.shutdown();
+
+		assertEquals(50, realizadas);
+		assertEquals(0.0, cuenta.getSaldo(), 0.0001);
+		assertTrue(new ConciliadorSaldos().conciliar(false).isEmpty());
+	}
+}
@@ -0,0 +1,164 @@
+package edu.uclm.esi.iso2.banco20193capas.rendimiento;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import edu.uclm.esi.iso2.banco20193capas.AutenticacionPorCabecera;
+import edu.uclm.esi.iso2.banco20193capas.Lanzadora;
+import edu.uclm.esi.iso2.banco20193capas.model.CargadorMasivo;
+import edu.uclm.esi.iso2.banco20193capas.model.CargadorMasivo.Formato;
+
+/**
+ * Prueba de carga del API HTTP: arranca la aplicación en un puerto libre y lanza peticiones a ritmo
+ * fijo (70% consultas de saldo, 20% ingresos y 10% transferencias sobre cuentas al azar), informando de
+ * los percentiles 50 y 99 de la latencia para cada ritmo.
+ *
+ * Las peticiones se lanzan según un calendario fijo, sin esperar a que terminen las anteriores, y la
+ * latencia se mide desde el instante en que cada petición debía salir: así, si el servidor se retrasa,
+ * el retraso cuenta en la latencia de las peticiones que esperan, en lugar de frenar al generador de carga.
+ * Se ejecuta con:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dstart-class=edu.uclm.esi.iso2.banco20193capas.rendimiento.PruebaCargaApi
+ * </pre>
+ *
+ */
+public class PruebaCargaApi {
+	private static final int CUENTAS = 1000;
+	private static final int[] RITMOS = { 200, 500, 1000, 2000 };
+	private static final int SEGUNDOS = 10;
+	private static final int CLIENTES = 256;
+
+	public static void main(String[] args) throws Exception {
+		// Las transferencias necesitan un titular autenticado, que aquí se indica con una cabecera
+		ConfigurableApplicationContext contexto = new SpringApplicationBuilder(Lanzadora.class, AutenticacionPorCabecera.class)
+				.properties("server.port=0", "logging.level.root=WARN").run(args);
+		try {
+			String base = "http://localhost:" + contexto.getEnvironment().getProperty("local.server.port") + "/api/cuentas/";
+			StringBuilder clientes = new StringBuilder("nif,nombre,apellidos\n"), cuentas = new StringBuilder("id,titulares\n"),
+					movimientos = new StringBuilder("cuenta,importe\n");
+			for (int i = 1; i <= CUENTAS; i++) {
+				clientes.append("NIF").append(i).append(",Cliente ").append(i).append(",De carga\n");
+				cuentas.append(i).append(",NIF").append(i).append('\n');
+				movimientos.append(i).append(",1000000\n");
+			}
+			CargadorMasivo cargador = new CargadorMasivo(1000);
+			cargador.cargarClientes(new StringReader(clientes.toString()), Formato.CSV);
+			cargador.cargarCuentas(new StringReader(cuentas.toString()), Formato.CSV);
+			cargador.cargarMovimientos(new StringReader(movimientos.toString()), Formato.CSV);
+
+			ejecutar(base, RITMOS[1], SEGUNDOS);
+			for (int ritmo : RITMOS)
+				informar(ritmo, ejecutar(base, ritmo, SEGUNDOS));
+		} finally {
+			contexto.close();
+		}
+	}
+
+	private static Resultado ejecutar(final String base, int ritmo, int segundos) throws InterruptedException {
+		int peticiones = ritmo * segundos;
+		final Resultado resultado = new Resultado(peticiones);
+		ExecutorService clientes = Executors.newFixedThreadPool(CLIENTES);
+		long periodo = TimeUnit.SECONDS.toNanos(1) / ritmo;
+		long inicio = System.nanoTime();
+		for (int i = 0; i < peticiones; i++) {
+			final long previsto = inicio + i * periodo;
+			long espera = previsto - System.nanoTime();
+			if (espera > 0)
+				TimeUnit.NANOSECONDS.sleep(espera);
+			final int n = i;
+			clientes.execute(new Runnable() {
+				@Override
+				public void run() {
+					resultado.anotar(n, previsto, lanzar(base));
+				}
+			});
+		}
+		clientes.shutdown();
+		clientes.awaitTermination(5, TimeUnit.MINUTES);
+		return resultado;
+	}
+
+	private static boolean lanzar(String base) {
+		ThreadLocalRandom azar = ThreadLocalRandom.current();
+		long cuenta = 1 + azar.nextInt(CUENTAS);
+		int tipo = azar.nextInt(10);
+		try {
+			if (tipo < 7)
+				return enviar("GET", base + cuenta + "/saldo", null, null) == 200;
+			if (tipo < 9)
+				return enviar("POST", base + cuenta + "/ingresos", null, "{\"importe\": 10}") == 204;
+			long destino = 1 + (cuenta % CUENTAS);
+			return enviar("POST", base + cuenta + "/transferencias", "NIF" + cuenta, "{\"destino\": " + destino + ", \"importe\": 5, \"concepto\": \"Carga\"}") == 204;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static int enviar(String metodo, String url, String nif, String cuerpo) throws IOException {
+		HttpURLConnection conexion = (HttpURLConnection) new URL(url).openConnection();
+		conexion.setRequestMethod(metodo);
+		if (nif != null)
+			conexion.setRequestProperty(AutenticacionPorCabecera.CABECERA, nif);
+		if (cuerpo != null) {
+			conexion.setDoOutput(true);
+			conexion.setRequestProperty("Content-Type", "application/json");
+			try (OutputStream salida = conexion.getOutputStream()) {
+				salida.write(cuerpo.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		int estado = conexion.getResponseCode();
+		InputStream entrada = estado < 400 ? conexion.getInputStream() : conexion.getErrorStream();
+		if (entrada != null) {
+			byte[] buffer = new byte[1024];
+			while (entrada.read(buffer) != -1)
+				;
+			entrada.close();
+		}
+		return estado;
+	}
+
+	private static void informar(int ritmo, Resultado resultado) {
+		long[] latencias = resultado.ordenadas();
+		System.out.printf("%5d pet/s: p50 %7.2f ms, p99 %7.2f ms, máx %8.2f ms, errores %d%n", ritmo,
+				latencias[latencias.length / 2] / 1e6, latencias[(int) (latencias.length * 0.99)] / 1e6,
+				latencias[latencias.length - 1] / 1e6, resultado.errores.get());
+	}
+
+	private static class Resultado {
+		private AtomicLongArray latencias;
+		private AtomicInteger errores = new AtomicInteger();
+
+		Resultado(int peticiones) {
+			this.latencias = new AtomicLongArray(peticiones);
+		}
+
+		void anotar(int n, long previsto, boolean correcta) {
+			this.latencias.set(n, System.nanoTime() - previsto);
+			if (!correcta)
+				this.errores.incrementAndGet();
+		}
+
+		long[] ordenadas() {
+			long[] copia = new long[this.latencias.length()];
+			for (int i = 0; i < copia.length; i++)
+				copia[i] = this.latencias.get(i);
+			Arrays.sort(copia);
+			return copia;
+		}
+	}
+}